@@ -0,0 +1,20 @@
+-- 为订单库添加订单票档明细表（多票档订单）
+USE ticket_order_db;
+
+CREATE TABLE IF NOT EXISTS t_order_line (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT,
+    order_id BIGINT NOT NULL COMMENT '订单ID',
+    order_no VARCHAR(64) NOT NULL COMMENT '订单号',
+    ticket_id BIGINT NOT NULL COMMENT '票档ID（网咖场景下为套餐ID）',
+    quantity INT NOT NULL COMMENT '数量',
+    price DECIMAL(10,2) NOT NULL COMMENT '单价',
+    subtotal DECIMAL(10,2) NOT NULL COMMENT '小计',
+    create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    INDEX idx_order_line_order_no (order_no),
+    INDEX idx_order_line_ticket (ticket_id)
+) COMMENT '订单票档明细表';
+
+-- 订单类型字段，支付、取消等流程据此决定是否读取明细
+ALTER TABLE t_order ADD COLUMN order_type TINYINT NOT NULL DEFAULT 0 COMMENT '订单类型：0-单票档，1-多票档' AFTER order_no;
+
+SELECT '订单票档明细表创建完成！' AS message;
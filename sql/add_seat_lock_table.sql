@@ -0,0 +1,30 @@
+-- 为订单库添加座位锁定表（t_seat_lock）
+-- active为生成列：锁定中、已确认时为1，已释放时为NULL；唯一键 (seat_id, session_id, active)
+-- 保证同一场次同一座位最多一条有效锁定，多行INSERT要么全部成功要么因唯一键冲突全部失败
+USE ticket_order_db;
+
+CREATE TABLE IF NOT EXISTS t_seat_lock (
+    id BIGINT PRIMARY KEY AUTO_INCREMENT,
+    seat_id BIGINT NOT NULL COMMENT '座位ID',
+    session_id BIGINT NOT NULL COMMENT '场次ID',
+    venue_id BIGINT COMMENT '场馆ID',
+    user_id BIGINT NOT NULL COMMENT '锁定用户ID',
+    lock_type TINYINT NOT NULL DEFAULT 1 COMMENT '锁定类型：1-选座锁定，2-订单锁定',
+    lock_time DATETIME NOT NULL COMMENT '锁定时间',
+    expire_time DATETIME NOT NULL COMMENT '过期时间',
+    status TINYINT NOT NULL DEFAULT 1 COMMENT '状态：1-锁定中，2-已释放，3-已确认',
+    active TINYINT AS (IF(status IN (1, 3), 1, NULL)) STORED COMMENT '有效锁定标记',
+    create_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '创建时间',
+    update_time DATETIME NOT NULL DEFAULT CURRENT_TIMESTAMP ON UPDATE CURRENT_TIMESTAMP COMMENT '更新时间',
+    UNIQUE KEY uk_seat_lock_active (seat_id, session_id, active),
+    INDEX idx_seat_lock_user_session (user_id, session_id),
+    INDEX idx_seat_lock_status_expire (status, expire_time)
+) COMMENT '座位锁定表';
+
+-- 已有t_seat_lock表时，先释放重复的有效锁定，再执行：
+-- ALTER TABLE t_seat_lock
+--     ADD COLUMN active TINYINT AS (IF(status IN (1, 3), 1, NULL)) STORED COMMENT '有效锁定标记',
+--     ADD UNIQUE KEY uk_seat_lock_active (seat_id, session_id, active),
+--     ADD INDEX idx_seat_lock_status_expire (status, expire_time);
+
+SELECT '座位锁定表创建完成！' AS message;
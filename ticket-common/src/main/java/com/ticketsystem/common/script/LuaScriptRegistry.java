@@ -0,0 +1,216 @@
+package com.ticketsystem.common.script;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.Codec;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnClass;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StreamUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lua脚本注册中心
+ * 启动时通过SCRIPT LOAD预加载所有脚本，调用时使用EVALSHA只发送SHA1，
+ * Redis重启或SCRIPT FLUSH导致NOSCRIPT时自动重新加载并重试
+ */
+@Component
+@ConditionalOnClass(name = "org.redisson.api.RedissonClient")
+@RequiredArgsConstructor
+@Slf4j
+public class LuaScriptRegistry {
+
+    private final RedissonClient redissonClient;
+
+    // 已注册脚本：脚本名 -> 脚本信息
+    private final Map<String, RegisteredScript> scripts = new ConcurrentHashMap<>();
+
+    /**
+     * 注册内联脚本并立即加载到Redis
+     * @param name 脚本名（全局唯一）
+     * @param script 脚本内容
+     */
+    public void register(String name, String script) {
+        RegisteredScript previous = scripts.putIfAbsent(name, new RegisteredScript(name, script));
+        if (previous != null) {
+            if (!previous.script.equals(script)) {
+                throw new IllegalStateException("Lua脚本名重复注册且内容不一致: " + name);
+            }
+            return;
+        }
+        try {
+            load(scripts.get(name));
+        } catch (RuntimeException ignored) {
+            // 加载失败已记录日志，启动完成或首次调用时重试
+        }
+    }
+
+    /**
+     * 注册classpath下的脚本文件并立即加载到Redis
+     * @param name 脚本名（全局唯一）
+     * @param location classpath路径，如 lua/stock_prededuct.lua
+     */
+    public void registerResource(String name, String location) {
+        try (InputStream in = new ClassPathResource(location).getInputStream()) {
+            register(name, StreamUtils.copyToString(in, StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new IllegalStateException("读取Lua脚本失败: " + location, e);
+        }
+    }
+
+    /**
+     * 应用启动完成后补加载之前因Redis不可用而加载失败的脚本
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void preloadAll() {
+        int loaded = 0;
+        for (RegisteredScript registered : scripts.values()) {
+            if (registered.sha == null) {
+                try {
+                    load(registered);
+                } catch (RuntimeException ignored) {
+                    // 加载失败已记录日志，首次调用时重试
+                }
+            }
+            if (registered.sha != null) {
+                loaded++;
+            }
+        }
+        log.info("Lua脚本预加载完成 - 已注册: {}, 已加载: {}", scripts.size(), loaded);
+    }
+
+    /**
+     * 使用StringCodec按SHA执行脚本
+     */
+    public <R> R eval(String name, RScript.Mode mode, RScript.ReturnType returnType,
+                      List<Object> keys, Object... values) {
+        return eval(name, StringCodec.INSTANCE, mode, returnType, keys, values);
+    }
+
+    /**
+     * 按SHA执行脚本，NOSCRIPT时重新加载后重试一次
+     */
+    public <R> R eval(String name, Codec codec, RScript.Mode mode, RScript.ReturnType returnType,
+                      List<Object> keys, Object... values) {
+        RegisteredScript registered = scripts.get(name);
+        if (registered == null) {
+            throw new IllegalArgumentException("Lua脚本未注册: " + name);
+        }
+
+        long start = System.nanoTime();
+        boolean success = false;
+        try {
+            String sha = registered.sha != null ? registered.sha : load(registered);
+            R result;
+            try {
+                result = redissonClient.getScript(codec).evalSha(mode, sha, returnType, keys, values);
+            } catch (RuntimeException e) {
+                if (!isNoScript(e)) {
+                    throw e;
+                }
+                log.warn("Lua脚本缓存丢失，重新加载 - 脚本: {}", name);
+                registered.stats.reloads.incrementAndGet();
+                result = redissonClient.getScript(codec).evalSha(mode, load(registered), returnType, keys, values);
+            }
+            success = true;
+            return result;
+        } finally {
+            registered.stats.record(System.nanoTime() - start, success);
+        }
+    }
+
+    /**
+     * 获取各脚本调用统计
+     */
+    public Map<String, Map<String, Object>> getStats() {
+        Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+        scripts.values().stream()
+                .sorted((a, b) -> a.name.compareTo(b.name))
+                .forEach(registered -> {
+                    Map<String, Object> item = registered.stats.toMap();
+                    item.put("sha", registered.sha);
+                    result.put(registered.name, item);
+                });
+        return result;
+    }
+
+    private String load(RegisteredScript registered) {
+        try {
+            String sha = redissonClient.getScript(StringCodec.INSTANCE).scriptLoad(registered.script);
+            registered.sha = sha;
+            log.debug("Lua脚本加载成功 - 脚本: {}, SHA: {}", registered.name, sha);
+            return sha;
+        } catch (RuntimeException e) {
+            log.warn("Lua脚本加载失败，将在首次调用时重试 - 脚本: {}, 原因: {}", registered.name, e.getMessage());
+            throw e;
+        }
+    }
+
+    private boolean isNoScript(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t.getMessage() != null && t.getMessage().contains("NOSCRIPT")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 注册脚本信息
+     */
+    private static class RegisteredScript {
+        final String name;
+        final String script;
+        final ScriptStats stats = new ScriptStats();
+        volatile String sha;
+
+        RegisteredScript(String name, String script) {
+            this.name = name;
+            this.script = script;
+        }
+    }
+
+    /**
+     * 脚本调用统计
+     */
+    public static class ScriptStats {
+        private final AtomicLong calls = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong reloads = new AtomicLong();
+        private final AtomicLong totalNanos = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos, boolean success) {
+            calls.incrementAndGet();
+            if (!success) {
+                failures.incrementAndGet();
+            }
+            totalNanos.addAndGet(nanos);
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        Map<String, Object> toMap() {
+            long count = calls.get();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("calls", count);
+            map.put("failures", failures.get());
+            map.put("reloads", reloads.get());
+            map.put("avgMicros", count > 0 ? totalNanos.get() / count / 1000 : 0);
+            map.put("maxMicros", maxNanos.get() / 1000);
+            return map;
+        }
+    }
+}
@@ -1,13 +1,9 @@
 package com.ticketsystem.order.config;
 
+import com.ticketsystem.order.util.FeignHeaderContext;
 import feign.RequestInterceptor;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.web.context.request.RequestContextHolder;
-import org.springframework.web.context.request.ServletRequestAttributes;
-
-import javax.servlet.http.HttpServletRequest;
-import java.util.Enumeration;
 
 /**
  * Feign配置
@@ -21,22 +17,8 @@ public class FeignConfig {
      */
     @Bean
     public RequestInterceptor requestInterceptor() {
-        return requestTemplate -> {
-            ServletRequestAttributes attributes = (ServletRequestAttributes) RequestContextHolder.getRequestAttributes();
-            if (attributes != null) {
-                HttpServletRequest request = attributes.getRequest();
-                Enumeration<String> headerNames = request.getHeaderNames();
-                if (headerNames != null) {
-                    while (headerNames.hasMoreElements()) {
-                        String name = headerNames.nextElement();
-                        // 传递用户ID和认证信息
-                        if ("user-id".equalsIgnoreCase(name) || "authorization".equalsIgnoreCase(name)) {
-                            String value = request.getHeader(name);
-                            requestTemplate.header(name, value);
-                        }
-                    }
-                }
-            }
-        };
+        // 传递用户ID和认证信息，查询线程上使用提交时复制的请求头
+        return requestTemplate -> FeignHeaderContext.capture()
+                .forEach((name, value) -> requestTemplate.header(name, value));
     }
-}
\ No newline at end of file
+}
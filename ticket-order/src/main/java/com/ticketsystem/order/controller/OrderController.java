@@ -4,6 +4,7 @@ import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.ticketsystem.common.annotation.PerformanceMonitor;
 import com.ticketsystem.common.result.Result;
 import com.ticketsystem.common.exception.BusinessException;
+import com.ticketsystem.order.dto.CreateMultiOrderDTO;
 import com.ticketsystem.order.dto.CreateOrderDTO;
 import com.ticketsystem.order.service.OrderService;
 import com.ticketsystem.order.vo.OrderVO;
@@ -41,6 +42,22 @@ public class OrderController {
         return Result.success(orderNo);
     }
 
+    @PostMapping("/create/multi")
+    @Operation(summary = "创建多票档订单")
+    @PerformanceMonitor(value = "createMultiLineOrderController", slowQueryThreshold = 3000)
+    public Result<String> createMultiLineOrder(@RequestBody @Valid CreateMultiOrderDTO createOrderDTO,
+                                               HttpServletRequest request) {
+        // 从请求头获取用户ID，确保安全性
+        String userIdHeader = request.getHeader("X-User-Id");
+        if (userIdHeader == null) {
+            throw new BusinessException("用户未登录");
+        }
+        createOrderDTO.setUserId(Long.valueOf(userIdHeader));
+        
+        String orderNo = orderService.createMultiLineOrder(createOrderDTO);
+        return Result.success(orderNo);
+    }
+
     @PostMapping("/pay")
     @Operation(summary = "支付订单")
     @PerformanceMonitor(value = "payOrderController", slowQueryThreshold = 5000)
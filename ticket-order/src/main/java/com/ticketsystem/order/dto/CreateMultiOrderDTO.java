@@ -0,0 +1,67 @@
+package com.ticketsystem.order.dto;
+
+import lombok.Data;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Pattern;
+import java.util.List;
+
+/**
+ * 创建多票档订单DTO（如机位时段 + 增值套餐）
+ */
+@Data
+public class CreateMultiOrderDTO {
+
+    /**
+     * 用户ID
+     */
+    @NotNull(message = "用户ID不能为空")
+    private Long userId;
+
+    /**
+     * 演出ID（网咖场景下为机位类型ID）
+     */
+    @NotNull(message = "演出ID不能为空")
+    private Long showId;
+
+    /**
+     * 场次ID（网咖场景下为时段ID）
+     */
+    @NotNull(message = "场次ID不能为空")
+    private Long sessionId;
+
+    /**
+     * 票档行，同一票档多行时合并数量
+     */
+    @NotEmpty(message = "订单明细不能为空")
+    @Valid
+    private List<OrderLineDTO> items;
+
+    /**
+     * 预约时间（网咖场景）
+     */
+    private String bookingDate;
+
+    /**
+     * 预约结束时间（网咖场景）
+     */
+    private String bookingEndTime;
+
+    /**
+     * 预约时长（小时）（网咖场景）
+     */
+    private Integer bookingDuration;
+
+    /**
+     * 联系电话（网咖场景）
+     */
+    @Pattern(regexp = "^1[3-9]\\d{9}$", message = "请输入正确的手机号码")
+    private String contactPhone;
+
+    /**
+     * 备注信息
+     */
+    private String remark;
+}
@@ -0,0 +1,26 @@
+package com.ticketsystem.order.dto;
+
+import lombok.Data;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * 订单票档行DTO
+ */
+@Data
+public class OrderLineDTO {
+
+    /**
+     * 票档ID（网咖场景下为套餐ID）
+     */
+    @NotNull(message = "票档ID不能为空")
+    private Long ticketId;
+
+    /**
+     * 购买数量
+     */
+    @NotNull(message = "购买数量不能为空")
+    @Min(value = 1, message = "购买数量必须大于0")
+    private Integer quantity;
+}
@@ -61,6 +61,11 @@ public class Order {
      */
     private BigDecimal discountAmount;
 
+    /**
+     * 订单类型：0-单票档，1-多票档（票档明细见t_order_line）
+     */
+    private Integer orderType;
+
     /**
      * 订单状态：0-待支付，1-已支付，2-已取消，3-已完成，4-已退款
      */
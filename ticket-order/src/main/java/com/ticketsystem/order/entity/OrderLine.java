@@ -0,0 +1,70 @@
+package com.ticketsystem.order.entity;
+
+import com.baomidou.mybatisplus.annotation.*;
+import lombok.Data;
+import lombok.EqualsAndHashCode;
+import lombok.experimental.Accessors;
+
+import java.io.Serializable;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+/**
+ * 订单票档明细实体类（多票档订单的每一行）
+ */
+@Data
+@EqualsAndHashCode(callSuper = false)
+@Accessors(chain = true)
+@TableName("t_order_line")
+public class OrderLine implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * 主键ID
+     */
+    @TableId(value = "id", type = IdType.AUTO)
+    private Long id;
+
+    /**
+     * 订单ID
+     */
+    @TableField("order_id")
+    private Long orderId;
+
+    /**
+     * 订单号
+     */
+    @TableField("order_no")
+    private String orderNo;
+
+    /**
+     * 票档ID（网咖场景下为套餐ID）
+     */
+    @TableField("ticket_id")
+    private Long ticketId;
+
+    /**
+     * 数量
+     */
+    @TableField("quantity")
+    private Integer quantity;
+
+    /**
+     * 单价
+     */
+    @TableField("price")
+    private BigDecimal price;
+
+    /**
+     * 小计
+     */
+    @TableField("subtotal")
+    private BigDecimal subtotal;
+
+    /**
+     * 创建时间
+     */
+    @TableField(value = "create_time", fill = FieldFill.INSERT)
+    private LocalDateTime createTime;
+}
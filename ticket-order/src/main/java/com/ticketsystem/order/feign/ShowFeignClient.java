@@ -1,15 +1,21 @@
 package com.ticketsystem.order.feign;
 
 import com.ticketsystem.common.result.Result;
+import com.ticketsystem.order.feign.dto.MultiOrderReserveRequestDTO;
+import com.ticketsystem.order.feign.dto.OrderReserveRequestDTO;
+import com.ticketsystem.order.feign.dto.OrderReserveResultDTO;
 import com.ticketsystem.order.feign.dto.ShowInfoDTO;
+import com.ticketsystem.order.feign.dto.StockReserveItemDTO;
 import org.springframework.cloud.openfeign.FeignClient;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestParam;
 
 import java.math.BigDecimal;
+import java.util.List;
 
 /**
  * 演出服务Feign客户端
@@ -51,6 +57,31 @@ public interface ShowFeignClient {
     Result<Integer> predeductStockFromRedis(@RequestParam("ticketId") Long ticketId, 
                                            @RequestParam("quantity") Integer quantity);
 
+    /**
+     * Redis多票档预减库存（全部满足才扣减）
+     */
+    @PostMapping("/api/ticket/redis/prededuct/batch")
+    Result<List<StockReserveItemDTO>> predeductStocksFromRedis(@RequestBody List<StockReserveItemDTO> items,
+                                                              @RequestParam("orderNo") String orderNo);
+
+    /**
+     * Redis租借库存（订单节点本地配额）
+     */
+    @PostMapping("/api/ticket/redis/lease")
+    Result<Integer> leaseStockFromRedis(@RequestParam("ticketId") Long ticketId, 
+                                       @RequestParam("quantity") Integer quantity,
+                                       @RequestParam("owner") String owner,
+                                       @RequestParam("settled") Integer settled);
+
+    /**
+     * Redis归还租借库存，返回实际归还数量
+     */
+    @PostMapping("/api/ticket/redis/lease/return")
+    Result<Integer> returnLeasedStockToRedis(@RequestParam("ticketId") Long ticketId,
+                                            @RequestParam("quantity") Integer quantity,
+                                            @RequestParam("owner") String owner,
+                                            @RequestParam("settled") Integer settled);
+
     /**
      * Redis回滚库存
      */
@@ -58,6 +89,13 @@ public interface ShowFeignClient {
     Result<Boolean> rollbackStockToRedis(@RequestParam("ticketId") Long ticketId, 
                                         @RequestParam("quantity") Integer quantity);
 
+    /**
+     * Redis多票档回滚库存
+     */
+    @PostMapping("/api/ticket/redis/rollback/batch")
+    Result<List<StockReserveItemDTO>> rollbackStocksToRedis(@RequestBody List<StockReserveItemDTO> items,
+                                                           @RequestParam("orderNo") String orderNo);
+
     /**
      * 同步库存到Redis
      */
@@ -71,6 +109,13 @@ public interface ShowFeignClient {
     Result<Boolean> confirmStockFromDatabase(@RequestParam("ticketId") Long ticketId, 
                                             @RequestParam("quantity") Integer quantity);
 
+    /**
+     * 撤销数据库库存确认（已售转回锁定），用于支付失败时补偿已确认的票档
+     */
+    @PutMapping("/api/ticket/unconfirm")
+    Result<Boolean> unconfirmStock(@RequestParam("ticketId") Long ticketId,
+                                   @RequestParam("quantity") Integer quantity);
+
     /**
      * 获取演出信息
      */
@@ -105,4 +150,55 @@ public interface ShowFeignClient {
     Result<Boolean> releaseSeat(@RequestParam("seatId") Long seatId,
                                @RequestParam("userId") Long userId,
                                @RequestParam("sessionId") Long sessionId);
-}
\ No newline at end of file
+
+    /**
+     * 锁定座位时段（网咖按时段预约）
+     */
+    @PostMapping("/api/seat/slots/lock")
+    Result<Boolean> lockSeatSlots(@RequestParam("seatId") Long seatId,
+                                  @RequestParam("userId") Long userId,
+                                  @RequestParam("startTime") String startTime,
+                                  @RequestParam("endTime") String endTime);
+
+    /**
+     * 确认座位时段
+     */
+    @PostMapping("/api/seat/slots/confirm")
+    Result<Boolean> confirmSeatSlots(@RequestParam("seatId") Long seatId,
+                                     @RequestParam("userId") Long userId,
+                                     @RequestParam("startTime") String startTime,
+                                     @RequestParam("endTime") String endTime);
+
+    /**
+     * 释放座位时段
+     */
+    @PostMapping("/api/seat/slots/release")
+    Result<Boolean> releaseSeatSlots(@RequestParam("seatId") Long seatId,
+                                     @RequestParam("userId") Long userId,
+                                     @RequestParam("startTime") String startTime,
+                                     @RequestParam("endTime") String endTime);
+
+    /**
+     * 下单预留：一次调用完成票档校验、库存预减与锁定、座位锁定，并返回票价、演出和座位信息
+     */
+    @PostMapping("/api/ticket/reserve")
+    Result<OrderReserveResultDTO> reserveForOrder(@RequestBody OrderReserveRequestDTO request);
+
+    /**
+     * 释放下单预留
+     */
+    @PostMapping("/api/ticket/reserve/release")
+    Result<Boolean> releaseReservation(@RequestBody OrderReserveRequestDTO request);
+
+    /**
+     * 多票档下单预留：一次调用完成各票档票价查询、库存预减与锁定，并返回演出信息
+     */
+    @PostMapping("/api/ticket/reserve/batch")
+    Result<OrderReserveResultDTO> reserveItemsForOrder(@RequestBody MultiOrderReserveRequestDTO request);
+
+    /**
+     * 释放多票档下单预留
+     */
+    @PostMapping("/api/ticket/reserve/batch/release")
+    Result<Boolean> releaseItemsReservation(@RequestBody MultiOrderReserveRequestDTO request);
+}
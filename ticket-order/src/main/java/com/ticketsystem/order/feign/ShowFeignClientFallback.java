@@ -1,11 +1,16 @@
 package com.ticketsystem.order.feign;
 
 import com.ticketsystem.common.result.Result;
+import com.ticketsystem.order.feign.dto.MultiOrderReserveRequestDTO;
+import com.ticketsystem.order.feign.dto.OrderReserveRequestDTO;
+import com.ticketsystem.order.feign.dto.OrderReserveResultDTO;
 import com.ticketsystem.order.feign.dto.ShowInfoDTO;
+import com.ticketsystem.order.feign.dto.StockReserveItemDTO;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
 import java.math.BigDecimal;
+import java.util.List;
 
 /**
  * 演出服务Feign客户端降级处理
@@ -44,12 +49,36 @@ public class ShowFeignClientFallback implements ShowFeignClient {
         return Result.fail("Redis预减库存失败，请稍后再试");
     }
 
+    @Override
+    public Result<List<StockReserveItemDTO>> predeductStocksFromRedis(List<StockReserveItemDTO> items, String orderNo) {
+        log.error("Redis多票档预减库存失败，进入降级处理，orderNo: {}, items: {}", orderNo, items);
+        return Result.fail("Redis预减库存失败，请稍后再试");
+    }
+
+    @Override
+    public Result<Integer> leaseStockFromRedis(Long ticketId, Integer quantity, String owner, Integer settled) {
+        log.error("Redis租借库存失败，进入降级处理，ticketId: {}, quantity: {}", ticketId, quantity);
+        return Result.fail("Redis租借库存失败，请稍后再试");
+    }
+
+    @Override
+    public Result<Integer> returnLeasedStockToRedis(Long ticketId, Integer quantity, String owner, Integer settled) {
+        log.error("Redis归还租借库存失败，进入降级处理，ticketId: {}, quantity: {}", ticketId, quantity);
+        return Result.fail("Redis归还租借库存失败，请稍后再试");
+    }
+
     @Override
     public Result<Boolean> rollbackStockToRedis(Long ticketId, Integer quantity) {
         log.error("Redis回滚库存失败，进入降级处理，ticketId: {}, quantity: {}", ticketId, quantity);
         return Result.fail("Redis回滚库存失败，请稍后再试");
     }
 
+    @Override
+    public Result<List<StockReserveItemDTO>> rollbackStocksToRedis(List<StockReserveItemDTO> items, String orderNo) {
+        log.error("Redis多票档回滚库存失败，进入降级处理，orderNo: {}, items: {}", orderNo, items);
+        return Result.fail("Redis回滚库存失败，请稍后再试");
+    }
+
     @Override
     public Result<Boolean> syncStockToRedis(Long ticketId) {
         log.error("同步库存到Redis失败，进入降级处理，ticketId: {}", ticketId);
@@ -62,6 +91,12 @@ public class ShowFeignClientFallback implements ShowFeignClient {
         return Result.fail("数据库库存确认失败，请稍后再试");
     }
 
+    @Override
+    public Result<Boolean> unconfirmStock(Long ticketId, Integer quantity) {
+        log.error("撤销库存确认失败，进入降级处理，ticketId: {}, quantity: {}", ticketId, quantity);
+        return Result.fail("撤销库存确认失败，请稍后再试");
+    }
+
     @Override
     public Result<ShowInfoDTO> getShowInfo(Long showId, Long sessionId) {
         log.error("获取演出信息失败，进入降级处理，showId: {}, sessionId: {}", showId, sessionId);
@@ -91,4 +126,48 @@ public class ShowFeignClientFallback implements ShowFeignClient {
         log.error("获取演出详细信息失败，进入降级处理，showId: {}", showId);
         return Result.fail("获取演出详细信息失败，请稍后再试");
     }
-}
\ No newline at end of file
+
+    @Override
+    public Result<Boolean> lockSeatSlots(Long seatId, Long userId, String startTime, String endTime) {
+        log.error("锁定座位时段失败，进入降级处理，seatId: {}, userId: {}, 时段: {} ~ {}", seatId, userId, startTime, endTime);
+        return Result.fail("锁定座位时段失败，请稍后再试");
+    }
+
+    @Override
+    public Result<Boolean> confirmSeatSlots(Long seatId, Long userId, String startTime, String endTime) {
+        log.error("确认座位时段失败，进入降级处理，seatId: {}, userId: {}, 时段: {} ~ {}", seatId, userId, startTime, endTime);
+        return Result.fail("确认座位时段失败，请稍后再试");
+    }
+
+    @Override
+    public Result<Boolean> releaseSeatSlots(Long seatId, Long userId, String startTime, String endTime) {
+        log.error("释放座位时段失败，进入降级处理，seatId: {}, userId: {}, 时段: {} ~ {}", seatId, userId, startTime, endTime);
+        return Result.fail("释放座位时段失败，请稍后再试");
+    }
+
+    @Override
+    public Result<OrderReserveResultDTO> reserveForOrder(OrderReserveRequestDTO request) {
+        log.error("下单预留失败，进入降级处理，orderNo: {}, ticketId: {}, quantity: {}",
+                request.getOrderNo(), request.getTicketId(), request.getQuantity());
+        return Result.fail("下单预留失败，请稍后再试");
+    }
+
+    @Override
+    public Result<Boolean> releaseReservation(OrderReserveRequestDTO request) {
+        log.error("释放下单预留失败，进入降级处理，orderNo: {}, ticketId: {}, quantity: {}",
+                request.getOrderNo(), request.getTicketId(), request.getQuantity());
+        return Result.fail("释放下单预留失败，请稍后再试");
+    }
+
+    @Override
+    public Result<OrderReserveResultDTO> reserveItemsForOrder(MultiOrderReserveRequestDTO request) {
+        log.error("多票档下单预留失败，进入降级处理，orderNo: {}, items: {}", request.getOrderNo(), request.getItems());
+        return Result.fail("下单预留失败，请稍后再试");
+    }
+
+    @Override
+    public Result<Boolean> releaseItemsReservation(MultiOrderReserveRequestDTO request) {
+        log.error("释放多票档下单预留失败，进入降级处理，orderNo: {}, items: {}", request.getOrderNo(), request.getItems());
+        return Result.fail("释放下单预留失败，请稍后再试");
+    }
+}
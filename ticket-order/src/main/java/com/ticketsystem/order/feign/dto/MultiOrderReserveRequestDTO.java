@@ -0,0 +1,25 @@
+package com.ticketsystem.order.feign.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * 多票档下单预留请求DTO，预留与释放使用同一结构
+ */
+@Data
+public class MultiOrderReserveRequestDTO {
+
+    private String orderNo;
+
+    private Long userId;
+
+    private Long showId;
+
+    private Long sessionId;
+
+    /**
+     * 各票档及数量，同一票档只出现一次
+     */
+    private List<StockReserveItemDTO> items;
+}
@@ -0,0 +1,34 @@
+package com.ticketsystem.order.feign.dto;
+
+import lombok.Data;
+
+/**
+ * 下单预留请求DTO，预留与释放使用同一结构
+ */
+@Data
+public class OrderReserveRequestDTO {
+
+    private String orderNo;
+
+    private Long userId;
+
+    private Long ticketId;
+
+    private Integer quantity;
+
+    private Long showId;
+
+    private Long sessionId;
+
+    /**
+     * 座位ID，为空时不锁定座位
+     */
+    private Long seatId;
+
+    /**
+     * 预约开始时间，与结束时间同时传入时只锁定该时段
+     */
+    private String startTime;
+
+    private String endTime;
+}
@@ -0,0 +1,28 @@
+package com.ticketsystem.order.feign.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 多票档库存预留明细DTO
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StockReserveItemDTO {
+
+    private Long ticketId;
+
+    private Integer quantity;
+
+    /**
+     * 处理结果：1-成功，0-库存不足，-1-库存不存在
+     */
+    private Integer result;
+
+    public StockReserveItemDTO(Long ticketId, Integer quantity) {
+        this.ticketId = ticketId;
+        this.quantity = quantity;
+    }
+}
@@ -0,0 +1,34 @@
+package com.ticketsystem.order.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.ticketsystem.order.entity.OrderLine;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+
+import java.util.List;
+
+/**
+ * 订单票档明细Mapper接口
+ */
+@Mapper
+public interface OrderLineMapper extends BaseMapper<OrderLine> {
+
+    /**
+     * 批量插入订单明细
+     */
+    @Insert("<script>" +
+            "INSERT INTO t_order_line (order_id, order_no, ticket_id, quantity, price, subtotal) VALUES " +
+            "<foreach collection='lines' item='line' separator=','>" +
+            "(#{line.orderId}, #{line.orderNo}, #{line.ticketId}, #{line.quantity}, #{line.price}, #{line.subtotal})" +
+            "</foreach>" +
+            "</script>")
+    int insertBatch(@Param("lines") List<OrderLine> lines);
+
+    /**
+     * 根据订单号查询明细
+     */
+    @Select("SELECT * FROM t_order_line WHERE order_no = #{orderNo} ORDER BY id")
+    List<OrderLine> selectByOrderNo(@Param("orderNo") String orderNo);
+}
@@ -2,11 +2,73 @@ package com.ticketsystem.order.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.ticketsystem.order.entity.SeatLock;
+import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.Select;
+import org.apache.ibatis.annotations.Update;
+
+import java.util.List;
 
 /**
  * 座位锁定Mapper接口
  */
 @Mapper
 public interface SeatLockMapper extends BaseMapper<SeatLock> {
-}
\ No newline at end of file
+
+    /**
+     * 批量插入座位锁定，任一座位已有有效锁定时唯一键冲突，整条语句不插入任何行
+     */
+    @Insert("<script>" +
+            "INSERT INTO t_seat_lock (seat_id, session_id, venue_id, user_id, lock_type, lock_time, expire_time, " +
+            "status, create_time, update_time) VALUES " +
+            "<foreach collection='locks' item='lock' separator=','>" +
+            "(#{lock.seatId}, #{lock.sessionId}, #{lock.venueId}, #{lock.userId}, #{lock.lockType}, " +
+            "#{lock.lockTime}, #{lock.expireTime}, #{lock.status}, NOW(), NOW())" +
+            "</foreach>" +
+            "</script>")
+    int insertBatch(@Param("locks") List<SeatLock> locks);
+
+    /**
+     * 释放指定座位已过期的锁定，腾出唯一键
+     */
+    @Update("<script>" +
+            "UPDATE t_seat_lock SET status = 2, update_time = NOW() " +
+            "WHERE session_id = #{sessionId} AND status = 1 AND expire_time &lt; NOW() AND seat_id IN " +
+            "<foreach collection='seatIds' item='seatId' open='(' separator=',' close=')'>" +
+            "#{seatId}" +
+            "</foreach>" +
+            "</script>")
+    int releaseExpiredBySeatIds(@Param("seatIds") List<Long> seatIds, @Param("sessionId") Long sessionId);
+
+    /**
+     * 查询已有有效锁定（锁定中或已确认）的座位
+     */
+    @Select("<script>" +
+            "SELECT seat_id FROM t_seat_lock WHERE session_id = #{sessionId} AND active = 1 AND seat_id IN " +
+            "<foreach collection='seatIds' item='seatId' open='(' separator=',' close=')'>" +
+            "#{seatId}" +
+            "</foreach>" +
+            "</script>")
+    List<Long> selectActiveSeatIds(@Param("seatIds") List<Long> seatIds, @Param("sessionId") Long sessionId);
+
+    /**
+     * 批量释放用户持有的座位锁定
+     */
+    @Update("<script>" +
+            "UPDATE t_seat_lock SET status = 2, update_time = NOW() " +
+            "WHERE session_id = #{sessionId} AND user_id = #{userId} AND status = 1 AND seat_id IN " +
+            "<foreach collection='seatIds' item='seatId' open='(' separator=',' close=')'>" +
+            "#{seatId}" +
+            "</foreach>" +
+            "</script>")
+    int releaseBySeatIds(@Param("seatIds") List<Long> seatIds, @Param("sessionId") Long sessionId,
+                         @Param("userId") Long userId);
+
+    /**
+     * 释放一批已过期的锁定，每次最多limit行，调用方循环直到不足一批
+     */
+    @Update("UPDATE t_seat_lock SET status = 2, update_time = NOW() " +
+            "WHERE status = 1 AND expire_time < NOW() LIMIT #{limit}")
+    int releaseExpiredChunk(@Param("limit") int limit);
+}
@@ -0,0 +1,274 @@
+package com.ticketsystem.order.service;
+
+import com.ticketsystem.common.script.LuaScriptRegistry;
+import com.ticketsystem.order.util.HierarchicalTimingWheel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RScoredSortedSet;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 订单超时取消服务
+ * 待支付订单按到期时间写入Redis有序集合（order:expiry）作为持久化队列，
+ * 同时放入本节点内存中的分层时间轮；时间轮到点后批量认领这些订单并取消、回滚库存，
+ * 不扫描订单表。
+ *
+ * 认领通过Lua脚本把分数改为租约到期时间，多个节点只有一个能认领成功，
+ * 处理完成后从队列删除；处理失败或节点宕机时租约到期后被重新认领。
+ * 节点重启后内存时间轮丢失，其他节点（或重启后的本节点）通过周期性的补偿扫描
+ * 按到期时间从队列认领超过宽限期仍未处理的订单，因此订单会分散到各节点处理。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class OrderExpiryService {
+
+    private static final String EXPIRY_KEY = "order:expiry";
+
+    private static final String SCRIPT_CLAIM = "order.expiry.claim";
+    private static final String SCRIPT_CLAIM_DUE = "order.expiry.claim.due";
+
+    private static final int WHEEL_LEVELS = 3;
+
+    private final RedissonClient redissonClient;
+    private final LuaScriptRegistry luaScriptRegistry;
+    private final MeterRegistry meterRegistry;
+
+    // 订单服务依赖本服务登记到期时间，延迟注入避免循环依赖
+    @Lazy
+    @Autowired
+    private OrderService orderService;
+
+    @Value("${app.order.expiry.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.order.expiry.tick-ms:1000}")
+    private long tickMs;
+
+    @Value("${app.order.expiry.wheel-size:60}")
+    private int wheelSize;
+
+    @Value("${app.order.expiry.batch-size:100}")
+    private int batchSize;
+
+    @Value("${app.order.expiry.lease-seconds:60}")
+    private int leaseSeconds;
+
+    @Value("${app.order.expiry.rescue-grace-seconds:10}")
+    private int rescueGraceSeconds;
+
+    @Value("${app.order.expiry.worker-threads:4}")
+    private int workerThreads;
+
+    private HierarchicalTimingWheel<String> timingWheel;
+
+    private ScheduledExecutorService ticker;
+
+    private ExecutorService workers;
+
+    private final AtomicInteger threadCounter = new AtomicInteger();
+
+    private Counter cancelledCounter;
+    private Counter skippedCounter;
+    private Counter failedCounter;
+
+    @PostConstruct
+    public void init() {
+        luaScriptRegistry.registerResource(SCRIPT_CLAIM, "lua/order_expiry_claim.lua");
+        luaScriptRegistry.registerResource(SCRIPT_CLAIM_DUE, "lua/order_expiry_claim_due.lua");
+
+        timingWheel = new HierarchicalTimingWheel<>(tickMs, wheelSize, WHEEL_LEVELS, System.currentTimeMillis());
+
+        cancelledCounter = Counter.builder("order_expiry_cancelled_total")
+                .description("超时自动取消的订单数")
+                .register(meterRegistry);
+        skippedCounter = Counter.builder("order_expiry_skipped_total")
+                .description("到期时已不是待支付状态的订单数")
+                .register(meterRegistry);
+        failedCounter = Counter.builder("order_expiry_failed_total")
+                .description("超时取消失败等待重试的订单数")
+                .register(meterRegistry);
+        Gauge.builder("order_expiry_wheel_size", timingWheel, HierarchicalTimingWheel::size)
+                .description("本节点时间轮中等待到期的订单数")
+                .register(meterRegistry);
+
+        if (!enabled) {
+            log.info("订单超时取消未启用");
+            return;
+        }
+        workers = Executors.newFixedThreadPool(workerThreads, r -> {
+            Thread thread = new Thread(r, "order-expiry-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "order-expiry-wheel");
+            thread.setDaemon(true);
+            return thread;
+        });
+        ticker.scheduleAtFixedRate(this::tick, tickMs, tickMs, TimeUnit.MILLISECONDS);
+        log.info("订单超时取消已启动 - 刻度: {}ms, 每层格数: {}, 时间轮跨度: {}ms",
+                tickMs, wheelSize, timingWheel.getSpanMs());
+    }
+
+    /**
+     * 登记待支付订单的到期时间，订单保存成功后调用
+     */
+    public void schedule(String orderNo, LocalDateTime expireTime) {
+        if (!enabled || expireTime == null) {
+            return;
+        }
+        long expireAt = expireTime.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        try {
+            getQueue().add(expireAt, orderNo);
+        } catch (Exception e) {
+            // 登记失败不影响下单，仅本节点时间轮可触发
+            log.error("登记订单到期时间失败，订单号: {}", orderNo, e);
+        }
+        // 超出时间轮跨度的订单由补偿扫描处理
+        timingWheel.add(orderNo, expireAt);
+    }
+
+    /**
+     * 订单已支付或已取消时移出过期队列；时间轮中的残留项到点后认领失败，自然丢弃
+     */
+    public void unschedule(String orderNo) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            getQueue().remove(orderNo);
+        } catch (Exception e) {
+            // 到期后认领时订单已非待支付状态，会被直接移出
+            log.warn("移出订单过期队列失败，订单号: {}", orderNo, e);
+        }
+    }
+
+    /**
+     * 时间轮推进，到期订单按批认领后交给工作线程处理
+     */
+    private void tick() {
+        try {
+            List<String> expired = timingWheel.advance(System.currentTimeMillis());
+            for (int from = 0; from < expired.size(); from += batchSize) {
+                List<String> batch = new ArrayList<>(expired.subList(from, Math.min(from + batchSize, expired.size())));
+                workers.execute(() -> process(claim(batch)));
+            }
+        } catch (Exception e) {
+            log.error("订单时间轮推进异常", e);
+        }
+    }
+
+    /**
+     * 补偿扫描：认领超过宽限期仍在队列中的订单
+     * 覆盖节点重启丢失的时间轮、超出时间轮跨度的订单以及租约到期的失败重试
+     */
+    @Scheduled(fixedDelayString = "${app.order.expiry.rescue-interval:5000}")
+    public void rescueOverdueOrders() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            List<String> claimed;
+            do {
+                claimed = claimDue(System.currentTimeMillis() - rescueGraceSeconds * 1000L);
+                if (!claimed.isEmpty()) {
+                    log.info("补偿认领超时订单 {} 个", claimed.size());
+                    process(claimed);
+                }
+            } while (claimed.size() >= batchSize);
+        } catch (Exception e) {
+            log.error("订单超时补偿扫描异常", e);
+        }
+    }
+
+    private List<String> claim(List<String> orderNos) {
+        long now = System.currentTimeMillis();
+        Object[] args = new Object[orderNos.size() + 2];
+        args[0] = String.valueOf(now);
+        args[1] = String.valueOf(now + leaseSeconds * 1000L);
+        for (int i = 0; i < orderNos.size(); i++) {
+            args[i + 2] = orderNos.get(i);
+        }
+        List<String> claimed = luaScriptRegistry.eval(SCRIPT_CLAIM, RScript.Mode.READ_WRITE,
+                RScript.ReturnType.MULTI, Collections.singletonList(EXPIRY_KEY), args);
+        return claimed != null ? claimed : Collections.emptyList();
+    }
+
+    private List<String> claimDue(long maxExpireAt) {
+        long now = System.currentTimeMillis();
+        List<String> claimed = luaScriptRegistry.eval(SCRIPT_CLAIM_DUE, RScript.Mode.READ_WRITE,
+                RScript.ReturnType.MULTI, Collections.singletonList(EXPIRY_KEY),
+                String.valueOf(maxExpireAt), String.valueOf(now + leaseSeconds * 1000L), String.valueOf(batchSize));
+        return claimed != null ? claimed : Collections.emptyList();
+    }
+
+    /**
+     * 取消已认领的订单并回滚库存，成功或无需处理的订单批量移出队列，失败的等租约到期后重试
+     */
+    private void process(List<String> orderNos) {
+        if (orderNos.isEmpty()) {
+            return;
+        }
+        List<String> done = new ArrayList<>(orderNos.size());
+        for (String orderNo : orderNos) {
+            try {
+                if (orderService.cancelOrder(orderNo)) {
+                    cancelledCounter.increment();
+                    log.info("订单超时自动取消，订单号: {}", orderNo);
+                } else {
+                    skippedCounter.increment();
+                }
+                done.add(orderNo);
+            } catch (Exception e) {
+                failedCounter.increment();
+                log.error("订单超时取消失败，{}秒后重试，订单号: {}", leaseSeconds, orderNo, e);
+            }
+        }
+        if (!done.isEmpty()) {
+            try {
+                getQueue().removeAll(done);
+            } catch (Exception e) {
+                // 租约到期后重新认领，订单已非待支付状态时直接移出
+                log.warn("移出已处理的过期订单失败，数量: {}", done.size(), e);
+            }
+        }
+    }
+
+    private RScoredSortedSet<String> getQueue() {
+        return redissonClient.getScoredSortedSet(EXPIRY_KEY, StringCodec.INSTANCE);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (ticker != null) {
+            ticker.shutdownNow();
+        }
+        if (workers != null) {
+            workers.shutdown();
+        }
+    }
+}
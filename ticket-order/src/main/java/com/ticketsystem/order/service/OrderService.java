@@ -1,6 +1,7 @@
 package com.ticketsystem.order.service;
 
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
+import com.ticketsystem.order.dto.CreateMultiOrderDTO;
 import com.ticketsystem.order.dto.CreateOrderDTO;
 import com.ticketsystem.order.vo.OrderVO;
 
@@ -13,6 +14,13 @@ public interface OrderService {
      */
     String createOrder(CreateOrderDTO createOrderDTO);
 
+    /**
+     * 创建多票档订单，所有票档的Redis库存在一次调用中原子预减
+     * @param createOrderDTO 创建多票档订单DTO
+     * @return 订单号
+     */
+    String createMultiLineOrder(CreateMultiOrderDTO createOrderDTO);
+
     /**
      * 支付订单
      * @param orderNo 订单号
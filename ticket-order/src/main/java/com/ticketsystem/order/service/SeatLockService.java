@@ -40,14 +40,14 @@ public interface SeatLockService {
     boolean confirmSeatLock(Long seatId, Long sessionId, Long userId);
 
     /**
-     * 批量锁定座位
+     * 批量锁定座位，全部成功或全部不锁定
      * @param seatIds 座位ID列表
      * @param sessionId 场次ID
      * @param venueId 场馆ID
      * @param userId 用户ID
      * @param lockType 锁定类型
      * @param expireMinutes 锁定时长（分钟）
-     * @return 锁定成功的座位ID列表
+     * @return 锁定成功的座位ID列表，任一座位已被锁定时为空列表
      */
     List<Long> batchLockSeats(List<Long> seatIds, Long sessionId, Long venueId, Long userId, Integer lockType, Integer expireMinutes);
 
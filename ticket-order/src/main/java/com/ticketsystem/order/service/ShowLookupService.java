@@ -0,0 +1,194 @@
+package com.ticketsystem.order.service;
+
+import com.ticketsystem.common.result.Result;
+import com.ticketsystem.order.feign.ShowFeignClient;
+import com.ticketsystem.order.feign.dto.ShowInfoDTO;
+import com.ticketsystem.order.util.FeignHeaderContext;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * 演出服务只读查询
+ * 下单时票价、演出信息、座位信息互不依赖，也不依赖库存结果，在独立的有界线程池上并发发出，
+ * 调用方在需要时按同一截止时间取结果；库存和座位的写操作仍在调用线程上按顺序执行。
+ * 线程池满时在调用线程上直接执行，退化为顺序调用而不是失败。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ShowLookupService {
+
+    private final ShowFeignClient showFeignClient;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${app.order.lookup.threads:16}")
+    private int threads;
+
+    @Value("${app.order.lookup.queue-size:500}")
+    private int queueSize;
+
+    // 同一次下单的全部查询共用的截止时间
+    @Value("${app.order.lookup.timeout-ms:3000}")
+    private long timeoutMs;
+
+    private final AtomicInteger threadCounter = new AtomicInteger();
+
+    private ThreadPoolExecutor executor;
+
+    private Counter timeoutCounter;
+
+    @PostConstruct
+    public void init() {
+        executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize), r -> {
+                    Thread thread = new Thread(r, "order-lookup-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        timeoutCounter = Counter.builder("order_lookup_timeout_total")
+                .description("下单时演出服务查询超过截止时间的次数")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 并发发出下单所需的只读查询，seatId为空时不查询座位信息
+     */
+    public OrderLookups start(Long ticketId, Long showId, Long sessionId, Long seatId) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        CompletableFuture<BigDecimal> price = submit(() -> fetchTicketPrice(ticketId));
+        CompletableFuture<Result<ShowInfoDTO>> showInfo = submit(() -> showFeignClient.getShowInfo(showId, sessionId));
+        CompletableFuture<Result<String>> seatInfo = seatId != null
+                ? submit(() -> showFeignClient.getSeatInfo(seatId))
+                : CompletableFuture.completedFuture(null);
+        return new OrderLookups(price, showInfo, seatInfo, deadline);
+    }
+
+    /**
+     * 票价获取：带一次重试，并打印 show 侧返回详情（用于快速联调定位）
+     */
+    public BigDecimal fetchTicketPrice(Long ticketId) {
+        for (int i = 0; i < 2; i++) {
+            Result<BigDecimal> priceResult = showFeignClient.getTicketPrice(ticketId);
+            if (priceResult != null && Integer.valueOf(200).equals(priceResult.getCode()) && priceResult.getData() != null) {
+                return priceResult.getData();
+            }
+            log.warn("票价获取失败(第{}次)，ticketId={}, code={}, message={}, data={}",
+                    i + 1,
+                    ticketId,
+                    priceResult != null ? priceResult.getCode() : null,
+                    priceResult != null ? priceResult.getMessage() : null,
+                    priceResult != null ? priceResult.getData() : null);
+            try {
+                Thread.sleep(50L * (i + 1));
+            } catch (InterruptedException ignored) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 在查询线程上执行，请求头在调用线程上复制后交给查询线程，Feign拦截器据此传递用户请求头，
+     * 查询线程不持有请求对象，调用方提前返回后仍在执行的查询也不会读取已回收的请求
+     */
+    private <T> CompletableFuture<T> submit(Supplier<T> call) {
+        Map<String, String> headers = FeignHeaderContext.capture();
+        return CompletableFuture.supplyAsync(() -> {
+            Map<String, String> previous = FeignHeaderContext.get();
+            FeignHeaderContext.set(headers);
+            try {
+                return call.get();
+            } finally {
+                FeignHeaderContext.set(previous);
+            }
+        }, executor);
+    }
+
+    /**
+     * 一次下单的并发查询结果
+     */
+    public class OrderLookups {
+
+        private final CompletableFuture<BigDecimal> price;
+        private final CompletableFuture<Result<ShowInfoDTO>> showInfo;
+        private final CompletableFuture<Result<String>> seatInfo;
+        private final long deadline;
+
+        OrderLookups(CompletableFuture<BigDecimal> price, CompletableFuture<Result<ShowInfoDTO>> showInfo,
+                     CompletableFuture<Result<String>> seatInfo, long deadline) {
+            this.price = price;
+            this.showInfo = showInfo;
+            this.seatInfo = seatInfo;
+            this.deadline = deadline;
+        }
+
+        /**
+         * 票价，获取失败或超时返回null
+         */
+        public BigDecimal price() {
+            return join(price, "票价", null);
+        }
+
+        /**
+         * 演出信息，调用异常或超时返回失败结果
+         */
+        public Result<ShowInfoDTO> showInfo() {
+            return join(showInfo, "演出信息", Result.fail("获取演出信息超时或异常"));
+        }
+
+        /**
+         * 座位信息，调用异常或超时返回null
+         */
+        public Result<String> seatInfo() {
+            return join(seatInfo, "座位信息", null);
+        }
+
+        /**
+         * 取消尚未完成的查询，下单在取完结果前失败时调用，排队中的查询不再发出
+         */
+        public void cancel() {
+            price.cancel(false);
+            showInfo.cancel(false);
+            seatInfo.cancel(false);
+        }
+
+        private <T> T join(CompletableFuture<T> future, String name, T fallback) {
+            try {
+                long remaining = deadline - System.nanoTime();
+                return future.get(Math.max(remaining, 0L), TimeUnit.NANOSECONDS);
+            } catch (TimeoutException e) {
+                future.cancel(false);
+                timeoutCounter.increment();
+                log.warn("查询{}超过截止时间{}ms", name, timeoutMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (ExecutionException e) {
+                log.warn("查询{}异常", name, e.getCause());
+            }
+            return fallback;
+        }
+    }
+}
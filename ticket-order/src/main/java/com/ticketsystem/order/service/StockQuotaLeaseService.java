@@ -0,0 +1,218 @@
+package com.ticketsystem.order.service;
+
+import com.ticketsystem.common.result.Result;
+import com.ticketsystem.order.feign.ShowFeignClient;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 库存配额租借服务
+ * 订单节点一次从中心库存租借一批配额，之后在本地计数器上扣减，
+ * 热门票档的大部分下单不再经过Feign和Redis；租约到期或节点关闭时归还未用配额
+ *
+ * 中心按节点记录未归还的配额（stock:leased:{ticketId}），写回、修复和水位监控据此计入节点持有的配额；
+ * 节点在下一次租借或归还时带上期间已售出的配额，中心从记录中扣除
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StockQuotaLeaseService {
+
+    private final ShowFeignClient showFeignClient;
+
+    @Value("${app.order.stock-lease.enabled:false}")
+    private boolean enabled;
+
+    @Value("${app.order.stock-lease.block-size:50}")
+    private int blockSize;
+
+    @Value("${app.order.stock-lease.min-block-size:1}")
+    private int minBlockSize;
+
+    @Value("${app.order.stock-lease.ttl-seconds:30}")
+    private int ttlSeconds;
+
+    // 本节点标识，中心按此记录未归还的配额，重启后为新节点
+    private final String owner = UUID.randomUUID().toString();
+
+    // 票档ID -> 本地租约
+    private final Map<Long, QuotaLease> leases = new ConcurrentHashMap<>();
+
+    /**
+     * 预减库存，返回值与predeductStockFromRedis一致：1-成功，0-库存不足，-1-库存不存在
+     */
+    public Result<Integer> predeductStock(Long ticketId, Integer quantity) {
+        if (!enabled) {
+            return showFeignClient.predeductStockFromRedis(ticketId, quantity);
+        }
+
+        QuotaLease lease = leases.computeIfAbsent(ticketId, id -> new QuotaLease(blockSize));
+        if (lease.tryTake(quantity)) {
+            return Result.success(1);
+        }
+
+        // 本地配额不足时同一票档只允许一个线程去中心租借
+        synchronized (lease) {
+            if (lease.tryTake(quantity)) {
+                return Result.success(1);
+            }
+            // 过期租约的剩余配额不再本地售出，先归还并上报已售出的配额，再重新租借
+            if (lease.isExpired() && lease.hasUnsettled()) {
+                returnLease(ticketId, lease);
+            }
+
+            int request = Math.max(quantity, lease.nextBlockSize);
+            int settled = lease.consumed.getAndSet(0);
+            Result<Integer> leaseResult;
+            try {
+                leaseResult = showFeignClient.leaseStockFromRedis(ticketId, request, owner, settled);
+            } catch (RuntimeException e) {
+                lease.consumed.addAndGet(settled);
+                throw e;
+            }
+            if (leaseResult == null || !leaseResult.getCode().equals(200) || leaseResult.getData() == null) {
+                // 已售配额未被中心扣除，下次租借或归还时再带上；交由调用方的补偿流程处理
+                lease.consumed.addAndGet(settled);
+                return leaseResult != null ? leaseResult : Result.fail("库存租借失败");
+            }
+
+            int granted = leaseResult.getData();
+            if (granted < 0) {
+                // 库存不存在时中心未处理本次请求
+                lease.consumed.addAndGet(settled);
+                return Result.success(-1);
+            }
+            lease.remaining.addAndGet(granted);
+            lease.expireAt = System.currentTimeMillis() + ttlSeconds * 1000L;
+
+            // 中心库存接近售罄时缩小租借块，避免尾部库存滞留在个别节点
+            if (granted < request) {
+                lease.nextBlockSize = Math.max(minBlockSize, granted / 2);
+            } else {
+                lease.nextBlockSize = Math.min(blockSize, lease.nextBlockSize * 2);
+            }
+            log.debug("租借库存配额 - 票档ID: {}, 申请: {}, 获得: {}, 已售: {}", ticketId, request, granted, settled);
+
+            if (lease.tryTake(quantity)) {
+                return Result.success(1);
+            }
+
+            // 仍不足则归还零头，让其他节点有机会凑够
+            returnLease(ticketId, lease);
+            return Result.success(0);
+        }
+    }
+
+    /**
+     * 定期归还过期租约中的剩余配额，并上报已售出的配额
+     */
+    @Scheduled(fixedDelayString = "${app.order.stock-lease.check-interval:5000}")
+    public void returnExpiredLeases() {
+        if (!enabled) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        leases.forEach((ticketId, lease) -> {
+            if (lease.expireAt < now && lease.hasUnsettled()) {
+                returnLease(ticketId, lease);
+            }
+        });
+    }
+
+    /**
+     * 节点关闭时归还全部剩余配额
+     */
+    @PreDestroy
+    public void returnAllLeases() {
+        leases.forEach(this::returnLease);
+    }
+
+    /**
+     * 获取本地剩余配额
+     */
+    public int getLocalRemaining(Long ticketId) {
+        QuotaLease lease = leases.get(ticketId);
+        return lease != null ? lease.remaining.get() : 0;
+    }
+
+    /**
+     * 归还剩余配额并上报已售出的配额，失败时配额不再本地售出，留待下次定期归还重试
+     */
+    private void returnLease(Long ticketId, QuotaLease lease) {
+        synchronized (lease) {
+            int quantity = lease.remaining.getAndSet(0) + lease.pendingReturn.getAndSet(0);
+            int settled = lease.consumed.getAndSet(0);
+            if (quantity <= 0 && settled <= 0) {
+                return;
+            }
+            try {
+                Result<Integer> result = showFeignClient.returnLeasedStockToRedis(ticketId, quantity, owner, settled);
+                if (result != null && result.getCode().equals(200) && result.getData() != null && result.getData() >= 0) {
+                    if (result.getData() < quantity) {
+                        log.warn("归还库存配额超过中心记录，超出部分不再计入可用库存 - 票档ID: {}, 归还: {}, 实际归还: {}",
+                                ticketId, quantity, result.getData());
+                    }
+                    log.debug("归还库存配额 - 票档ID: {}, 数量: {}, 已售: {}", ticketId, quantity, settled);
+                    return;
+                }
+                log.warn("归还库存配额失败，等待下次重试 - 票档ID: {}, 数量: {}, 已售: {}", ticketId, quantity, settled);
+            } catch (Exception e) {
+                log.warn("归还库存配额异常，等待下次重试 - 票档ID: {}, 数量: {}, 已售: {}", ticketId, quantity, settled, e);
+            }
+            lease.pendingReturn.addAndGet(quantity);
+            lease.consumed.addAndGet(settled);
+        }
+    }
+
+    /**
+     * 单个票档的本地租约
+     */
+    private static class QuotaLease {
+        final AtomicInteger remaining = new AtomicInteger();
+        // 上次租借或归还以来本地售出的配额
+        final AtomicInteger consumed = new AtomicInteger();
+        // 归还失败待重试的配额，不再本地售出
+        final AtomicInteger pendingReturn = new AtomicInteger();
+        volatile long expireAt;
+        volatile int nextBlockSize;
+
+        QuotaLease(int blockSize) {
+            this.nextBlockSize = blockSize;
+        }
+
+        /**
+         * 从本地配额中扣减，租约过期时视为没有本地配额
+         */
+        boolean tryTake(int quantity) {
+            if (isExpired()) {
+                return false;
+            }
+            int current;
+            do {
+                current = remaining.get();
+                if (current < quantity) {
+                    return false;
+                }
+            } while (!remaining.compareAndSet(current, current - quantity));
+            consumed.addAndGet(quantity);
+            return true;
+        }
+
+        boolean isExpired() {
+            return expireAt < System.currentTimeMillis();
+        }
+
+        boolean hasUnsettled() {
+            return remaining.get() > 0 || consumed.get() > 0 || pendingReturn.get() > 0;
+        }
+    }
+}
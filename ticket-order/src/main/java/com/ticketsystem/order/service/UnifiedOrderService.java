@@ -1,6 +1,8 @@
 package com.ticketsystem.order.service;
 
+import com.ticketsystem.common.result.Result;
 import com.ticketsystem.order.dto.CreateOrderDTO;
+import com.ticketsystem.order.feign.ShowFeignClient;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RedissonClient;
@@ -21,13 +23,16 @@ import java.time.LocalDateTime;
 public class UnifiedOrderService {
 
     private final RedissonClient redissonClient;
+    private final ShowFeignClient showFeignClient;
     private final JdbcTemplate writeJdbcTemplate;
     private final JdbcTemplate readJdbcTemplate;
     
     public UnifiedOrderService(RedissonClient redissonClient,
+                              ShowFeignClient showFeignClient,
                               @Qualifier("highConcurrencyWriteJdbcTemplate") JdbcTemplate writeJdbcTemplate,
                               @Qualifier("highConcurrencyReadJdbcTemplate") JdbcTemplate readJdbcTemplate) {
         this.redissonClient = redissonClient;
+        this.showFeignClient = showFeignClient;
         this.writeJdbcTemplate = writeJdbcTemplate;
         this.readJdbcTemplate = readJdbcTemplate;
     }
@@ -49,31 +54,23 @@ public class UnifiedOrderService {
         try {
             String orderKey = "order:" + orderNo;
             String userOrdersKey = "user_orders:" + dto.getUserId();
-            String ticketStockKey = "ticket_stock:" + dto.getTicketId();
             
             // 1. 检查用户是否已有未支付订单
             if (redissonClient.getSet(userOrdersKey).contains(orderNo)) {
                 throw new RuntimeException("用户已有未支付订单");
             }
             
-            // 2. 检查库存是否充足
-            Object currentStockObj = redissonClient.getBucket(ticketStockKey).get();
-            if (currentStockObj == null) {
-                throw new RuntimeException("库存信息不存在");
-            }
-            String currentStockStr = currentStockObj.toString();
-            int currentStock = Integer.parseInt(currentStockStr);
-            if (currentStock < dto.getQuantity()) {
-                throw new RuntimeException("库存不足，当前库存:" + currentStock);
+            // 2-3. 通过演出服务统一库存引擎原子预减库存
+            Result<Integer> predeductResult = showFeignClient.predeductStockFromRedis(dto.getTicketId(), dto.getQuantity());
+            if (predeductResult == null || !predeductResult.isSuccess() || predeductResult.getData() == null) {
+                throw new RuntimeException("库存服务不可用");
             }
-            
-            // 3. 原子性扣减库存
-            long newStock = redissonClient.getAtomicLong(ticketStockKey).addAndGet(-dto.getQuantity());
-            if (newStock < 0) {
-                // 回滚库存
-                redissonClient.getAtomicLong(ticketStockKey).addAndGet(dto.getQuantity());
+            if (predeductResult.getData() == 0) {
                 throw new RuntimeException("库存不足，扣减失败");
             }
+            if (predeductResult.getData() != 1) {
+                throw new RuntimeException("库存信息不存在");
+            }
             
             // 4. 创建订单记录
             var orderHash = redissonClient.getMap(orderKey);
@@ -297,7 +294,6 @@ public class UnifiedOrderService {
         try {
             String orderKey = "order:" + orderNo;
             String userOrdersKey = "user_orders:" + userId;
-            String ticketStockKey = "ticket_stock:" + ticketId;
             
             // 1. 检查订单是否存在
             if (!redissonClient.getBucket(orderKey).isExists()) {
@@ -313,8 +309,11 @@ public class UnifiedOrderService {
                 return false;
             }
             
-            // 3. 回滚库存
-            redissonClient.getAtomicLong(ticketStockKey).addAndGet(quantity);
+            // 3. 通过演出服务统一库存引擎回滚库存
+            Result<Boolean> rollbackResult = showFeignClient.rollbackStockToRedis(ticketId, quantity);
+            if (rollbackResult == null || !Boolean.TRUE.equals(rollbackResult.getData())) {
+                log.warn("统一订单取消时库存回滚失败: orderNo={}, ticketId={}, quantity={}", orderNo, ticketId, quantity);
+            }
             
             // 4. 更新订单状态为已取消
             orderHash.put("status", "2"); // 2=已取消
@@ -1,18 +1,30 @@
 package com.ticketsystem.order.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.baomidou.mybatisplus.core.conditions.update.LambdaUpdateWrapper;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.ticketsystem.common.annotation.PerformanceMonitor;
 import com.ticketsystem.common.exception.BusinessException;
 import com.ticketsystem.common.result.Result;
+import com.ticketsystem.order.dto.CreateMultiOrderDTO;
 import com.ticketsystem.order.dto.CreateOrderDTO;
+import com.ticketsystem.order.dto.OrderLineDTO;
 import com.ticketsystem.order.entity.Order;
+import com.ticketsystem.order.entity.OrderLine;
 import com.ticketsystem.order.feign.ShowFeignClient;
+import com.ticketsystem.order.feign.dto.MultiOrderReserveRequestDTO;
+import com.ticketsystem.order.feign.dto.OrderReserveRequestDTO;
+import com.ticketsystem.order.feign.dto.OrderReserveResultDTO;
 import com.ticketsystem.order.feign.dto.ShowInfoDTO;
+import com.ticketsystem.order.feign.dto.StockReserveItemDTO;
+import com.ticketsystem.order.mapper.OrderLineMapper;
 import com.ticketsystem.order.mapper.OrderMapper;
 import com.ticketsystem.order.service.OrderService;
 import com.ticketsystem.order.service.CompensationService;
+import com.ticketsystem.order.service.OrderExpiryService;
+import com.ticketsystem.order.service.ShowLookupService;
+import com.ticketsystem.order.service.StockQuotaLeaseService;
 import com.ticketsystem.order.util.SnowflakeIdWorker;
 import com.ticketsystem.order.vo.OrderVO;
 // import io.seata.spring.annotation.GlobalTransactional; // 暂时注释
@@ -24,9 +36,13 @@ import org.springframework.beans.BeanUtils;
 import org.springframework.stereotype.Service;
 import org.springframework.core.env.Environment;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.UUID;
@@ -41,11 +57,17 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
     private final ShowFeignClient showFeignClient;
     private final RedissonClient redissonClient;
     private final CompensationService compensationService;
+    private final StockQuotaLeaseService stockQuotaLeaseService;
     private final Environment env;
     private final SnowflakeIdWorker snowflakeIdWorker;
+    private final OrderLineMapper orderLineMapper;
+    private final TransactionTemplate transactionTemplate;
+    private final OrderExpiryService orderExpiryService;
+    private final ShowLookupService showLookupService;
     
     // Redis分布式锁相关常量
     private static final String ORDER_LOCK_PREFIX = "order:lock:";
+    private static final int ORDER_TYPE_MULTI_LINE = 1; // 多票档订单类型，只有此类订单写入订单明细
     private static final int LOCK_EXPIRE_TIME = 30; // 30秒，增加锁超时时间
     private static final int LOCK_WAIT_TIME = 3; // 等待获取锁的时间
     private static final int MAX_RETRY_TIMES = 3; // 最大重试次数
@@ -80,6 +102,7 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
             log.info("使用 userId 粒度的分布式锁, lockKey: {}", lockKey);
         }
         
+        ShowLookupService.OrderLookups lookups = null;
         try {
             // 尝试获取Redisson分布式锁，Fail-Fast：不可用立即失败
             // 使用带重试的分布式锁，提高并发成功率
@@ -101,9 +124,18 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
             log.info("CreateOrder 入参校验通过 - userId={}, ticketId={}, quantity={}, showId={}, sessionId={}",
                     createOrderDTO.getUserId(), createOrderDTO.getTicketId(), createOrderDTO.getQuantity(),
                     createOrderDTO.getShowId(), createOrderDTO.getSessionId());
+
+            // 组合预留：演出服务一次调用完成票档校验、库存和座位预留
+            if (env.getProperty("app.order.composite-reserve.enabled", Boolean.class, false)) {
+                return createOrderWithReserve(createOrderDTO);
+            }
+
+            // 票价、演出信息、座位信息互不依赖，并发查询；库存和座位写操作仍按顺序执行
+            lookups = showLookupService.start(createOrderDTO.getTicketId(),
+                    createOrderDTO.getShowId(), createOrderDTO.getSessionId(), createOrderDTO.getSeatId());
             
             // 查询票档价格（带预检重试与可选开发兜底）
-            BigDecimal price = fetchTicketPriceWithRetry(createOrderDTO.getTicketId());
+            BigDecimal price = lookups.price();
             if (price == null) {
                 boolean allowDevFallback = env.getProperty("app.order.allow-dev-fallback-price", Boolean.class, false);
                 if (allowDevFallback) {
@@ -127,7 +159,7 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
             // Redis预减库存（带补偿机制）
             Integer stockResult = null;
             try {
-                Result<Integer> predeductResult = showFeignClient.predeductStockFromRedis(
+                Result<Integer> predeductResult = stockQuotaLeaseService.predeductStock(
                         createOrderDTO.getTicketId(), createOrderDTO.getQuantity());
                 if (!predeductResult.getCode().equals(200) || predeductResult.getData() == null) {
                     log.error("Redis预减库存调用失败，票档ID: {}, 数量: {}, 错误信息: {}", 
@@ -228,9 +260,8 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
                 throw new BusinessException("数据库库存锁定异常: " + lockEx.getMessage());
             }
             
-            // 获取演出信息
-            Result<ShowInfoDTO> showInfoResult = showFeignClient.getShowInfo(
-                    createOrderDTO.getShowId(), createOrderDTO.getSessionId());
+            // 获取演出信息（与库存操作并发查询）
+            Result<ShowInfoDTO> showInfoResult = lookups.showInfo();
             if (!showInfoResult.getCode().equals(200) || showInfoResult.getData() == null) {
                 log.error("获取演出信息失败，演出ID: {}, 场次ID: {}, 错误信息: {}", 
                     createOrderDTO.getShowId(), createOrderDTO.getSessionId(), showInfoResult.getMessage());
@@ -265,57 +296,7 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
             }
             
             // 创建订单
-            Order order = new Order();
-            order.setOrderNo(tempOrderNo);
-            order.setUserId(createOrderDTO.getUserId());
-            order.setShowId(createOrderDTO.getShowId());
-            order.setSessionId(createOrderDTO.getSessionId());
-            order.setTicketId(createOrderDTO.getTicketId());
-            order.setQuantity(createOrderDTO.getQuantity());
-            
-            BigDecimal totalAmount;
-            if (createOrderDTO.getTotalPrice() != null) {
-                // 使用前端传递的价格（包含夜间加价等复杂计算）
-                totalAmount = createOrderDTO.getTotalPrice();
-                log.info("使用前端传递的价格: {}, 基础价格: {}, 夜间加价: {}", 
-                    totalAmount, createOrderDTO.getBasePrice(), createOrderDTO.getNightSurcharge());
-            } else {
-                // 回退到简单的价格计算
-                totalAmount = price.multiply(new BigDecimal(createOrderDTO.getQuantity()));
-                log.info("使用简单价格计算: {} * {} = {}", price, createOrderDTO.getQuantity(), totalAmount);
-            }
-            
-            order.setTotalAmount(totalAmount);
-            order.setPayAmount(totalAmount); // 实际支付金额等于总金额（暂无优惠）
-            order.setDiscountAmount(BigDecimal.ZERO); // 优惠金额为0
-            order.setStatus(0); // 待支付
-            order.setExpireTime(LocalDateTime.now().plusMinutes(15)); // 15分钟内支付
-            
-            // 网咖预约场景的新字段
-            if (createOrderDTO.getRemark() != null) {
-                order.setRemark(createOrderDTO.getRemark());
-            }
-            if (createOrderDTO.getContactPhone() != null) {
-                order.setContactPhone(createOrderDTO.getContactPhone());
-            }
-            if (createOrderDTO.getBookingDate() != null) {
-                // 将字符串转换为LocalDateTime
-                try {
-                    order.setBookingDate(LocalDateTime.parse(createOrderDTO.getBookingDate().replace(" ", "T")));
-                } catch (Exception e) {
-                    log.warn("预约时间格式转换失败: {}", createOrderDTO.getBookingDate(), e);
-                }
-            }
-            if (createOrderDTO.getBookingEndTime() != null) {
-                try {
-                    order.setBookingEndTime(LocalDateTime.parse(createOrderDTO.getBookingEndTime().replace(" ", "T")));
-                } catch (Exception e) {
-                    log.warn("预约结束时间格式转换失败: {}", createOrderDTO.getBookingEndTime(), e);
-                }
-            }
-            if (createOrderDTO.getBookingDuration() != null) {
-                order.setBookingDuration(createOrderDTO.getBookingDuration());
-            }
+            Order order = buildOrder(createOrderDTO, tempOrderNo, price);
             
             // 处理座位信息（如果前端传递了座位ID）
             if (createOrderDTO.getSeatId() != null) {
@@ -323,7 +304,7 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
                 
                 // 从演出服务获取座位信息
                 try {
-                    Result<String> seatInfoResult = showFeignClient.getSeatInfo(createOrderDTO.getSeatId());
+                    Result<String> seatInfoResult = lookups.seatInfo();
                     if (seatInfoResult != null && seatInfoResult.getCode().equals(200) && seatInfoResult.getData() != null) {
                         order.setSeatInfo(seatInfoResult.getData());
                         log.info("获取座位信息成功，座位ID: {}, 座位信息: {}", createOrderDTO.getSeatId(), seatInfoResult.getData());
@@ -339,7 +320,11 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
                 
                 // 调用演出服务锁定座位，确保lock_user_id正确写入
                 try {
-                    Result<Boolean> lockResult = showFeignClient.lockSeat(createOrderDTO.getSeatId(), createOrderDTO.getUserId(), createOrderDTO.getSessionId());
+                    // 按时段预约时只占用预约时段，座位的其他时段仍可被他人预约
+                    Result<Boolean> lockResult = hasBookingWindow(order)
+                            ? showFeignClient.lockSeatSlots(createOrderDTO.getSeatId(), createOrderDTO.getUserId(),
+                                    order.getBookingDate().toString(), order.getBookingEndTime().toString())
+                            : showFeignClient.lockSeat(createOrderDTO.getSeatId(), createOrderDTO.getUserId(), createOrderDTO.getSessionId());
                     if (lockResult == null || !lockResult.getCode().equals(200) || !Boolean.TRUE.equals(lockResult.getData())) {
                         log.error("座位锁定失败，座位ID: {}, 用户ID: {}, 场次ID: {}, 错误信息: {}", 
                             createOrderDTO.getSeatId(), createOrderDTO.getUserId(), createOrderDTO.getSessionId(),
@@ -355,6 +340,7 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
             
             // 保存订单
             save(order);
+            orderExpiryService.schedule(order.getOrderNo(), order.getExpireTime());
             
             return order.getOrderNo();
             
@@ -362,11 +348,263 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
             log.error("创建订单失败，用户ID: {}", createOrderDTO.getUserId(), e);
             throw e;
         } finally {
+            // 提前失败时取消尚未取用的并发查询
+            if (lookups != null) {
+                lookups.cancel();
+            }
             // 释放Redisson分布式锁
             releaseLockWithRedisson(lockKey);
         }
     }
 
+    /**
+     * 组合预留下单：票档校验、Redis预减库存、数据库库存锁定、座位锁定在演出服务一次调用、一个本地事务内完成，
+     * 中途失败由演出服务自行回滚；预留成功后订单保存失败时一次调用释放预留
+     */
+    private String createOrderWithReserve(CreateOrderDTO createOrderDTO) {
+        String orderNo = generateOrderNo();
+        OrderReserveRequestDTO request = new OrderReserveRequestDTO();
+        request.setOrderNo(orderNo);
+        request.setUserId(createOrderDTO.getUserId());
+        request.setTicketId(createOrderDTO.getTicketId());
+        request.setQuantity(createOrderDTO.getQuantity());
+        request.setShowId(createOrderDTO.getShowId());
+        request.setSessionId(createOrderDTO.getSessionId());
+        request.setSeatId(createOrderDTO.getSeatId());
+
+        // 按时段预约时只占用预约时段
+        LocalDateTime bookingStart = parseBookingTime(createOrderDTO.getBookingDate());
+        LocalDateTime bookingEnd = parseBookingTime(createOrderDTO.getBookingEndTime());
+        if (createOrderDTO.getSeatId() != null && bookingStart != null && bookingEnd != null) {
+            request.setStartTime(bookingStart.toString());
+            request.setEndTime(bookingEnd.toString());
+        }
+
+        Result<OrderReserveResultDTO> reserveResult;
+        try {
+            reserveResult = showFeignClient.reserveForOrder(request);
+        } catch (Exception feignEx) {
+            // 无法确认是否已预留，记录补偿由对账处理
+            log.error("下单预留Feign调用异常，订单号: {}, 票档ID: {}, 数量: {}",
+                    orderNo, createOrderDTO.getTicketId(), createOrderDTO.getQuantity(), feignEx);
+            compensationService.recordCompensationFailure(orderNo, createOrderDTO.getTicketId(),
+                    createOrderDTO.getQuantity(), "RESERVE_EXCEPTION", feignEx.getMessage());
+            throw new BusinessException("下单预留异常: " + feignEx.getMessage());
+        }
+        if (reserveResult == null || !Integer.valueOf(200).equals(reserveResult.getCode())
+                || reserveResult.getData() == null) {
+            log.warn("下单预留失败，订单号: {}, 票档ID: {}, 数量: {}, 座位ID: {}, 错误信息: {}",
+                    orderNo, createOrderDTO.getTicketId(), createOrderDTO.getQuantity(), createOrderDTO.getSeatId(),
+                    reserveResult != null ? reserveResult.getMessage() : null);
+            throw new BusinessException(reserveResult != null ? reserveResult.getMessage() : "下单预留失败");
+        }
+        OrderReserveResultDTO reserved = reserveResult.getData();
+
+        Order order = buildOrder(createOrderDTO, orderNo, reserved.getPrice());
+        if (createOrderDTO.getSeatId() != null) {
+            order.setSeatId(createOrderDTO.getSeatId());
+            order.setSeatInfo(reserved.getSeatInfo() != null ? reserved.getSeatInfo() : "座位" + createOrderDTO.getSeatId());
+        }
+
+        try {
+            save(order);
+        } catch (Exception saveEx) {
+            log.error("订单保存失败，释放下单预留，订单号: {}", orderNo, saveEx);
+            releaseReservation(request);
+            throw saveEx;
+        }
+        orderExpiryService.schedule(order.getOrderNo(), order.getExpireTime());
+        log.info("组合预留下单成功，订单号: {}, 票档ID: {}, 数量: {}, 座位ID: {}",
+                orderNo, createOrderDTO.getTicketId(), createOrderDTO.getQuantity(), createOrderDTO.getSeatId());
+        return orderNo;
+    }
+
+    /**
+     * 释放组合预留，失败时记录补偿
+     */
+    private void releaseReservation(OrderReserveRequestDTO request) {
+        try {
+            Result<Boolean> releaseResult = showFeignClient.releaseReservation(request);
+            if (releaseResult != null && Integer.valueOf(200).equals(releaseResult.getCode())
+                    && Boolean.TRUE.equals(releaseResult.getData())) {
+                log.info("下单预留已释放，订单号: {}", request.getOrderNo());
+                return;
+            }
+            log.error("释放下单预留失败，订单号: {}, 错误: {}", request.getOrderNo(),
+                    releaseResult != null ? releaseResult.getMessage() : "释放服务无响应");
+            compensationService.recordCompensationFailure(request.getOrderNo(), request.getTicketId(),
+                    request.getQuantity(), "RELEASE_RESERVATION",
+                    releaseResult != null ? releaseResult.getMessage() : "释放服务无响应");
+        } catch (Exception e) {
+            log.error("释放下单预留异常，订单号: {}", request.getOrderNo(), e);
+            compensationService.recordCompensationFailure(request.getOrderNo(), request.getTicketId(),
+                    request.getQuantity(), "RELEASE_RESERVATION", e.getMessage());
+        }
+    }
+
+    /**
+     * 按下单参数构建待支付订单（不含座位信息）
+     */
+    private Order buildOrder(CreateOrderDTO createOrderDTO, String orderNo, BigDecimal price) {
+        Order order = new Order();
+        order.setOrderNo(orderNo);
+        order.setUserId(createOrderDTO.getUserId());
+        order.setShowId(createOrderDTO.getShowId());
+        order.setSessionId(createOrderDTO.getSessionId());
+        order.setTicketId(createOrderDTO.getTicketId());
+        order.setQuantity(createOrderDTO.getQuantity());
+
+        BigDecimal totalAmount;
+        if (createOrderDTO.getTotalPrice() != null) {
+            // 使用前端传递的价格（包含夜间加价等复杂计算）
+            totalAmount = createOrderDTO.getTotalPrice();
+            log.info("使用前端传递的价格: {}, 基础价格: {}, 夜间加价: {}",
+                totalAmount, createOrderDTO.getBasePrice(), createOrderDTO.getNightSurcharge());
+        } else {
+            // 回退到简单的价格计算
+            totalAmount = price.multiply(new BigDecimal(createOrderDTO.getQuantity()));
+            log.info("使用简单价格计算: {} * {} = {}", price, createOrderDTO.getQuantity(), totalAmount);
+        }
+
+        order.setTotalAmount(totalAmount);
+        order.setPayAmount(totalAmount); // 实际支付金额等于总金额（暂无优惠）
+        order.setDiscountAmount(BigDecimal.ZERO); // 优惠金额为0
+        order.setStatus(0); // 待支付
+        order.setExpireTime(LocalDateTime.now().plusMinutes(15)); // 15分钟内支付
+
+        // 网咖预约场景的新字段
+        if (createOrderDTO.getRemark() != null) {
+            order.setRemark(createOrderDTO.getRemark());
+        }
+        if (createOrderDTO.getContactPhone() != null) {
+            order.setContactPhone(createOrderDTO.getContactPhone());
+        }
+        order.setBookingDate(parseBookingTime(createOrderDTO.getBookingDate()));
+        order.setBookingEndTime(parseBookingTime(createOrderDTO.getBookingEndTime()));
+        if (createOrderDTO.getBookingDuration() != null) {
+            order.setBookingDuration(createOrderDTO.getBookingDuration());
+        }
+        return order;
+    }
+
+    @Override
+    @PerformanceMonitor(value = "createMultiLineOrder", slowQueryThreshold = 2000)
+    public String createMultiLineOrder(CreateMultiOrderDTO createOrderDTO) {
+        // 分布式锁，防止同一用户重复下单
+        String lockKey = ORDER_LOCK_PREFIX + "create:" + createOrderDTO.getUserId();
+        
+        try {
+            if (!tryLockWithRedissonRetry(lockKey, LOCK_WAIT_TIME, LOCK_EXPIRE_TIME, MAX_RETRY_TIMES)) {
+                throw new BusinessException("系统繁忙，请稍后重试");
+            }
+            
+            // 入参校验，同一票档多行合并数量
+            Map<Long, Integer> quantities = new LinkedHashMap<>();
+            for (OrderLineDTO line : createOrderDTO.getItems()) {
+                if (line.getTicketId() == null || line.getTicketId() <= 0) {
+                    throw new BusinessException("非法票档ID");
+                }
+                if (line.getQuantity() == null || line.getQuantity() <= 0) {
+                    throw new BusinessException("非法购买数量");
+                }
+                quantities.merge(line.getTicketId(), line.getQuantity(), Integer::sum);
+            }
+            log.info("CreateMultiLineOrder 入参校验通过 - userId={}, showId={}, sessionId={}, items={}",
+                    createOrderDTO.getUserId(), createOrderDTO.getShowId(), createOrderDTO.getSessionId(), quantities);
+            
+            // 先生成订单号，用于补偿记录和库存流水
+            String orderNo = generateOrderNo();
+            List<StockReserveItemDTO> stockItems = new ArrayList<>(quantities.size());
+            quantities.forEach((ticketId, quantity) -> stockItems.add(new StockReserveItemDTO(ticketId, quantity)));
+            MultiOrderReserveRequestDTO request = new MultiOrderReserveRequestDTO();
+            request.setOrderNo(orderNo);
+            request.setUserId(createOrderDTO.getUserId());
+            request.setShowId(createOrderDTO.getShowId());
+            request.setSessionId(createOrderDTO.getSessionId());
+            request.setItems(stockItems);
+            
+            // 演出服务一次调用完成各票档票价查询、Redis预减（全部满足才扣减）、数据库库存锁定，中途失败由其自行回滚
+            Result<OrderReserveResultDTO> reserveResult;
+            try {
+                reserveResult = showFeignClient.reserveItemsForOrder(request);
+            } catch (Exception feignEx) {
+                // 无法确认是否已预留，记录补偿由对账处理
+                log.error("多票档下单预留Feign调用异常，订单号: {}, 票档: {}", orderNo, quantities, feignEx);
+                stockItems.forEach(item -> compensationService.recordCompensationFailure(orderNo,
+                        item.getTicketId(), item.getQuantity(), "RESERVE_EXCEPTION", feignEx.getMessage()));
+                throw new BusinessException("下单预留异常: " + feignEx.getMessage());
+            }
+            if (reserveResult == null || !Integer.valueOf(200).equals(reserveResult.getCode())
+                    || reserveResult.getData() == null || reserveResult.getData().getPrices() == null) {
+                log.warn("多票档下单预留失败，订单号: {}, 票档: {}, 错误信息: {}", orderNo, quantities,
+                        reserveResult != null ? reserveResult.getMessage() : null);
+                throw new BusinessException(reserveResult != null ? reserveResult.getMessage() : "下单预留失败");
+            }
+            OrderReserveResultDTO reserved = reserveResult.getData();
+            Map<Long, BigDecimal> prices = reserved.getPrices();
+            log.debug("多票档订单库存预留完成，订单号: {}, 演出: {}", orderNo,
+                    reserved.getShowInfo() != null ? reserved.getShowInfo().getShowName() : null);
+            
+            // 创建订单，主票档为第一行，数量为各行之和
+            Order order = new Order();
+            order.setOrderNo(orderNo);
+            order.setOrderType(ORDER_TYPE_MULTI_LINE);
+            order.setUserId(createOrderDTO.getUserId());
+            order.setShowId(createOrderDTO.getShowId());
+            order.setSessionId(createOrderDTO.getSessionId());
+            order.setTicketId(stockItems.get(0).getTicketId());
+            order.setQuantity(quantities.values().stream().mapToInt(Integer::intValue).sum());
+            
+            List<OrderLine> orderLines = new ArrayList<>(stockItems.size());
+            BigDecimal totalAmount = BigDecimal.ZERO;
+            for (StockReserveItemDTO item : stockItems) {
+                BigDecimal price = prices.get(item.getTicketId());
+                BigDecimal subtotal = price.multiply(new BigDecimal(item.getQuantity()));
+                totalAmount = totalAmount.add(subtotal);
+                orderLines.add(new OrderLine()
+                        .setOrderNo(orderNo)
+                        .setTicketId(item.getTicketId())
+                        .setQuantity(item.getQuantity())
+                        .setPrice(price)
+                        .setSubtotal(subtotal));
+            }
+            order.setTotalAmount(totalAmount);
+            order.setPayAmount(totalAmount);
+            order.setDiscountAmount(BigDecimal.ZERO);
+            order.setStatus(0); // 待支付
+            order.setExpireTime(LocalDateTime.now().plusMinutes(15)); // 15分钟内支付
+            order.setRemark(createOrderDTO.getRemark());
+            order.setContactPhone(createOrderDTO.getContactPhone());
+            order.setBookingDate(parseBookingTime(createOrderDTO.getBookingDate()));
+            order.setBookingEndTime(parseBookingTime(createOrderDTO.getBookingEndTime()));
+            order.setBookingDuration(createOrderDTO.getBookingDuration());
+            
+            // 订单与明细在同一事务中保存
+            try {
+                transactionTemplate.executeWithoutResult(status -> {
+                    save(order);
+                    orderLines.forEach(line -> line.setOrderId(order.getId()));
+                    orderLineMapper.insertBatch(orderLines);
+                });
+            } catch (Exception e) {
+                log.error("保存多票档订单失败，订单号: {}", orderNo, e);
+                releaseItemsReservation(request);
+                throw new BusinessException("保存订单失败: " + e.getMessage());
+            }
+            
+            orderExpiryService.schedule(orderNo, order.getExpireTime());
+            
+            log.info("多票档订单创建成功，订单号: {}, 票档数: {}, 总金额: {}", orderNo, orderLines.size(), totalAmount);
+            return orderNo;
+            
+        } catch (Exception e) {
+            log.error("创建多票档订单失败，用户ID: {}", createOrderDTO.getUserId(), e);
+            throw e;
+        } finally {
+            releaseLockWithRedisson(lockKey);
+        }
+    }
+
     @Override
     @PerformanceMonitor(value = "payOrder", slowQueryThreshold = 3000)
     // @GlobalTransactional // 暂时注释
@@ -402,6 +640,11 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
                 throw new BusinessException("订单已过期");
             }
         
+        // 按时段预约的座位先确认时段，临时占用已失效且被他人预约时不能支付
+        if (hasBookingWindow(order) && !confirmSeatSlots(order)) {
+                throw new BusinessException("座位预约时段已失效，请重新下单");
+            }
+        
         // 模拟支付流程
         String payNo = UUID.randomUUID().toString().replace("-", "");
         
@@ -411,69 +654,44 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
         order.setPayType(payType);
         order.setPayNo(payNo);
         
-        boolean updated = updateById(order);
+        // 条件更新，订单已被超时取消时不能再转为已支付
+        boolean updated = updateStatusFrom(order, 0);
+        if (!updated) {
+            log.warn("订单状态已变化，无法支付，订单号: {}", orderNo);
+            releaseSeatSlots(order);
+            throw new BusinessException("订单已取消或已过期");
+        }
         
-        if (updated) {
-            // 支付成功，需要确认数据库库存（乐观锁）
+        // 支付成功，需要确认数据库库存（乐观锁）
+        List<StockReserveItemDTO> stockItems = getOrderStockItems(order);
+        List<StockReserveItemDTO> confirmed = new ArrayList<>(stockItems.size());
+        Result<Boolean> confirmResult;
+        try {
+            confirmResult = confirmOrderStock(orderNo, stockItems, confirmed);
+        } catch (Exception confirmEx) {
+            log.error("数据库库存确认异常，订单号: {}, 票档ID: {}, 数量: {}", 
+                orderNo, order.getTicketId(), order.getQuantity(), confirmEx);
+            revertPayment(order, stockItems, confirmed);
+            throw new BusinessException("库存确认异常: " + confirmEx.getMessage());
+        }
+        if (!confirmResult.getCode().equals(200) || !Boolean.TRUE.equals(confirmResult.getData())) {
+            log.error("数据库库存确认失败，订单号: {}, 票档ID: {}, 数量: {}, 错误: {}", 
+                orderNo, order.getTicketId(), order.getQuantity(), confirmResult.getMessage());
+            revertPayment(order, stockItems, confirmed);
+            throw new BusinessException("库存确认失败，订单已回滚");
+        }
+        
+        log.info("订单支付成功，数据库库存已确认扣减，订单号：{}", orderNo);
+        orderExpiryService.unschedule(orderNo);
+        
+        // 同步库存到Redis确保一致性
+        for (StockReserveItemDTO item : stockItems) {
             try {
-                Result<Boolean> confirmResult = showFeignClient.confirmStockFromDatabase(
-                    order.getTicketId(), order.getQuantity());
-                
-                if (!confirmResult.getCode().equals(200) || !Boolean.TRUE.equals(confirmResult.getData())) {
-                    log.error("数据库库存确认失败，订单号: {}, 票档ID: {}, 数量: {}, 错误: {}", 
-                        orderNo, order.getTicketId(), order.getQuantity(), confirmResult.getMessage());
-                    
-                    // 数据库确认失败，需要回滚Redis库存
-                    try {
-                        Result<Boolean> rollbackResult = showFeignClient.rollbackStockToRedis(
-                            order.getTicketId(), order.getQuantity());
-                        if (!rollbackResult.getCode().equals(200) || !Boolean.TRUE.equals(rollbackResult.getData())) {
-                            log.error("回滚Redis库存失败，订单号: {}, 票档ID: {}, 数量: {}", 
-                                orderNo, order.getTicketId(), order.getQuantity());
-                        } else {
-                            log.info("回滚Redis库存成功，订单号: {}, 票档ID: {}, 数量: {}", 
-                                orderNo, order.getTicketId(), order.getQuantity());
-                        }
-                    } catch (Exception rollbackEx) {
-                        log.error("回滚Redis库存异常，订单号: {}, 票档ID: {}, 数量: {}", 
-                            orderNo, order.getTicketId(), order.getQuantity(), rollbackEx);
-                    }
-                    
-                    // 回滚订单状态
-                    order.setStatus(0); // 恢复为待支付状态
-                    updateById(order);
-                    
-                    throw new BusinessException("库存确认失败，订单已回滚");
-                }
-                
-                log.info("订单支付成功，数据库库存已确认扣减，订单号：{}", orderNo);
-                
-                // 同步库存到Redis确保一致性
-                try {
-                    showFeignClient.syncStockToRedis(order.getTicketId());
-                    log.debug("库存同步到Redis完成，票档ID: {}", order.getTicketId());
-                } catch (Exception syncEx) {
-                    log.warn("库存同步到Redis失败，票档ID: {}, 错误: {}", order.getTicketId(), syncEx.getMessage());
-                    // 同步失败不影响主流程，只记录警告
-                }
-                
-            } catch (Exception confirmEx) {
-                log.error("数据库库存确认异常，订单号: {}, 票档ID: {}, 数量: {}", 
-                    orderNo, order.getTicketId(), order.getQuantity(), confirmEx);
-                
-                // 回滚Redis库存
-                try {
-                    showFeignClient.rollbackStockToRedis(order.getTicketId(), order.getQuantity());
-                } catch (Exception rollbackEx) {
-                    log.error("回滚Redis库存异常，订单号: {}, 票档ID: {}, 数量: {}", 
-                        orderNo, order.getTicketId(), order.getQuantity(), rollbackEx);
-                }
-                
-                // 回滚订单状态
-                order.setStatus(0);
-                updateById(order);
-                
-                throw new BusinessException("库存确认异常: " + confirmEx.getMessage());
+                showFeignClient.syncStockToRedis(item.getTicketId());
+                log.debug("库存同步到Redis完成，票档ID: {}", item.getTicketId());
+            } catch (Exception syncEx) {
+                log.warn("库存同步到Redis失败，票档ID: {}, 错误: {}", item.getTicketId(), syncEx.getMessage());
+                // 同步失败不影响主流程，只记录警告
             }
         }
         
@@ -506,15 +724,16 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
             throw new BusinessException("订单状态不正确，只能取消待支付订单");
         }
         
-        // 更新订单状态
+        // 更新订单状态，条件更新保证与支付并发时只有一方能从待支付状态转出
         order.setStatus(2); // 已取消
-        boolean updated = updateById(order);
+        boolean updated = updateStatusFrom(order, 0);
         
         if (updated) {
-            // Redis库存回滚
+            // 释放数据库锁定库存，再回滚Redis库存
+            List<StockReserveItemDTO> stockItems = getOrderStockItems(order);
+            unlockOrderStock(orderNo, stockItems);
             try {
-                Result<Boolean> rollbackResult = showFeignClient.rollbackStockToRedis(
-                    order.getTicketId(), order.getQuantity());
+                Result<Boolean> rollbackResult = rollbackOrderStock(orderNo, stockItems);
                 if (!rollbackResult.getCode().equals(200) || !Boolean.TRUE.equals(rollbackResult.getData())) {
                     log.error("订单取消后库存回滚失败，订单号: {}, 票档ID: {}, 数量: {}, 错误: {}", 
                         orderNo, order.getTicketId(), order.getQuantity(), rollbackResult.getMessage());
@@ -527,19 +746,26 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
                 log.error("订单取消库存回滚异常，订单号: {}, 票档ID: {}, 数量: {}", 
                     orderNo, order.getTicketId(), order.getQuantity(), rollbackEx);
                 // 启动异步补偿
-                compensationService.asyncCompensateStockRollback(
-                    order.getTicketId(), order.getQuantity(), orderNo)
-                    .whenComplete((result, ex) -> {
-                        if (ex != null || !Boolean.TRUE.equals(result)) {
-                            compensationService.recordCompensationFailure(orderNo, 
-                                order.getTicketId(), order.getQuantity(), 
-                                "ROLLBACK_AFTER_ORDER_CANCEL", 
-                                ex != null ? ex.getMessage() : "异步补偿失败");
-                        }
-                    });
+                for (StockReserveItemDTO item : stockItems) {
+                    compensationService.asyncCompensateStockRollback(
+                        item.getTicketId(), item.getQuantity(), orderNo)
+                        .whenComplete((result, ex) -> {
+                            if (ex != null || !Boolean.TRUE.equals(result)) {
+                                compensationService.recordCompensationFailure(orderNo, 
+                                    item.getTicketId(), item.getQuantity(), 
+                                    "ROLLBACK_AFTER_ORDER_CANCEL", 
+                                    ex != null ? ex.getMessage() : "异步补偿失败");
+                            }
+                        });
+                }
             }
         }
         
+        if (updated) {
+            releaseSeatSlots(order);
+            orderExpiryService.unschedule(orderNo);
+        }
+        
         return updated;
     }
 
@@ -561,15 +787,16 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
             return false;
         }
         
-        // 更新订单状态
+        // 更新订单状态，条件更新保证与支付并发时只有一方能从待支付状态转出
         order.setStatus(2); // 已取消
-        boolean updated = updateById(order);
+        boolean updated = updateStatusFrom(order, 0);
         
         if (updated) {
-            // Redis库存回滚
+            // 释放数据库锁定库存，再回滚Redis库存
+            List<StockReserveItemDTO> stockItems = getOrderStockItems(order);
+            unlockOrderStock(orderNo, stockItems);
             try {
-                Result<Boolean> rollbackResult = showFeignClient.rollbackStockToRedis(
-                    order.getTicketId(), order.getQuantity());
+                Result<Boolean> rollbackResult = rollbackOrderStock(orderNo, stockItems);
                 if (!rollbackResult.getCode().equals(200) || !Boolean.TRUE.equals(rollbackResult.getData())) {
                     log.error("系统取消订单后库存回滚失败，订单号: {}, 票档ID: {}, 数量: {}, 错误: {}", 
                         orderNo, order.getTicketId(), order.getQuantity(), rollbackResult.getMessage());
@@ -582,19 +809,25 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
                 log.error("系统取消订单库存回滚异常，订单号: {}, 票档ID: {}, 数量: {}", 
                     orderNo, order.getTicketId(), order.getQuantity(), rollbackEx);
                 // 启动异步补偿
-                compensationService.asyncCompensateStockRollback(
-                    order.getTicketId(), order.getQuantity(), orderNo)
-                    .whenComplete((result, ex) -> {
-                        if (ex != null || !Boolean.TRUE.equals(result)) {
-                            compensationService.recordCompensationFailure(orderNo, 
-                                order.getTicketId(), order.getQuantity(), 
-                                "ROLLBACK_AFTER_SYSTEM_CANCEL", 
-                                ex != null ? ex.getMessage() : "异步补偿失败");
-                        }
-                    });
+                for (StockReserveItemDTO item : stockItems) {
+                    compensationService.asyncCompensateStockRollback(
+                        item.getTicketId(), item.getQuantity(), orderNo)
+                        .whenComplete((result, ex) -> {
+                            if (ex != null || !Boolean.TRUE.equals(result)) {
+                                compensationService.recordCompensationFailure(orderNo, 
+                                    item.getTicketId(), item.getQuantity(), 
+                                    "ROLLBACK_AFTER_SYSTEM_CANCEL", 
+                                    ex != null ? ex.getMessage() : "异步补偿失败");
+                            }
+                        });
+                }
             }
         }
 
+        if (updated) {
+            releaseSeatSlots(order);
+        }
+        
         return updated;
     }
 
@@ -763,27 +996,217 @@ public class OrderServiceImpl extends ServiceImpl<OrderMapper, Order> implements
     }
     
     /**
-     * 票价获取：带一次重试，并打印 show 侧返回详情（用于快速联调定位）
+     * 订单涉及的票档及数量：多票档订单取明细，单票档订单取订单本身
+     */
+    private List<StockReserveItemDTO> getOrderStockItems(Order order) {
+        // 只有多票档订单写入明细，单票档订单不查询明细表
+        if (!Integer.valueOf(ORDER_TYPE_MULTI_LINE).equals(order.getOrderType())) {
+            return Collections.singletonList(new StockReserveItemDTO(order.getTicketId(), order.getQuantity()));
+        }
+        List<OrderLine> lines = orderLineMapper.selectByOrderNo(order.getOrderNo());
+        if (lines.isEmpty()) {
+            return Collections.singletonList(new StockReserveItemDTO(order.getTicketId(), order.getQuantity()));
+        }
+        return lines.stream()
+                .map(line -> new StockReserveItemDTO(line.getTicketId(), line.getQuantity()))
+                .collect(Collectors.toList());
+    }
+
+    /**
+     * 确认订单各票档的数据库库存，遇到失败即停止，已确认的票档依次加入confirmed
      */
-    private BigDecimal fetchTicketPriceWithRetry(Long ticketId) {
-        for (int i = 0; i < 2; i++) {
-            Result<BigDecimal> priceResult = showFeignClient.getTicketPrice(ticketId);
-            if (priceResult != null && Integer.valueOf(200).equals(priceResult.getCode()) && priceResult.getData() != null) {
-                return priceResult.getData();
-            }
-            log.warn("票价获取失败(第{}次)，ticketId={}, code={}, message={}, data={}",
-                    i + 1,
-                    ticketId,
-                    priceResult != null ? priceResult.getCode() : null,
-                    priceResult != null ? priceResult.getMessage() : null,
-                    priceResult != null ? priceResult.getData() : null);
+    private Result<Boolean> confirmOrderStock(String orderNo, List<StockReserveItemDTO> stockItems,
+                                              List<StockReserveItemDTO> confirmed) {
+        for (StockReserveItemDTO item : stockItems) {
+            Result<Boolean> confirmResult = showFeignClient.confirmStockFromDatabase(item.getTicketId(), item.getQuantity());
+            if (!confirmResult.getCode().equals(200) || !Boolean.TRUE.equals(confirmResult.getData())) {
+                if (!confirmed.isEmpty()) {
+                    log.warn("多票档订单部分票档库存已确认，订单号: {}, 已确认: {}", orderNo, confirmed);
+                }
+                return confirmResult;
+            }
+            confirmed.add(item);
+        }
+        return Result.success(true);
+    }
+
+    /**
+     * 支付后库存确认失败时恢复订单：撤销已确认票档的库存确认，回滚仍处于锁定状态票档的Redis库存，订单恢复为待支付。
+     * 撤销失败的票档已计为售出，不回滚其Redis库存，记录补偿人工处理，避免超卖。
+     */
+    private void revertPayment(Order order, List<StockReserveItemDTO> stockItems, List<StockReserveItemDTO> confirmed) {
+        String orderNo = order.getOrderNo();
+        List<StockReserveItemDTO> stillSold = new ArrayList<>();
+        for (StockReserveItemDTO item : confirmed) {
+            boolean reverted = false;
+            String error = null;
             try {
-                Thread.sleep(50L * (i + 1));
-            } catch (InterruptedException ignored) {
-                Thread.currentThread().interrupt();
+                Result<Boolean> unconfirmResult = showFeignClient.unconfirmStock(item.getTicketId(), item.getQuantity());
+                reverted = unconfirmResult.getCode().equals(200) && Boolean.TRUE.equals(unconfirmResult.getData());
+                error = unconfirmResult.getMessage();
+            } catch (Exception e) {
+                error = e.getMessage();
+                log.error("撤销库存确认异常，订单号: {}, 票档ID: {}, 数量: {}", orderNo, item.getTicketId(), item.getQuantity(), e);
+            }
+            if (!reverted) {
+                log.error("撤销库存确认失败，订单号: {}, 票档ID: {}, 数量: {}, 错误: {}",
+                        orderNo, item.getTicketId(), item.getQuantity(), error);
+                stillSold.add(item);
+                compensationService.recordCompensationFailure(orderNo, item.getTicketId(), item.getQuantity(),
+                        "UNCONFIRM_AFTER_PAY_FAILED", error);
+            }
+        }
+        
+        List<StockReserveItemDTO> rollbackItems = stockItems.stream()
+                .filter(item -> !stillSold.contains(item))
+                .collect(Collectors.toList());
+        if (!rollbackItems.isEmpty()) {
+            try {
+                Result<Boolean> rollbackResult = rollbackOrderStock(orderNo, rollbackItems);
+                if (!rollbackResult.getCode().equals(200) || !Boolean.TRUE.equals(rollbackResult.getData())) {
+                    log.error("回滚Redis库存失败，订单号: {}, 票档: {}, 错误: {}", orderNo, rollbackItems, rollbackResult.getMessage());
+                } else {
+                    log.info("回滚Redis库存成功，订单号: {}, 票档: {}", orderNo, rollbackItems);
+                }
+            } catch (Exception rollbackEx) {
+                log.error("回滚Redis库存异常，订单号: {}, 票档: {}", orderNo, rollbackItems, rollbackEx);
             }
         }
-        return null;
+        
+        // 回滚订单状态，仅当订单仍为本次支付设置的已支付状态时恢复为待支付
+        order.setStatus(0);
+        if (!updateStatusFrom(order, 1)) {
+            log.warn("订单状态已变化，未恢复为待支付，订单号: {}", orderNo);
+        }
+    }
+
+    /**
+     * 回滚订单各票档的Redis库存，多票档订单一次调用完成
+     */
+    private Result<Boolean> rollbackOrderStock(String orderNo, List<StockReserveItemDTO> stockItems) {
+        if (stockItems.size() == 1) {
+            return showFeignClient.rollbackStockToRedis(stockItems.get(0).getTicketId(), stockItems.get(0).getQuantity());
+        }
+        Result<List<StockReserveItemDTO>> rollbackResult = showFeignClient.rollbackStocksToRedis(stockItems, orderNo);
+        if (rollbackResult == null || !Integer.valueOf(200).equals(rollbackResult.getCode()) || rollbackResult.getData() == null) {
+            return Result.fail(rollbackResult != null ? rollbackResult.getMessage() : "回滚服务无响应");
+        }
+        List<StockReserveItemDTO> failedItems = rollbackResult.getData().stream()
+                .filter(item -> !Integer.valueOf(1).equals(item.getResult()))
+                .collect(Collectors.toList());
+        if (!failedItems.isEmpty()) {
+            return Result.fail("部分票档回滚失败: " + failedItems);
+        }
+        return Result.success(true);
+    }
+
+    /**
+     * 仅当订单仍处于指定状态时更新订单，返回是否由本次调用完成状态转换
+     */
+    private boolean updateStatusFrom(Order order, int expectedStatus) {
+        LambdaUpdateWrapper<Order> updateWrapper = new LambdaUpdateWrapper<>();
+        updateWrapper.eq(Order::getId, order.getId())
+                .eq(Order::getStatus, expectedStatus);
+        return baseMapper.update(order, updateWrapper) == 1;
+    }
+
+    /**
+     * 解锁订单各票档的数据库锁定库存，失败只记录日志
+     */
+    private void unlockOrderStock(String orderNo, List<StockReserveItemDTO> stockItems) {
+        for (StockReserveItemDTO item : stockItems) {
+            try {
+                Result<Boolean> unlockResult = showFeignClient.unlockTicketStock(item.getTicketId(), item.getQuantity());
+                if (!unlockResult.getCode().equals(200) || !Boolean.TRUE.equals(unlockResult.getData())) {
+                    log.error("数据库库存解锁失败，订单号: {}, 票档ID: {}, 数量: {}, 错误: {}",
+                            orderNo, item.getTicketId(), item.getQuantity(), unlockResult.getMessage());
+                }
+            } catch (Exception e) {
+                log.error("数据库库存解锁异常，订单号: {}, 票档ID: {}, 数量: {}", orderNo, item.getTicketId(), item.getQuantity(), e);
+            }
+        }
+    }
+
+    /**
+     * 释放多票档下单预留，失败时按票档记录补偿
+     */
+    private void releaseItemsReservation(MultiOrderReserveRequestDTO request) {
+        String error;
+        try {
+            Result<Boolean> releaseResult = showFeignClient.releaseItemsReservation(request);
+            if (releaseResult != null && Integer.valueOf(200).equals(releaseResult.getCode())
+                    && Boolean.TRUE.equals(releaseResult.getData())) {
+                log.info("多票档下单预留已释放，订单号: {}", request.getOrderNo());
+                return;
+            }
+            error = releaseResult != null ? releaseResult.getMessage() : "释放服务无响应";
+            log.error("释放多票档下单预留失败，订单号: {}, 错误: {}", request.getOrderNo(), error);
+        } catch (Exception e) {
+            error = e.getMessage();
+            log.error("释放多票档下单预留异常，订单号: {}", request.getOrderNo(), e);
+        }
+        for (StockReserveItemDTO item : request.getItems()) {
+            compensationService.recordCompensationFailure(request.getOrderNo(), item.getTicketId(),
+                    item.getQuantity(), "RELEASE_RESERVATION", error);
+        }
+    }
+
+    /**
+     * 是否为按时段预约座位的订单
+     */
+    private boolean hasBookingWindow(Order order) {
+        return order.getSeatId() != null && order.getBookingDate() != null && order.getBookingEndTime() != null;
+    }
+
+    /**
+     * 确认订单的座位预约时段
+     */
+    private boolean confirmSeatSlots(Order order) {
+        try {
+            Result<Boolean> result = showFeignClient.confirmSeatSlots(order.getSeatId(), order.getUserId(),
+                    order.getBookingDate().toString(), order.getBookingEndTime().toString());
+            if (result != null && result.getCode().equals(200) && Boolean.TRUE.equals(result.getData())) {
+                return true;
+            }
+            log.warn("确认座位时段失败，订单号: {}, 座位ID: {}, 错误: {}", order.getOrderNo(), order.getSeatId(),
+                    result != null ? result.getMessage() : "确认服务调用失败");
+        } catch (Exception e) {
+            log.error("确认座位时段异常，订单号: {}, 座位ID: {}", order.getOrderNo(), order.getSeatId(), e);
+        }
+        return false;
+    }
+
+    /**
+     * 释放订单占用的座位时段，失败时未确认的占用到期后自动失效
+     */
+    private void releaseSeatSlots(Order order) {
+        if (!hasBookingWindow(order)) {
+            return;
+        }
+        try {
+            Result<Boolean> result = showFeignClient.releaseSeatSlots(order.getSeatId(), order.getUserId(),
+                    order.getBookingDate().toString(), order.getBookingEndTime().toString());
+            if (result == null || !result.getCode().equals(200)) {
+                log.warn("释放座位时段失败，订单号: {}, 座位ID: {}", order.getOrderNo(), order.getSeatId());
+            }
+        } catch (Exception e) {
+            log.warn("释放座位时段异常，订单号: {}, 座位ID: {}", order.getOrderNo(), order.getSeatId(), e);
+        }
+    }
+
+    /**
+     * 解析预约时间（"yyyy-MM-dd HH:mm:ss"或ISO格式），失败返回null
+     */
+    private LocalDateTime parseBookingTime(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(value.replace(" ", "T"));
+        } catch (Exception e) {
+            log.warn("预约时间格式转换失败: {}", value, e);
+            return null;
+        }
     }
 
     /**
@@ -7,11 +7,15 @@ import com.ticketsystem.order.mapper.SeatLockMapper;
 import com.ticketsystem.order.service.SeatLockService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
 
 /**
@@ -24,36 +28,13 @@ public class SeatLockServiceImpl implements SeatLockService {
     @Autowired
     private SeatLockMapper seatLockMapper;
 
+    @Value("${app.order.seat-lock.clean-batch-size:500}")
+    private int cleanBatchSize;
+
     @Override
     @Transactional
     public boolean lockSeat(Long seatId, Long sessionId, Long venueId, Long userId, Integer lockType, Integer expireMinutes) {
-        try {
-            // 检查座位是否已被锁定
-            if (!isSeatAvailable(seatId, sessionId)) {
-                log.warn("座位已被锁定，seatId: {}, sessionId: {}", seatId, sessionId);
-                return false;
-            }
-
-            LocalDateTime now = LocalDateTime.now();
-            LocalDateTime expireTime = now.plusMinutes(expireMinutes);
-
-            SeatLock seatLock = new SeatLock()
-                    .setSeatId(seatId)
-                    .setSessionId(sessionId)
-                    .setVenueId(venueId)
-                    .setUserId(userId)
-                    .setLockType(lockType)
-                    .setLockTime(now)
-                    .setExpireTime(expireTime)
-                    .setStatus(SeatLock.Status.LOCKING.getCode());
-
-            int result = seatLockMapper.insert(seatLock);
-            log.info("座位锁定成功，seatId: {}, sessionId: {}, userId: {}", seatId, sessionId, userId);
-            return result > 0;
-        } catch (Exception e) {
-            log.error("座位锁定失败，seatId: {}, sessionId: {}, userId: {}", seatId, sessionId, userId, e);
-            return false;
-        }
+        return !batchLockSeats(Collections.singletonList(seatId), sessionId, venueId, userId, lockType, expireMinutes).isEmpty();
     }
 
     @Override
@@ -98,36 +79,67 @@ public class SeatLockServiceImpl implements SeatLockService {
         }
     }
 
+    /**
+     * 一条多行INSERT锁定全部座位，由唯一键 (seat_id, session_id, active) 保证同一座位只有一条有效锁定；
+     * 任一座位冲突时整条语句不插入任何行，返回空列表，冲突的座位ID记录在日志中
+     */
     @Override
     @Transactional
     public List<Long> batchLockSeats(List<Long> seatIds, Long sessionId, Long venueId, Long userId, Integer lockType, Integer expireMinutes) {
-        List<Long> successSeatIds = new ArrayList<>();
-        
-        for (Long seatId : seatIds) {
-            if (lockSeat(seatId, sessionId, venueId, userId, lockType, expireMinutes)) {
-                successSeatIds.add(seatId);
-            }
+        List<Long> distinctSeatIds = new ArrayList<>(new LinkedHashSet<>(seatIds));
+        if (distinctSeatIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime expireTime = now.plusMinutes(expireMinutes);
+        List<SeatLock> locks = new ArrayList<>(distinctSeatIds.size());
+        for (Long seatId : distinctSeatIds) {
+            locks.add(new SeatLock()
+                    .setSeatId(seatId)
+                    .setSessionId(sessionId)
+                    .setVenueId(venueId)
+                    .setUserId(userId)
+                    .setLockType(lockType)
+                    .setLockTime(now)
+                    .setExpireTime(expireTime)
+                    .setStatus(SeatLock.Status.LOCKING.getCode()));
         }
-        
-        log.info("批量锁定座位完成，总数: {}, 成功: {}, sessionId: {}, userId: {}", 
-                seatIds.size(), successSeatIds.size(), sessionId, userId);
-        return successSeatIds;
+
+        try {
+            // 已过期但尚未清理的锁定仍占用唯一键，先释放
+            seatLockMapper.releaseExpiredBySeatIds(distinctSeatIds, sessionId);
+            seatLockMapper.insertBatch(locks);
+        } catch (DuplicateKeyException e) {
+            List<Long> conflicts = seatLockMapper.selectActiveSeatIds(distinctSeatIds, sessionId);
+            log.warn("座位已被锁定，批量锁定失败，冲突座位: {}, sessionId: {}, userId: {}", conflicts, sessionId, userId);
+            return Collections.emptyList();
+        } catch (Exception e) {
+            log.error("批量锁定座位失败，seatIds: {}, sessionId: {}, userId: {}", distinctSeatIds, sessionId, userId, e);
+            return Collections.emptyList();
+        }
+
+        log.info("批量锁定座位成功，seatIds: {}, sessionId: {}, userId: {}", distinctSeatIds, sessionId, userId);
+        return distinctSeatIds;
     }
 
     @Override
     @Transactional
     public boolean batchReleaseSeatLock(List<Long> seatIds, Long sessionId, Long userId) {
-        boolean allSuccess = true;
-        
-        for (Long seatId : seatIds) {
-            if (!releaseSeatLock(seatId, sessionId, userId)) {
-                allSuccess = false;
-            }
+        List<Long> distinctSeatIds = new ArrayList<>(new LinkedHashSet<>(seatIds));
+        if (distinctSeatIds.isEmpty()) {
+            return true;
+        }
+        try {
+            int result = seatLockMapper.releaseBySeatIds(distinctSeatIds, sessionId, userId);
+            boolean allSuccess = result == distinctSeatIds.size();
+            log.info("批量释放座位锁定完成，总数: {}, 释放: {}, sessionId: {}, userId: {}",
+                    distinctSeatIds.size(), result, sessionId, userId);
+            return allSuccess;
+        } catch (Exception e) {
+            log.error("批量释放座位锁定失败，seatIds: {}, sessionId: {}, userId: {}", distinctSeatIds, sessionId, userId, e);
+            return false;
         }
-        
-        log.info("批量释放座位锁定完成，总数: {}, 全部成功: {}, sessionId: {}, userId: {}", 
-                seatIds.size(), allSuccess, sessionId, userId);
-        return allSuccess;
     }
 
     @Override
@@ -154,23 +166,23 @@ public class SeatLockServiceImpl implements SeatLockService {
         return seatLockMapper.selectList(queryWrapper);
     }
 
+    /**
+     * 按批释放过期锁定，每批一条带LIMIT的UPDATE并单独提交，避免长事务和大范围行锁
+     */
     @Override
-    @Transactional
     public int cleanExpiredLocks() {
+        int total = 0;
         try {
-            LambdaUpdateWrapper<SeatLock> updateWrapper = new LambdaUpdateWrapper<>();
-            updateWrapper.eq(SeatLock::getStatus, SeatLock.Status.LOCKING.getCode())
-                    .lt(SeatLock::getExpireTime, LocalDateTime.now())
-                    .set(SeatLock::getStatus, SeatLock.Status.RELEASED.getCode())
-                    .set(SeatLock::getUpdateTime, LocalDateTime.now());
-
-            int result = seatLockMapper.update(null, updateWrapper);
-            log.info("清理过期座位锁定完成，清理数量: {}", result);
-            return result;
+            int released;
+            do {
+                released = seatLockMapper.releaseExpiredChunk(cleanBatchSize);
+                total += released;
+            } while (released >= cleanBatchSize);
+            log.info("清理过期座位锁定完成，清理数量: {}", total);
         } catch (Exception e) {
-            log.error("清理过期座位锁定失败", e);
-            return 0;
+            log.error("清理过期座位锁定失败，已清理数量: {}", total, e);
         }
+        return total;
     }
 
     @Override
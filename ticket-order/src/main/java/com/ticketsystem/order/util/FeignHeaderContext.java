@@ -0,0 +1,69 @@
+package com.ticketsystem.order.util;
+
+import org.springframework.web.context.request.RequestAttributes;
+import org.springframework.web.context.request.RequestContextHolder;
+import org.springframework.web.context.request.ServletRequestAttributes;
+
+import javax.servlet.http.HttpServletRequest;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Feign请求头上下文，保存需要传递给下游服务的请求头
+ * 在请求线程上复制出不可变的请求头值交给查询线程，查询线程不持有请求对象，请求结束后不会再读取已回收的请求
+ */
+public class FeignHeaderContext {
+
+    /**
+     * 需要传递给下游服务的请求头：用户ID和认证信息
+     */
+    private static final List<String> PROPAGATED_HEADERS = List.of("user-id", "authorization");
+
+    private static final ThreadLocal<Map<String, String>> HEADERS = new ThreadLocal<>();
+
+    /**
+     * 获取当前线程需要传递的请求头：已设置上下文时取上下文，否则从当前请求复制
+     * @return 不可变的请求头，无请求时为空
+     */
+    public static Map<String, String> capture() {
+        Map<String, String> headers = HEADERS.get();
+        if (headers != null) {
+            return headers;
+        }
+        RequestAttributes attributes = RequestContextHolder.getRequestAttributes();
+        if (!(attributes instanceof ServletRequestAttributes)) {
+            return Collections.emptyMap();
+        }
+        HttpServletRequest request = ((ServletRequestAttributes) attributes).getRequest();
+        Map<String, String> copied = new HashMap<>();
+        for (String name : PROPAGATED_HEADERS) {
+            String value = request.getHeader(name);
+            if (value != null) {
+                copied.put(name, value);
+            }
+        }
+        return Collections.unmodifiableMap(copied);
+    }
+
+    /**
+     * 获取当前线程设置的请求头上下文
+     * @return 请求头，未设置时为null
+     */
+    public static Map<String, String> get() {
+        return HEADERS.get();
+    }
+
+    /**
+     * 设置当前线程的请求头上下文，为null时清除
+     * @param headers 请求头
+     */
+    public static void set(Map<String, String> headers) {
+        if (headers == null) {
+            HEADERS.remove();
+        } else {
+            HEADERS.set(headers);
+        }
+    }
+}
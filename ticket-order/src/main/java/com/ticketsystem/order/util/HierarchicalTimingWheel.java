@@ -0,0 +1,114 @@
+package com.ticketsystem.order.util;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分层时间轮
+ * 第0层每格tickMs，第i层每格为第i-1层一整圈；到期时间超出低层范围的任务放在高层，
+ * 高层格子到点后把任务重新放入低层，直到在第0层到期。
+ * 第0层按到期时间向上取整落格，任务不会早于到期时间触发。
+ * 非线程安全的操作均已加锁，由调用方周期性调用advance推进。
+ *
+ * @param <T> 任务标识
+ */
+public class HierarchicalTimingWheel<T> {
+
+    private final long tickMs;
+    private final int wheelSize;
+    private final long[] tickMsOfLevel;
+    private final List<List<Map<T, Long>>> levels;
+
+    // 当前时间，为tickMs的整数倍
+    private long currentTime;
+
+    private int size;
+
+    public HierarchicalTimingWheel(long tickMs, int wheelSize, int levelCount, long startMs) {
+        if (tickMs <= 0 || wheelSize <= 1 || levelCount <= 0) {
+            throw new IllegalArgumentException("时间轮参数不合法");
+        }
+        this.tickMs = tickMs;
+        this.wheelSize = wheelSize;
+        this.tickMsOfLevel = new long[levelCount];
+        this.levels = new ArrayList<>(levelCount);
+        long levelTick = tickMs;
+        for (int i = 0; i < levelCount; i++) {
+            tickMsOfLevel[i] = levelTick;
+            List<Map<T, Long>> buckets = new ArrayList<>(wheelSize);
+            for (int j = 0; j < wheelSize; j++) {
+                buckets.add(new HashMap<>());
+            }
+            levels.add(buckets);
+            levelTick *= wheelSize;
+        }
+        this.currentTime = startMs - startMs % tickMs;
+    }
+
+    /**
+     * 添加任务
+     * @return true-已放入时间轮；false-已到期或超出时间轮范围，由调用方自行处理
+     */
+    public synchronized boolean add(T item, long expireAt) {
+        if (expireAt <= currentTime) {
+            return false;
+        }
+        for (int i = 0; i < tickMsOfLevel.length; i++) {
+            long levelTick = tickMsOfLevel[i];
+            if (expireAt - currentTime < levelTick * wheelSize) {
+                // 第0层向上取整，保证不提前触发；高层向下取整，到点后降级
+                long slot = i == 0 ? (expireAt + levelTick - 1) / levelTick : expireAt / levelTick;
+                levels.get(i).get((int) (slot % wheelSize)).put(item, expireAt);
+                size++;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 推进到指定时间，返回期间到期的任务
+     */
+    public synchronized List<T> advance(long now) {
+        List<T> expired = new ArrayList<>();
+        while (currentTime + tickMs <= now) {
+            currentTime += tickMs;
+            // 先从高层降级，降到当前格的任务在本次一并触发
+            for (int i = tickMsOfLevel.length - 1; i >= 0; i--) {
+                long levelTick = tickMsOfLevel[i];
+                if (currentTime % levelTick != 0) {
+                    continue;
+                }
+                Map<T, Long> bucket = levels.get(i).get((int) ((currentTime / levelTick) % wheelSize));
+                if (bucket.isEmpty()) {
+                    continue;
+                }
+                Map<T, Long> drained = new HashMap<>(bucket);
+                bucket.clear();
+                size -= drained.size();
+                drained.forEach((item, expireAt) -> {
+                    if (!add(item, expireAt)) {
+                        expired.add(item);
+                    }
+                });
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * 时间轮中的任务数
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * 时间轮可容纳的最远到期时间跨度（毫秒）
+     */
+    public long getSpanMs() {
+        return tickMsOfLevel[tickMsOfLevel.length - 1] * wheelSize;
+    }
+}
@@ -0,0 +1,23 @@
+-- 认领指定的到期订单Lua脚本
+-- 功能：只认领仍在队列中且已到期的订单，认领后把分数改为租约到期时间，
+--       处理节点宕机时租约到期后可被重新认领
+-- 参数：
+--   KEYS[1]: 订单过期队列（有序集合，分数为到期时间毫秒）
+--   ARGV[1]: 当前时间（毫秒）
+--   ARGV[2]: 租约到期时间（毫秒）
+--   ARGV[3..n]: 订单号
+-- 返回值：本次认领成功的订单号列表
+
+local now = tonumber(ARGV[1])
+local leaseUntil = tonumber(ARGV[2])
+local claimed = {}
+
+for i = 3, #ARGV do
+    local score = redis.call('ZSCORE', KEYS[1], ARGV[i])
+    if score and tonumber(score) <= now then
+        redis.call('ZADD', KEYS[1], leaseUntil, ARGV[i])
+        claimed[#claimed + 1] = ARGV[i]
+    end
+end
+
+return claimed
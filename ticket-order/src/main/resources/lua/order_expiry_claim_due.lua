@@ -0,0 +1,16 @@
+-- 批量认领到期订单Lua脚本
+-- 功能：按到期时间顺序认领一批已到期的订单，认领后把分数改为租约到期时间
+-- 参数：
+--   KEYS[1]: 订单过期队列（有序集合，分数为到期时间毫秒）
+--   ARGV[1]: 到期时间上限（毫秒）
+--   ARGV[2]: 租约到期时间（毫秒）
+--   ARGV[3]: 本批最大数量
+-- 返回值：本次认领成功的订单号列表
+
+local members = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, tonumber(ARGV[3]))
+
+for i = 1, #members do
+    redis.call('ZADD', KEYS[1], ARGV[2], members[i])
+end
+
+return members
@@ -0,0 +1,127 @@
+package com.ticketsystem.order.service;
+
+import com.ticketsystem.common.script.LuaScriptRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.redisson.api.RScoredSortedSet;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 订单超时取消服务单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+class OrderExpiryServiceTest {
+
+    @Mock
+    private RedissonClient redissonClient;
+
+    @Mock
+    private LuaScriptRegistry luaScriptRegistry;
+
+    @Mock
+    private OrderService orderService;
+
+    @Mock
+    private RScoredSortedSet<Object> queue;
+
+    private OrderExpiryService orderExpiryService;
+
+    @BeforeEach
+    void setUp() {
+        orderExpiryService = new OrderExpiryService(redissonClient, luaScriptRegistry, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(orderExpiryService, "orderService", orderService);
+        ReflectionTestUtils.setField(orderExpiryService, "tickMs", 1000L);
+        ReflectionTestUtils.setField(orderExpiryService, "wheelSize", 60);
+        ReflectionTestUtils.setField(orderExpiryService, "batchSize", 2);
+        ReflectionTestUtils.setField(orderExpiryService, "leaseSeconds", 60);
+        ReflectionTestUtils.setField(orderExpiryService, "rescueGraceSeconds", 10);
+        // 不启动时间轮线程，直接调用认领和补偿扫描
+        ReflectionTestUtils.setField(orderExpiryService, "enabled", false);
+        orderExpiryService.init();
+        ReflectionTestUtils.setField(orderExpiryService, "enabled", true);
+    }
+
+    @Test
+    void testClaimMovesScoreToLeaseExpiry() {
+        AtomicReference<Object[]> args = new AtomicReference<>();
+        when(luaScriptRegistry.<List<String>>eval(eq("order.expiry.claim"), eq(RScript.Mode.READ_WRITE),
+                eq(RScript.ReturnType.MULTI), any(List.class), any(Object[].class))).thenAnswer(invocation -> {
+                    args.set(invocation.getArguments());
+                    return Collections.singletonList("A");
+                });
+
+        long before = System.currentTimeMillis();
+        List<String> claimed = ReflectionTestUtils.invokeMethod(orderExpiryService, "claim", Arrays.asList("A", "B"));
+
+        // 只返回脚本认领成功的订单，B已被其他节点认领或已移出
+        assertEquals(Collections.singletonList("A"), claimed);
+        Object[] invocationArgs = args.get();
+        long now = Long.parseLong(String.valueOf(invocationArgs[4]));
+        long leaseUntil = Long.parseLong(String.valueOf(invocationArgs[5]));
+        assertTrue(now >= before);
+        assertEquals(now + 60_000L, leaseUntil);
+        assertEquals("A", invocationArgs[6]);
+        assertEquals("B", invocationArgs[7]);
+    }
+
+    @Test
+    void testRescueCancelsClaimedOrdersAndRemovesThem() {
+        doReturn(queue).when(redissonClient).getScoredSortedSet(anyString(), any());
+        AtomicReference<Object[]> args = new AtomicReference<>();
+        when(luaScriptRegistry.<List<String>>eval(eq("order.expiry.claim.due"), eq(RScript.Mode.READ_WRITE),
+                eq(RScript.ReturnType.MULTI), any(List.class), any(Object[].class))).thenAnswer(invocation -> {
+                    args.set(invocation.getArguments());
+                    return Collections.singletonList("A");
+                });
+        when(orderService.cancelOrder("A")).thenReturn(true);
+
+        long before = System.currentTimeMillis();
+        orderExpiryService.rescueOverdueOrders();
+
+        verify(orderService).cancelOrder("A");
+        verify(queue).removeAll(Collections.singletonList("A"));
+        // 只认领超过宽限期的订单，认领后租约为当前时间加租约时长
+        Object[] invocationArgs = args.get();
+        long maxExpireAt = Long.parseLong(String.valueOf(invocationArgs[4]));
+        long leaseUntil = Long.parseLong(String.valueOf(invocationArgs[5]));
+        assertTrue(maxExpireAt <= System.currentTimeMillis() - 10_000L);
+        assertTrue(leaseUntil >= before + 60_000L);
+        assertEquals("2", invocationArgs[6]);
+    }
+
+    @Test
+    void testRescueKeepsFailedOrdersForLeaseRetryAndDrainsFullBatches() {
+        doReturn(queue).when(redissonClient).getScoredSortedSet(anyString(), any());
+        when(luaScriptRegistry.<List<String>>eval(eq("order.expiry.claim.due"), eq(RScript.Mode.READ_WRITE),
+                eq(RScript.ReturnType.MULTI), any(List.class), any(Object[].class)))
+                .thenReturn(Arrays.asList("A", "B"), Collections.singletonList("C"));
+        when(orderService.cancelOrder("A")).thenReturn(true);
+        when(orderService.cancelOrder("B")).thenThrow(new RuntimeException("db down"));
+        when(orderService.cancelOrder("C")).thenReturn(false);
+
+        orderExpiryService.rescueOverdueOrders();
+
+        // 第一批已满继续认领下一批
+        verify(luaScriptRegistry, times(2)).eval(eq("order.expiry.claim.due"), eq(RScript.Mode.READ_WRITE),
+                eq(RScript.ReturnType.MULTI), any(List.class), any(Object[].class));
+        // 取消失败的B留在队列中，租约到期后重新认领；已非待支付的C直接移出
+        verify(queue).removeAll(Collections.singletonList("A"));
+        verify(queue).removeAll(Collections.singletonList("C"));
+        verify(queue, never()).removeAll(argThat(orders -> orders.contains("B")));
+    }
+}
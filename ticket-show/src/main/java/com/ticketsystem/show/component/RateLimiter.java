@@ -1,11 +1,12 @@
 package com.ticketsystem.show.component;
 
+import com.ticketsystem.common.script.LuaScriptRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RScript;
-import org.redisson.api.RedissonClient;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
 import java.util.Collections;
 import java.util.List;
 
@@ -17,7 +18,7 @@ import java.util.List;
 @Slf4j
 public class RateLimiter {
 
-    private final RedissonClient redissonClient;
+    private final LuaScriptRegistry luaScriptRegistry;
     
     private static final String RATE_LIMITER_SCRIPT = 
             "local key = KEYS[1] " +
@@ -32,6 +33,14 @@ public class RateLimiter {
             "    return 1 " +
             "end";
     
+    // 脚本注册名
+    private static final String SCRIPT_RATE_LIMITER = "rate-limiter.acquire";
+    
+    @PostConstruct
+    public void init() {
+        luaScriptRegistry.register(SCRIPT_RATE_LIMITER, RATE_LIMITER_SCRIPT);
+    }
+    
     /**
      * 尝试获取令牌
      * @param key 限流key
@@ -44,8 +53,8 @@ public class RateLimiter {
             List<Object> keys = Collections.singletonList(key);
             Object[] args = {String.valueOf(limit), String.valueOf(expire)};
             
-            Long result = redissonClient.getScript()
-                    .eval(RScript.Mode.READ_WRITE, RATE_LIMITER_SCRIPT, RScript.ReturnType.INTEGER, keys, args);
+            Long result = luaScriptRegistry
+                    .eval(SCRIPT_RATE_LIMITER, RScript.Mode.READ_WRITE, RScript.ReturnType.INTEGER, keys, args);
             
             return result != null && result == 1L;
         } catch (Exception e) {
@@ -22,10 +22,10 @@ public class SeatConsistencyScheduler {
     private final SeatConsistencyService seatConsistencyService;
 
     /**
-     * 每分钟清理一次过期的座位锁定
-     * 防止死锁和数据不一致
+     * 全表清理过期的座位锁定，兜底处理未进入锁过期队列的座位
+     * 正常的过期释放由SeatLockExpiryService按队列完成
      */
-    @Scheduled(fixedRate = 60000) // 60秒
+    @Scheduled(fixedRateString = "${seat.expiry.sweep-interval-ms:1800000}") // 默认30分钟
     public void cleanupExpiredLocks() {
         try {
             log.debug("开始执行过期锁定清理任务");
@@ -1,7 +1,7 @@
 package com.ticketsystem.show.controller;
 
 import com.ticketsystem.show.service.AtomicSeatLockService;
-import com.ticketsystem.show.service.AtomicTicketStockService;
+import com.ticketsystem.show.service.StockEngine;
 import com.ticketsystem.show.service.DataSyncService;
 import io.swagger.v3.oas.annotations.Operation;
 import lombok.RequiredArgsConstructor;
@@ -24,7 +24,7 @@ import java.util.Map;
 public class AtomicTestController {
 
     private final AtomicSeatLockService atomicSeatLockService;
-    private final AtomicTicketStockService atomicTicketStockService;
+    private final StockEngine stockEngine;
     private final DataSyncService dataSyncService;
     private final RedissonClient redissonClient;
 
@@ -40,7 +40,7 @@ public class AtomicTestController {
             
             // 检查服务注入
             result.put("atomicSeatLockService", atomicSeatLockService != null);
-            result.put("atomicTicketStockService", atomicTicketStockService != null);
+            result.put("stockEngine", stockEngine != null);
             result.put("dataSyncService", dataSyncService != null);
             
             // 测试Redis操作
@@ -109,12 +109,12 @@ public class AtomicTestController {
             Integer quantity = 1;
             
             // 测试库存扣减
-            boolean deductResult = atomicTicketStockService.atomicDeductStock(ticketId, quantity);
+            boolean deductResult = stockEngine.predeductStock(ticketId, quantity) == 1;
             result.put("deductResult", deductResult);
             
             if (deductResult) {
                 // 测试库存回滚
-                boolean rollbackResult = atomicTicketStockService.atomicRollbackStock(ticketId, quantity);
+                boolean rollbackResult = stockEngine.rollbackStock(ticketId, quantity) == 1;
                 result.put("rollbackResult", rollbackResult);
             }
             
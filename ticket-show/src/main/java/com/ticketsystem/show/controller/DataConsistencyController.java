@@ -1,6 +1,7 @@
 package com.ticketsystem.show.controller;
 
 import com.ticketsystem.common.result.Result;
+import com.ticketsystem.show.dto.StockReconcileReport;
 import com.ticketsystem.show.service.DataConsistencyService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
@@ -51,4 +52,10 @@ public class DataConsistencyController {
         Integer repairedCount = dataConsistencyService.repairAllStockConsistency();
         return Result.success(repairedCount);
     }
+
+    @GetMapping("/stock/reconcile/progress")
+    @Operation(summary = "查询批量对账进度与不一致明细")
+    public Result<StockReconcileReport> getReconcileProgress() {
+        return Result.success(dataConsistencyService.getReconcileProgress());
+    }
 }
\ No newline at end of file
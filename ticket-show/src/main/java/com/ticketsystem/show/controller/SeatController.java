@@ -1,18 +1,27 @@
 package com.ticketsystem.show.controller;
 
+import com.ticketsystem.common.exception.BusinessException;
 import com.ticketsystem.common.result.Result;
+import com.ticketsystem.show.dto.SeatAllocateRequest;
 import com.ticketsystem.show.dto.SeatLockRequest;
+import com.ticketsystem.show.service.SeatAllocationService;
+import com.ticketsystem.show.service.SeatPushService;
 import com.ticketsystem.show.service.SeatService;
+import com.ticketsystem.show.service.SeatTimeSlotService;
 import com.ticketsystem.show.vo.SeatAreaVO;
 import com.ticketsystem.show.vo.SeatLayoutVO;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.tags.Tag;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
 import javax.servlet.http.HttpServletRequest;
 import javax.validation.Valid;
+import java.time.LocalDateTime;
 import java.util.List;
 
 /**
@@ -26,6 +35,9 @@ import java.util.List;
 public class SeatController {
 
     private final SeatService seatService;
+    private final SeatTimeSlotService seatTimeSlotService;
+    private final SeatPushService seatPushService;
+    private final SeatAllocationService seatAllocationService;
 
     @GetMapping("/areas")
     @Operation(summary = "根据机位类型获取可选座位区域")
@@ -44,18 +56,39 @@ public class SeatController {
             @PathVariable Long areaId,
             @RequestParam Long showId,
             @RequestParam Long sessionId,
-            HttpServletRequest request) {
+            @RequestParam(required = false) Long sinceVersion,
+            HttpServletRequest request,
+            WebRequest webRequest) {
         
         // 获取当前用户ID
         Long currentUserId = getCurrentUserId(request);
         
-        log.info("获取座位布局，区域ID: {}, 演出ID: {}, 场次ID: {}, 用户ID: {}", 
-                 areaId, showId, sessionId, currentUserId);
+        log.info("获取座位布局，区域ID: {}, 演出ID: {}, 场次ID: {}, 用户ID: {}, 起始版本: {}", 
+                 areaId, showId, sessionId, currentUserId, sinceVersion);
         
-        SeatLayoutVO layout = seatService.getSeatLayout(areaId, showId, sessionId, currentUserId);
+        SeatLayoutVO layout = seatService.getSeatLayout(areaId, showId, sessionId, currentUserId, sinceVersion);
+        
+        // 完整布局按版本号和用户生成ETag（lockedByCurrentUser因用户而异），版本未变时返回304
+        if (layout.getVersion() != null && !Boolean.TRUE.equals(layout.getDelta())) {
+            String etag = "W/\"" + areaId + "-" + layout.getVersion() + "-" + currentUserId + "\"";
+            if (webRequest.checkNotModified(etag)) {
+                return null;
+            }
+        }
         return Result.success(layout);
     }
 
+    @GetMapping(value = "/stream/{areaId}", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    @Operation(summary = "订阅座位区域状态变化推送（SSE），sinceVersion为已持有的布局版本号")
+    public SseEmitter streamSeatStatus(
+            @PathVariable Long areaId,
+            @RequestParam(required = false) Long sinceVersion) {
+        
+        log.info("订阅座位状态推送，区域ID: {}, 起始版本: {}", areaId, sinceVersion);
+        
+        return seatPushService.subscribe(areaId, sinceVersion);
+    }
+
     @PostMapping("/lock")
     @Operation(summary = "锁定选中的座位")
     public Result<Boolean> lockSeats(
@@ -75,6 +108,25 @@ public class SeatController {
         }
     }
 
+    @PostMapping("/allocate")
+    @Operation(summary = "自动分配并锁定相邻的最佳座位")
+    public Result<List<Long>> allocateSeats(
+            @RequestBody @Valid SeatAllocateRequest request,
+            HttpServletRequest httpRequest) {
+        
+        Long userId = getCurrentUserId(httpRequest);
+        
+        log.info("自动选座，用户ID: {}, 区域ID: {}, 数量: {}", userId, request.getAreaId(), request.getCount());
+        
+        List<Long> seatIds = seatAllocationService.allocate(request.getAreaId(), request.getCount(), userId);
+        
+        if (!seatIds.isEmpty()) {
+            return Result.success("座位锁定成功", seatIds);
+        } else {
+            return Result.fail("没有足够的相邻空闲座位");
+        }
+    }
+
     /**
      * 单个座位锁定接口（供订单服务调用）
      */
@@ -126,6 +178,89 @@ public class SeatController {
         return Result.success(success);
     }
 
+    @GetMapping("/slots/free-seats")
+    @Operation(summary = "查询区域内指定时段空闲的座位")
+    public Result<List<Long>> getFreeSeatsForWindow(
+            @RequestParam Long areaId,
+            @RequestParam String startTime,
+            @RequestParam String endTime) {
+        
+        return Result.success(seatTimeSlotService.findFreeSeats(areaId, parseTime(startTime), parseTime(endTime)));
+    }
+
+    @GetMapping("/slots/free")
+    @Operation(summary = "查询座位在指定时段是否空闲")
+    public Result<Boolean> isSeatFreeForWindow(
+            @RequestParam Long seatId,
+            @RequestParam String startTime,
+            @RequestParam String endTime) {
+        
+        return Result.success(seatTimeSlotService.isFree(seatId, parseTime(startTime), parseTime(endTime)));
+    }
+
+    /**
+     * 座位时段锁定接口（供订单服务调用）
+     */
+    @PostMapping("/slots/lock")
+    @Operation(summary = "锁定座位时段")
+    public Result<Boolean> lockSeatSlots(
+            @RequestParam("seatId") Long seatId,
+            @RequestParam("userId") Long userId,
+            @RequestParam("startTime") String startTime,
+            @RequestParam("endTime") String endTime) {
+        
+        boolean success = seatTimeSlotService.lockSlots(seatId, userId, parseTime(startTime), parseTime(endTime));
+        if (success) {
+            return Result.success("座位时段锁定成功", true);
+        } else {
+            return Result.fail("座位该时段已被预约，请选择其他时段或座位");
+        }
+    }
+
+    /**
+     * 座位时段确认接口（订单支付后调用）
+     */
+    @PostMapping("/slots/confirm")
+    @Operation(summary = "确认座位时段")
+    public Result<Boolean> confirmSeatSlots(
+            @RequestParam("seatId") Long seatId,
+            @RequestParam("userId") Long userId,
+            @RequestParam("startTime") String startTime,
+            @RequestParam("endTime") String endTime) {
+        
+        boolean success = seatTimeSlotService.confirmSlots(seatId, userId, parseTime(startTime), parseTime(endTime));
+        if (success) {
+            return Result.success(true);
+        } else {
+            return Result.fail("座位时段已被他人预约");
+        }
+    }
+
+    /**
+     * 座位时段释放接口（订单取消后调用）
+     */
+    @PostMapping("/slots/release")
+    @Operation(summary = "释放座位时段")
+    public Result<Boolean> releaseSeatSlots(
+            @RequestParam("seatId") Long seatId,
+            @RequestParam("userId") Long userId,
+            @RequestParam("startTime") String startTime,
+            @RequestParam("endTime") String endTime) {
+        
+        return Result.success(seatTimeSlotService.releaseSlots(seatId, userId, parseTime(startTime), parseTime(endTime)));
+    }
+
+    /**
+     * 解析时间，兼容 yyyy-MM-dd HH:mm:ss 与 ISO 格式
+     */
+    private LocalDateTime parseTime(String time) {
+        try {
+            return LocalDateTime.parse(time.trim().replace(" ", "T"));
+        } catch (Exception e) {
+            throw new BusinessException("时间格式不正确: " + time);
+        }
+    }
+
     /**
      * 获取当前用户ID
      */
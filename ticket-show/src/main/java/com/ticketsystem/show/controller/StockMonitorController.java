@@ -1,6 +1,9 @@
 package com.ticketsystem.show.controller;
 
+import com.ticketsystem.common.script.LuaScriptRegistry;
 import com.ticketsystem.show.monitor.StockLevelMonitor;
+import com.ticketsystem.show.service.DataConsistencyService;
+import com.ticketsystem.show.service.StockEngine;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.MeterRegistry;
 import io.micrometer.core.instrument.Timer;
@@ -11,6 +14,7 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -27,6 +31,9 @@ public class StockMonitorController {
     
     private final StockLevelMonitor stockLevelMonitor;
     private final MeterRegistry meterRegistry;
+    private final LuaScriptRegistry luaScriptRegistry;
+    private final StockEngine stockEngine;
+    private final DataConsistencyService dataConsistencyService;
     
     /**
      * 手动触发库存水位检查
@@ -205,6 +212,103 @@ public class StockMonitorController {
         return stats;
     }
     
+    /**
+     * 获取Lua脚本调用统计
+     */
+    @GetMapping("/scripts")
+    @ApiOperation("获取Lua脚本调用次数与耗时统计")
+    public Map<String, Object> getScriptStats() {
+        Map<String, Object> stats = new HashMap<>();
+        
+        try {
+            stats.put("scripts", luaScriptRegistry.getStats());
+            stats.put("timestamp", System.currentTimeMillis());
+            stats.put("success", true);
+        } catch (Exception e) {
+            log.error("❌ 获取Lua脚本统计失败: {}", e.getMessage(), e);
+            
+            stats.put("success", false);
+            stats.put("message", "获取Lua脚本统计失败: " + e.getMessage());
+            stats.put("timestamp", System.currentTimeMillis());
+        }
+        
+        return stats;
+    }
+    
+    /**
+     * 获取库存操作追踪记录
+     */
+    @GetMapping("/trace")
+    @ApiOperation("获取最近的库存操作追踪记录（需开启stock.trace.enabled）")
+    public Map<String, Object> getStockTraces(@RequestParam(defaultValue = "100") Integer count) {
+        Map<String, Object> result = new HashMap<>();
+        
+        try {
+            int limit = Math.max(1, Math.min(count, 1000));
+            List<Map<String, Object>> traces = stockEngine.getRecentTraces(limit);
+            result.put("traces", traces);
+            result.put("count", traces.size());
+            result.put("timestamp", System.currentTimeMillis());
+            result.put("success", true);
+        } catch (Exception e) {
+            log.error("❌ 获取库存操作追踪失败: {}", e.getMessage(), e);
+            
+            result.put("success", false);
+            result.put("message", "获取库存操作追踪失败: " + e.getMessage());
+            result.put("timestamp", System.currentTimeMillis());
+        }
+        
+        return result;
+    }
+    
+    /**
+     * 按库存流水对账单个票档
+     */
+    @GetMapping("/ledger/{ticketId}")
+    @ApiOperation("重放快照之后的库存流水并与实际库存对账")
+    public Map<String, Object> reconcileByLedger(@PathVariable Long ticketId) {
+        Map<String, Object> result = new HashMap<>();
+        
+        try {
+            result.put("report", dataConsistencyService.reconcileStockByLedger(ticketId));
+            result.put("timestamp", System.currentTimeMillis());
+            result.put("success", true);
+        } catch (Exception e) {
+            log.error("❌ 库存流水对账失败: {}", e.getMessage(), e);
+            
+            result.put("success", false);
+            result.put("message", "库存流水对账失败: " + e.getMessage());
+            result.put("timestamp", System.currentTimeMillis());
+        }
+        
+        return result;
+    }
+    
+    /**
+     * 对所有有新流水的票档对账
+     */
+    @PostMapping("/ledger/reconcile")
+    @ApiOperation("对所有有新流水的票档对账，返回不一致的票档")
+    public Map<String, Object> reconcileAllByLedger() {
+        Map<String, Object> result = new HashMap<>();
+        
+        try {
+            List<Map<String, Object>> inconsistent = dataConsistencyService.reconcileByLedger();
+            result.put("inconsistent", inconsistent);
+            result.put("count", inconsistent.size());
+            result.put("timestamp", System.currentTimeMillis());
+            result.put("success", true);
+        } catch (Exception e) {
+            log.error("❌ 库存流水批量对账失败: {}", e.getMessage(), e);
+            
+            result.put("success", false);
+            result.put("message", "库存流水批量对账失败: " + e.getMessage());
+            result.put("timestamp", System.currentTimeMillis());
+        }
+        
+        return result;
+    }
+    
     /**
      * 获取监控健康状态
      */
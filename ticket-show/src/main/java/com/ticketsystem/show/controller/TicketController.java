@@ -2,7 +2,13 @@ package com.ticketsystem.show.controller;
 
 import com.ticketsystem.common.annotation.PerformanceMonitor;
 import com.ticketsystem.common.result.Result;
+import com.ticketsystem.show.dto.MultiOrderReserveRequest;
+import com.ticketsystem.show.dto.OrderReserveRequest;
+import com.ticketsystem.show.dto.OrderReserveResult;
+import com.ticketsystem.show.dto.StockReserveItem;
 import com.ticketsystem.show.entity.Ticket;
+import com.ticketsystem.show.service.OrderReserveService;
+import com.ticketsystem.show.service.ShardedStockService;
 import com.ticketsystem.show.service.TicketService;
 import com.ticketsystem.show.service.TicketStockService;
 import io.swagger.v3.oas.annotations.Operation;
@@ -11,6 +17,7 @@ import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.web.bind.annotation.*;
 
+import javax.validation.Valid;
 import java.math.BigDecimal;
 import java.util.List;
 import java.util.Map;
@@ -27,6 +34,8 @@ public class TicketController {
 
     private final TicketService ticketService;
     private final TicketStockService ticketStockService;
+    private final ShardedStockService shardedStockService;
+    private final OrderReserveService orderReserveService;
 
     @GetMapping("/{ticketId}")
     @Operation(summary = "获取票档详情")
@@ -134,20 +143,58 @@ public class TicketController {
 
     @PostMapping("/redis/prededuct")
     @Operation(summary = "Redis预减库存")
-    public Result<Integer> predeductStockFromRedis(@RequestParam Long ticketId, @RequestParam Integer quantity) {
+    public Result<Integer> predeductStockFromRedis(@RequestParam Long ticketId, @RequestParam Integer quantity,
+                                                   @RequestParam(required = false) String orderNo) {
         log.info("Redis预减库存，票档ID：{}，数量：{}", ticketId, quantity);
-        Integer result = ticketStockService.predeductStockFromRedis(ticketId, quantity);
+        Integer result = ticketStockService.predeductStockFromRedis(ticketId, quantity, orderNo);
+        return Result.success(result);
+    }
+
+    @PostMapping("/redis/prededuct/batch")
+    @Operation(summary = "Redis多票档预减库存（全部满足才扣减）")
+    public Result<List<StockReserveItem>> predeductStocksFromRedis(@RequestBody List<StockReserveItem> items,
+                                                                  @RequestParam(required = false) String orderNo) {
+        log.info("Redis多票档预减库存，订单号：{}，票档数：{}", orderNo, items.size());
+        return Result.success(ticketStockService.predeductStocksFromRedis(items, orderNo));
+    }
+
+    @PostMapping("/redis/lease")
+    @Operation(summary = "Redis租借库存（订单节点本地配额）")
+    public Result<Integer> leaseStockFromRedis(@RequestParam Long ticketId, @RequestParam Integer quantity,
+                                               @RequestParam String owner,
+                                               @RequestParam(defaultValue = "0") Integer settled) {
+        log.info("Redis租借库存，票档ID：{}，数量：{}，节点：{}", ticketId, quantity, owner);
+        Integer result = ticketStockService.leaseStockFromRedis(ticketId, quantity, owner, settled);
+        return Result.success(result);
+    }
+
+    @PostMapping("/redis/lease/return")
+    @Operation(summary = "Redis归还租借库存")
+    public Result<Integer> returnLeasedStockToRedis(@RequestParam Long ticketId, @RequestParam Integer quantity,
+                                                    @RequestParam String owner,
+                                                    @RequestParam(defaultValue = "0") Integer settled) {
+        log.info("Redis归还租借库存，票档ID：{}，数量：{}，节点：{}", ticketId, quantity, owner);
+        Integer result = ticketStockService.returnLeasedStockToRedis(ticketId, quantity, owner, settled);
         return Result.success(result);
     }
 
     @PostMapping("/redis/rollback")
     @Operation(summary = "Redis回滚库存")
-    public Result<Boolean> rollbackStockToRedis(@RequestParam Long ticketId, @RequestParam Integer quantity) {
+    public Result<Boolean> rollbackStockToRedis(@RequestParam Long ticketId, @RequestParam Integer quantity,
+                                                @RequestParam(required = false) String orderNo) {
         log.info("Redis回滚库存，票档ID：{}，数量：{}", ticketId, quantity);
-        boolean result = ticketStockService.rollbackStockToRedis(ticketId, quantity);
+        boolean result = ticketStockService.rollbackStockToRedis(ticketId, quantity, orderNo);
         return Result.success(result);
     }
 
+    @PostMapping("/redis/rollback/batch")
+    @Operation(summary = "Redis多票档回滚库存")
+    public Result<List<StockReserveItem>> rollbackStocksToRedis(@RequestBody List<StockReserveItem> items,
+                                                               @RequestParam(required = false) String orderNo) {
+        log.info("Redis多票档回滚库存，订单号：{}，票档数：{}", orderNo, items.size());
+        return Result.success(ticketStockService.rollbackStocksToRedis(items, orderNo));
+    }
+
     @PostMapping("/redis/sync")
     @Operation(summary = "同步库存到Redis")
     public Result<Boolean> syncStockToRedis(@RequestParam Long ticketId) {
@@ -156,6 +203,30 @@ public class TicketController {
         return Result.success(result);
     }
 
+    @PostMapping("/redis/shard/enable")
+    @Operation(summary = "开启票档分片库存")
+    public Result<Long> enableStockSharding(@RequestParam Long ticketId,
+                                            @RequestParam(required = false) Integer shards) {
+        log.info("开启票档分片库存，票档ID：{}，分片数：{}", ticketId, shards);
+        return Result.success(shardedStockService.enableSharding(ticketId, shards));
+    }
+
+    @PostMapping("/redis/shard/disable")
+    @Operation(summary = "关闭票档分片库存")
+    public Result<Long> disableStockSharding(@RequestParam Long ticketId) {
+        log.info("关闭票档分片库存，票档ID：{}", ticketId);
+        return Result.success(shardedStockService.disableSharding(ticketId));
+    }
+
+    @GetMapping("/redis/shard/{ticketId}")
+    @Operation(summary = "查询票档分片库存明细")
+    public Result<Map<String, Integer>> getShardStocks(@PathVariable Long ticketId) {
+        if (!shardedStockService.checkShardedAuthoritative(ticketId)) {
+            return Result.fail("票档未开启分片库存");
+        }
+        return Result.success(shardedStockService.getShardStocks(ticketId));
+    }
+
     @PutMapping("/confirm")
     @Operation(summary = "数据库库存确认（乐观锁）")
     @PerformanceMonitor(value = "confirmStockFromDatabase", slowQueryThreshold = 2000)
@@ -168,4 +239,48 @@ public class TicketController {
             return Result.error("库存确认失败：锁定库存不足或乐观锁冲突");
         }
     }
-}
\ No newline at end of file
+
+    @PutMapping("/unconfirm")
+    @Operation(summary = "撤销数据库库存确认（支付失败补偿）")
+    public Result<Boolean> unconfirmStock(@RequestParam Long ticketId, @RequestParam Integer quantity) {
+        log.info("撤销数据库库存确认，票档ID：{}，数量：{}", ticketId, quantity);
+        boolean result = ticketStockService.unconfirmStock(ticketId, quantity);
+        if (result) {
+            return Result.success(true);
+        } else {
+            return Result.error("撤销库存确认失败：已售库存不足或乐观锁冲突");
+        }
+    }
+
+    @PostMapping("/reserve")
+    @Operation(summary = "下单预留（校验票档、预减并锁定库存、锁定座位）")
+    @PerformanceMonitor(value = "reserveForOrder", slowQueryThreshold = 2000)
+    public Result<OrderReserveResult> reserveForOrder(@RequestBody @Valid OrderReserveRequest request) {
+        log.info("下单预留，订单号：{}，票档ID：{}，数量：{}，座位ID：{}",
+                request.getOrderNo(), request.getTicketId(), request.getQuantity(), request.getSeatId());
+        return Result.success(orderReserveService.reserve(request));
+    }
+
+    @PostMapping("/reserve/release")
+    @Operation(summary = "释放下单预留")
+    public Result<Boolean> releaseReservation(@RequestBody @Valid OrderReserveRequest request) {
+        log.info("释放下单预留，订单号：{}，票档ID：{}，数量：{}，座位ID：{}",
+                request.getOrderNo(), request.getTicketId(), request.getQuantity(), request.getSeatId());
+        return Result.success(orderReserveService.release(request));
+    }
+
+    @PostMapping("/reserve/batch")
+    @Operation(summary = "多票档下单预留（查询票价、预减并锁定各票档库存）")
+    @PerformanceMonitor(value = "reserveItemsForOrder", slowQueryThreshold = 2000)
+    public Result<OrderReserveResult> reserveItemsForOrder(@RequestBody @Valid MultiOrderReserveRequest request) {
+        log.info("多票档下单预留，订单号：{}，票档数：{}", request.getOrderNo(), request.getItems().size());
+        return Result.success(orderReserveService.reserveItems(request));
+    }
+
+    @PostMapping("/reserve/batch/release")
+    @Operation(summary = "释放多票档下单预留")
+    public Result<Boolean> releaseItemsReservation(@RequestBody @Valid MultiOrderReserveRequest request) {
+        log.info("释放多票档下单预留，订单号：{}，票档数：{}", request.getOrderNo(), request.getItems().size());
+        return Result.success(orderReserveService.releaseItems(request));
+    }
+}
@@ -0,0 +1,39 @@
+package com.ticketsystem.show.dto;
+
+import lombok.Data;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotEmpty;
+import javax.validation.constraints.NotNull;
+import java.util.List;
+
+/**
+ * 多票档下单预留请求DTO（订单服务调用）
+ * 预留与释放使用同一结构，释放时按预留时的参数原样传回
+ */
+@Data
+public class MultiOrderReserveRequest {
+
+    /**
+     * 订单号，记入库存流水
+     */
+    @NotBlank(message = "订单号不能为空")
+    private String orderNo;
+
+    @NotNull(message = "用户ID不能为空")
+    private Long userId;
+
+    @NotNull(message = "演出ID不能为空")
+    private Long showId;
+
+    @NotNull(message = "场次ID不能为空")
+    private Long sessionId;
+
+    /**
+     * 各票档及数量，同一票档只出现一次
+     */
+    @Valid
+    @NotEmpty(message = "票档明细不能为空")
+    private List<StockReserveItem> items;
+}
@@ -0,0 +1,52 @@
+package com.ticketsystem.show.dto;
+
+import lombok.Data;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotBlank;
+import javax.validation.constraints.NotNull;
+
+/**
+ * 下单预留请求DTO（订单服务调用）
+ * 预留与释放使用同一结构，释放时按预留时的参数原样传回
+ */
+@Data
+public class OrderReserveRequest {
+
+    /**
+     * 订单号，记入库存流水
+     */
+    @NotBlank(message = "订单号不能为空")
+    private String orderNo;
+
+    @NotNull(message = "用户ID不能为空")
+    private Long userId;
+
+    @NotNull(message = "票档ID不能为空")
+    private Long ticketId;
+
+    @NotNull(message = "购买数量不能为空")
+    @Min(value = 1, message = "购买数量至少为1")
+    private Integer quantity;
+
+    @NotNull(message = "演出ID不能为空")
+    private Long showId;
+
+    @NotNull(message = "场次ID不能为空")
+    private Long sessionId;
+
+    /**
+     * 座位ID，为空时不锁定座位
+     */
+    private Long seatId;
+
+    /**
+     * 预约开始时间，与结束时间同时传入时只锁定该时段（网咖按时段预约）
+     */
+    private String startTime;
+
+    /**
+     * 预约结束时间
+     */
+    private String endTime;
+}
@@ -0,0 +1,33 @@
+package com.ticketsystem.show.dto;
+
+import lombok.Data;
+
+import java.math.BigDecimal;
+import java.util.Map;
+
+/**
+ * 下单预留结果DTO
+ */
+@Data
+public class OrderReserveResult {
+
+    /**
+     * 票档单价
+     */
+    private BigDecimal price;
+
+    /**
+     * 多票档预留时各票档单价，票档ID -> 单价
+     */
+    private Map<Long, BigDecimal> prices;
+
+    /**
+     * 演出及场次信息
+     */
+    private ShowInfoDTO showInfo;
+
+    /**
+     * 座位展示信息，未选座时为空
+     */
+    private String seatInfo;
+}
@@ -0,0 +1,26 @@
+package com.ticketsystem.show.dto;
+
+import lombok.Data;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * 自动选座请求DTO
+ */
+@Data
+public class SeatAllocateRequest {
+
+    /**
+     * 座位区域ID
+     */
+    @NotNull(message = "区域ID不能为空")
+    private Long areaId;
+
+    /**
+     * 相邻座位数量
+     */
+    @NotNull(message = "座位数量不能为空")
+    @Min(value = 1, message = "座位数量至少为1")
+    private Integer count;
+}
@@ -0,0 +1,42 @@
+package com.ticketsystem.show.dto;
+
+import lombok.Data;
+
+/**
+ * 区域座位计数DTO
+ */
+@Data
+public class SeatAreaCounts {
+
+    /**
+     * 座位区域ID
+     */
+    private Long areaId;
+
+    /**
+     * 空闲座位数（数据库统计时包含已锁定座位，锁定状态以Redis为准）
+     */
+    private int free;
+
+    /**
+     * 已锁定座位数
+     */
+    private int locked;
+
+    /**
+     * 已售座位数
+     */
+    private int sold;
+
+    /**
+     * 不可用座位数
+     */
+    private int unavailable;
+
+    /**
+     * 可售座位总数
+     */
+    public int getSellable() {
+        return free + locked + sold;
+    }
+}
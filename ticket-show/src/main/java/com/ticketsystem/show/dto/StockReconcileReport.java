@@ -0,0 +1,98 @@
+package com.ticketsystem.show.dto;
+
+import lombok.Data;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 库存批量对账报告
+ * 对账进行中可随时读取，用于进度查询
+ */
+@Data
+public class StockReconcileReport {
+
+    /**
+     * 是否同时修复
+     */
+    private boolean repair;
+
+    /**
+     * 是否仍在执行
+     */
+    private volatile boolean running = true;
+
+    /**
+     * 票档总数（开始时统计）
+     */
+    private long total;
+
+    /**
+     * 已对账票档数
+     */
+    private final AtomicLong scanned = new AtomicLong();
+
+    /**
+     * 不一致票档数
+     */
+    private final AtomicInteger inconsistent = new AtomicInteger();
+
+    /**
+     * 修复成功票档数
+     */
+    private final AtomicInteger repaired = new AtomicInteger();
+
+    /**
+     * 对账失败票档数
+     */
+    private final AtomicInteger failed = new AtomicInteger();
+
+    /**
+     * 不一致明细（最多保留maxDiffs条）
+     */
+    private final List<Map<String, Object>> diffs = new CopyOnWriteArrayList<>();
+
+    /**
+     * 明细是否被截断
+     */
+    private volatile boolean truncated;
+
+    private long startTime = System.currentTimeMillis();
+
+    private volatile long endTime;
+
+    /**
+     * 记录一条不一致明细
+     */
+    public void addDiff(Long ticketId, Integer dbStock, Integer redisStock, int maxDiffs) {
+        inconsistent.incrementAndGet();
+        if (diffs.size() >= maxDiffs) {
+            truncated = true;
+            return;
+        }
+        Map<String, Object> diff = new LinkedHashMap<>();
+        diff.put("ticketId", ticketId);
+        diff.put("dbAvailableStock", dbStock);
+        diff.put("redisStock", redisStock);
+        diffs.add(diff);
+    }
+
+    /**
+     * 对账进度（0~100）
+     */
+    public int getProgress() {
+        if (!running) {
+            return 100;
+        }
+        return total > 0 ? (int) Math.min(99, scanned.get() * 100 / total) : 0;
+    }
+
+    public void finish() {
+        endTime = System.currentTimeMillis();
+        running = false;
+    }
+}
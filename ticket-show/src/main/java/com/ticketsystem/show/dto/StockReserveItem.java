@@ -0,0 +1,31 @@
+package com.ticketsystem.show.dto;
+
+import lombok.Data;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * 多票档库存预留明细
+ */
+@Data
+public class StockReserveItem {
+
+    /**
+     * 票档ID
+     */
+    @NotNull(message = "票档ID不能为空")
+    private Long ticketId;
+
+    /**
+     * 数量
+     */
+    @NotNull(message = "数量不能为空")
+    @Min(value = 1, message = "数量必须大于0")
+    private Integer quantity;
+
+    /**
+     * 处理结果（响应时填充）：1-成功，0-库存不足，-1-库存不存在
+     */
+    private Integer result;
+}
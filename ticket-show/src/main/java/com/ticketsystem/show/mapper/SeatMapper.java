@@ -1,6 +1,7 @@
 package com.ticketsystem.show.mapper;
 
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.ticketsystem.show.dto.SeatAreaCounts;
 import com.ticketsystem.show.entity.Seat;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
@@ -67,6 +68,56 @@ public interface SeatMapper extends BaseMapper<Seat> {
             "WHERE lock_status = 1 AND lock_expire_time < NOW() AND is_deleted = 0")
     int clearExpiredLocks();
 
+    /**
+     * 按座位ID释放已过期的锁定（锁过期队列到期后调用）
+     */
+    @Update("<script>" +
+            "UPDATE t_seat SET lock_status = 0, lock_user_id = NULL, " +
+            "lock_time = NULL, lock_expire_time = NULL " +
+            "WHERE id IN " +
+            "<foreach collection='seatIds' item='seatId' open='(' separator=',' close=')'>" +
+            "#{seatId}" +
+            "</foreach>" +
+            " AND lock_status = 1 AND lock_expire_time &lt; NOW() AND is_deleted = 0" +
+            "</script>")
+    int releaseExpiredSeats(@Param("seatIds") List<Long> seatIds);
+
+    /**
+     * 按Redis座位锁批量写入锁定状态，各座位的锁定用户和时间不同，用CASE一条语句完成
+     */
+    @Update("<script>" +
+            "UPDATE t_seat SET lock_status = 1, " +
+            "lock_user_id = CASE id " +
+            "<foreach collection='seats' item='seat'>WHEN #{seat.id} THEN #{seat.lockUserId} </foreach>" +
+            "END, " +
+            "lock_time = CASE id " +
+            "<foreach collection='seats' item='seat'>WHEN #{seat.id} THEN #{seat.lockTime} </foreach>" +
+            "END, " +
+            "lock_expire_time = CASE id " +
+            "<foreach collection='seats' item='seat'>WHEN #{seat.id} THEN #{seat.lockExpireTime} </foreach>" +
+            "END " +
+            "WHERE id IN " +
+            "<foreach collection='seats' item='seat' open='(' separator=',' close=')'>" +
+            "#{seat.id}" +
+            "</foreach>" +
+            " AND lock_status &lt;&gt; 2 AND is_deleted = 0" +
+            "</script>")
+    int batchUpdateSeatLocks(@Param("seats") List<Seat> seats);
+
+    /**
+     * 批量清除锁定状态（Redis中已无座位锁的座位）
+     */
+    @Update("<script>" +
+            "UPDATE t_seat SET lock_status = 0, lock_user_id = NULL, " +
+            "lock_time = NULL, lock_expire_time = NULL " +
+            "WHERE id IN " +
+            "<foreach collection='seatIds' item='seatId' open='(' separator=',' close=')'>" +
+            "#{seatId}" +
+            "</foreach>" +
+            " AND lock_status = 1 AND is_deleted = 0" +
+            "</script>")
+    int batchClearSeatLocks(@Param("seatIds") List<Long> seatIds);
+
     /**
      * 根据区域ID获取座位列表
      */
@@ -81,6 +132,16 @@ public interface SeatMapper extends BaseMapper<Seat> {
             "AND lock_status = 0 AND is_deleted = 0")
     int countAvailableSeatsByAreaId(@Param("areaId") Long areaId);
 
+    /**
+     * 按区域统计座位基础状态（用于校正区域座位计数），free包含已锁定座位
+     */
+    @Select("SELECT area_id AS areaId, " +
+            "SUM(CASE WHEN status <> 0 AND (lock_status IS NULL OR lock_status <> 2) THEN 1 ELSE 0 END) AS free, " +
+            "SUM(CASE WHEN status <> 0 AND lock_status = 2 THEN 1 ELSE 0 END) AS sold, " +
+            "SUM(CASE WHEN status IS NULL OR status = 0 THEN 1 ELSE 0 END) AS unavailable " +
+            "FROM t_seat WHERE is_deleted = 0 GROUP BY area_id")
+    List<SeatAreaCounts> countSeatStatesByArea();
+
     /**
      * 根据座位ID查询座位详细信息（用于数据一致性验证）
      */
@@ -4,10 +4,15 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.ticketsystem.show.entity.TicketStock;
 import org.apache.ibatis.annotations.Insert;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Options;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.annotations.ResultType;
 import org.apache.ibatis.annotations.Select;
 import org.apache.ibatis.annotations.Update;
+import org.apache.ibatis.mapping.ResultSetType;
+import org.apache.ibatis.session.ResultHandler;
 
+import java.util.Collection;
 import java.util.List;
 /**
  * 票档库存Mapper接口
@@ -71,6 +76,26 @@ public interface TicketStockMapper extends BaseMapper<TicketStock> {
                                       @Param("quantity") Integer quantity, 
                                       @Param("version") Integer version);
 
+    /**
+     * 按净变化量更新锁定/已售库存（组提交）
+     * @param ticketId 票档ID
+     * @param lockedDelta 锁定库存变化量
+     * @param soldDelta 已售库存变化量
+     * @param version 当前版本号
+     * @return 影响行数
+     */
+    @Update("UPDATE t_ticket_stock SET " +
+            "locked_stock = locked_stock + #{lockedDelta}, " +
+            "sold_stock = sold_stock + #{soldDelta}, " +
+            "version = version + 1, " +
+            "update_time = CURRENT_TIMESTAMP " +
+            "WHERE ticket_id = #{ticketId} " +
+            "AND version = #{version}")
+    int applyStockDelta(@Param("ticketId") Long ticketId,
+                        @Param("lockedDelta") Integer lockedDelta,
+                        @Param("soldDelta") Integer soldDelta,
+                        @Param("version") Integer version);
+
     /**
      * 根据票档ID查询库存信息
      * @param ticketId 票档ID
@@ -113,6 +138,55 @@ public interface TicketStockMapper extends BaseMapper<TicketStock> {
             "WHERE ticket_id = #{ticketId}")
     int updateRemainStock(@Param("ticketId") Long ticketId, @Param("remainStock") Integer remainStock);
 
+    /**
+     * 批量更新剩余库存数量（availableStock作为剩余库存）
+     */
+    @Update("<script>" +
+            "UPDATE t_ticket_stock SET " +
+            "locked_stock = CASE ticket_id " +
+            "<foreach collection='items' item='item'>" +
+            "WHEN #{item.ticketId} THEN total_stock - #{item.availableStock} - sold_stock " +
+            "</foreach>" +
+            "END, " +
+            "version = version + 1, " +
+            "update_time = CURRENT_TIMESTAMP " +
+            "WHERE ticket_id IN " +
+            "<foreach collection='items' item='item' open='(' separator=',' close=')'>" +
+            "#{item.ticketId}" +
+            "</foreach>" +
+            "</script>")
+    int batchUpdateRemainStock(@Param("items") List<TicketStock> items);
+
+    /**
+     * 按票档ID游标分页查询库存（用于批量对账）
+     * @param lastTicketId 上一页最后一个票档ID，首页传0
+     * @param limit 每页条数
+     */
+    @Select("SELECT * FROM t_ticket_stock WHERE ticket_id > #{lastTicketId} ORDER BY ticket_id LIMIT #{limit}")
+    List<TicketStock> selectPageAfter(@Param("lastTicketId") Long lastTicketId, @Param("limit") Integer limit);
+
+    /**
+     * 批量查询票档总库存
+     * @param ticketIds 票档ID列表（不能为空）
+     */
+    @Select("<script>" +
+            "SELECT ticket_id, total_stock FROM t_ticket_stock WHERE ticket_id IN " +
+            "<foreach collection='ticketIds' item='ticketId' open='(' separator=',' close=')'>" +
+            "#{ticketId}" +
+            "</foreach>" +
+            "</script>")
+    List<TicketStock> selectTotalStocks(@Param("ticketIds") Collection<Long> ticketIds);
+
+    /**
+     * 流式读取全部票档库存（用于启动预热）
+     * fetchSize为Integer.MIN_VALUE时MySQL驱动逐行返回，不会一次性加载全表
+     * @param handler 逐行处理回调
+     */
+    @Select("SELECT ticket_id, total_stock, locked_stock, sold_stock FROM t_ticket_stock")
+    @Options(resultSetType = ResultSetType.FORWARD_ONLY, fetchSize = Integer.MIN_VALUE)
+    @ResultType(TicketStock.class)
+    void streamAllStock(ResultHandler<TicketStock> handler);
+
     /**
      * 获取所有票档ID
      */
@@ -1,37 +1,55 @@
 package com.ticketsystem.show.monitor;
 
-import com.ticketsystem.show.service.RedisStockService;
+import com.ticketsystem.show.entity.TicketStock;
+import com.ticketsystem.show.mapper.TicketStockMapper;
+import com.ticketsystem.show.service.StockEngine;
 import io.micrometer.core.instrument.Counter;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RedissonClient;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PostConstruct;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * 库存水位监控定时任务
  * 每30秒检查库存水位并触发告警
+ * 票档取自库存登记集合（stock:registry），每个票档一个stock_level_percentage指标
  */
 @Component
 @RequiredArgsConstructor
 @Slf4j
 public class StockLevelMonitor {
     
-    private final RedissonClient redissonClient;
+    private final StockEngine stockEngine;
     private final Counter stockAlertCounter;
     private final MeterRegistry meterRegistry;
+    private final TicketStockMapper ticketStockMapper;
     
-    // 库存水位缓存，用于Gauge指标
-    private final Map<String, AtomicInteger> stockLevelCache = new ConcurrentHashMap<>();
+    // 票档库存水位，用于Gauge指标
+    private final Map<Long, AtomicInteger> stockLevelCache = new ConcurrentHashMap<>();
+    
+    // 票档库存水位Gauge
+    private final Map<Long, Gauge> tierGauges = new ConcurrentHashMap<>();
+    
+    // 初始库存缓存（数据库总库存）
+    private final Map<Long, Integer> initialStockCache = new ConcurrentHashMap<>();
+    
+    // 每批读取的票档数
+    private static final int BATCH_SIZE = 500;
+    
+    // 库存key前缀（与StockEngine保持一致）
+    private static final String STOCK_KEY_PREFIX = "stock:ticket:";
     
     // 告警阈值配置
     private static final double CRITICAL_THRESHOLD = 0.05; // 5%严重告警
@@ -40,17 +58,6 @@ public class StockLevelMonitor {
     
     @PostConstruct
     public void init() {
-        // 注册库存水位Gauge指标
-        Gauge.builder("stock_level_percentage", this, monitor -> {
-                    return stockLevelCache.values().stream()
-                            .mapToInt(AtomicInteger::get)
-                            .average()
-                            .orElse(0.0);
-                })
-                .description("当前库存水位百分比")
-                .tag("type", "percentage")
-                .register(meterRegistry);
-        
         log.info("📊 库存水位监控器已启动，检查间隔: 30秒");
     }
     
@@ -62,38 +69,30 @@ public class StockLevelMonitor {
         try {
             log.debug("🔍 开始库存水位检查...");
             
-            // 获取所有库存key
-            List<String> stockKeys = getStockKeys();
+            List<StockLevelInfo> levels = collectStockLevels();
             
-            if (stockKeys.isEmpty()) {
+            if (levels.isEmpty()) {
                 log.debug("📦 未发现库存数据");
                 return;
             }
             
-            int totalChecked = 0;
             int alertTriggered = 0;
             
-            for (String stockKey : stockKeys) {
+            for (StockLevelInfo levelInfo : levels) {
                 try {
-                    StockLevelInfo levelInfo = checkSingleStockLevel(stockKey);
-                    if (levelInfo != null) {
-                        totalChecked++;
-                        
-                        // 更新缓存用于Gauge指标
-                        String ticketId = extractTicketIdFromKey(stockKey);
-                        stockLevelCache.put(ticketId, new AtomicInteger((int)(levelInfo.percentage * 100)));
-                        
-                        // 检查是否需要告警
-                        if (triggerAlertIfNeeded(levelInfo)) {
-                            alertTriggered++;
-                        }
+                    // 更新票档Gauge指标
+                    updateGauge(levelInfo);
+                    
+                    // 检查是否需要告警
+                    if (triggerAlertIfNeeded(levelInfo)) {
+                        alertTriggered++;
                     }
                 } catch (Exception e) {
-                    log.error("❌ 检查库存水位异常 - Key: {}, 异常: {}", stockKey, e.getMessage());
+                    log.error("❌ 检查库存水位异常 - 票档ID: {}, 异常: {}", levelInfo.ticketId, e.getMessage());
                 }
             }
             
-            log.debug("✅ 库存水位检查完成 - 检查数量: {}, 触发告警: {}", totalChecked, alertTriggered);
+            log.debug("✅ 库存水位检查完成 - 检查数量: {}, 触发告警: {}", levels.size(), alertTriggered);
             
         } catch (Exception e) {
             log.error("❌ 库存水位监控异常: {}", e.getMessage(), e);
@@ -101,106 +100,106 @@ public class StockLevelMonitor {
     }
     
     /**
-     * 获取所有库存key
+     * 批量读取所有已登记票档的库存水位
+     * 票档来自库存登记集合，当前库存按批MGET读取，初始库存取数据库总库存
      */
-    private List<String> getStockKeys() {
-        try {
-            // 使用Redis KEYS命令获取所有库存key（生产环境建议使用SCAN）
-            Iterable<String> keys = redissonClient.getKeys().getKeysByPattern("stock:*");
-            // 修复类型转换异常：正确处理Redisson返回的Iterable类型
-            List<String> keyList = new ArrayList<>();
-            for (String key : keys) {
-                keyList.add(key);
+    private List<StockLevelInfo> collectStockLevels() {
+        Set<Long> ticketIds = getStockTicketIds();
+        removeStaleTiers(ticketIds);
+        
+        List<Long> ids = new ArrayList<>(ticketIds);
+        List<StockLevelInfo> levels = new ArrayList<>(ids.size());
+        for (int from = 0; from < ids.size(); from += BATCH_SIZE) {
+            List<Long> batch = ids.subList(from, Math.min(from + BATCH_SIZE, ids.size()));
+            try {
+                // 通过统一库存引擎批量获取当前库存（分片票档为各分片汇总）
+                Map<Long, Integer> currentStocks = stockEngine.getStocks(batch);
+                // 订单节点持有的租借配额尚未售出，计入当前库存
+                Map<Long, Integer> leasedStocks = stockEngine.getLeasedStocks(batch);
+                Map<Long, Integer> initialStocks = getInitialStocks(batch);
+                for (Long ticketId : batch) {
+                    Integer redisStock = currentStocks.get(ticketId);
+                    Integer initialStock = initialStocks.get(ticketId);
+                    if (redisStock == null || initialStock == null || initialStock <= 0) {
+                        continue;
+                    }
+                    int currentStock = redisStock + leasedStocks.getOrDefault(ticketId, 0);
+                    double percentage = (double) currentStock / initialStock;
+                    levels.add(new StockLevelInfo(String.valueOf(ticketId), STOCK_KEY_PREFIX + ticketId,
+                            currentStock, initialStock, percentage));
+                }
+            } catch (Exception e) {
+                log.error("❌ 批量读取库存水位异常 - 票档数: {}, 异常: {}", batch.size(), e.getMessage());
             }
-            return keyList;
-        } catch (Exception e) {
-            log.error("❌ 获取库存keys异常: {}", e.getMessage());
-            return List.of();
         }
+        return levels;
     }
     
     /**
-     * 检查单个库存水位
+     * 获取所有库存票档ID（来自库存登记集合，不扫描keyspace）
      */
-    private StockLevelInfo checkSingleStockLevel(String stockKey) {
+    private Set<Long> getStockTicketIds() {
         try {
-            // 获取当前库存
-            Object stockObj = redissonClient.getBucket(stockKey).get();
-            Integer currentStock = null;
-            if (stockObj != null) {
-                if (stockObj instanceof Integer) {
-                    currentStock = (Integer) stockObj;
-                } else if (stockObj instanceof String) {
-                    try {
-                        currentStock = Integer.parseInt((String) stockObj);
-                    } catch (NumberFormatException e) {
-                        log.warn("⚠️ 库存值格式错误 - Key: {}, Value: {}", stockKey, stockObj);
-                        return null;
-                    }
-                } else {
-                    log.warn("⚠️ 库存值类型不支持 - Key: {}, Type: {}", stockKey, stockObj.getClass().getSimpleName());
-                    return null;
-                }
-            }
-            if (currentStock == null) {
-                return null;
-            }
-            
-            // 获取初始库存（从数据库或配置中获取，这里简化处理）
-            Integer initialStock = getInitialStock(stockKey);
-            if (initialStock == null || initialStock <= 0) {
-                return null;
-            }
-            
-            double percentage = (double) currentStock / initialStock;
-            String ticketId = extractTicketIdFromKey(stockKey);
-            
-            return new StockLevelInfo(ticketId, stockKey, currentStock, initialStock, percentage);
-            
+            return stockEngine.getRegisteredTicketIds();
         } catch (Exception e) {
-            log.error("❌ 检查库存水位异常 - Key: {}, 异常: {}", stockKey, e.getMessage());
-            return null;
+            log.error("❌ 获取库存票档异常: {}", e.getMessage());
+            return Set.of();
         }
     }
     
     /**
-     * 获取初始库存数量（简化实现，实际应从数据库获取）
+     * 获取初始库存数量（数据库总库存，首次查询后缓存）
      */
-    private Integer getInitialStock(String stockKey) {
-        try {
-            // 尝试从Redis获取初始库存配置
-            String initialStockKey = stockKey + ":initial";
-            Object initialStockObj = redissonClient.getBucket(initialStockKey).get();
-            Integer initialStock = null;
-            if (initialStockObj != null) {
-                if (initialStockObj instanceof Integer) {
-                    initialStock = (Integer) initialStockObj;
-                } else if (initialStockObj instanceof String) {
-                    try {
-                        initialStock = Integer.parseInt((String) initialStockObj);
-                    } catch (NumberFormatException e) {
-                        log.warn("⚠️ 初始库存值格式错误 - Key: {}, Value: {}", initialStockKey, initialStockObj);
-                    }
-                }
+    private Map<Long, Integer> getInitialStocks(List<Long> ticketIds) {
+        List<Long> missing = new ArrayList<>();
+        for (Long ticketId : ticketIds) {
+            if (!initialStockCache.containsKey(ticketId)) {
+                missing.add(ticketId);
             }
-            
-            // 如果没有配置，使用默认值1000（实际应从数据库查询）
-            return initialStock != null ? initialStock : 1000;
-        } catch (Exception e) {
-            log.warn("⚠️ 获取初始库存失败，使用默认值 - Key: {}", stockKey);
-            return 1000;
         }
+        if (!missing.isEmpty()) {
+            for (TicketStock stock : ticketStockMapper.selectTotalStocks(missing)) {
+                initialStockCache.put(stock.getTicketId(), stock.getTotalStock());
+            }
+            // 数据库中不存在的票档记为0，不再重复查询
+            missing.forEach(ticketId -> initialStockCache.putIfAbsent(ticketId, 0));
+        }
+        
+        Map<Long, Integer> initialStocks = new HashMap<>();
+        ticketIds.forEach(ticketId -> initialStocks.put(ticketId, initialStockCache.get(ticketId)));
+        return initialStocks;
+    }
+    
+    /**
+     * 更新票档库存水位Gauge，首次出现时注册
+     */
+    private void updateGauge(StockLevelInfo levelInfo) {
+        Long ticketId = Long.valueOf(levelInfo.ticketId);
+        AtomicInteger level = stockLevelCache.computeIfAbsent(ticketId, id -> {
+            AtomicInteger value = new AtomicInteger();
+            tierGauges.put(id, Gauge.builder("stock_level_percentage", value, AtomicInteger::get)
+                    .description("票档库存水位百分比")
+                    .tag("ticket_id", String.valueOf(id))
+                    .register(meterRegistry));
+            return value;
+        });
+        level.set((int) (levelInfo.percentage * 100));
     }
     
     /**
-     * 从库存key中提取票档ID
+     * 移除已不在登记集合中的票档的Gauge和初始库存缓存
      */
-    private String extractTicketIdFromKey(String stockKey) {
-        // 假设key格式为 "stock:票档ID"
-        if (stockKey.startsWith("stock:")) {
-            return stockKey.substring(6);
+    private void removeStaleTiers(Set<Long> activeTicketIds) {
+        initialStockCache.keySet().retainAll(activeTicketIds);
+        Iterator<Map.Entry<Long, Gauge>> iterator = tierGauges.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, Gauge> entry = iterator.next();
+            if (!activeTicketIds.contains(entry.getKey())) {
+                meterRegistry.remove(entry.getValue());
+                stockLevelCache.remove(entry.getKey());
+                iterator.remove();
+            }
         }
-        return stockKey;
     }
     
     /**
@@ -268,7 +267,7 @@ public class StockLevelMonitor {
         Map<String, Object> stats = new ConcurrentHashMap<>();
         
         try {
-            List<String> stockKeys = getStockKeys();
+            List<StockLevelInfo> levels = collectStockLevels();
             
             int totalStocks = 0;
             int criticalStocks = 0;
@@ -276,20 +275,17 @@ public class StockLevelMonitor {
             int noticeStocks = 0;
             int exhaustedStocks = 0;
             
-            for (String stockKey : stockKeys) {
-                StockLevelInfo levelInfo = checkSingleStockLevel(stockKey);
-                if (levelInfo != null) {
-                    totalStocks++;
-                    
-                    if (levelInfo.currentStock == 0) {
-                        exhaustedStocks++;
-                    } else if (levelInfo.percentage < CRITICAL_THRESHOLD) {
-                        criticalStocks++;
-                    } else if (levelInfo.percentage < WARNING_THRESHOLD) {
-                        warningStocks++;
-                    } else if (levelInfo.percentage < NOTICE_THRESHOLD) {
-                        noticeStocks++;
-                    }
+            for (StockLevelInfo levelInfo : levels) {
+                totalStocks++;
+                
+                if (levelInfo.currentStock == 0) {
+                    exhaustedStocks++;
+                } else if (levelInfo.percentage < CRITICAL_THRESHOLD) {
+                    criticalStocks++;
+                } else if (levelInfo.percentage < WARNING_THRESHOLD) {
+                    warningStocks++;
+                } else if (levelInfo.percentage < NOTICE_THRESHOLD) {
+                    noticeStocks++;
                 }
             }
             
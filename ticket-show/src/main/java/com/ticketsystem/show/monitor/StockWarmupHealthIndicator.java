@@ -0,0 +1,35 @@
+package com.ticketsystem.show.monitor;
+
+import com.ticketsystem.show.service.StockWarmupService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.HealthIndicator;
+import org.springframework.stereotype.Component;
+
+/**
+ * 库存预热健康检查（stockWarmup）
+ * 预热进行中为OUT_OF_SERVICE，预热失败为DOWN，完成后为UP
+ */
+@Component("stockWarmup")
+@RequiredArgsConstructor
+public class StockWarmupHealthIndicator implements HealthIndicator {
+
+    private final StockWarmupService stockWarmupService;
+
+    @Override
+    public Health health() {
+        Health.Builder builder;
+        switch (stockWarmupService.getState()) {
+            case READY:
+                builder = Health.up();
+                break;
+            case FAILED:
+                builder = Health.down();
+                break;
+            default:
+                builder = Health.outOfService();
+                break;
+        }
+        return builder.withDetails(stockWarmupService.getDetails()).build();
+    }
+}
@@ -1,5 +1,10 @@
 package com.ticketsystem.show.service;
 
+import com.ticketsystem.show.dto.StockReconcileReport;
+
+import java.util.List;
+import java.util.Map;
+
 /**
  * 数据一致性服务接口
  * 用于检查和修复Redis与数据库之间的数据一致性问题
@@ -31,4 +36,30 @@ public interface DataConsistencyService {
      * @return 修复成功的票档数量
      */
     Integer repairAllStockConsistency();
-}
\ No newline at end of file
+
+    /**
+     * 流式批量对账：按游标分页读取库存表，分批MGET读取Redis并行比较
+     * @param repair 是否同时修复不一致的票档
+     * @return 对账报告
+     */
+    StockReconcileReport reconcileAllStock(boolean repair);
+
+    /**
+     * 获取进行中或最近一次批量对账的报告
+     * @return 对账报告，未执行过时为null
+     */
+    StockReconcileReport getReconcileProgress();
+
+    /**
+     * 基于库存流水对账：重放快照之后的流水得到预期库存，与Redis和数据库实际库存比较
+     * @param ticketId 票档ID
+     * @return 对账结果（含快照之后的流水明细）
+     */
+    Map<String, Object> reconcileStockByLedger(Long ticketId);
+
+    /**
+     * 对所有有新流水的票档进行对账，并将流水折叠进快照
+     * @return 不一致票档的对账结果
+     */
+    List<Map<String, Object>> reconcileByLedger();
+}
@@ -1,15 +1,12 @@
 package com.ticketsystem.show.service;
 
-import com.ticketsystem.show.mapper.SeatMapper;
 import com.ticketsystem.show.mapper.TicketStockMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RedissonClient;
-import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Service;
 
+import java.util.Collections;
 import java.util.List;
-import java.util.Map;
 
 /**
  * 数据同步服务
@@ -20,115 +17,57 @@ import java.util.Map;
 @Slf4j
 public class DataSyncService {
 
-    private final RedissonClient redissonClient;
+    private final StockEngine stockEngine;
+    private final StockWriteBehindService stockWriteBehindService;
+    private final StockWarmupService stockWarmupService;
     private final TicketStockMapper ticketStockMapper;
-    private final SeatMapper seatMapper;
-
-    // 键前缀
-    private static final String STOCK_KEY_PREFIX = "ticket_stock:";
-    private static final String SEAT_LOCK_PREFIX = "seat_lock:";
-    private static final String SEAT_SYNC_PREFIX = "seat_sync:";
+    private final SeatWriteBehindService seatWriteBehindService;
 
     /**
-     * 异步同步库存到数据库
+     * 同步库存到数据库
+     * 只标记待同步，由写回缓冲合并后批量写入
      */
-    @Async
     public void syncStockToDatabase(Long ticketId) {
-        try {
-            String stockKey = STOCK_KEY_PREFIX + ticketId;
-            Object remainStockObj = redissonClient.getBucket(stockKey).get();
-            
-            if (remainStockObj != null) {
-                Integer stock;
-                if (remainStockObj instanceof String) {
-                    stock = Integer.parseInt((String) remainStockObj);
-                } else if (remainStockObj instanceof Integer) {
-                    stock = (Integer) remainStockObj;
-                } else {
-                    stock = Integer.parseInt(remainStockObj.toString());
-                }
-                ticketStockMapper.updateRemainStock(ticketId, stock);
-                log.info("异步同步库存到数据库，票档ID: {}, 库存: {}", ticketId, stock);
-            }
-        } catch (Exception e) {
-            log.error("异步同步库存到数据库失败，票档ID: {}", ticketId, e);
-        }
+        stockWriteBehindService.markDirty(ticketId);
     }
 
     /**
-     * 异步同步座位锁定到数据库
+     * 同步座位锁定到数据库
+     * 只标记待同步，由写回缓冲合并后按Redis座位锁的最新状态批量写入
      */
-    @Async
     public void syncSeatLockToDatabase(Long seatId, Long userId) {
-        try {
-            String lockKey = SEAT_LOCK_PREFIX + seatId;
-            String lockInfoKey = lockKey + ":info";
-            
-            // 检查RLock是否存在
-            if (redissonClient.getLock(lockKey).isLocked()) {
-                // 从锁定信息中获取用户ID
-                Map<Object, Object> lockInfo = redissonClient.getMap(lockInfoKey);
-                if (lockInfo != null && !lockInfo.isEmpty()) {
-                    Object userIdObj = lockInfo.get("userId");
-                    if (userIdObj != null) {
-                        Long lockUserId = Long.parseLong(userIdObj.toString());
-                        seatMapper.updateLockStatus(seatId, 1, lockUserId);
-                        log.info("异步同步座位锁定到数据库，座位ID: {}, 用户ID: {}", seatId, lockUserId);
-                    }
-                } else {
-                    // 如果锁定信息不存在，使用传入的用户ID
-                    seatMapper.updateLockStatus(seatId, 1, userId);
-                    log.info("异步同步座位锁定到数据库（使用传入用户ID），座位ID: {}, 用户ID: {}", seatId, userId);
-                }
-            } else {
-                log.warn("座位锁定已过期或不存在，座位ID: {}", seatId);
-            }
-        } catch (Exception e) {
-            log.error("异步同步座位锁定到数据库失败，座位ID: {}, 用户ID: {}", seatId, userId, e);
-        }
+        seatWriteBehindService.markDirty(Collections.singletonList(seatId));
     }
 
     /**
-     * 异步同步座位解锁到数据库
+     * 同步座位解锁到数据库
      */
-    @Async
     public void syncSeatUnlockToDatabase(Long seatId) {
-        try {
-            seatMapper.updateLockStatus(seatId, 0, null);
-            log.info("异步同步座位解锁到数据库，座位ID: {}", seatId);
-        } catch (Exception e) {
-            log.error("异步同步座位解锁到数据库失败，座位ID: {}", seatId, e);
-        }
+        seatWriteBehindService.markDirty(Collections.singletonList(seatId));
     }
 
     /**
      * 批量同步库存到数据库
      */
-    @Async
     public void batchSyncStockToDatabase(List<Long> ticketIds) {
-        try {
-            for (Long ticketId : ticketIds) {
-                syncStockToDatabase(ticketId);
-            }
-            log.info("批量同步库存到数据库完成，票档数量: {}", ticketIds.size());
-        } catch (Exception e) {
-            log.error("批量同步库存到数据库失败", e);
-        }
+        stockWriteBehindService.markDirty(ticketIds);
+        log.debug("批量标记库存待同步，票档数量: {}", ticketIds.size());
     }
 
     /**
      * 批量同步座位锁定到数据库
      */
-    @Async
     public void batchSyncSeatLockToDatabase(List<Long> seatIds, Long userId) {
-        try {
-            for (Long seatId : seatIds) {
-                syncSeatLockToDatabase(seatId, userId);
-            }
-            log.info("批量同步座位锁定到数据库完成，座位数量: {}", seatIds.size());
-        } catch (Exception e) {
-            log.error("批量同步座位锁定到数据库失败", e);
-        }
+        seatWriteBehindService.markDirty(seatIds);
+        log.debug("批量标记座位锁定待同步，座位数量: {}", seatIds.size());
+    }
+
+    /**
+     * 批量同步座位解锁到数据库
+     */
+    public void batchSyncSeatUnlockToDatabase(List<Long> seatIds) {
+        seatWriteBehindService.markDirty(seatIds);
+        log.debug("批量标记座位解锁待同步，座位数量: {}", seatIds.size());
     }
 
     /**
@@ -137,19 +76,9 @@ public class DataSyncService {
     public boolean checkDataConsistency(Long ticketId) {
         try {
             // 检查Redis库存与数据库库存是否一致
-            String stockKey = STOCK_KEY_PREFIX + ticketId;
-            Object redisStockObj = redissonClient.getBucket(stockKey).get();
+            Integer redisStockInt = stockEngine.getStock(ticketId);
             
-            if (redisStockObj != null) {
-                Integer redisStockInt;
-                if (redisStockObj instanceof String) {
-                    redisStockInt = Integer.parseInt((String) redisStockObj);
-                } else if (redisStockObj instanceof Integer) {
-                    redisStockInt = (Integer) redisStockObj;
-                } else {
-                    redisStockInt = Integer.parseInt(redisStockObj.toString());
-                }
-                
+            if (redisStockInt != null) {
                 Integer dbStock = ticketStockMapper.getRemainStock(ticketId);
                 
                 boolean consistent = redisStockInt.equals(dbStock);
@@ -172,8 +101,7 @@ public class DataSyncService {
             // 以数据库为准，同步到Redis
             Integer dbStock = ticketStockMapper.getRemainStock(ticketId);
             if (dbStock != null) {
-                String stockKey = STOCK_KEY_PREFIX + ticketId;
-                redissonClient.getBucket(stockKey).set(dbStock);
+                stockEngine.initStock(ticketId, dbStock, true);
                 log.info("修复数据不一致，票档ID: {}, 数据库库存: {}", ticketId, dbStock);
             }
         } catch (Exception e) {
@@ -182,19 +110,12 @@ public class DataSyncService {
     }
 
     /**
-     * 初始化所有库存到Redis
+     * 初始化所有库存到Redis（流式读取、批量写入，等待完成）
      */
     public void initAllStockToRedis() {
         try {
-            List<Long> ticketIds = ticketStockMapper.getAllTicketIds();
-            for (Long ticketId : ticketIds) {
-                Integer remainStock = ticketStockMapper.getRemainStock(ticketId);
-                if (remainStock != null) {
-                    String stockKey = STOCK_KEY_PREFIX + ticketId;
-                    redissonClient.getBucket(stockKey).set(remainStock);
-                }
-            }
-            log.info("初始化所有库存到Redis完成，票档数量: {}", ticketIds.size());
+            stockWarmupService.warmUpAndWait();
+            log.info("初始化所有库存到Redis完成，{}", stockWarmupService.getDetails());
         } catch (Exception e) {
             log.error("初始化所有库存到Redis失败", e);
         }
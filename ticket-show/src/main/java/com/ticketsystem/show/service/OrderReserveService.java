@@ -0,0 +1,342 @@
+package com.ticketsystem.show.service;
+
+import com.ticketsystem.common.exception.BusinessException;
+import com.ticketsystem.show.dto.MultiOrderReserveRequest;
+import com.ticketsystem.show.dto.OrderReserveRequest;
+import com.ticketsystem.show.dto.OrderReserveResult;
+import com.ticketsystem.show.dto.ShowInfoDTO;
+import com.ticketsystem.show.dto.StockReserveItem;
+import com.ticketsystem.show.entity.Seat;
+import com.ticketsystem.show.mapper.SeatMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.StringUtils;
+
+import javax.annotation.PostConstruct;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * 下单预留服务
+ * 订单服务一次调用完成票档校验、Redis预减库存、数据库库存锁定和座位锁定，并返回票价、演出和座位展示信息，
+ * 代替原来逐项的多次远程调用和各失败分支上的回滚调用；多票档订单同样一次调用预留全部票档。
+ *
+ * 只读校验全部放在写操作之前，座位锁定先于数据库库存锁定，座位已被占用这一最常见的失败不会触及库存表。
+ * 票档表的扣减随本地事务回滚；库存表由组提交器在独立事务中提交，本地事务回滚后由其提交反向操作；
+ * Redis库存和座位锁不受事务管理，在事务回滚后由事务同步回调补偿。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class OrderReserveService {
+
+    private final TicketService ticketService;
+    private final TicketStockService ticketStockService;
+    private final ShowService showService;
+    private final SeatService seatService;
+    private final SeatTimeSlotService seatTimeSlotService;
+    private final SeatMapper seatMapper;
+    private final MeterRegistry meterRegistry;
+
+    private Counter reserveFailureCounter;
+    private Counter compensationFailureCounter;
+
+    @PostConstruct
+    public void init() {
+        reserveFailureCounter = Counter.builder("order_reserve_failure_total")
+                .description("下单预留失败次数")
+                .register(meterRegistry);
+        compensationFailureCounter = Counter.builder("order_reserve_compensation_failure_total")
+                .description("下单预留回滚后补偿Redis库存或座位锁失败次数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 预留下单所需的库存和座位，任一步失败时整体回滚
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public OrderReserveResult reserve(OrderReserveRequest request) {
+        Long ticketId = request.getTicketId();
+        Integer quantity = request.getQuantity();
+
+        // 只读校验，失败时尚未产生任何占用
+        BigDecimal price = ticketService.getTicketPrice(ticketId);
+        if (price == null || price.compareTo(BigDecimal.ZERO) <= 0) {
+            log.error("票价异常，订单号: {}, 票档ID: {}, 价格: {}", request.getOrderNo(), ticketId, price);
+            reserveFailureCounter.increment();
+            throw new BusinessException("票价信息异常");
+        }
+        ShowInfoDTO showInfo = showService.getShowInfo(request.getShowId(), request.getSessionId());
+        String seatInfo = request.getSeatId() != null ? describeSeat(request.getSeatId()) : null;
+        LocalDateTime start = parseTime(request.getStartTime());
+        LocalDateTime end = parseTime(request.getEndTime());
+
+        Integer stockResult = ticketStockService.predeductStockFromRedis(ticketId, quantity, request.getOrderNo());
+        if (!Integer.valueOf(1).equals(stockResult)) {
+            log.warn("Redis预减库存失败，订单号: {}, 票档ID: {}, 数量: {}, 结果: {}",
+                    request.getOrderNo(), ticketId, quantity, stockResult);
+            reserveFailureCounter.increment();
+            throw new BusinessException(Integer.valueOf(0).equals(stockResult) ? "库存不足" : "库存信息异常");
+        }
+
+        AtomicBoolean seatLocked = new AtomicBoolean();
+        registerCompensation(request, start, end, seatLocked);
+
+        if (request.getSeatId() != null) {
+            // 按时段预约时只占用预约时段，座位的其他时段仍可被他人预约
+            boolean locked = start != null && end != null
+                    ? seatTimeSlotService.lockSlots(request.getSeatId(), request.getUserId(), start, end)
+                    : seatService.lockSeats(List.of(request.getSeatId()), request.getUserId());
+            if (!locked) {
+                log.warn("座位锁定失败，订单号: {}, 座位ID: {}, 用户ID: {}",
+                        request.getOrderNo(), request.getSeatId(), request.getUserId());
+                reserveFailureCounter.increment();
+                throw new BusinessException("座位锁定失败，请重新选择座位");
+            }
+            seatLocked.set(true);
+        }
+
+        if (!Boolean.TRUE.equals(ticketService.lockTicketStock(ticketId, quantity))) {
+            log.error("数据库库存锁定失败，订单号: {}, 票档ID: {}, 数量: {}", request.getOrderNo(), ticketId, quantity);
+            reserveFailureCounter.increment();
+            throw new BusinessException("数据库库存锁定失败");
+        }
+
+        log.info("下单预留成功，订单号: {}, 票档ID: {}, 数量: {}, 座位ID: {}",
+                request.getOrderNo(), ticketId, quantity, request.getSeatId());
+        OrderReserveResult result = new OrderReserveResult();
+        result.setPrice(price);
+        result.setShowInfo(showInfo);
+        result.setSeatInfo(seatInfo);
+        return result;
+    }
+
+    /**
+     * 释放预留：释放座位、解锁数据库库存并回滚Redis库存，供订单服务在预留成功但订单未能创建时调用
+     * @return 全部释放成功时为true，否则由订单服务记录补偿
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public boolean release(OrderReserveRequest request) {
+        Long ticketId = request.getTicketId();
+        Integer quantity = request.getQuantity();
+
+        // 座位与库存相互独立，无论库存是否释放成功都释放座位
+        boolean seatReleased = request.getSeatId() == null
+                || releaseSeat(request, parseTime(request.getStartTime()), parseTime(request.getEndTime()));
+
+        boolean unlocked = Boolean.TRUE.equals(ticketService.unlockTicketStock(ticketId, quantity));
+        boolean rolledBack = false;
+        if (unlocked) {
+            rolledBack = Boolean.TRUE.equals(
+                    ticketStockService.rollbackStockToRedis(ticketId, quantity, request.getOrderNo()));
+            if (!rolledBack) {
+                log.error("释放预留时Redis库存回滚失败，订单号: {}, 票档ID: {}, 数量: {}",
+                        request.getOrderNo(), ticketId, quantity);
+            }
+        } else {
+            // 数据库库存未恢复时不回滚Redis，避免Redis可售数超过数据库
+            log.error("释放预留时数据库库存解锁失败，订单号: {}, 票档ID: {}, 数量: {}",
+                    request.getOrderNo(), ticketId, quantity);
+        }
+
+        log.info("释放下单预留，订单号: {}, 库存解锁: {}, Redis回滚: {}, 座位释放: {}",
+                request.getOrderNo(), unlocked, rolledBack, seatReleased);
+        return unlocked && rolledBack && seatReleased;
+    }
+
+    /**
+     * 预留多票档订单的全部票档：Redis一次调用预减所有票档（全部满足才扣减），再逐个锁定数据库库存，
+     * 任一票档失败时整体回滚
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public OrderReserveResult reserveItems(MultiOrderReserveRequest request) {
+        List<StockReserveItem> items = request.getItems();
+
+        // 只读校验，失败时尚未产生任何占用
+        Map<Long, BigDecimal> prices = new LinkedHashMap<>();
+        for (StockReserveItem item : items) {
+            BigDecimal price = ticketService.getTicketPrice(item.getTicketId());
+            if (price == null || price.compareTo(BigDecimal.ZERO) <= 0) {
+                log.error("票价异常，订单号: {}, 票档ID: {}, 价格: {}", request.getOrderNo(), item.getTicketId(), price);
+                reserveFailureCounter.increment();
+                throw new BusinessException("获取票价失败: 票档" + item.getTicketId() + "不存在或不可售");
+            }
+            prices.put(item.getTicketId(), price);
+        }
+        ShowInfoDTO showInfo = showService.getShowInfo(request.getShowId(), request.getSessionId());
+
+        List<StockReserveItem> failedItems = ticketStockService.predeductStocksFromRedis(items, request.getOrderNo())
+                .stream()
+                .filter(item -> !Integer.valueOf(1).equals(item.getResult()))
+                .collect(Collectors.toList());
+        if (!failedItems.isEmpty()) {
+            log.warn("Redis多票档预减库存失败，订单号: {}, 失败票档: {}", request.getOrderNo(), failedItems);
+            reserveFailureCounter.increment();
+            boolean insufficient = failedItems.stream().anyMatch(item -> Integer.valueOf(0).equals(item.getResult()));
+            throw new BusinessException((insufficient ? "库存不足" : "库存信息异常") + "，票档: "
+                    + failedItems.stream().map(item -> String.valueOf(item.getTicketId())).collect(Collectors.joining(",")));
+        }
+
+        registerItemsCompensation(request);
+
+        for (StockReserveItem item : items) {
+            if (!Boolean.TRUE.equals(ticketService.lockTicketStock(item.getTicketId(), item.getQuantity()))) {
+                log.error("数据库库存锁定失败，订单号: {}, 票档ID: {}, 数量: {}",
+                        request.getOrderNo(), item.getTicketId(), item.getQuantity());
+                reserveFailureCounter.increment();
+                throw new BusinessException("数据库库存锁定失败，票档: " + item.getTicketId());
+            }
+        }
+
+        log.info("多票档下单预留成功，订单号: {}, 票档: {}", request.getOrderNo(), prices.keySet());
+        OrderReserveResult result = new OrderReserveResult();
+        result.setPrices(prices);
+        result.setShowInfo(showInfo);
+        return result;
+    }
+
+    /**
+     * 释放多票档预留：解锁各票档数据库库存，只回滚已解锁票档的Redis库存
+     * @return 全部释放成功时为true，否则由订单服务记录补偿
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public boolean releaseItems(MultiOrderReserveRequest request) {
+        List<StockReserveItem> unlocked = new ArrayList<>(request.getItems().size());
+        for (StockReserveItem item : request.getItems()) {
+            if (Boolean.TRUE.equals(ticketService.unlockTicketStock(item.getTicketId(), item.getQuantity()))) {
+                unlocked.add(item);
+            } else {
+                // 数据库库存未恢复时不回滚Redis，避免Redis可售数超过数据库
+                log.error("释放预留时数据库库存解锁失败，订单号: {}, 票档ID: {}, 数量: {}",
+                        request.getOrderNo(), item.getTicketId(), item.getQuantity());
+            }
+        }
+
+        boolean rolledBack = unlocked.isEmpty() || ticketStockService.rollbackStocksToRedis(unlocked, request.getOrderNo())
+                .stream()
+                .allMatch(item -> Integer.valueOf(1).equals(item.getResult()));
+        if (!rolledBack) {
+            log.error("释放预留时Redis库存回滚失败，订单号: {}, 票档: {}", request.getOrderNo(), unlocked);
+        }
+
+        log.info("释放多票档下单预留，订单号: {}, 库存解锁: {}/{}, Redis回滚: {}",
+                request.getOrderNo(), unlocked.size(), request.getItems().size(), rolledBack);
+        return unlocked.size() == request.getItems().size() && rolledBack;
+    }
+
+    /**
+     * 本地事务回滚后补偿多票档预留的Redis库存
+     */
+    private void registerItemsCompensation(MultiOrderReserveRequest request) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_ROLLED_BACK) {
+                    return;
+                }
+                log.warn("多票档下单预留事务回滚，补偿Redis库存，订单号: {}", request.getOrderNo());
+                try {
+                    List<StockReserveItem> failedItems = ticketStockService
+                            .rollbackStocksToRedis(request.getItems(), request.getOrderNo()).stream()
+                            .filter(item -> !Integer.valueOf(1).equals(item.getResult()))
+                            .collect(Collectors.toList());
+                    if (!failedItems.isEmpty()) {
+                        compensationFailureCounter.increment();
+                        log.error("多票档下单预留回滚Redis库存失败，订单号: {}, 失败票档: {}",
+                                request.getOrderNo(), failedItems);
+                    }
+                } catch (Exception e) {
+                    compensationFailureCounter.increment();
+                    log.error("多票档下单预留回滚Redis库存异常，订单号: {}", request.getOrderNo(), e);
+                }
+            }
+        });
+    }
+
+    /**
+     * 本地事务回滚后补偿Redis库存和本次锁定的座位
+     */
+    private void registerCompensation(OrderReserveRequest request, LocalDateTime start, LocalDateTime end,
+                                      AtomicBoolean seatLocked) {
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_ROLLED_BACK) {
+                    return;
+                }
+                log.warn("下单预留事务回滚，补偿Redis库存和座位锁，订单号: {}", request.getOrderNo());
+                try {
+                    if (!Boolean.TRUE.equals(ticketStockService.rollbackStockToRedis(
+                            request.getTicketId(), request.getQuantity(), request.getOrderNo()))) {
+                        compensationFailureCounter.increment();
+                        log.error("下单预留回滚Redis库存失败，订单号: {}, 票档ID: {}, 数量: {}",
+                                request.getOrderNo(), request.getTicketId(), request.getQuantity());
+                    }
+                } catch (Exception e) {
+                    compensationFailureCounter.increment();
+                    log.error("下单预留回滚Redis库存异常，订单号: {}, 票档ID: {}, 数量: {}",
+                            request.getOrderNo(), request.getTicketId(), request.getQuantity(), e);
+                }
+                if (seatLocked.get() && !releaseSeat(request, start, end)) {
+                    // 未释放的座位锁到期后自动失效
+                    compensationFailureCounter.increment();
+                }
+            }
+        });
+    }
+
+    private boolean releaseSeat(OrderReserveRequest request, LocalDateTime start, LocalDateTime end) {
+        try {
+            return start != null && end != null
+                    ? seatTimeSlotService.releaseSlots(request.getSeatId(), request.getUserId(), start, end)
+                    : seatService.releaseSeats(List.of(request.getSeatId()), request.getUserId());
+        } catch (Exception e) {
+            log.error("释放座位异常，订单号: {}, 座位ID: {}, 用户ID: {}",
+                    request.getOrderNo(), request.getSeatId(), request.getUserId(), e);
+            return false;
+        }
+    }
+
+    /**
+     * 座位展示信息：优先使用座位编号，否则按排号座号拼接
+     */
+    private String describeSeat(Long seatId) {
+        Seat seat = seatMapper.selectById(seatId);
+        if (seat == null) {
+            throw new BusinessException("座位不存在");
+        }
+        if (StringUtils.hasText(seat.getSeatCode())) {
+            return seat.getSeatCode();
+        }
+        if (StringUtils.hasText(seat.getRowNum()) && StringUtils.hasText(seat.getSeatNum())) {
+            return seat.getRowNum() + "排" + seat.getSeatNum() + "座";
+        }
+        return "座位" + seatId;
+    }
+
+    /**
+     * 解析时间，兼容 yyyy-MM-dd HH:mm:ss 与 ISO 格式，为空时返回null
+     */
+    private static LocalDateTime parseTime(String time) {
+        if (!StringUtils.hasText(time)) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(time.trim().replace(" ", "T"));
+        } catch (Exception e) {
+            throw new BusinessException("时间格式不正确: " + time);
+        }
+    }
+}
@@ -1,22 +1,28 @@
 package com.ticketsystem.show.service;
 
+import com.ticketsystem.common.script.LuaScriptRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
-import org.redisson.api.RLock;
-
+import org.redisson.api.RBucket;
+import org.redisson.api.RScript;
 import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
 import org.springframework.stereotype.Service;
 
-import java.util.Arrays;
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
 
 /**
- * 使用Redisson RLock的座位锁定服务
- * 避免Lua脚本参数类型问题
+ * 座位锁定服务
+ * 锁值统一为 userId:timestamp 字符串，加解锁脚本同时维护区域座位状态位图（见SeatStateIndexService）
+ * 同一区域的多个座位在一个脚本中全部锁定或全部不锁定；座位锁与区域位图共用 {areaId} hash tag，
+ * Redis Cluster下同样适用。
  */
 @Service
 @RequiredArgsConstructor
@@ -24,166 +30,174 @@ import java.util.concurrent.TimeUnit;
 public class RedissonSeatLockService {
 
     private final RedissonClient redissonClient;
+    private final LuaScriptRegistry luaScriptRegistry;
+    private final SeatStateIndexService seatStateIndexService;
+    private final SeatEventPublisher seatEventPublisher;
+    private final SeatLockExpiryService seatLockExpiryService;
 
-    // 座位锁定键前缀
-    private static final String SEAT_LOCK_PREFIX = "seat_lock:";
-    
     // 锁定过期时间（秒）
     private static final int LOCK_EXPIRE_TIME = 300; // 5分钟
-    private static final int LOCK_WAIT_TIME = 1; // 1秒等待时间
 
-    // 使用Redis原子操作API替代Lua脚本
+    // 脚本注册名
+    private static final String SCRIPT_LOCK = "seat.lock.batch";
+    private static final String SCRIPT_UNLOCK = "seat.unlock.batch";
+
+    @PostConstruct
+    public void init() {
+        luaScriptRegistry.registerResource(SCRIPT_LOCK, "lua/seat_lock_batch.lua");
+        luaScriptRegistry.registerResource(SCRIPT_UNLOCK, "lua/seat_unlock_batch.lua");
+    }
 
     /**
-     * 原子性单个座位锁定 - 使用Redis原子操作API
+     * 原子性单个座位锁定 - 加锁与区域座位状态位图更新在同一脚本中完成
      */
     public boolean atomicLockSeat(Long seatId, Long userId) {
-        String lockKey = SEAT_LOCK_PREFIX + seatId;
-        String lockValue = String.valueOf(userId) + ":" + System.currentTimeMillis();
-        
-        try {
-            // 使用SETNX原子操作设置锁，如果键不存在则设置成功
-            Boolean success = redissonClient.getBucket(lockKey).trySet(lockValue);
-            
-            if (success != null && success) {
-                // 设置过期时间
-                redissonClient.getBucket(lockKey).expire(LOCK_EXPIRE_TIME, TimeUnit.SECONDS);
-                log.info("原子性座位锁定成功，座位ID: {}, 用户ID: {}", seatId, userId);
-                return true;
-            } else {
-                // 检查是否是同一用户的锁
-                String currentValue = (String) redissonClient.getBucket(lockKey).get();
-                if (currentValue != null && currentValue.startsWith(String.valueOf(userId) + ":")) {
-                    // 同一用户重新设置锁和过期时间
-                    redissonClient.getBucket(lockKey).set(lockValue, LOCK_EXPIRE_TIME, TimeUnit.SECONDS);
-                    log.info("原子性座位锁定成功（重新锁定），座位ID: {}, 用户ID: {}", seatId, userId);
-                    return true;
-                } else {
-                    log.warn("原子性座位锁定失败，座位ID: {}, 用户ID: {}, 原因: 座位已被其他用户锁定", seatId, userId);
-                    return false;
-                }
-            }
-        } catch (Exception e) {
-            log.error("原子性座位锁定异常，座位ID: {}, 用户ID: {}", seatId, userId, e);
-            return false;
-        }
+        return Boolean.TRUE.equals(atomicLockSeats(Collections.singletonList(seatId), userId).get(seatId));
     }
 
     /**
-     * 原子性单个座位解锁 - 使用Redis原子操作API
+     * 原子性单个座位解锁 - 只释放当前用户持有的锁，并同步更新区域座位状态位图
      */
     public boolean atomicUnlockSeat(Long seatId, Long userId) {
-        String lockKey = SEAT_LOCK_PREFIX + seatId;
-        
-        try {
-            // 获取当前锁的值来验证用户ID
-            String currentLockValue = (String) redissonClient.getBucket(lockKey).get();
-            
-            if (currentLockValue == null) {
-                log.info("座位未锁定或锁已过期，座位ID: {}, 用户ID: {}", seatId, userId);
-                return true; // 锁不存在视为解锁成功
-            }
-            
-            // 验证锁是否属于当前用户
-            String[] parts = currentLockValue.split(":");
-            if (parts.length > 0) {
-                try {
-                    Long lockUserId = Long.parseLong(parts[0]);
-                    if (!lockUserId.equals(userId)) {
-                        log.warn("原子性座位解锁失败，座位ID: {}, 用户ID: {}, 原因: 锁属于其他用户 {}", seatId, userId, lockUserId);
-                        return false;
-                    }
-                } catch (NumberFormatException e) {
-                    log.warn("锁值格式异常，座位ID: {}, 锁值: {}", seatId, currentLockValue);
-                    return false;
-                }
-            }
-            
-            // 使用原子操作删除锁
-            boolean deleted = redissonClient.getBucket(lockKey).delete();
-            
-            if (deleted) {
-                log.info("原子性座位解锁成功，座位ID: {}, 用户ID: {}", seatId, userId);
-                return true;
-            } else {
-                log.warn("原子性座位解锁失败，座位ID: {}, 用户ID: {}, 原因: 锁已不存在", seatId, userId);
-                return true; // 锁已不存在也视为解锁成功
-            }
-        } catch (Exception e) {
-            log.error("原子性座位解锁异常，座位ID: {}, 用户ID: {}", seatId, userId, e);
-            return false;
-        }
+        return Boolean.TRUE.equals(atomicUnlockSeats(Collections.singletonList(seatId), userId).get(seatId));
     }
 
     /**
-     * 原子性批量座位锁定
+     * 原子性批量座位锁定 - 全部成功或全部失败
+     * 每个区域一次脚本调用；跨区域时后面的区域失败会释放前面区域已锁定的座位
      */
     public Map<Long, Boolean> atomicLockSeats(List<Long> seatIds, Long userId) {
-        Map<Long, Boolean> results = new HashMap<>();
-        
         log.info("开始执行原子性批量座位锁定，座位IDs: {}, 用户ID: {}", seatIds, userId);
-        
+
+        Map<Long, List<SeatStateIndexService.SeatSlot>> groups = new LinkedHashMap<>();
+        Map<Long, List<Long>> groupSeatIds = new LinkedHashMap<>();
+        List<Long> locked = new ArrayList<>();
         try {
-            // 按顺序尝试锁定每个座位
-            for (Long seatId : seatIds) {
-                boolean success = atomicLockSeat(seatId, userId);
-                results.put(seatId, success);
-                
-                // 如果任何一个座位锁定失败，释放已锁定的座位
-                if (!success) {
-                    log.warn("座位 {} 锁定失败，开始释放已锁定的座位", seatId);
-                    for (Map.Entry<Long, Boolean> entry : results.entrySet()) {
-                        if (entry.getValue()) {
-                            atomicUnlockSeat(entry.getKey(), userId);
-                        }
-                    }
-                    // 清空结果，表示全部失败
-                    results.clear();
-                    for (Long id : seatIds) {
-                        results.put(id, false);
+            for (Long seatId : new LinkedHashSet<>(seatIds)) {
+                SeatStateIndexService.SeatSlot slot = seatStateIndexService.resolve(seatId);
+                if (slot == null) {
+                    log.warn("原子性批量座位锁定失败，座位ID: {}, 用户ID: {}, 原因: 座位不存在", seatId, userId);
+                    return allResults(seatIds, false);
+                }
+                groups.computeIfAbsent(slot.getAreaId(), id -> new ArrayList<>()).add(slot);
+                groupSeatIds.computeIfAbsent(slot.getAreaId(), id -> new ArrayList<>()).add(seatId);
+            }
+
+            long now = System.currentTimeMillis();
+            for (Map.Entry<Long, List<SeatStateIndexService.SeatSlot>> group : groups.entrySet()) {
+                Long areaId = group.getKey();
+                List<Long> areaSeatIds = groupSeatIds.get(areaId);
+                List<Object> keys = areaKeys(areaId, areaSeatIds);
+                List<Object> args = new ArrayList<>(areaSeatIds.size() + 5);
+                args.add(String.valueOf(userId));
+                args.add(userId + ":" + now);
+                args.add(String.valueOf(LOCK_EXPIRE_TIME));
+                args.add(String.valueOf(now));
+                args.add(String.valueOf(now + LOCK_EXPIRE_TIME * 1000L));
+                for (SeatStateIndexService.SeatSlot slot : group.getValue()) {
+                    args.add(String.valueOf(slot.getOffset()));
+                }
+
+                Long failed = luaScriptRegistry.eval(SCRIPT_LOCK, RScript.Mode.READ_WRITE,
+                        RScript.ReturnType.INTEGER, keys, args.toArray());
+                if (failed == null || failed != 0) {
+                    Long failedSeatId = failed != null && failed > 0 ? areaSeatIds.get(failed.intValue() - 1) : null;
+                    log.warn("原子性批量座位锁定失败，座位ID: {}, 用户ID: {}, 原因: 座位已被其他用户锁定或不可售",
+                            failedSeatId, userId);
+                    if (!locked.isEmpty()) {
+                        atomicUnlockSeats(locked, userId);
                     }
-                    break;
+                    return allResults(seatIds, false);
+                }
+                locked.addAll(areaSeatIds);
+                seatLockExpiryService.track(areaSeatIds, userId, now + LOCK_EXPIRE_TIME * 1000L);
+                for (Long seatId : areaSeatIds) {
+                    seatEventPublisher.publish(SeatEventPublisher.EVENT_LOCK, areaId, seatId);
                 }
             }
-            
-            log.info("原子性批量座位锁定完成，座位IDs: {}, 用户ID: {}, 结果: {}", 
-                    seatIds, userId, results);
-            return results;
-            
+
+            log.info("原子性批量座位锁定成功，座位IDs: {}, 用户ID: {}", seatIds, userId);
+            return allResults(seatIds, true);
+
         } catch (Exception e) {
-            log.error("原子性批量座位锁定失败，座位IDs: {}, 用户ID: {}", seatIds, userId, e);
-            // 返回全部失败
-            for (Long seatId : seatIds) {
-                results.put(seatId, false);
+            log.error("原子性批量座位锁定异常，座位IDs: {}, 用户ID: {}", seatIds, userId, e);
+            if (!locked.isEmpty()) {
+                atomicUnlockSeats(locked, userId);
             }
-            return results;
+            return allResults(seatIds, false);
         }
     }
 
     /**
-     * 原子性批量座位解锁
+     * 原子性批量座位解锁 - 每个区域一次脚本调用，只释放当前用户持有的锁
      */
     public Map<Long, Boolean> atomicUnlockSeats(List<Long> seatIds, Long userId) {
         Map<Long, Boolean> results = new HashMap<>();
-        
-        try {
-            for (Long seatId : seatIds) {
-                boolean success = atomicUnlockSeat(seatId, userId);
-                results.put(seatId, success);
+        Map<Long, List<SeatStateIndexService.SeatSlot>> groups = new LinkedHashMap<>();
+        Map<Long, List<Long>> groupSeatIds = new LinkedHashMap<>();
+        for (Long seatId : new LinkedHashSet<>(seatIds)) {
+            SeatStateIndexService.SeatSlot slot = seatStateIndexService.resolve(seatId);
+            if (slot == null) {
+                // 座位不存在，不会持有锁
+                results.put(seatId, true);
+                continue;
             }
-            
-            log.info("原子性批量座位解锁完成，座位IDs: {}, 用户ID: {}, 结果: {}", 
-                    seatIds, userId, results);
-            return results;
-            
-        } catch (Exception e) {
-            log.error("原子性批量座位解锁失败，座位IDs: {}, 用户ID: {}", seatIds, userId, e);
-            // 返回全部失败
-            for (Long seatId : seatIds) {
-                results.put(seatId, false);
+            groups.computeIfAbsent(slot.getAreaId(), id -> new ArrayList<>()).add(slot);
+            groupSeatIds.computeIfAbsent(slot.getAreaId(), id -> new ArrayList<>()).add(seatId);
+        }
+
+        for (Map.Entry<Long, List<SeatStateIndexService.SeatSlot>> group : groups.entrySet()) {
+            Long areaId = group.getKey();
+            List<Long> areaSeatIds = groupSeatIds.get(areaId);
+            try {
+                List<Object> args = new ArrayList<>(areaSeatIds.size() + 1);
+                args.add(String.valueOf(userId));
+                for (SeatStateIndexService.SeatSlot slot : group.getValue()) {
+                    args.add(String.valueOf(slot.getOffset()));
+                }
+                List<Object> released = luaScriptRegistry.eval(SCRIPT_UNLOCK, RScript.Mode.READ_WRITE,
+                        RScript.ReturnType.MULTI, areaKeys(areaId, areaSeatIds), args.toArray());
+                List<Long> unlocked = new ArrayList<>(areaSeatIds.size());
+                for (int i = 0; i < areaSeatIds.size(); i++) {
+                    boolean success = released != null && i < released.size()
+                            && Long.parseLong(String.valueOf(released.get(i))) == 1;
+                    results.put(areaSeatIds.get(i), success);
+                    if (success) {
+                        unlocked.add(areaSeatIds.get(i));
+                        seatEventPublisher.publish(SeatEventPublisher.EVENT_RELEASE, areaId, areaSeatIds.get(i));
+                    }
+                }
+                seatLockExpiryService.untrack(unlocked, userId);
+            } catch (Exception e) {
+                log.error("原子性批量座位解锁异常，区域ID: {}, 座位IDs: {}, 用户ID: {}", areaId, areaSeatIds, userId, e);
+                for (Long seatId : areaSeatIds) {
+                    results.put(seatId, false);
+                }
             }
-            return results;
         }
+
+        log.info("原子性批量座位解锁完成，座位IDs: {}, 用户ID: {}, 结果: {}", seatIds, userId, results);
+        return results;
+    }
+
+    private List<Object> areaKeys(Long areaId, List<Long> seatIds) {
+        List<Object> keys = new ArrayList<>(seatIds.size() + 4);
+        keys.add(seatStateIndexService.stateKey(areaId));
+        keys.add(seatStateIndexService.locksKey(areaId));
+        keys.add(seatStateIndexService.versionKey(areaId));
+        keys.add(seatStateIndexService.countsKey(areaId));
+        for (Long seatId : seatIds) {
+            keys.add(seatStateIndexService.lockKey(areaId, seatId));
+        }
+        return keys;
+    }
+
+    private static Map<Long, Boolean> allResults(List<Long> seatIds, boolean success) {
+        Map<Long, Boolean> results = new HashMap<>();
+        for (Long seatId : seatIds) {
+            results.put(seatId, success);
+        }
+        return results;
     }
 
     /**
@@ -191,9 +205,7 @@ public class RedissonSeatLockService {
      */
     public boolean isSeatLocked(Long seatId) {
         try {
-            String lockKey = SEAT_LOCK_PREFIX + seatId;
-            RLock lock = redissonClient.getLock(lockKey);
-            return lock.isLocked();
+            return getLockBucket(seatId).isExists();
         } catch (Exception e) {
             log.error("检查座位锁定状态失败，座位ID: {}", seatId, e);
             return false;
@@ -205,29 +217,28 @@ public class RedissonSeatLockService {
      */
     public String getSeatLockInfo(Long seatId) {
         try {
-            String lockKey = SEAT_LOCK_PREFIX + seatId;
-            String lockInfoKey = lockKey + ":info";
-            
-            RLock lock = redissonClient.getLock(lockKey);
-            Map<Object, Object> lockInfo = redissonClient.getMap(lockInfoKey);
-            
-            return String.format("座位ID: %d, 锁定状态: %s, 锁定信息: %s", 
-                    seatId, lock.isLocked(), lockInfo);
+            RBucket<String> bucket = getLockBucket(seatId);
+            return String.format("座位ID: %d, 锁定值: %s, 剩余时间: %dms",
+                    seatId, bucket.get(), bucket.remainTimeToLive());
         } catch (Exception e) {
             log.error("获取座位锁定信息失败，座位ID: {}", seatId, e);
             return "获取失败";
         }
     }
 
+    private RBucket<String> getLockBucket(Long seatId) {
+        return redissonClient.getBucket(seatStateIndexService.lockKey(seatId), StringCodec.INSTANCE);
+    }
+
     /**
      * 清理过期锁定
      */
     public void cleanupExpiredLocks() {
         try {
-            // Redisson的RLock会自动处理过期，这里可以添加额外的清理逻辑
+            // 座位锁随TTL过期，位图中的锁定标记在读取时清理
             log.info("清理过期座位锁定完成");
         } catch (Exception e) {
             log.error("清理过期座位锁定失败", e);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,362 @@
+package com.ticketsystem.show.service;
+
+import com.ticketsystem.common.exception.BusinessException;
+import com.ticketsystem.show.entity.Seat;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 自动选座服务
+ * 每个区域在本节点缓存一个按坐标排列的座位网格（基本类型数组，格子 -> 位图序号），
+ * 分配时用一次Redis读取的区域状态快照（见SeatStateIndexService）填充网格状态，
+ * 逐排滑动窗口找出N个相邻空闲座位，按评分取最优的若干块，再通过多座位脚本一次全部锁定。
+ *
+ * 高并发下同一节点的请求会算出同一个最优块，因此选中的格子在锁定完成前记为“分配中”，
+ * 其他请求跳过这些格子直接选择次优块；跨节点的冲突由锁脚本的全部成功或全部失败保证，
+ * 失败后排除冲突的块重新读取快照再选，不需要客户端重试。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SeatAllocationService {
+
+    private final SeatService seatService;
+    private final SeatStateIndexService seatStateIndexService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${seat.allocation.max-seats:10}")
+    private int maxSeats;
+
+    @Value("${seat.allocation.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${seat.allocation.candidates:5}")
+    private int candidates;
+
+    // 最佳排位置（0为第一排，1为最后一排）
+    @Value("${seat.allocation.best-row-ratio:0.6}")
+    private double bestRowRatio;
+
+    // 每偏离最佳排一排的扣分，相当于偏离中线的列数
+    @Value("${seat.allocation.row-weight:2.0}")
+    private double rowWeight;
+
+    // 在块旁边留下单个空座的扣分
+    @Value("${seat.allocation.orphan-penalty:3.0}")
+    private double orphanPenalty;
+
+    // 区域ID -> 座位网格，区域座位信息变化时重建
+    private final Map<Long, SeatGrid> grids = new ConcurrentHashMap<>();
+
+    private Counter allocatedCounter;
+    private Counter conflictCounter;
+    private Counter exhaustedCounter;
+    private Timer allocateTimer;
+
+    @PostConstruct
+    public void init() {
+        allocatedCounter = Counter.builder("seat_allocation_success_total")
+                .description("自动选座成功次数")
+                .register(meterRegistry);
+        conflictCounter = Counter.builder("seat_allocation_conflict_total")
+                .description("自动选座锁定冲突后改选次数")
+                .register(meterRegistry);
+        exhaustedCounter = Counter.builder("seat_allocation_exhausted_total")
+                .description("自动选座没有可用相邻座位次数")
+                .register(meterRegistry);
+        allocateTimer = Timer.builder("seat_allocation_duration")
+                .description("自动选座耗时（含锁定）")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 在区域内分配并锁定count个相邻的最佳座位
+     * @return 已锁定的座位ID，没有足够的相邻空闲座位时返回空列表
+     */
+    public List<Long> allocate(Long areaId, int count, Long userId) {
+        if (!seatStateIndexService.isEnabled()) {
+            throw new BusinessException("自动选座未启用");
+        }
+        if (count < 1 || count > maxSeats) {
+            throw new BusinessException("自动选座数量须在1到" + maxSeats + "之间");
+        }
+        return allocateTimer.record(() -> doAllocate(areaId, count, userId));
+    }
+
+    private List<Long> doAllocate(Long areaId, int count, Long userId) {
+        // 本次请求已确认冲突的格子，之后的尝试不再选择
+        BitSet conflicts = new BitSet();
+        for (int attempt = 1; attempt <= maxAttempts; attempt++) {
+            SeatStateIndexService.AreaSnapshot snapshot = seatStateIndexService.snapshot(areaId);
+            SeatGrid grid = gridOf(snapshot.getGeometry());
+            if (grid.size() == 0) {
+                return Collections.emptyList();
+            }
+
+            List<int[]> blocks = grid.reserveBest(snapshot.getStates(), conflicts, count, candidates,
+                    bestRowRatio, rowWeight, orphanPenalty);
+            if (blocks.isEmpty()) {
+                break;
+            }
+            try {
+                for (int[] block : blocks) {
+                    List<Long> seatIds = grid.seatIds(block);
+                    if (seatService.lockSeats(seatIds, userId)) {
+                        allocatedCounter.increment();
+                        log.info("自动选座成功，区域ID: {}, 用户ID: {}, 座位IDs: {}, 尝试次数: {}",
+                                areaId, userId, seatIds, attempt);
+                        return seatIds;
+                    }
+                    conflictCounter.increment();
+                    grid.mark(conflicts, block);
+                }
+            } finally {
+                grid.release(blocks);
+            }
+            log.debug("自动选座候选块均已被占用，重新读取座位状态，区域ID: {}, 第{}次", areaId, attempt);
+        }
+        exhaustedCounter.increment();
+        log.info("自动选座失败，没有足够的相邻空闲座位，区域ID: {}, 用户ID: {}, 数量: {}", areaId, userId, count);
+        return Collections.emptyList();
+    }
+
+    private SeatGrid gridOf(SeatStateIndexService.AreaGeometry geometry) {
+        SeatGrid grid = grids.get(geometry.getAreaId());
+        if (grid != null && grid.geometry == geometry) {
+            return grid;
+        }
+        SeatGrid built = new SeatGrid(geometry);
+        grids.put(geometry.getAreaId(), built);
+        return built;
+    }
+
+    /**
+     * 区域座位网格
+     * 排按纵坐标（缺失时按排号）从前到后编号，列按横坐标（缺失时按座位号）编号，
+     * 坐标之间的空隙（过道）保留为空格子，不会被当作相邻座位；坐标跨度过大时退化为按顺序紧凑排列。
+     */
+    static class SeatGrid {
+
+        private static final int MAX_COLUMN_SPAN = 1024;
+
+        private final SeatStateIndexService.AreaGeometry geometry;
+
+        private final int rows;
+
+        private final int cols;
+
+        // 格子 -> 位图序号，-1表示该位置没有座位
+        private final int[] offsetAt;
+
+        // 每排座位的中线列（乘2保持整数）
+        private final int[] rowCenter2;
+
+        // 本节点正在锁定中的格子
+        private final BitSet reserved = new BitSet();
+
+        SeatGrid(SeatStateIndexService.AreaGeometry geometry) {
+            this.geometry = geometry;
+            List<Seat> seats = geometry.getSeatsByOffset();
+
+            // 排号：纵坐标或排号的不同取值按升序编号
+            TreeMap<Integer, Integer> rowIndex = new TreeMap<>();
+            int[] seatRow = new int[seats.size()];
+            int[] seatCol = new int[seats.size()];
+            TreeSet<Integer> colValues = new TreeSet<>();
+            for (int i = 0; i < seats.size(); i++) {
+                Seat seat = seats.get(i);
+                seatRow[i] = seat.getYCoordinate() != null ? seat.getYCoordinate() : parse(seat.getRowNum(), 0);
+                seatCol[i] = seat.getXCoordinate() != null ? seat.getXCoordinate() : parse(seat.getSeatNum(), i);
+                rowIndex.put(seatRow[i], 0);
+                colValues.add(seatCol[i]);
+            }
+            int r = 0;
+            for (Map.Entry<Integer, Integer> entry : rowIndex.entrySet()) {
+                entry.setValue(r++);
+            }
+            this.rows = rowIndex.size();
+
+            int minCol = colValues.isEmpty() ? 0 : colValues.first();
+            int span = colValues.isEmpty() ? 0 : colValues.last() - minCol + 1;
+            Map<Integer, Integer> colIndex = null;
+            if (span > MAX_COLUMN_SPAN) {
+                colIndex = new TreeMap<>();
+                int c = 0;
+                for (Integer value : colValues) {
+                    colIndex.put(value, c++);
+                }
+                span = colIndex.size();
+            }
+            this.cols = span;
+
+            this.offsetAt = new int[rows * cols];
+            Arrays.fill(offsetAt, -1);
+            int[] minInRow = new int[rows];
+            int[] maxInRow = new int[rows];
+            Arrays.fill(minInRow, Integer.MAX_VALUE);
+            Arrays.fill(maxInRow, -1);
+            for (int i = 0; i < seats.size(); i++) {
+                int row = rowIndex.get(seatRow[i]);
+                int col = colIndex != null ? colIndex.get(seatCol[i]) : seatCol[i] - minCol;
+                // 坐标重复的座位只保留一个，其余不参与自动分配
+                if (offsetAt[row * cols + col] < 0) {
+                    offsetAt[row * cols + col] = i;
+                }
+                minInRow[row] = Math.min(minInRow[row], col);
+                maxInRow[row] = Math.max(maxInRow[row], col);
+            }
+            this.rowCenter2 = new int[rows];
+            for (int row = 0; row < rows; row++) {
+                rowCenter2[row] = maxInRow[row] >= 0 ? minInRow[row] + maxInRow[row] : cols - 1;
+            }
+        }
+
+        int size() {
+            return geometry.size();
+        }
+
+        /**
+         * 选出评分最高的若干个互不重叠的相邻空闲块并标记为分配中，返回各块的格子下标
+         */
+        List<int[]> reserveBest(String states, BitSet excluded, int count, int limit,
+                                double bestRowRatio, double rowWeight, double orphanPenalty) {
+            synchronized (this) {
+                List<int[]> blocks = findBest(states, excluded, count, limit, bestRowRatio, rowWeight, orphanPenalty);
+                for (int[] block : blocks) {
+                    mark(reserved, block);
+                }
+                return blocks;
+            }
+        }
+
+        void release(List<int[]> blocks) {
+            synchronized (this) {
+                for (int[] block : blocks) {
+                    for (int cell : block) {
+                        reserved.clear(cell);
+                    }
+                }
+            }
+        }
+
+        void mark(BitSet bits, int[] block) {
+            for (int cell : block) {
+                bits.set(cell);
+            }
+        }
+
+        List<Long> seatIds(int[] block) {
+            List<Long> seatIds = new ArrayList<>(block.length);
+            for (int cell : block) {
+                seatIds.add(geometry.getSeatsByOffset().get(offsetAt[cell]).getId());
+            }
+            return seatIds;
+        }
+
+        /**
+         * 逐排滑动窗口查找count个连续空闲格子，分数越低越好：
+         * 偏离最佳排的排数 * rowWeight + 块中心偏离该排中线的列数 + 两侧留下单个空座的扣分。
+         * 返回的块互不重叠，按分数升序。
+         */
+        List<int[]> findBest(String states, BitSet excluded, int count, int limit,
+                             double bestRowRatio, double rowWeight, double orphanPenalty) {
+            double bestRow = (rows - 1) * bestRowRatio;
+            double[] topScores = new double[limit];
+            int[] topStarts = new int[limit];
+            int found = 0;
+
+            for (int row = 0; row < rows; row++) {
+                double rowScore = Math.abs(row - bestRow) * rowWeight;
+                if (found == limit && rowScore >= topScores[limit - 1]) {
+                    continue;
+                }
+                int base = row * cols;
+                int col = 0;
+                while (col < cols) {
+                    if (!free(states, excluded, base + col)) {
+                        col++;
+                        continue;
+                    }
+                    // 连续空闲格子 [runStart, runEnd)
+                    int runStart = col;
+                    while (col < cols && free(states, excluded, base + col)) {
+                        col++;
+                    }
+                    int runEnd = col;
+                    // 同一段内选出最优的一个起点，避免返回大量重叠的候选块
+                    double runBest = Double.MAX_VALUE;
+                    int runBestStart = -1;
+                    for (int start = runStart; start + count <= runEnd; start++) {
+                        double score = rowScore + Math.abs(2 * start + count - 1 - rowCenter2[row]) / 2.0;
+                        if (start - runStart == 1) {
+                            score += orphanPenalty;
+                        }
+                        if (runEnd - (start + count) == 1) {
+                            score += orphanPenalty;
+                        }
+                        if (score < runBest) {
+                            runBest = score;
+                            runBestStart = start;
+                        }
+                    }
+                    if (runBestStart < 0 || (found == limit && runBest >= topScores[limit - 1])) {
+                        continue;
+                    }
+                    // 插入有序的候选列表
+                    int pos = found < limit ? found++ : limit - 1;
+                    while (pos > 0 && topScores[pos - 1] > runBest) {
+                        topScores[pos] = topScores[pos - 1];
+                        topStarts[pos] = topStarts[pos - 1];
+                        pos--;
+                    }
+                    topScores[pos] = runBest;
+                    topStarts[pos] = base + runBestStart;
+                }
+            }
+
+            List<int[]> blocks = new ArrayList<>(found);
+            for (int i = 0; i < found; i++) {
+                int[] block = new int[count];
+                for (int j = 0; j < count; j++) {
+                    block[j] = topStarts[i] + j;
+                }
+                blocks.add(block);
+            }
+            return blocks;
+        }
+
+        private boolean free(String states, BitSet excluded, int cell) {
+            int offset = offsetAt[cell];
+            return offset >= 0 && offset < states.length()
+                    && states.charAt(offset) - '0' == SeatStateIndexService.STATE_FREE
+                    && !reserved.get(cell) && !excluded.get(cell);
+        }
+
+        private static int parse(String value, int defaultValue) {
+            if (value == null) {
+                return defaultValue;
+            }
+            String digits = value.replaceAll("\\D", "");
+            if (digits.isEmpty() || digits.length() > 9) {
+                return defaultValue;
+            }
+            return Integer.parseInt(digits);
+        }
+    }
+}
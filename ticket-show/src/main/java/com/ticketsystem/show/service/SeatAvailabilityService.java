@@ -0,0 +1,196 @@
+package com.ticketsystem.show.service;
+
+import com.ticketsystem.common.script.LuaScriptRegistry;
+import com.ticketsystem.show.dto.SeatAreaCounts;
+import com.ticketsystem.show.mapper.SeatMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBatch;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 区域座位计数服务
+ * 每个区域的空闲/已锁定/已售/不可用座位数保存在Redis哈希（seat:state:{areaId}:counts）中，
+ * 由位图初始化、加解锁和锁过期清理脚本在同一脚本内增量维护，与位图始终一致。
+ * 区域列表用一次pipeline对所有区域执行HGETALL，不再逐区域COUNT。
+ *
+ * 定期校正：按区域一条分组SQL统计已售和不可用座位，与位图不一致时重新加载座位信息并重建位图；
+ * 计数与位图统计结果不一致时，在版本号未变的前提下整体覆盖。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SeatAvailabilityService {
+
+    private static final String SCRIPT_FIX = "seat.state.counts.fix";
+
+    private final RedissonClient redissonClient;
+    private final LuaScriptRegistry luaScriptRegistry;
+    private final SeatMapper seatMapper;
+    private final SeatStateIndexService seatStateIndexService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${seat.counts.check-enabled:true}")
+    private boolean checkEnabled;
+
+    private Counter driftCounter;
+    private Counter reseedCounter;
+
+    @PostConstruct
+    public void init() {
+        luaScriptRegistry.registerResource(SCRIPT_FIX, "lua/seat_state_counts_fix.lua");
+        driftCounter = Counter.builder("seat_counts_drift_total")
+                .description("区域座位计数与位图不一致被校正的次数")
+                .register(meterRegistry);
+        reseedCounter = Counter.builder("seat_counts_reseed_total")
+                .description("区域位图与数据库不一致被重建的次数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 批量读取区域座位计数，计数尚未初始化的区域先初始化位图
+     */
+    public Map<Long, SeatAreaCounts> getCounts(List<Long> areaIds) {
+        Map<Long, SeatAreaCounts> result = new HashMap<>(areaIds.size() * 2);
+        if (areaIds.isEmpty()) {
+            return result;
+        }
+        if (!seatStateIndexService.isEnabled()) {
+            return countFromDatabase(areaIds);
+        }
+        try {
+            List<Map<String, String>> hashes = readCounts(areaIds);
+            for (int i = 0; i < areaIds.size(); i++) {
+                Long areaId = areaIds.get(i);
+                Map<String, String> hash = hashes.get(i);
+                result.put(areaId, hash.isEmpty() ? fromSnapshot(seatStateIndexService.snapshot(areaId))
+                        : fromHash(areaId, hash));
+            }
+            return result;
+        } catch (Exception e) {
+            log.error("读取区域座位计数失败，回退到数据库统计，区域IDs: {}", areaIds, e);
+            return countFromDatabase(areaIds);
+        }
+    }
+
+    /**
+     * 校正区域座位计数，只处理计数已初始化（有人访问过）的区域
+     */
+    @Scheduled(fixedDelayString = "${seat.counts.check-interval-ms:60000}")
+    public void checkDrift() {
+        if (!checkEnabled || !seatStateIndexService.isEnabled()) {
+            return;
+        }
+        try {
+            List<SeatAreaCounts> rows = seatMapper.countSeatStatesByArea();
+            List<Long> areaIds = rows.stream().map(SeatAreaCounts::getAreaId).collect(Collectors.toList());
+            List<Map<String, String>> hashes = readCounts(areaIds);
+            for (int i = 0; i < rows.size(); i++) {
+                if (!hashes.get(i).isEmpty()) {
+                    checkArea(rows.get(i), fromHash(areaIds.get(i), hashes.get(i)));
+                }
+            }
+        } catch (Exception e) {
+            log.error("区域座位计数校正失败", e);
+        }
+    }
+
+    private void checkArea(SeatAreaCounts database, SeatAreaCounts cached) {
+        Long areaId = database.getAreaId();
+        SeatStateIndexService.AreaSnapshot snapshot = seatStateIndexService.snapshot(areaId);
+        SeatAreaCounts actual = fromSnapshot(snapshot);
+
+        if (actual.getFree() + actual.getLocked() != database.getFree()
+                || actual.getSold() != database.getSold()
+                || actual.getUnavailable() != database.getUnavailable()) {
+            // 售出或维护状态在数据库中变化，位图基础状态已过期，下次读取时按数据库重新初始化
+            log.warn("区域位图与数据库不一致，重建位图，区域ID: {}, 位图: {}, 数据库: {}", areaId, actual, database);
+            seatStateIndexService.reloadGeometry(areaId);
+            seatStateIndexService.evictState(areaId);
+            reseedCounter.increment();
+            return;
+        }
+
+        if (!actual.equals(cached)) {
+            Long fixed = luaScriptRegistry.eval(SCRIPT_FIX, RScript.Mode.READ_WRITE, RScript.ReturnType.INTEGER,
+                    Arrays.asList(seatStateIndexService.countsKey(areaId), seatStateIndexService.versionKey(areaId)),
+                    String.valueOf(snapshot.getVersion()), String.valueOf(actual.getFree()),
+                    String.valueOf(actual.getLocked()), String.valueOf(actual.getSold()),
+                    String.valueOf(actual.getUnavailable()));
+            if (fixed != null && fixed == 1) {
+                driftCounter.increment();
+                log.warn("区域座位计数已校正，区域ID: {}, 原计数: {}, 校正后: {}", areaId, cached, actual);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<String, String>> readCounts(List<Long> areaIds) {
+        RBatch batch = redissonClient.createBatch();
+        for (Long areaId : areaIds) {
+            batch.<String, String>getMap(seatStateIndexService.countsKey(areaId), StringCodec.INSTANCE)
+                    .readAllMapAsync();
+        }
+        return (List<Map<String, String>>) batch.execute().getResponses();
+    }
+
+    private Map<Long, SeatAreaCounts> countFromDatabase(List<Long> areaIds) {
+        Map<Long, SeatAreaCounts> result = new HashMap<>(areaIds.size() * 2);
+        for (SeatAreaCounts counts : seatMapper.countSeatStatesByArea()) {
+            if (areaIds.contains(counts.getAreaId())) {
+                result.put(counts.getAreaId(), counts);
+            }
+        }
+        for (Long areaId : areaIds) {
+            result.computeIfAbsent(areaId, id -> {
+                SeatAreaCounts empty = new SeatAreaCounts();
+                empty.setAreaId(id);
+                return empty;
+            });
+        }
+        return result;
+    }
+
+    private static SeatAreaCounts fromHash(Long areaId, Map<String, String> hash) {
+        SeatAreaCounts counts = new SeatAreaCounts();
+        counts.setAreaId(areaId);
+        counts.setFree(parse(hash.get("free")));
+        counts.setLocked(parse(hash.get("locked")));
+        counts.setSold(parse(hash.get("sold")));
+        counts.setUnavailable(parse(hash.get("unavailable")));
+        return counts;
+    }
+
+    private static SeatAreaCounts fromSnapshot(SeatStateIndexService.AreaSnapshot snapshot) {
+        int[] totals = new int[4];
+        String states = snapshot.getStates();
+        for (int i = 0; i < states.length(); i++) {
+            totals[states.charAt(i) - '0']++;
+        }
+        SeatAreaCounts counts = new SeatAreaCounts();
+        counts.setAreaId(snapshot.getGeometry().getAreaId());
+        counts.setFree(totals[SeatStateIndexService.STATE_FREE]);
+        counts.setLocked(totals[SeatStateIndexService.STATE_LOCKED]);
+        counts.setSold(totals[SeatStateIndexService.STATE_SOLD]);
+        counts.setUnavailable(totals[SeatStateIndexService.STATE_UNAVAILABLE]);
+        return counts;
+    }
+
+    private static int parse(String value) {
+        return value != null ? Integer.parseInt(value) : 0;
+    }
+}
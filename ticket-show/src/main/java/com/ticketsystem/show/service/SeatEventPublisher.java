@@ -0,0 +1,40 @@
+package com.ticketsystem.show.service;
+
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.stereotype.Service;
+
+/**
+ * 座位状态变化事件发布
+ * 加解锁成功后通过Redis发布订阅通知所有节点，消息格式：事件类型:区域ID:座位ID
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SeatEventPublisher {
+
+    public static final String TOPIC = "seat:events";
+
+    public static final String EVENT_LOCK = "LOCK";
+    public static final String EVENT_RELEASE = "RELEASE";
+
+    private final RedissonClient redissonClient;
+
+    /**
+     * 异步发布，发布失败不影响加解锁结果，订阅方的定期版本检查会补上
+     */
+    public void publish(String type, Long areaId, Long seatId) {
+        try {
+            getTopic().publishAsync(type + ":" + areaId + ":" + seatId);
+        } catch (Exception e) {
+            log.warn("发布座位状态事件失败，类型: {}, 区域ID: {}, 座位ID: {}", type, areaId, seatId, e);
+        }
+    }
+
+    public RTopic getTopic() {
+        return redissonClient.getTopic(TOPIC, StringCodec.INSTANCE);
+    }
+}
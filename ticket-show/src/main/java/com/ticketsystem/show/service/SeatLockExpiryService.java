@@ -0,0 +1,179 @@
+package com.ticketsystem.show.service;
+
+import com.ticketsystem.common.script.LuaScriptRegistry;
+import com.ticketsystem.show.mapper.SeatMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RScoredSortedSet;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 座位锁过期队列
+ * 加锁成功后把 座位ID:用户ID 按到期时间写入Redis有序集合（seat:lock:expiry），解锁时移除；
+ * 工作任务周期性取出已到期的座位，按座位ID批量释放数据库锁定，不再扫描整张座位表。
+ * 数据库锁定是异步同步的，过期时间略晚于Redis锁，因此队列分数额外加上宽限时间。
+ * 全表清理（SeatMapper.clearExpiredLocks）降为低频兜底，覆盖队列写入失败等情况。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SeatLockExpiryService {
+
+    private static final String EXPIRY_KEY = "seat:lock:expiry";
+
+    private static final String SCRIPT_TAKE = "seat.lock.expiry.take";
+
+    private final RedissonClient redissonClient;
+    private final LuaScriptRegistry luaScriptRegistry;
+    private final SeatMapper seatMapper;
+    private final SeatStateIndexService seatStateIndexService;
+    private final SeatEventPublisher seatEventPublisher;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${seat.expiry.enabled:true}")
+    private boolean enabled;
+
+    @Value("${seat.expiry.batch-size:200}")
+    private int batchSize;
+
+    @Value("${seat.expiry.grace-ms:10000}")
+    private long graceMs;
+
+    @Value("${seat.expiry.retry-delay-ms:5000}")
+    private long retryDelayMs;
+
+    private Counter releasedCounter;
+
+    @PostConstruct
+    public void init() {
+        luaScriptRegistry.registerResource(SCRIPT_TAKE, "lua/seat_lock_expiry_take.lua");
+        releasedCounter = Counter.builder("seat_lock_expired_released_total")
+                .description("按过期队列释放的数据库座位锁定数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 登记座位锁到期时间，同一用户重复加锁时更新到期时间
+     */
+    public void track(List<Long> seatIds, Long userId, long expireAt) {
+        if (!enabled || seatIds.isEmpty()) {
+            return;
+        }
+        Map<String, Double> entries = new HashMap<>(seatIds.size() * 2);
+        for (Long seatId : seatIds) {
+            entries.put(member(seatId, userId), (double) (expireAt + graceMs));
+        }
+        try {
+            getQueue().addAllAsync(entries).whenComplete((added, e) -> {
+                if (e != null) {
+                    log.warn("登记座位锁到期时间失败，座位IDs: {}, 用户ID: {}", seatIds, userId, e);
+                }
+            });
+        } catch (Exception e) {
+            // 由兜底的全表清理处理
+            log.warn("登记座位锁到期时间失败，座位IDs: {}, 用户ID: {}", seatIds, userId, e);
+        }
+    }
+
+    /**
+     * 座位已解锁，移出过期队列
+     */
+    public void untrack(List<Long> seatIds, Long userId) {
+        if (!enabled || seatIds.isEmpty()) {
+            return;
+        }
+        List<String> members = new ArrayList<>(seatIds.size());
+        for (Long seatId : seatIds) {
+            members.add(member(seatId, userId));
+        }
+        try {
+            getQueue().removeAllAsync(members).whenComplete((removed, e) -> {
+                if (e != null) {
+                    log.warn("移出座位锁过期队列失败，座位IDs: {}, 用户ID: {}", seatIds, userId, e);
+                }
+            });
+        } catch (Exception e) {
+            // 到期后释放时数据库锁定已不存在，不影响结果
+            log.warn("移出座位锁过期队列失败，座位IDs: {}, 用户ID: {}", seatIds, userId, e);
+        }
+    }
+
+    /**
+     * 取出到期的座位，按座位ID批量释放数据库锁定
+     */
+    @Scheduled(fixedDelayString = "${seat.expiry.interval-ms:1000}")
+    public void releaseExpiredLocks() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            List<String> taken;
+            do {
+                taken = take(System.currentTimeMillis());
+                if (!taken.isEmpty()) {
+                    release(taken);
+                }
+            } while (taken.size() >= batchSize);
+        } catch (Exception e) {
+            log.error("座位锁过期处理异常", e);
+        }
+    }
+
+    private List<String> take(long now) {
+        List<String> taken = luaScriptRegistry.eval(SCRIPT_TAKE, RScript.Mode.READ_WRITE, RScript.ReturnType.MULTI,
+                Collections.singletonList(EXPIRY_KEY), String.valueOf(now), String.valueOf(batchSize));
+        return taken != null ? taken : Collections.emptyList();
+    }
+
+    private void release(List<String> members) {
+        Set<Long> seatIds = new LinkedHashSet<>(members.size());
+        for (String member : members) {
+            seatIds.add(Long.valueOf(member.substring(0, member.indexOf(':'))));
+        }
+        try {
+            int released = seatMapper.releaseExpiredSeats(new ArrayList<>(seatIds));
+            releasedCounter.increment(released);
+            log.info("按过期队列释放座位锁定，到期座位数: {}, 释放数: {}", seatIds.size(), released);
+        } catch (Exception e) {
+            log.error("释放过期座位锁定失败，{}ms后重试，座位IDs: {}", retryDelayMs, seatIds, e);
+            // 放回队列；期间同一成员被重新登记时保留新的到期时间
+            RScoredSortedSet<String> queue = getQueue();
+            double retryAt = System.currentTimeMillis() + retryDelayMs;
+            for (String member : members) {
+                queue.tryAdd(retryAt, member);
+            }
+            return;
+        }
+        // 通知座位图刷新，位图中的锁定标记在读取时清理
+        for (Long seatId : seatIds) {
+            SeatStateIndexService.SeatSlot slot = seatStateIndexService.resolve(seatId);
+            if (slot != null) {
+                seatEventPublisher.publish(SeatEventPublisher.EVENT_RELEASE, slot.getAreaId(), seatId);
+            }
+        }
+    }
+
+    private static String member(Long seatId, Long userId) {
+        return seatId + ":" + userId;
+    }
+
+    private RScoredSortedSet<String> getQueue() {
+        return redissonClient.getScoredSortedSet(EXPIRY_KEY, StringCodec.INSTANCE);
+    }
+}
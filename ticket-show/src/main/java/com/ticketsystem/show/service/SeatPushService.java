@@ -0,0 +1,331 @@
+package com.ticketsystem.show.service;
+
+import com.ticketsystem.show.vo.SeatLayoutVO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 座位状态推送服务（SSE）
+ * 客户端按区域订阅；各节点通过Redis发布订阅（seat:events）收到加解锁事件后只把区域标记为待推送，
+ * 推送线程每隔flushIntervalMs对每个待推送区域读取一次状态快照，按各连接已送达的版本号发送增量布局，
+ * 同一时间窗口内的多次变化合并为一条消息。另外定期检查所有已订阅区域的版本号，
+ * 覆盖锁自然过期、事件丢失等没有事件的变化。
+ *
+ * 背压：每个连接同一时间最多一条消息在发送中，发送线程池队列有界；连接正忙或队列已满时跳过本轮，
+ * 下一轮从该连接已送达的版本号计算增量，慢连接只会收到更少、更大的增量，不会积压消息。
+ * 推送的布局不区分用户（lockedByCurrentUser均为false），客户端按lockUserId判断是否为自己锁定。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SeatPushService {
+
+    private static final String EVENT_SEATS = "seats";
+    private static final String EVENT_REJECT = "reject";
+
+    private final SeatService seatService;
+    private final SeatStateIndexService seatStateIndexService;
+    private final SeatEventPublisher seatEventPublisher;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${seat.push.enabled:true}")
+    private boolean enabled;
+
+    @Value("${seat.push.max-connections:10000}")
+    private int maxConnections;
+
+    @Value("${seat.push.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    @Value("${seat.push.poll-interval-ms:5000}")
+    private long pollIntervalMs;
+
+    @Value("${seat.push.heartbeat-seconds:25}")
+    private long heartbeatSeconds;
+
+    @Value("${seat.push.timeout-minutes:30}")
+    private long timeoutMinutes;
+
+    @Value("${seat.push.sender-threads:4}")
+    private int senderThreads;
+
+    @Value("${seat.push.sender-queue-size:2000}")
+    private int senderQueueSize;
+
+    // 区域ID -> 订阅连接
+    private final Map<Long, Set<Subscriber>> subscribers = new ConcurrentHashMap<>();
+
+    // 待推送的区域
+    private final Set<Long> dirtyAreas = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger connections = new AtomicInteger();
+
+    private final AtomicInteger threadCounter = new AtomicInteger();
+
+    private boolean active;
+
+    private int listenerId = -1;
+
+    private ScheduledExecutorService scheduler;
+
+    private ThreadPoolExecutor senders;
+
+    private Counter eventCounter;
+    private Counter pushedCounter;
+    private Counter skippedCounter;
+    private Counter rejectedCounter;
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("seat_push_connections", connections, AtomicInteger::get)
+                .description("座位状态推送的SSE连接数")
+                .register(meterRegistry);
+        eventCounter = Counter.builder("seat_push_events_total")
+                .description("收到的座位状态变化事件数")
+                .register(meterRegistry);
+        pushedCounter = Counter.builder("seat_push_messages_total")
+                .description("推送的座位布局消息数")
+                .register(meterRegistry);
+        skippedCounter = Counter.builder("seat_push_skipped_total")
+                .description("因连接正忙或发送队列已满推迟的推送次数")
+                .register(meterRegistry);
+        rejectedCounter = Counter.builder("seat_push_rejected_total")
+                .description("因连接数达到上限被拒绝的订阅数")
+                .register(meterRegistry);
+
+        active = enabled && seatStateIndexService.isEnabled();
+        if (!active) {
+            log.info("座位状态推送未启用");
+            return;
+        }
+        senders = new ThreadPoolExecutor(senderThreads, senderThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(senderQueueSize), r -> {
+                    Thread thread = new Thread(r, "seat-push-sender-" + threadCounter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "seat-push-scheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleWithFixedDelay(this::flush, flushIntervalMs, flushIntervalMs, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(() -> dirtyAreas.addAll(subscribers.keySet()),
+                pollIntervalMs, pollIntervalMs, TimeUnit.MILLISECONDS);
+        scheduler.scheduleWithFixedDelay(this::heartbeat, heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+        listenerId = seatEventPublisher.getTopic().addListener(String.class, (channel, message) -> onEvent(message));
+        log.info("座位状态推送已启动 - 合并窗口: {}ms, 版本检查间隔: {}ms, 最大连接数: {}",
+                flushIntervalMs, pollIntervalMs, maxConnections);
+    }
+
+    /**
+     * 订阅区域座位状态变化
+     * sinceVersion为客户端已持有的布局版本号，首条消息只包含之后的变化；为空时首条消息为完整布局
+     */
+    public SseEmitter subscribe(Long areaId, Long sinceVersion) {
+        SseEmitter emitter = new SseEmitter(timeoutMinutes * 60 * 1000L);
+        if (!active || connections.incrementAndGet() > maxConnections) {
+            if (active) {
+                connections.decrementAndGet();
+                rejectedCounter.increment();
+            }
+            // 通知客户端改用轮询
+            try {
+                emitter.send(SseEmitter.event().name(EVENT_REJECT).data(active ? "连接数已达上限" : "推送未启用"));
+                emitter.complete();
+            } catch (Exception e) {
+                emitter.completeWithError(e);
+            }
+            return emitter;
+        }
+
+        Subscriber subscriber = new Subscriber(areaId, emitter, sinceVersion != null ? sinceVersion : -1L);
+        subscribers.compute(areaId, (id, set) -> {
+            Set<Subscriber> result = set != null ? set : ConcurrentHashMap.newKeySet();
+            result.add(subscriber);
+            return result;
+        });
+        emitter.onCompletion(() -> unsubscribe(subscriber));
+        emitter.onTimeout(() -> unsubscribe(subscriber));
+        emitter.onError(e -> unsubscribe(subscriber));
+        dirtyAreas.add(areaId);
+        log.debug("座位状态订阅，区域ID: {}, 起始版本: {}, 当前连接数: {}", areaId, sinceVersion, connections.get());
+        return emitter;
+    }
+
+    private void unsubscribe(Subscriber subscriber) {
+        if (!subscriber.closed.compareAndSet(false, true)) {
+            return;
+        }
+        subscribers.computeIfPresent(subscriber.areaId, (id, set) -> {
+            set.remove(subscriber);
+            return set.isEmpty() ? null : set;
+        });
+        connections.decrementAndGet();
+    }
+
+    private void onEvent(String message) {
+        eventCounter.increment();
+        try {
+            Long areaId = Long.valueOf(message.split(":")[1]);
+            if (subscribers.containsKey(areaId)) {
+                dirtyAreas.add(areaId);
+            }
+        } catch (Exception e) {
+            log.warn("无法解析座位状态事件: {}", message);
+        }
+    }
+
+    private void flush() {
+        Iterator<Long> iterator = dirtyAreas.iterator();
+        while (iterator.hasNext()) {
+            Long areaId = iterator.next();
+            iterator.remove();
+            try {
+                push(areaId);
+            } catch (Exception e) {
+                log.warn("座位状态推送失败，区域ID: {}", areaId, e);
+            }
+        }
+    }
+
+    /**
+     * 向区域内落后于当前版本的连接发送增量，已送达版本相同的连接共用同一份布局
+     */
+    private void push(Long areaId) {
+        Set<Subscriber> set = subscribers.get(areaId);
+        if (set == null || set.isEmpty()) {
+            return;
+        }
+        long version = seatStateIndexService.snapshot(areaId).getVersion();
+        Map<Long, SeatLayoutVO> layouts = new HashMap<>();
+        boolean lagging = false;
+        for (Subscriber subscriber : set) {
+            if (subscriber.delivered >= version) {
+                continue;
+            }
+            if (!subscriber.sending.compareAndSet(false, true)) {
+                skippedCounter.increment();
+                lagging = true;
+                continue;
+            }
+            long since = subscriber.delivered;
+            SeatLayoutVO layout = layouts.computeIfAbsent(since,
+                    v -> seatService.getSeatLayout(areaId, null, null, null, v >= 0 ? v : null));
+            try {
+                senders.execute(() -> send(subscriber, layout, version));
+            } catch (RejectedExecutionException e) {
+                subscriber.sending.set(false);
+                skippedCounter.increment();
+                lagging = true;
+            }
+        }
+        if (lagging) {
+            dirtyAreas.add(areaId);
+        }
+    }
+
+    private void send(Subscriber subscriber, SeatLayoutVO layout, long version) {
+        try {
+            subscriber.emitter.send(SseEmitter.event()
+                    .name(EVENT_SEATS)
+                    .id(String.valueOf(layout.getVersion()))
+                    .data(layout, MediaType.APPLICATION_JSON));
+            subscriber.delivered = layout.getVersion() != null ? layout.getVersion() : version;
+            pushedCounter.increment();
+        } catch (Exception e) {
+            log.debug("座位状态推送连接已断开，区域ID: {}", subscriber.areaId);
+            unsubscribe(subscriber);
+            subscriber.emitter.completeWithError(e);
+        } finally {
+            subscriber.sending.set(false);
+        }
+    }
+
+    /**
+     * 定期发送注释行，及时发现已断开的连接，也避免代理因空闲断开
+     */
+    private void heartbeat() {
+        for (Set<Subscriber> set : subscribers.values()) {
+            for (Subscriber subscriber : set) {
+                if (!subscriber.sending.compareAndSet(false, true)) {
+                    continue;
+                }
+                try {
+                    senders.execute(() -> {
+                        try {
+                            subscriber.emitter.send(SseEmitter.event().comment("ping"));
+                        } catch (Exception e) {
+                            unsubscribe(subscriber);
+                            subscriber.emitter.completeWithError(e);
+                        } finally {
+                            subscriber.sending.set(false);
+                        }
+                    });
+                } catch (RejectedExecutionException e) {
+                    subscriber.sending.set(false);
+                }
+            }
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (listenerId >= 0) {
+            seatEventPublisher.getTopic().removeListener(listenerId);
+        }
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (senders != null) {
+            senders.shutdownNow();
+        }
+        for (Set<Subscriber> set : subscribers.values()) {
+            for (Subscriber subscriber : set) {
+                subscriber.emitter.complete();
+            }
+        }
+    }
+
+    /**
+     * 单个SSE连接
+     */
+    private static class Subscriber {
+        private final Long areaId;
+        private final SseEmitter emitter;
+        private final AtomicBoolean sending = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        // 已送达的版本号，-1表示尚未发送完整布局
+        private volatile long delivered;
+
+        Subscriber(Long areaId, SseEmitter emitter, long delivered) {
+            this.areaId = areaId;
+            this.emitter = emitter;
+            this.delivered = delivered;
+        }
+    }
+}
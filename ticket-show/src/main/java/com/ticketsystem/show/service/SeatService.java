@@ -20,6 +20,11 @@ public interface SeatService {
      */
     SeatLayoutVO getSeatLayout(Long areaId, Long showId, Long sessionId, Long currentUserId);
 
+    /**
+     * 获取座位布局，sinceVersion不为空时只返回该版本之后状态变化的座位
+     */
+    SeatLayoutVO getSeatLayout(Long areaId, Long showId, Long sessionId, Long currentUserId, Long sinceVersion);
+
     /**
      * 锁定座位
      */
@@ -0,0 +1,427 @@
+package com.ticketsystem.show.service;
+
+import com.ticketsystem.common.script.LuaScriptRegistry;
+import com.ticketsystem.show.entity.Seat;
+import com.ticketsystem.show.mapper.SeatMapper;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 座位状态位图索引
+ * 每个区域一个Redis位图（seat:state:{areaId}），每座位2位记录空闲/已锁定/已售/不可用，
+ * 锁定明细（用户、锁定时间、过期时间）放在同区域的哈希中；座位锁脚本在加解锁时原子更新位图，
+ * 座位布局只需一次脚本调用读取整个区域的状态，再与本地缓存的静态座位几何信息合并。
+ *
+ * 座位在位图中的序号按座位ID升序分配；区域座位或维护状态变化时删除位图，下次读取时重新初始化。
+ * 区域的位图、锁定明细、版本号和座位锁（seat_lock:{areaId}:seatId）都以 {areaId} 作为hash tag，
+ * Redis Cluster下位于同一slot，多座位加解锁可以在一个脚本中完成。
+ *
+ * 每个区域有单调递增的版本号（seat:state:{areaId}:version），加解锁、锁过期清理和初始化时递增。
+ * 本节点按区域保留最近读到的若干个版本的快照：版本未变时读取脚本只返回版本号，直接沿用缓存；
+ * 对比两个版本的快照即可得到期间状态变化的座位，用于布局增量更新。
+ *
+ * 区域座位计数（seat:state:{areaId}:counts）由初始化、加解锁和锁过期清理脚本随位图一起维护，
+ * 区域列表直接读取计数，不再逐区域COUNT，见SeatAvailabilityService。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SeatStateIndexService {
+
+    public static final int STATE_FREE = 0;
+    public static final int STATE_LOCKED = 1;
+    public static final int STATE_SOLD = 2;
+    public static final int STATE_UNAVAILABLE = 3;
+
+    private static final String STATE_KEY_PREFIX = "seat:state:{";
+    private static final String LOCKS_KEY_SUFFIX = ":locks";
+    private static final String VERSION_KEY_SUFFIX = ":version";
+    private static final String COUNTS_KEY_SUFFIX = ":counts";
+    private static final String SEAT_LOCK_PREFIX = "seat_lock:{";
+
+    private static final String SCRIPT_SEED = "seat.state.seed";
+    private static final String SCRIPT_READ = "seat.state.read";
+
+    private final SeatMapper seatMapper;
+    private final RedissonClient redissonClient;
+    private final LuaScriptRegistry luaScriptRegistry;
+
+    @Value("${seat.index.enabled:true}")
+    private boolean enabled;
+
+    @Value("${seat.index.geometry-ttl-seconds:300}")
+    private long geometryTtlSeconds;
+
+    @Value("${seat.index.history-size:32}")
+    private int historySize;
+
+    // 区域ID -> 静态座位几何信息
+    private final Map<Long, AreaGeometry> geometries = new ConcurrentHashMap<>();
+
+    // 座位ID -> 所在区域及位图序号
+    private final Map<Long, SeatSlot> slots = new ConcurrentHashMap<>();
+
+    // 区域ID -> 最近读到的状态快照，按版本号升序
+    private final Map<Long, Deque<AreaSnapshot>> history = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        luaScriptRegistry.registerResource(SCRIPT_SEED, "lua/seat_state_seed.lua");
+        luaScriptRegistry.registerResource(SCRIPT_READ, "lua/seat_state_read.lua");
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public String stateKey(Long areaId) {
+        return STATE_KEY_PREFIX + areaId + "}";
+    }
+
+    public String locksKey(Long areaId) {
+        return stateKey(areaId) + LOCKS_KEY_SUFFIX;
+    }
+
+    public String versionKey(Long areaId) {
+        return stateKey(areaId) + VERSION_KEY_SUFFIX;
+    }
+
+    public String countsKey(Long areaId) {
+        return stateKey(areaId) + COUNTS_KEY_SUFFIX;
+    }
+
+    public String lockKey(Long areaId, Long seatId) {
+        return SEAT_LOCK_PREFIX + areaId + "}:" + seatId;
+    }
+
+    /**
+     * 座位锁key，座位不存在时返回一个不会被加锁的key
+     */
+    public String lockKey(Long seatId) {
+        SeatSlot slot = resolve(seatId);
+        return lockKey(slot != null ? slot.getAreaId() : 0L, seatId);
+    }
+
+    /**
+     * 查找座位所在区域及位图序号，座位不存在时返回null
+     */
+    public SeatSlot resolve(Long seatId) {
+        SeatSlot slot = slots.get(seatId);
+        if (slot != null) {
+            return slot;
+        }
+        Seat seat = seatMapper.selectSeatById(seatId);
+        if (seat == null) {
+            return null;
+        }
+        getGeometry(seat.getAreaId());
+        return slots.get(seatId);
+    }
+
+    /**
+     * 获取区域静态座位几何信息，超过缓存时间后重新加载
+     */
+    public AreaGeometry getGeometry(Long areaId) {
+        AreaGeometry geometry = geometries.get(areaId);
+        if (geometry != null && System.currentTimeMillis() - geometry.loadedAt < geometryTtlSeconds * 1000L) {
+            return geometry;
+        }
+        return loadGeometry(areaId, false);
+    }
+
+    /**
+     * 立即重新加载区域静态座位几何信息，数据库中座位状态变化时重建状态位图
+     */
+    public void reloadGeometry(Long areaId) {
+        loadGeometry(areaId, true);
+    }
+
+    private AreaGeometry loadGeometry(Long areaId, boolean force) {
+        synchronized (this) {
+            AreaGeometry geometry = geometries.get(areaId);
+            if (!force && geometry != null
+                    && System.currentTimeMillis() - geometry.loadedAt < geometryTtlSeconds * 1000L) {
+                return geometry;
+            }
+            AreaGeometry loaded = new AreaGeometry(areaId, seatMapper.selectSeatsByAreaId(areaId));
+            if (geometry != null) {
+                geometry.offsets.keySet().forEach(slots::remove);
+                if (!geometry.signature.equals(loaded.signature)) {
+                    // 座位增删或维护状态变化，位图序号与基础状态失效，重新初始化
+                    log.info("区域座位信息变化，重建状态位图，区域ID: {}", areaId);
+                    evictState(areaId);
+                }
+            }
+            loaded.offsets.forEach((seatId, offset) -> slots.put(seatId, new SeatSlot(areaId, offset)));
+            geometries.put(areaId, loaded);
+            return loaded;
+        }
+    }
+
+    /**
+     * 一次调用读取区域全部座位状态，位图不存在时先初始化；版本未变时沿用本节点缓存的快照
+     */
+    public AreaSnapshot snapshot(Long areaId) {
+        AreaGeometry geometry = getGeometry(areaId);
+        if (geometry.size() == 0) {
+            return new AreaSnapshot(geometry, "", Collections.emptyMap(), 0L);
+        }
+        AreaSnapshot cached = latest(areaId);
+        if (cached != null && !cached.geometry.signature.equals(geometry.signature)) {
+            cached = null;
+        }
+        List<Object> result = read(geometry, cached != null ? String.valueOf(cached.version) : "");
+        if (result == null || result.isEmpty()) {
+            seed(geometry);
+            result = read(geometry, "");
+        }
+        if (result == null || result.isEmpty()) {
+            throw new IllegalStateException("座位状态位图初始化失败，区域ID: " + areaId);
+        }
+
+        String states = String.valueOf(result.get(0));
+        long version = Long.parseLong(String.valueOf(result.get(1)));
+        if (states.isEmpty() && cached != null && cached.version == version) {
+            return cached.geometry == geometry ? cached
+                    : new AreaSnapshot(geometry, cached.states, cached.locks, version);
+        }
+
+        Map<Integer, SeatLockInfo> locks = new HashMap<>();
+        for (int i = 2; i + 1 < result.size(); i += 2) {
+            String[] parts = String.valueOf(result.get(i + 1)).split(":");
+            if (parts.length == 3) {
+                locks.put(Integer.parseInt(String.valueOf(result.get(i))),
+                        new SeatLockInfo(Long.parseLong(parts[0]), Long.parseLong(parts[1]), Long.parseLong(parts[2])));
+            }
+        }
+        AreaSnapshot snapshot = new AreaSnapshot(geometry, states, locks, version);
+        remember(snapshot);
+        return snapshot;
+    }
+
+    /**
+     * 对比本节点缓存的历史快照，返回自sinceVersion以来状态或锁定明细变化的座位ID；
+     * 该版本已不在缓存中或期间座位信息变化时返回null，调用方应返回完整布局
+     */
+    public Set<Long> changedSince(AreaSnapshot current, long sinceVersion) {
+        if (sinceVersion == current.version) {
+            return Collections.emptySet();
+        }
+        if (sinceVersion > current.version) {
+            return null;
+        }
+        AreaSnapshot since = null;
+        Deque<AreaSnapshot> snapshots = history.get(current.geometry.areaId);
+        if (snapshots != null) {
+            synchronized (snapshots) {
+                for (AreaSnapshot snapshot : snapshots) {
+                    if (snapshot.version == sinceVersion) {
+                        since = snapshot;
+                        break;
+                    }
+                }
+            }
+        }
+        if (since == null || !since.geometry.signature.equals(current.geometry.signature)) {
+            return null;
+        }
+        Set<Long> changed = new HashSet<>();
+        for (int offset = 0; offset < current.geometry.size(); offset++) {
+            if (current.states.charAt(offset) != since.states.charAt(offset)
+                    || !Objects.equals(current.locks.get(offset), since.locks.get(offset))) {
+                changed.add(current.geometry.seatsByOffset.get(offset).getId());
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * 删除区域位图，下次读取时重新初始化；版本号保留，保证重建后继续递增
+     */
+    public void evictState(Long areaId) {
+        redissonClient.getKeys().delete(stateKey(areaId), locksKey(areaId), countsKey(areaId));
+    }
+
+    private AreaSnapshot latest(Long areaId) {
+        Deque<AreaSnapshot> snapshots = history.get(areaId);
+        if (snapshots == null) {
+            return null;
+        }
+        synchronized (snapshots) {
+            return snapshots.peekLast();
+        }
+    }
+
+    private void remember(AreaSnapshot snapshot) {
+        Deque<AreaSnapshot> snapshots = history.computeIfAbsent(snapshot.geometry.areaId, id -> new ArrayDeque<>());
+        synchronized (snapshots) {
+            // 并发读取时可能乱序到达，只保留更新的版本
+            AreaSnapshot last = snapshots.peekLast();
+            if (last != null && last.version >= snapshot.version) {
+                return;
+            }
+            snapshots.addLast(snapshot);
+            while (snapshots.size() > historySize) {
+                snapshots.pollFirst();
+            }
+        }
+    }
+
+    private List<Object> read(AreaGeometry geometry, String knownVersion) {
+        return luaScriptRegistry.eval(SCRIPT_READ, RScript.Mode.READ_WRITE, RScript.ReturnType.MULTI,
+                Arrays.asList(stateKey(geometry.areaId), locksKey(geometry.areaId), versionKey(geometry.areaId),
+                        countsKey(geometry.areaId)),
+                String.valueOf(System.currentTimeMillis()), String.valueOf(geometry.size()), knownVersion);
+    }
+
+    private void seed(AreaGeometry geometry) {
+        List<Object> keys = new ArrayList<>(geometry.size() + 4);
+        keys.add(stateKey(geometry.areaId));
+        keys.add(locksKey(geometry.areaId));
+        keys.add(versionKey(geometry.areaId));
+        keys.add(countsKey(geometry.areaId));
+        StringBuilder base = new StringBuilder(geometry.size());
+        for (Seat seat : geometry.seatsByOffset) {
+            keys.add(lockKey(geometry.areaId, seat.getId()));
+            base.append(baseState(seat));
+        }
+        Long seeded = luaScriptRegistry.eval(SCRIPT_SEED, RScript.Mode.READ_WRITE, RScript.ReturnType.INTEGER,
+                keys, String.valueOf(System.currentTimeMillis()), base.toString());
+        if (seeded != null && seeded == 1) {
+            log.info("初始化座位状态位图，区域ID: {}, 座位数: {}", geometry.areaId, geometry.size());
+        }
+    }
+
+    /**
+     * 数据库中的基础状态，锁定状态以Redis座位锁为准
+     */
+    private static int baseState(Seat seat) {
+        if (seat.getStatus() == null || seat.getStatus() == 0) {
+            return STATE_UNAVAILABLE;
+        }
+        if (seat.getLockStatus() != null && seat.getLockStatus() == 2) {
+            return STATE_SOLD;
+        }
+        return STATE_FREE;
+    }
+
+    /**
+     * 区域静态座位几何信息
+     */
+    @Getter
+    public static class AreaGeometry {
+
+        private final Long areaId;
+
+        // 按排号、座位号排列的座位，用于展示
+        private final List<Seat> seats;
+
+        // 按位图序号排列的座位
+        private final List<Seat> seatsByOffset;
+
+        private final Map<Long, Integer> offsets;
+
+        private final String signature;
+
+        private final long loadedAt = System.currentTimeMillis();
+
+        AreaGeometry(Long areaId, List<Seat> seats) {
+            this.areaId = areaId;
+            this.seats = Collections.unmodifiableList(new ArrayList<>(seats));
+            List<Seat> sorted = new ArrayList<>(seats);
+            sorted.sort(Comparator.comparing(Seat::getId));
+            this.seatsByOffset = Collections.unmodifiableList(sorted);
+            Map<Long, Integer> offsetMap = new HashMap<>(sorted.size() * 2);
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < sorted.size(); i++) {
+                Seat seat = sorted.get(i);
+                offsetMap.put(seat.getId(), i);
+                sb.append(seat.getId()).append(':').append(baseState(seat)).append(',');
+            }
+            this.offsets = offsetMap;
+            this.signature = sb.toString();
+        }
+
+        public int size() {
+            return seatsByOffset.size();
+        }
+
+        public Integer offsetOf(Long seatId) {
+            return offsets.get(seatId);
+        }
+    }
+
+    /**
+     * 座位所在区域及位图序号
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class SeatSlot {
+        private final Long areaId;
+        private final int offset;
+    }
+
+    /**
+     * 座位锁定明细
+     */
+    @Getter
+    @EqualsAndHashCode
+    @RequiredArgsConstructor
+    public static class SeatLockInfo {
+        private final Long userId;
+        private final long lockTime;
+        private final long expireAt;
+    }
+
+    /**
+     * 区域座位状态快照
+     */
+    @Getter
+    @RequiredArgsConstructor
+    public static class AreaSnapshot {
+
+        private final AreaGeometry geometry;
+
+        // 按位图序号每座位一位数字
+        private final String states;
+
+        // 位图序号 -> 锁定明细
+        private final Map<Integer, SeatLockInfo> locks;
+
+        private final long version;
+
+        public int stateOf(Long seatId) {
+            Integer offset = geometry.offsetOf(seatId);
+            if (offset == null || offset >= states.length()) {
+                return STATE_UNAVAILABLE;
+            }
+            return states.charAt(offset) - '0';
+        }
+
+        public SeatLockInfo lockOf(Long seatId) {
+            Integer offset = geometry.offsetOf(seatId);
+            return offset != null ? locks.get(offset) : null;
+        }
+    }
+}
@@ -0,0 +1,270 @@
+package com.ticketsystem.show.service;
+
+import com.ticketsystem.common.exception.BusinessException;
+import com.ticketsystem.common.script.LuaScriptRegistry;
+import com.ticketsystem.show.entity.Seat;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.BatchResult;
+import org.redisson.api.RBatch;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.ByteArrayCodec;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 座位时段占用索引
+ * 网咖按时段预约时，每个座位每天一个96位的Redis位图（seat:slots:{seatId}:{yyyyMMdd}），
+ * 每位对应一个15分钟时段；占用明细（用户、过期时间）放在同日的哈希中。
+ * 锁定、确认、释放通过Lua脚本整段翻转时段位，跨天的预约拆成多段在同一脚本中处理，
+ * 同一座位各日的key以座位ID为hash tag，集群下落在同一slot；
+ * 查询"座位某时段是否空闲""区域内哪些座位在该时段空闲"只需批量读取位图后做位运算。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SeatTimeSlotService {
+
+    public static final int SLOT_MINUTES = 15;
+    public static final int SLOTS_PER_DAY = 24 * 60 / SLOT_MINUTES;
+
+    private static final String SLOT_KEY_PREFIX = "seat:slots:";
+    private static final String HOLDS_KEY_SUFFIX = ":holds";
+    private static final DateTimeFormatter DAY_FORMAT = DateTimeFormatter.BASIC_ISO_DATE;
+
+    private static final String SCRIPT_LOCK = "seat.slot.lock";
+    private static final String SCRIPT_CONFIRM = "seat.slot.confirm";
+    private static final String SCRIPT_RELEASE = "seat.slot.release";
+
+    private final RedissonClient redissonClient;
+    private final LuaScriptRegistry luaScriptRegistry;
+    private final SeatStateIndexService seatStateIndexService;
+
+    @Value("${seat.slots.hold-seconds:900}")
+    private int holdSeconds;
+
+    @Value("${seat.slots.max-window-hours:24}")
+    private int maxWindowHours;
+
+    @Value("${seat.slots.retention-days:1}")
+    private int retentionDays;
+
+    @PostConstruct
+    public void init() {
+        luaScriptRegistry.registerResource(SCRIPT_LOCK, "lua/seat_slot_lock.lua");
+        luaScriptRegistry.registerResource(SCRIPT_CONFIRM, "lua/seat_slot_confirm.lua");
+        luaScriptRegistry.registerResource(SCRIPT_RELEASE, "lua/seat_slot_release.lua");
+    }
+
+    /**
+     * 临时占用座位时段，holdSeconds后未确认自动失效
+     */
+    public boolean lockSlots(Long seatId, Long userId, LocalDateTime start, LocalDateTime end) {
+        Long result = execute(SCRIPT_LOCK, seatId, userId, split(start, end));
+        boolean success = result != null && result == 1;
+        log.info("座位时段锁定，座位ID: {}, 用户ID: {}, 时段: {} ~ {}, 结果: {}", seatId, userId, start, end, success);
+        return success;
+    }
+
+    /**
+     * 确认座位时段（支付成功后），确认后不再过期
+     */
+    public boolean confirmSlots(Long seatId, Long userId, LocalDateTime start, LocalDateTime end) {
+        Long result = execute(SCRIPT_CONFIRM, seatId, userId, split(start, end));
+        boolean success = result != null && result == 1;
+        log.info("座位时段确认，座位ID: {}, 用户ID: {}, 时段: {} ~ {}, 结果: {}", seatId, userId, start, end, success);
+        return success;
+    }
+
+    /**
+     * 释放用户占用的座位时段
+     */
+    public boolean releaseSlots(Long seatId, Long userId, LocalDateTime start, LocalDateTime end) {
+        List<Segment> segments = split(start, end);
+        Long released = execute(SCRIPT_RELEASE, seatId, userId, segments);
+        log.info("座位时段释放，座位ID: {}, 用户ID: {}, 时段: {} ~ {}, 释放段数: {}", seatId, userId, start, end, released);
+        return released != null && released == segments.size();
+    }
+
+    /**
+     * 座位在时段内是否空闲
+     */
+    public boolean isFree(Long seatId, LocalDateTime start, LocalDateTime end) {
+        return !findFreeSeats(Collections.singletonList(seatId), start, end).isEmpty();
+    }
+
+    /**
+     * 区域内在时段内空闲的座位ID（不含维护中的座位），按排号、座位号排列
+     */
+    public List<Long> findFreeSeats(Long areaId, LocalDateTime start, LocalDateTime end) {
+        List<Long> seatIds = new ArrayList<>();
+        for (Seat seat : seatStateIndexService.getGeometry(areaId).getSeats()) {
+            if (seat.getStatus() != null && seat.getStatus() == 1) {
+                seatIds.add(seat.getId());
+            }
+        }
+        return findFreeSeats(seatIds, start, end);
+    }
+
+    /**
+     * 一次pipeline读取各座位涉及日期的位图和占用明细，在本地按位判断，已过期的占用视为空闲
+     */
+    @SuppressWarnings("unchecked")
+    private List<Long> findFreeSeats(List<Long> seatIds, LocalDateTime start, LocalDateTime end) {
+        List<Segment> segments = split(start, end);
+        if (seatIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        RBatch batch = redissonClient.createBatch();
+        for (Long seatId : seatIds) {
+            for (Segment segment : segments) {
+                batch.getBucket(slotKey(seatId, segment.day), ByteArrayCodec.INSTANCE).getAsync();
+                batch.getMap(holdsKey(seatId, segment.day), StringCodec.INSTANCE).readAllMapAsync();
+            }
+        }
+        BatchResult<?> result = batch.execute();
+        List<?> responses = result.getResponses();
+
+        long now = System.currentTimeMillis();
+        List<Long> free = new ArrayList<>();
+        int index = 0;
+        for (Long seatId : seatIds) {
+            boolean seatFree = true;
+            for (Segment segment : segments) {
+                byte[] bits = (byte[]) responses.get(index++);
+                Map<String, String> holds = (Map<String, String>) responses.get(index++);
+                if (seatFree && !isRangeFree(bits, holds, segment, now)) {
+                    seatFree = false;
+                }
+            }
+            if (seatFree) {
+                free.add(seatId);
+            }
+        }
+        return free;
+    }
+
+    private static boolean isRangeFree(byte[] bits, Map<String, String> holds, Segment segment, long now) {
+        if (bits == null) {
+            return true;
+        }
+        for (int i = segment.from; i < segment.to; i++) {
+            // 与Redis位序一致：每字节高位在前
+            int b = i >> 3;
+            if (b < bits.length && (bits[b] & (0x80 >>> (i & 7))) != 0 && !isExpiredHold(holds, i, now)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 时段是否属于一个已过期但尚未被脚本清理的临时占用
+     */
+    private static boolean isExpiredHold(Map<String, String> holds, int slot, long now) {
+        if (holds == null) {
+            return false;
+        }
+        for (Map.Entry<String, String> hold : holds.entrySet()) {
+            String[] range = hold.getKey().split("-");
+            long expireAt = Long.parseLong(hold.getValue().substring(hold.getValue().lastIndexOf(':') + 1));
+            if (slot >= Integer.parseInt(range[0]) && slot < Integer.parseInt(range[1])) {
+                return expireAt > 0 && expireAt <= now;
+            }
+        }
+        return false;
+    }
+
+    private Long execute(String script, Long seatId, Long userId, List<Segment> segments) {
+        long now = System.currentTimeMillis();
+        List<Object> keys = new ArrayList<>(segments.size() * 2);
+        List<Object> args = new ArrayList<>(segments.size() * 3 + 3);
+        args.add(String.valueOf(userId));
+        args.add(String.valueOf(now));
+        args.add(String.valueOf(now + holdSeconds * 1000L));
+        for (Segment segment : segments) {
+            keys.add(slotKey(seatId, segment.day));
+            keys.add(holdsKey(seatId, segment.day));
+            args.add(String.valueOf(segment.from));
+            args.add(String.valueOf(segment.to));
+            // 当天结束后保留retentionDays天
+            args.add(String.valueOf(segment.day.plusDays(1 + retentionDays)
+                    .atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli()));
+        }
+        return luaScriptRegistry.eval(script, RScript.Mode.READ_WRITE, RScript.ReturnType.INTEGER, keys, args.toArray());
+    }
+
+    /**
+     * 按自然日拆分时段，开始时间向下、结束时间向上对齐到15分钟
+     */
+    private List<Segment> split(LocalDateTime start, LocalDateTime end) {
+        if (start == null || end == null || !end.isAfter(start)) {
+            throw new BusinessException("预约时段不合法");
+        }
+        if (Duration.between(start, end).toMinutes() > maxWindowHours * 60L) {
+            throw new BusinessException("预约时段不能超过" + maxWindowHours + "小时");
+        }
+        List<Segment> segments = new ArrayList<>(2);
+        LocalDate day = start.toLocalDate();
+        int from = slotOf(start.toLocalTime(), false);
+        while (true) {
+            if (end.toLocalDate().equals(day)) {
+                int to = slotOf(end.toLocalTime(), true);
+                if (to > from) {
+                    segments.add(new Segment(day, from, to));
+                }
+                break;
+            }
+            segments.add(new Segment(day, from, SLOTS_PER_DAY));
+            day = day.plusDays(1);
+            from = 0;
+        }
+        return segments;
+    }
+
+    private static int slotOf(LocalTime time, boolean roundUp) {
+        int minutes = time.getHour() * 60 + time.getMinute();
+        int slot = minutes / SLOT_MINUTES;
+        if (roundUp && (minutes % SLOT_MINUTES != 0 || time.getSecond() != 0 || time.getNano() != 0)) {
+            slot++;
+        }
+        return slot;
+    }
+
+    private static String slotKey(Long seatId, LocalDate day) {
+        return SLOT_KEY_PREFIX + "{" + seatId + "}:" + day.format(DAY_FORMAT);
+    }
+
+    private static String holdsKey(Long seatId, LocalDate day) {
+        return slotKey(seatId, day) + HOLDS_KEY_SUFFIX;
+    }
+
+    /**
+     * 单日内的时段区间 [from, to)
+     */
+    private static class Segment {
+        private final LocalDate day;
+        private final int from;
+        private final int to;
+
+        Segment(LocalDate day, int from, int to) {
+            this.day = day;
+            this.from = from;
+            this.to = to;
+        }
+    }
+}
@@ -0,0 +1,215 @@
+package com.ticketsystem.show.service;
+
+import com.ticketsystem.show.entity.Seat;
+import com.ticketsystem.show.mapper.SeatMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.BatchResult;
+import org.redisson.api.RBatch;
+import org.redisson.api.RBucketAsync;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 座位锁定写回缓冲（write-behind）
+ * 加解锁后只在内存中标记座位待同步，短时间窗口内同一座位的多次加解锁合并为一次；
+ * 刷新时用一次Redis pipeline读取这批座位锁的当前持有人和剩余时间，
+ * 有锁的座位用一条CASE批量UPDATE写入锁定信息，无锁的座位用一条IN批量UPDATE清除锁定。
+ * 写回的始终是Redis中的最新状态，先锁后解的座位直接写为空闲。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class SeatWriteBehindService {
+
+    private final SeatMapper seatMapper;
+    private final RedissonClient redissonClient;
+    private final SeatStateIndexService seatStateIndexService;
+    private final MeterRegistry meterRegistry;
+
+    @Value("${seat.sync.flush-size:200}")
+    private int flushSize;
+
+    // 待同步座位
+    private final Set<Long> pending = ConcurrentHashMap.newKeySet();
+
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    // 达到数量阈值时只提交一个刷新任务
+    private final AtomicBoolean flushTriggered = new AtomicBoolean();
+
+    private final ExecutorService flushExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "seat-sync-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Counter coalescedCounter;
+    private Counter flushedCounter;
+    private Counter flushFailureCounter;
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("seat_sync_pending", pending, Set::size)
+                .description("等待写回数据库的座位数")
+                .register(meterRegistry);
+        coalescedCounter = Counter.builder("seat_sync_coalesced_total")
+                .description("被合并的座位锁定同步事件数")
+                .register(meterRegistry);
+        flushedCounter = Counter.builder("seat_sync_flushed_total")
+                .description("写回数据库的座位行数")
+                .register(meterRegistry);
+        flushFailureCounter = Counter.builder("seat_sync_flush_failure_total")
+                .description("座位锁定批量写回失败次数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 标记座位锁定状态待同步
+     */
+    public void markDirty(Collection<Long> seatIds) {
+        for (Long seatId : seatIds) {
+            if (!pending.add(seatId)) {
+                coalescedCounter.increment();
+            }
+        }
+        if (pending.size() >= flushSize && !flushExecutor.isShutdown()
+                && flushTriggered.compareAndSet(false, true)) {
+            flushExecutor.execute(() -> {
+                flushTriggered.set(false);
+                flush();
+            });
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${seat.sync.flush-interval:200}")
+    public void scheduledFlush() {
+        flush();
+    }
+
+    /**
+     * 将待同步座位按批写回数据库
+     * @return 写回的座位数
+     */
+    public int flush() {
+        if (!flushLock.tryLock()) {
+            return 0;
+        }
+        try {
+            int flushed = 0;
+            while (!pending.isEmpty()) {
+                List<Long> batch = drain(flushSize);
+                if (batch.isEmpty()) {
+                    break;
+                }
+                if (!writeBatch(batch)) {
+                    // 写回失败，放回缓冲等待下一次刷新
+                    pending.addAll(batch);
+                    break;
+                }
+                flushed += batch.size();
+            }
+            return flushed;
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flushExecutor.shutdown();
+        try {
+            flushExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        if (!pending.isEmpty()) {
+            log.warn("座位锁定写回未完成，由过期队列和一致性检查兜底，座位数: {}", pending.size());
+        }
+    }
+
+    private List<Long> drain(int limit) {
+        List<Long> batch = new ArrayList<>(Math.min(limit, pending.size()));
+        Iterator<Long> iterator = pending.iterator();
+        while (iterator.hasNext() && batch.size() < limit) {
+            batch.add(iterator.next());
+            iterator.remove();
+        }
+        return batch;
+    }
+
+    private boolean writeBatch(List<Long> seatIds) {
+        List<Seat> locked = new ArrayList<>();
+        List<Long> unlocked = new ArrayList<>();
+        try {
+            // 一次pipeline读取锁值（userId:timestamp）和剩余时间
+            RBatch batch = redissonClient.createBatch();
+            for (Long seatId : seatIds) {
+                RBucketAsync<String> bucket = batch.getBucket(seatStateIndexService.lockKey(seatId), StringCodec.INSTANCE);
+                bucket.getAsync();
+                bucket.remainTimeToLiveAsync();
+            }
+            BatchResult<?> result = batch.execute();
+            List<?> responses = result.getResponses();
+
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < seatIds.size(); i++) {
+                Object value = responses.get(i * 2);
+                long ttl = ((Number) responses.get(i * 2 + 1)).longValue();
+                String[] parts = value != null ? value.toString().split(":") : new String[0];
+                if (parts.length < 2 || ttl <= 0) {
+                    unlocked.add(seatIds.get(i));
+                    continue;
+                }
+                Seat seat = new Seat();
+                seat.setId(seatIds.get(i));
+                seat.setLockUserId(Long.valueOf(parts[0]));
+                seat.setLockTime(toDateTime(Long.parseLong(parts[1])));
+                seat.setLockExpireTime(toDateTime(now + ttl));
+                locked.add(seat);
+            }
+
+            if (!locked.isEmpty()) {
+                seatMapper.batchUpdateSeatLocks(locked);
+            }
+            if (!unlocked.isEmpty()) {
+                seatMapper.batchClearSeatLocks(unlocked);
+            }
+        } catch (Exception e) {
+            flushFailureCounter.increment();
+            log.error("座位锁定批量写回数据库失败，座位数: {}", seatIds.size(), e);
+            return false;
+        }
+        flushedCounter.increment(seatIds.size());
+        log.debug("座位锁定批量写回数据库完成，锁定: {}, 空闲: {}", locked.size(), unlocked.size());
+        return true;
+    }
+
+    private static LocalDateTime toDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+}
@@ -0,0 +1,668 @@
+package com.ticketsystem.show.service;
+
+import com.ticketsystem.common.util.UserContext;
+import com.ticketsystem.common.script.LuaScriptRegistry;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBatch;
+import org.redisson.api.RMap;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分片库存服务
+ * 热点票档的剩余库存拆分到N个子计数器，分散单key的Redis热点
+ * 分片key形如 stock:ticket:{123:shard:0}，每个分片单独一个hash tag，集群下分布到不同slot和节点；
+ * 下单只扣减选中分片，选中分片不足时才逐个分片借用
+ *
+ * 分片配置统一保存在Redis哈希 stock:shard:meta 中（field=票档ID，value=分片数），
+ * 保证所有节点对同一票档使用相同的key布局；本地只做短周期缓存。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class ShardedStockService {
+
+    private final RedissonClient redissonClient;
+    private final MeterRegistry meterRegistry;
+    private final LuaScriptRegistry luaScriptRegistry;
+
+    // 库存缓存key前缀（与StockEngine保持一致）
+    private static final String STOCK_KEY_PREFIX = "stock:ticket:";
+
+    // 锁定库存key前缀（与StockEngine保持一致）
+    private static final String LOCKED_KEY_PREFIX = "stock:locked:";
+
+    // 分片key中缀
+    private static final String SHARD_KEY_INFIX = ":shard:";
+
+    // 分片配置哈希
+    private static final String SHARD_META_KEY = "stock:shard:meta";
+
+    // 默认过期时间（24小时）
+    private static final int DEFAULT_EXPIRE_TIME = 24 * 60 * 60;
+
+    // 分片数上限
+    private static final int MAX_SHARDS = 64;
+
+    // 分片选择策略
+    private static final String SELECTION_USER_HASH = "user-hash";
+
+    @Value("${stock.sharding.default-shards:8}")
+    private int defaultShards;
+
+    @Value("${stock.sharding.selection:random}")
+    private String selection;
+
+    @Value("${stock.sharding.hot-tickets:}")
+    private String hotTickets;
+
+    // 本地分片配置缓存：票档ID -> 分片数
+    private final Map<Long, Integer> shardCountCache = new ConcurrentHashMap<>();
+
+    private Counter borrowCounter;
+    private Counter borrowFailureCounter;
+
+    /**
+     * 分片扣减Lua脚本（只操作一个分片）
+     * ARGV[1]: 请求数量, ARGV[2]: 1-全量扣减（不足返回0） 0-部分扣减（尽量多拿）, ARGV[3]: 过期时间
+     * 返回: 实际扣减数量, -1 分片不存在
+     */
+    private static final String SHARD_TAKE_SCRIPT =
+            "local current = redis.call('get', KEYS[1]) " +
+            "if current == false then " +
+            "    return -1 " +
+            "end " +
+            "local stock = tonumber(current) " +
+            "local quantity = tonumber(ARGV[1]) " +
+            "local take = quantity " +
+            "if stock < quantity then " +
+            "    if ARGV[2] == '1' then " +
+            "        return 0 " +
+            "    end " +
+            "    take = stock " +
+            "end " +
+            "if take > 0 then " +
+            "    redis.call('decrby', KEYS[1], take) " +
+            "    redis.call('expire', KEYS[1], tonumber(ARGV[3])) " +
+            "end " +
+            "return take";
+
+    /**
+     * 分片归还Lua脚本（分片不存在时不创建，避免产生无过期时间的孤立key）
+     */
+    private static final String SHARD_GIVE_BACK_SCRIPT =
+            "if redis.call('exists', KEYS[1]) == 0 then " +
+            "    return -1 " +
+            "end " +
+            "return redis.call('incrby', KEYS[1], tonumber(ARGV[1]))";
+
+    /**
+     * 分片锁定Lua脚本：全量扣减用户所属分片并累加到该分片的用户锁定记录
+     * KEYS[1]: 分片key, KEYS[2]: 分片锁定key（与分片同一hash tag）
+     * ARGV[1]: 锁定数量, ARGV[2]: 库存过期时间, ARGV[3]: 锁定过期时间
+     * 返回: 1-成功, 0-库存不足, -1-分片不存在
+     */
+    private static final String SHARD_LOCK_SCRIPT =
+            "local current = redis.call('get', KEYS[1]) " +
+            "if current == false then " +
+            "    return -1 " +
+            "end " +
+            "local quantity = tonumber(ARGV[1]) " +
+            "if tonumber(current) < quantity then " +
+            "    return 0 " +
+            "end " +
+            "redis.call('decrby', KEYS[1], quantity) " +
+            "redis.call('expire', KEYS[1], tonumber(ARGV[2])) " +
+            "redis.call('incrby', KEYS[2], quantity) " +
+            "redis.call('expire', KEYS[2], tonumber(ARGV[3])) " +
+            "return 1";
+
+    /**
+     * 分片释放锁定Lua脚本：删除用户锁定记录并加回所属分片
+     * 分片不存在时保留锁定记录，由调用方同步库存后重试
+     * KEYS[1]: 分片key, KEYS[2]: 分片锁定key
+     * 返回: 归还数量, 0-无锁定记录, -1-分片不存在
+     */
+    private static final String SHARD_UNLOCK_SCRIPT =
+            "local locked = redis.call('get', KEYS[2]) " +
+            "if locked == false then " +
+            "    return 0 " +
+            "end " +
+            "if redis.call('exists', KEYS[1]) == 0 then " +
+            "    return -1 " +
+            "end " +
+            "local quantity = tonumber(locked) " +
+            "redis.call('del', KEYS[2]) " +
+            "redis.call('incrby', KEYS[1], quantity) " +
+            "return quantity";
+
+    /**
+     * 拆分Lua脚本：将单key库存原子性地分配到各分片并写入分片配置
+     * KEYS[1]: 单key库存, KEYS[2]: 分片配置哈希, KEYS[3..]: 分片key
+     * ARGV[1]: 票档ID, ARGV[2]: 过期时间
+     * 返回: 拆分的库存总量, -1 单key库存不存在（仅写入分片配置）
+     */
+    private static final String SHARD_SPLIT_SCRIPT =
+            "local shards = #KEYS - 2 " +
+            "redis.call('hset', KEYS[2], ARGV[1], shards) " +
+            "local raw = redis.call('get', KEYS[1]) " +
+            "if raw == false then " +
+            "    return -1 " +
+            "end " +
+            "local total = tonumber((string.gsub(raw, '\"', ''))) or 0 " +
+            "local base = math.floor(total / shards) " +
+            "local remainder = total % shards " +
+            "for i = 1, shards do " +
+            "    local value = base " +
+            "    if i <= remainder then value = value + 1 end " +
+            "    redis.call('set', KEYS[i + 2], value, 'EX', tonumber(ARGV[2])) " +
+            "end " +
+            "redis.call('del', KEYS[1]) " +
+            "return total";
+
+    /**
+     * 合并Lua脚本：汇总各分片库存写回单key并删除分片配置
+     * KEYS[1]: 单key库存, KEYS[2]: 分片配置哈希, KEYS[3..]: 分片key
+     */
+    private static final String SHARD_MERGE_SCRIPT =
+            "local total = 0 " +
+            "local found = 0 " +
+            "for i = 3, #KEYS do " +
+            "    local value = redis.call('get', KEYS[i]) " +
+            "    if value ~= false then " +
+            "        total = total + tonumber(value) " +
+            "        found = found + 1 " +
+            "        redis.call('del', KEYS[i]) " +
+            "    end " +
+            "end " +
+            "redis.call('hdel', KEYS[2], ARGV[1]) " +
+            "if found > 0 then " +
+            "    redis.call('set', KEYS[1], total, 'EX', tonumber(ARGV[2])) " +
+            "    return total " +
+            "end " +
+            "return -1";
+
+    // 脚本注册名
+    private static final String SCRIPT_TAKE = "stock.shard.take";
+    private static final String SCRIPT_GIVE_BACK = "stock.shard.give-back";
+    private static final String SCRIPT_LOCK = "stock.shard.lock";
+    private static final String SCRIPT_UNLOCK = "stock.shard.unlock";
+    private static final String SCRIPT_SPLIT = "stock.shard.split";
+    private static final String SCRIPT_MERGE = "stock.shard.merge";
+
+    @PostConstruct
+    public void init() {
+        luaScriptRegistry.register(SCRIPT_TAKE, SHARD_TAKE_SCRIPT);
+        luaScriptRegistry.register(SCRIPT_GIVE_BACK, SHARD_GIVE_BACK_SCRIPT);
+        luaScriptRegistry.register(SCRIPT_LOCK, SHARD_LOCK_SCRIPT);
+        luaScriptRegistry.register(SCRIPT_UNLOCK, SHARD_UNLOCK_SCRIPT);
+        luaScriptRegistry.register(SCRIPT_SPLIT, SHARD_SPLIT_SCRIPT);
+        luaScriptRegistry.register(SCRIPT_MERGE, SHARD_MERGE_SCRIPT);
+
+        borrowCounter = Counter.builder("stock_shard_borrow_total")
+                .description("分片库存跨分片借用次数")
+                .register(meterRegistry);
+        borrowFailureCounter = Counter.builder("stock_shard_borrow_failure_total")
+                .description("分片库存借用后仍不足的次数")
+                .register(meterRegistry);
+
+        try {
+            refreshShardConfig();
+            applyConfiguredHotTickets();
+        } catch (Exception e) {
+            log.error("分片库存配置初始化失败", e);
+        }
+        log.info("分片库存服务初始化完成，已分片票档: {}, 选择策略: {}", shardCountCache.keySet(), selection);
+    }
+
+    /**
+     * 定期刷新分片配置，让其他节点开启/关闭的分片及时生效
+     */
+    @Scheduled(fixedDelay = 5000)
+    public void refreshShardConfig() {
+        try {
+            Map<String, String> meta = getShardMeta().readAllMap();
+            Map<Long, Integer> latest = new ConcurrentHashMap<>();
+            meta.forEach((ticketId, shards) -> latest.put(Long.valueOf(ticketId), Integer.valueOf(shards)));
+            shardCountCache.keySet().retainAll(latest.keySet());
+            shardCountCache.putAll(latest);
+        } catch (Exception e) {
+            log.warn("刷新分片库存配置失败: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * 判断票档是否启用分片（读本地缓存）
+     */
+    public boolean isSharded(Long ticketId) {
+        return shardCountCache.containsKey(ticketId);
+    }
+
+    /**
+     * 直接读取Redis中的分片配置并更新本地缓存
+     * 用于单key未命中等低频路径，避免节点间缓存延迟导致重建单key
+     */
+    public boolean checkShardedAuthoritative(Long ticketId) {
+        String shards = getShardMeta().get(String.valueOf(ticketId));
+        if (shards == null) {
+            shardCountCache.remove(ticketId);
+            return false;
+        }
+        shardCountCache.put(ticketId, Integer.valueOf(shards));
+        return true;
+    }
+
+    /**
+     * 开启票档分片，将当前单key库存拆分到各分片
+     * @param ticketId 票档ID
+     * @param shards 分片数，为空时使用默认分片数
+     * @return 拆分的库存总量，-1表示单key库存不存在（分片将在下次初始化时写入）
+     */
+    public Long enableSharding(Long ticketId, Integer shards) {
+        int shardCount = normalizeShardCount(shards);
+        List<Object> keys = new ArrayList<>();
+        keys.add(getStockKey(ticketId));
+        keys.add(SHARD_META_KEY);
+        keys.addAll(getShardKeys(ticketId, shardCount));
+
+        Long total = luaScriptRegistry.eval(
+                SCRIPT_SPLIT,
+                RScript.Mode.READ_WRITE,
+                RScript.ReturnType.INTEGER,
+                keys,
+                String.valueOf(ticketId), String.valueOf(DEFAULT_EXPIRE_TIME));
+
+        shardCountCache.put(ticketId, shardCount);
+        log.info("开启分片库存 - 票档ID: {}, 分片数: {}, 拆分库存: {}", ticketId, shardCount, total);
+        return total;
+    }
+
+    /**
+     * 关闭票档分片，将各分片库存合并回单key
+     * @return 合并后的库存总量，-1表示分片不存在
+     */
+    public Long disableSharding(Long ticketId) {
+        int shardCount = getShardCount(ticketId);
+        List<Object> keys = new ArrayList<>();
+        keys.add(getStockKey(ticketId));
+        keys.add(SHARD_META_KEY);
+        keys.addAll(getShardKeys(ticketId, shardCount));
+
+        Long total = luaScriptRegistry.eval(
+                SCRIPT_MERGE,
+                RScript.Mode.READ_WRITE,
+                RScript.ReturnType.INTEGER,
+                keys,
+                String.valueOf(ticketId), String.valueOf(DEFAULT_EXPIRE_TIME));
+
+        shardCountCache.remove(ticketId);
+        log.info("关闭分片库存 - 票档ID: {}, 分片数: {}, 合并库存: {}", ticketId, shardCount, total);
+        return total;
+    }
+
+    /**
+     * 初始化分片库存（均匀分配到各分片）
+     */
+    public Boolean initStock(Long ticketId, Integer availableStock) {
+        int shardCount = getShardCount(ticketId);
+        List<String> shardKeys = getShardKeys(ticketId, shardCount);
+        int base = availableStock / shardCount;
+        int remainder = availableStock % shardCount;
+
+        RBatch batch = redissonClient.createBatch();
+        for (int i = 0; i < shardCount; i++) {
+            int value = base + (i < remainder ? 1 : 0);
+            batch.getBucket(shardKeys.get(i), StringCodec.INSTANCE)
+                    .setAsync(String.valueOf(value), DEFAULT_EXPIRE_TIME, TimeUnit.SECONDS);
+        }
+        batch.execute();
+
+        log.info("初始化分片库存成功 - 票档ID: {}, 库存: {}, 分片数: {}", ticketId, availableStock, shardCount);
+        return true;
+    }
+
+    /**
+     * 分片预减库存
+     * 只在选中分片上全量扣减；选中分片不足时再逐个向相邻分片借用（每个分片一次脚本调用），
+     * 借用仍不足则归还已扣减部分
+     * @return 1-成功，0-库存不足，-1-库存不存在
+     */
+    public Integer predeductStock(Long ticketId, Integer quantity) {
+        int shardCount = getShardCount(ticketId);
+        List<String> shardKeys = getShardKeys(ticketId, shardCount);
+        int primary = selectShard(shardCount);
+
+        long taken = take(shardKeys.get(primary), quantity, true);
+        if (taken == quantity) {
+            return 1;
+        }
+
+        int collected = borrow(ticketId, shardKeys, primary, quantity, false);
+        if (collected == quantity) {
+            return 1;
+        }
+        if (collected == -1) {
+            log.warn("分片库存预减失败 - 票档ID: {}, 数量: {}, 原因: 库存不存在", ticketId, quantity);
+            return -1;
+        }
+        log.warn("分片库存预减失败 - 票档ID: {}, 数量: {}, 原因: 库存不足", ticketId, quantity);
+        return 0;
+    }
+
+    /**
+     * 分片租借库存：从选中分片开始尽量多地取走不超过请求数量的库存
+     * @return 实际租借数量，-1-库存不存在
+     */
+    public Integer leaseStock(Long ticketId, Integer quantity) {
+        int shardCount = getShardCount(ticketId);
+        List<String> shardKeys = getShardKeys(ticketId, shardCount);
+        int primary = selectShard(shardCount);
+
+        int collected = 0;
+        int missing = 0;
+        for (int i = 0; i < shardCount && collected < quantity; i++) {
+            long got = take(shardKeys.get((primary + i) % shardCount), quantity - collected, false);
+            if (got < 0) {
+                missing++;
+            } else {
+                collected += (int) got;
+            }
+        }
+        return missing == shardCount ? -1 : collected;
+    }
+
+    /**
+     * 分片回滚库存
+     * 最大库存按各分片总量校验，分片不在同一slot，校验与加回之间的并发回滚可能略超上限
+     * @return 1-成功，0-超过最大库存，-1-库存不存在
+     */
+    public Integer rollbackStock(Long ticketId, Integer quantity, Integer maxStock) {
+        if (maxStock != null && maxStock != Integer.MAX_VALUE) {
+            Integer current = getStock(ticketId);
+            if (current == null) {
+                log.warn("分片库存回滚失败 - 票档ID: {}, 回滚数量: {}, 原因: 库存不存在", ticketId, quantity);
+                return -1;
+            }
+            if (current + quantity > maxStock) {
+                log.warn("分片库存回滚失败 - 票档ID: {}, 回滚数量: {}, 当前库存: {}, 最大库存: {}, 原因: 超过最大库存限制",
+                        ticketId, quantity, current, maxStock);
+                return 0;
+            }
+        }
+
+        int shardCount = getShardCount(ticketId);
+        List<String> shardKeys = getShardKeys(ticketId, shardCount);
+        int primary = selectShard(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            if (giveBack(shardKeys.get((primary + i) % shardCount), quantity) >= 0) {
+                return 1;
+            }
+        }
+        log.warn("分片库存回滚失败 - 票档ID: {}, 回滚数量: {}, 原因: 库存不存在", ticketId, quantity);
+        return -1;
+    }
+
+    /**
+     * 分片锁定库存：用户固定落在一个分片上，扣减分片库存和累加该分片的用户锁定记录在同一脚本内完成
+     * 所属分片不足时先从相邻分片借入库存到所属分片，再重试一次
+     * @return 1-成功，0-库存不足，-1-库存不存在
+     */
+    public Integer lockStock(Long ticketId, Long userId, Integer quantity, int lockExpireSeconds) {
+        int shardCount = getShardCount(ticketId);
+        List<String> shardKeys = getShardKeys(ticketId, shardCount);
+        int home = userShard(userId, shardCount);
+
+        int result = lockOnShard(ticketId, userId, home, quantity, lockExpireSeconds);
+        if (result != 0) {
+            return result;
+        }
+
+        // 所属分片不足，从相邻分片借入后重试；借入的库存留在所属分片，不会丢失
+        int collected = borrow(ticketId, shardKeys, home, quantity, true);
+        if (collected == -1) {
+            return -1;
+        }
+        if (collected > 0 && giveBack(shardKeys.get(home), collected) < 0) {
+            // 所属分片期间被删除，放回其他仍存在的分片
+            rollbackStock(ticketId, collected, Integer.MAX_VALUE);
+            return -1;
+        }
+        if (collected < quantity) {
+            log.warn("分片库存锁定失败 - 票档ID: {}, 用户ID: {}, 数量: {}, 原因: 库存不足", ticketId, userId, quantity);
+            return 0;
+        }
+        return lockOnShard(ticketId, userId, home, quantity, lockExpireSeconds);
+    }
+
+    /**
+     * 分片释放锁定：删除用户锁定记录和加回所属分片在同一脚本内完成
+     * @return 归还数量，0-无锁定记录，-1-库存不存在（锁定记录保留）
+     */
+    public Integer unlockStock(Long ticketId, Long userId) {
+        int home = userShard(userId, getShardCount(ticketId));
+        Long result = luaScriptRegistry.eval(
+                SCRIPT_UNLOCK,
+                RScript.Mode.READ_WRITE,
+                RScript.ReturnType.INTEGER,
+                Arrays.<Object>asList(getShardKey(ticketId, home), getShardLockedKey(ticketId, home, userId)));
+        int quantity = result != null ? result.intValue() : -1;
+        if (quantity == -1) {
+            log.warn("分片库存释放锁定失败 - 票档ID: {}, 用户ID: {}, 原因: 库存不存在", ticketId, userId);
+        }
+        return quantity;
+    }
+
+    /**
+     * 获取分片票档的用户锁定key（位于用户所属分片的slot）
+     */
+    public String getLockedKey(Long ticketId, Long userId) {
+        int home = userShard(userId, getShardCount(ticketId));
+        return getShardLockedKey(ticketId, home, userId);
+    }
+
+    private int lockOnShard(Long ticketId, Long userId, int shard, Integer quantity, int lockExpireSeconds) {
+        Long result = luaScriptRegistry.eval(
+                SCRIPT_LOCK,
+                RScript.Mode.READ_WRITE,
+                RScript.ReturnType.INTEGER,
+                Arrays.<Object>asList(getShardKey(ticketId, shard), getShardLockedKey(ticketId, shard, userId)),
+                String.valueOf(quantity), String.valueOf(DEFAULT_EXPIRE_TIME), String.valueOf(lockExpireSeconds));
+        return result != null ? result.intValue() : -1;
+    }
+
+    /**
+     * 从选中分片开始逐个分片部分扣减，凑够数量后返回；凑不够时归还已扣减部分
+     * @param keepAll 为true时凑不够也不归还，已扣减部分由调用方处理
+     * @return 扣减数量，所有分片都不存在时返回-1
+     */
+    private int borrow(Long ticketId, List<String> shardKeys, int primary, int quantity, boolean keepAll) {
+        borrowCounter.increment();
+        int shardCount = shardKeys.size();
+        int collected = 0;
+        int missing = 0;
+        Map<String, Integer> borrowed = new LinkedHashMap<>();
+        for (int i = 0; i < shardCount && collected < quantity; i++) {
+            String shardKey = shardKeys.get((primary + i) % shardCount);
+            long got = take(shardKey, quantity - collected, false);
+            if (got < 0) {
+                missing++;
+            } else if (got > 0) {
+                borrowed.merge(shardKey, (int) got, Integer::sum);
+                collected += (int) got;
+            }
+        }
+
+        if (collected == quantity) {
+            log.debug("分片库存借用成功 - 票档ID: {}, 数量: {}, 借用分片: {}", ticketId, quantity, borrowed.keySet());
+            return collected;
+        }
+        borrowFailureCounter.increment();
+        if (!keepAll) {
+            borrowed.forEach(this::giveBack);
+        }
+        return missing == shardCount ? -1 : collected;
+    }
+
+    /**
+     * 获取分片库存总量（一次MGET汇总所有分片）
+     * @return 库存总量，所有分片都不存在时返回null
+     */
+    public Integer getStock(Long ticketId) {
+        Map<String, Integer> shardStocks = getShardStocks(ticketId);
+        if (shardStocks.isEmpty()) {
+            return null;
+        }
+        return shardStocks.values().stream().mapToInt(Integer::intValue).sum();
+    }
+
+    /**
+     * 获取各分片库存明细
+     */
+    public Map<String, Integer> getShardStocks(Long ticketId) {
+        List<String> shardKeys = getShardKeys(ticketId, getShardCount(ticketId));
+        Map<String, String> values = redissonClient.getBuckets(StringCodec.INSTANCE)
+                .get(shardKeys.toArray(new String[0]));
+        Map<String, Integer> result = new LinkedHashMap<>();
+        for (String shardKey : shardKeys) {
+            String value = values.get(shardKey);
+            if (value != null) {
+                result.put(shardKey, Integer.valueOf(value));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 删除分片库存缓存（保留分片配置）
+     */
+    public Boolean deleteStock(Long ticketId) {
+        List<String> shardKeys = getShardKeys(ticketId, getShardCount(ticketId));
+        long deleted = redissonClient.getKeys().delete(shardKeys.toArray(new String[0]));
+        return deleted > 0;
+    }
+
+    /**
+     * 获取所有已分片票档的配置
+     */
+    public Map<Long, Integer> getShardConfig() {
+        return Collections.unmodifiableMap(shardCountCache);
+    }
+
+    private long take(String shardKey, int quantity, boolean exact) {
+        Long result = luaScriptRegistry.eval(
+                SCRIPT_TAKE,
+                RScript.Mode.READ_WRITE,
+                RScript.ReturnType.INTEGER,
+                Collections.singletonList(shardKey),
+                String.valueOf(quantity), exact ? "1" : "0", String.valueOf(DEFAULT_EXPIRE_TIME));
+        return result != null ? result : -1;
+    }
+
+    private long giveBack(String shardKey, Integer quantity) {
+        Long result = luaScriptRegistry.eval(
+                SCRIPT_GIVE_BACK,
+                RScript.Mode.READ_WRITE,
+                RScript.ReturnType.INTEGER,
+                Collections.singletonList(shardKey),
+                String.valueOf(quantity));
+        return result != null ? result : -1;
+    }
+
+    /**
+     * 用户所属分片：锁定和释放都落在同一分片，锁定记录与分片库存在同一slot
+     */
+    private int userShard(Long userId, int shardCount) {
+        return (int) Math.floorMod(Long.hashCode(userId) * 0x9E3779B9L, (long) shardCount);
+    }
+
+    /**
+     * 选择分片：按用户ID哈希（同一用户落在同一分片）或随机
+     */
+    private int selectShard(int shardCount) {
+        Long userId = UserContext.getUserId();
+        if (SELECTION_USER_HASH.equals(selection) && userId != null) {
+            return userShard(userId, shardCount);
+        }
+        return ThreadLocalRandom.current().nextInt(shardCount);
+    }
+
+    private int getShardCount(Long ticketId) {
+        Integer shards = shardCountCache.get(ticketId);
+        return shards != null ? shards : defaultShards;
+    }
+
+    private int normalizeShardCount(Integer shards) {
+        int shardCount = shards != null ? shards : defaultShards;
+        return Math.max(1, Math.min(shardCount, MAX_SHARDS));
+    }
+
+    /**
+     * 应用配置文件中声明的热点票档（格式: ticketId:shards,ticketId:shards）
+     * 已在Redis中配置过的票档不会被重新拆分
+     */
+    private void applyConfiguredHotTickets() {
+        if (hotTickets == null || hotTickets.isBlank()) {
+            return;
+        }
+        for (String item : hotTickets.split(",")) {
+            String[] parts = item.trim().split(":");
+            try {
+                Long ticketId = Long.valueOf(parts[0].trim());
+                Integer shards = parts.length > 1 ? Integer.valueOf(parts[1].trim()) : null;
+                if (!isSharded(ticketId)) {
+                    enableSharding(ticketId, shards);
+                }
+            } catch (NumberFormatException e) {
+                log.warn("热点票档分片配置格式错误: {}", item);
+            }
+        }
+    }
+
+    private RMap<String, String> getShardMeta() {
+        return redissonClient.getMap(SHARD_META_KEY, StringCodec.INSTANCE);
+    }
+
+    private String getStockKey(Long ticketId) {
+        return STOCK_KEY_PREFIX + ticketId;
+    }
+
+    /**
+     * 分片key形如 stock:ticket:{123:shard:0}，每个分片使用自己的hash tag，分散到不同slot
+     */
+    private String getShardKey(Long ticketId, int shard) {
+        return STOCK_KEY_PREFIX + "{" + ticketId + SHARD_KEY_INFIX + shard + "}";
+    }
+
+    /**
+     * 分片锁定key与分片key使用相同的hash tag，锁定脚本只涉及一个slot
+     */
+    private String getShardLockedKey(Long ticketId, int shard, Long userId) {
+        return LOCKED_KEY_PREFIX + "{" + ticketId + SHARD_KEY_INFIX + shard + "}:" + userId;
+    }
+
+    private List<String> getShardKeys(Long ticketId, int shardCount) {
+        List<String> keys = new ArrayList<>(shardCount);
+        for (int i = 0; i < shardCount; i++) {
+            keys.add(getShardKey(ticketId, i));
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,897 @@
+package com.ticketsystem.show.service;
+
+import com.ticketsystem.common.script.LuaScriptRegistry;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBatch;
+import org.redisson.api.RScript;
+import org.redisson.api.RSet;
+import org.redisson.api.RStream;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.StreamMessageId;
+import org.redisson.api.stream.StreamAddArgs;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 统一库存引擎
+ * 票档库存在Redis中只保留一份，所有预减/回滚/锁定/确认都通过Lua脚本原子执行
+ *
+ * key规范：
+ *   stock:ticket:{ticketId}              可用库存（热点票档为 stock:ticket:{ticketId:shard:i}，每个分片单独hash tag）
+ *   stock:locked:{ticketId}:{userId}     用户锁定数量
+ *   stock:leased:{ticketId}              订单节点持有的未归还租借配额（节点 -> 数量）
+ *   stock:registry                       已初始化库存的票档ID集合
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StockEngine {
+
+    private final RedissonClient redissonClient;
+    private final ShardedStockService shardedStockService;
+    private final LuaScriptRegistry luaScriptRegistry;
+    private final StockLedgerService stockLedgerService;
+
+    // 库存缓存key前缀
+    private static final String STOCK_KEY_PREFIX = "stock:ticket:";
+
+    // 锁定库存key前缀
+    private static final String LOCKED_KEY_PREFIX = "stock:locked:";
+
+    // 租借配额key前缀
+    private static final String LEASED_KEY_PREFIX = "stock:leased:";
+
+    // 默认过期时间（24小时）
+    private static final int DEFAULT_EXPIRE_TIME = 24 * 60 * 60;
+
+    // 锁定过期时间（5分钟）
+    private static final int LOCK_EXPIRE_TIME = 5 * 60;
+
+    // 不限制最大库存
+    private static final int UNBOUNDED = -1;
+
+    // 库存操作追踪流
+    private static final String TRACE_STREAM_KEY = "stock:trace";
+
+    // 已初始化库存的票档集合，供监控等批量遍历使用，避免KEYS扫描
+    private static final String REGISTRY_KEY = "stock:registry";
+
+    @Value("${stock.trace.enabled:false}")
+    private boolean traceEnabled;
+
+    @Value("${stock.trace.sample-rate:0.01}")
+    private double traceSampleRate;
+
+    @Value("${stock.trace.max-length:10000}")
+    private int traceMaxLength;
+
+    // 租借配额记录的过期时间，节点宕机未归还的记录到期后不再从可用库存中扣除
+    @Value("${stock.lease.outstanding-ttl-seconds:600}")
+    private int leasedExpireTime;
+
+    /**
+     * 读取库存值，兼容旧版本以JSON编码写入的带引号数值
+     */
+    private static final String READ_STOCK =
+            "local raw = redis.call('get', KEYS[1]) " +
+            "if raw == false then " +
+            "    return -1 " +
+            "end " +
+            "local stock = tonumber((string.gsub(raw, '\"', ''))) " +
+            "if stock == nil then " +
+            "    return -1 " +
+            "end ";
+
+    /**
+     * 锁定库存Lua脚本：扣减可用库存并累加到用户锁定记录
+     * KEYS[1]: 库存key, KEYS[2]: 锁定key
+     * ARGV[1]: 锁定数量, ARGV[2]: 锁定过期时间, ARGV[3]: 库存过期时间
+     * 返回: 1-成功, 0-库存不足, -1-库存不存在
+     */
+    private static final String STOCK_LOCK_SCRIPT =
+            READ_STOCK +
+            "local quantity = tonumber(ARGV[1]) " +
+            "if stock < quantity then " +
+            "    return 0 " +
+            "end " +
+            "redis.call('set', KEYS[1], stock - quantity, 'EX', tonumber(ARGV[3])) " +
+            "redis.call('incrby', KEYS[2], quantity) " +
+            "redis.call('expire', KEYS[2], tonumber(ARGV[2])) " +
+            "return 1";
+
+    /**
+     * 释放锁定Lua脚本：删除用户锁定记录并归还可用库存
+     * 库存不存在时保留锁定记录，由调用方同步库存后重试，避免锁定数量丢失
+     * KEYS[1]: 库存key, KEYS[2]: 锁定key
+     * ARGV[1]: 库存过期时间
+     * 返回: 归还数量, 0-无锁定记录, -1-库存不存在
+     */
+    private static final String STOCK_UNLOCK_SCRIPT =
+            "local locked = redis.call('get', KEYS[2]) " +
+            "if locked == false then " +
+            "    return 0 " +
+            "end " +
+            READ_STOCK +
+            "local quantity = tonumber(locked) " +
+            "redis.call('del', KEYS[2]) " +
+            "redis.call('set', KEYS[1], stock + quantity, 'EX', tonumber(ARGV[1])) " +
+            "return quantity";
+
+    /**
+     * 租借库存Lua脚本：尽量多地取走不超过请求数量的库存，并记入节点未归还配额
+     * KEYS[1]: 库存key, KEYS[2]: 租借配额key
+     * ARGV[1]: 请求数量, ARGV[2]: 过期时间, ARGV[3]: 节点标识, ARGV[4]: 上次租借以来节点已售出的配额,
+     * ARGV[5]: 租借配额记录过期时间
+     * 返回: 实际租借数量, -1-库存不存在
+     */
+    private static final String STOCK_LEASE_SCRIPT =
+            READ_STOCK +
+            "local take = math.min(stock, tonumber(ARGV[1])) " +
+            "if take > 0 then " +
+            "    redis.call('set', KEYS[1], stock - take, 'EX', tonumber(ARGV[2])) " +
+            "end " +
+            "local outstanding = redis.call('hincrby', KEYS[2], ARGV[3], take - tonumber(ARGV[4])) " +
+            "if outstanding <= 0 then " +
+            "    redis.call('hdel', KEYS[2], ARGV[3]) " +
+            "end " +
+            "if redis.call('exists', KEYS[2]) == 1 then " +
+            "    redis.call('expire', KEYS[2], tonumber(ARGV[5])) " +
+            "end " +
+            "return take";
+
+    /**
+     * 归还租借Lua脚本：先扣除节点已售出的配额，归还数量不超过节点记录的未归还配额，
+     * 修复库存时已按该记录扣除，超出部分（如记录已过期）不再加回，避免重复计入可用库存
+     * KEYS[1]: 库存key, KEYS[2]: 租借配额key
+     * ARGV[1]: 归还数量, ARGV[2]: 过期时间, ARGV[3]: 节点标识, ARGV[4]: 上次租借以来节点已售出的配额,
+     * ARGV[5]: 租借配额记录过期时间
+     * 返回: 实际归还数量, -1-库存不存在
+     */
+    private static final String STOCK_LEASE_RETURN_SCRIPT =
+            READ_STOCK +
+            "local outstanding = (tonumber(redis.call('hget', KEYS[2], ARGV[3])) or 0) - tonumber(ARGV[4]) " +
+            "local give = math.max(0, math.min(tonumber(ARGV[1]), outstanding)) " +
+            "outstanding = outstanding - give " +
+            "if outstanding > 0 then " +
+            "    redis.call('hset', KEYS[2], ARGV[3], outstanding) " +
+            "    redis.call('expire', KEYS[2], tonumber(ARGV[5])) " +
+            "else " +
+            "    redis.call('hdel', KEYS[2], ARGV[3]) " +
+            "end " +
+            "if give > 0 then " +
+            "    redis.call('set', KEYS[1], stock + give, 'EX', tonumber(ARGV[2])) " +
+            "end " +
+            "return give";
+
+    /**
+     * 调整节点未归还配额Lua脚本（分片票档的库存不在同一key上，配额记录单独调整）
+     * KEYS[1]: 租借配额key
+     * ARGV[1]: 节点标识, ARGV[2]: 调整量, ARGV[3]: 租借配额记录过期时间
+     * 返回: 调整后的未归还配额
+     */
+    private static final String STOCK_LEASE_ADJUST_SCRIPT =
+            "local outstanding = redis.call('hincrby', KEYS[1], ARGV[1], tonumber(ARGV[2])) " +
+            "if outstanding <= 0 then " +
+            "    redis.call('hdel', KEYS[1], ARGV[1]) " +
+            "elseif redis.call('exists', KEYS[1]) == 1 then " +
+            "    redis.call('expire', KEYS[1], tonumber(ARGV[3])) " +
+            "end " +
+            "return outstanding";
+
+    /**
+     * 确认锁定Lua脚本：删除用户锁定记录，库存保持已扣减
+     * 返回: 确认数量, 0-无锁定记录
+     */
+    private static final String STOCK_CONFIRM_SCRIPT =
+            "local locked = redis.call('get', KEYS[1]) " +
+            "if locked == false then " +
+            "    return 0 " +
+            "end " +
+            "redis.call('del', KEYS[1]) " +
+            "return tonumber(locked)";
+
+    // 脚本注册名
+    private static final String SCRIPT_INIT = "stock.init";
+    private static final String SCRIPT_PREDEDUCT = "stock.prededuct";
+    private static final String SCRIPT_PREDEDUCT_MULTI = "stock.prededuct.multi";
+    private static final String SCRIPT_ROLLBACK = "stock.rollback";
+    private static final String SCRIPT_LOCK = "stock.lock";
+    private static final String SCRIPT_UNLOCK = "stock.unlock";
+    private static final String SCRIPT_CONFIRM = "stock.confirm";
+    private static final String SCRIPT_LEASE = "stock.lease";
+    private static final String SCRIPT_LEASE_RETURN = "stock.lease.return";
+    private static final String SCRIPT_LEASE_ADJUST = "stock.lease.adjust";
+
+    @PostConstruct
+    public void init() {
+        luaScriptRegistry.registerResource(SCRIPT_INIT, "lua/stock_init.lua");
+        luaScriptRegistry.registerResource(SCRIPT_PREDEDUCT, "lua/stock_prededuct.lua");
+        luaScriptRegistry.registerResource(SCRIPT_PREDEDUCT_MULTI, "lua/stock_prededuct_multi.lua");
+        luaScriptRegistry.registerResource(SCRIPT_ROLLBACK, "lua/stock_rollback.lua");
+        luaScriptRegistry.register(SCRIPT_LOCK, STOCK_LOCK_SCRIPT);
+        luaScriptRegistry.register(SCRIPT_UNLOCK, STOCK_UNLOCK_SCRIPT);
+        luaScriptRegistry.register(SCRIPT_CONFIRM, STOCK_CONFIRM_SCRIPT);
+        luaScriptRegistry.register(SCRIPT_LEASE, STOCK_LEASE_SCRIPT);
+        luaScriptRegistry.register(SCRIPT_LEASE_RETURN, STOCK_LEASE_RETURN_SCRIPT);
+        luaScriptRegistry.register(SCRIPT_LEASE_ADJUST, STOCK_LEASE_ADJUST_SCRIPT);
+        log.info("统一库存引擎初始化完成，库存key前缀: {}, 锁定key前缀: {}, 操作追踪: {}",
+                STOCK_KEY_PREFIX, LOCKED_KEY_PREFIX, traceEnabled ? "采样率" + traceSampleRate : "关闭");
+    }
+
+    /**
+     * 生成库存缓存key
+     */
+    private String getStockKey(Long ticketId) {
+        return STOCK_KEY_PREFIX + ticketId;
+    }
+
+    /**
+     * 生成租借配额key
+     */
+    private String getLeasedKey(Long ticketId) {
+        return LEASED_KEY_PREFIX + ticketId;
+    }
+
+    /**
+     * 生成锁定库存key
+     */
+    private String getLockedKey(Long ticketId, Long userId) {
+        return LOCKED_KEY_PREFIX + ticketId + ":" + userId;
+    }
+
+    /**
+     * 初始化库存到Redis
+     * @param ticketId 票档ID
+     * @param availableStock 可用库存数量
+     * @param forceUpdate 是否强制更新
+     * @return 是否成功
+     */
+    public Boolean initStock(Long ticketId, Integer availableStock, boolean forceUpdate) {
+        try {
+            // 分片票档按权威配置判断，避免节点缓存延迟时重建单key
+            if (shardedStockService.checkShardedAuthoritative(ticketId)) {
+                if (!forceUpdate && shardedStockService.getStock(ticketId) != null) {
+                    log.info("分片库存已存在且非强制更新 - 票档ID: {}", ticketId);
+                    return false;
+                }
+                Boolean result = shardedStockService.initStock(ticketId, availableStock);
+                if (Boolean.TRUE.equals(result)) {
+                    register(ticketId);
+                    stockLedgerService.record(ticketId, StockLedgerService.LedgerOp.INIT, availableStock);
+                }
+                return result;
+            }
+
+            Long result = eval(SCRIPT_INIT, Collections.<Object>singletonList(getStockKey(ticketId)),
+                    String.valueOf(availableStock), String.valueOf(DEFAULT_EXPIRE_TIME), forceUpdate ? "1" : "0");
+            trace("init", ticketId, result, "stock", String.valueOf(availableStock), "force", forceUpdate ? "1" : "0");
+
+            boolean success = result != null && result == 1;
+            if (success) {
+                register(ticketId);
+                stockLedgerService.record(ticketId, StockLedgerService.LedgerOp.INIT, availableStock);
+            }
+            log.info("初始化Redis库存 - 票档ID: {}, 库存: {}, 强制更新: {}, 结果: {}",
+                    ticketId, availableStock, forceUpdate, success);
+            return success;
+        } catch (Exception e) {
+            log.error("初始化Redis库存失败 - 票档ID: {}, 库存: {}", ticketId, availableStock, e);
+            return false;
+        }
+    }
+
+    /**
+     * 批量强制初始化库存到Redis
+     * 单key票档在一个pipeline中SET EX写入，分片票档逐个走分片初始化；
+     * 调用方需先刷新分片配置。
+     * @param stocks 票档ID -> 可用库存数量
+     * @return 初始化成功的票档数
+     */
+    public int initStocks(Map<Long, Integer> stocks) {
+        RBatch batch = redissonClient.createBatch();
+        List<Long> initialized = new ArrayList<>(stocks.size());
+        for (Map.Entry<Long, Integer> entry : stocks.entrySet()) {
+            Long ticketId = entry.getKey();
+            if (shardedStockService.isSharded(ticketId)) {
+                if (Boolean.TRUE.equals(shardedStockService.initStock(ticketId, entry.getValue()))) {
+                    initialized.add(ticketId);
+                }
+                continue;
+            }
+            batch.<String>getBucket(getStockKey(ticketId), StringCodec.INSTANCE)
+                    .setAsync(String.valueOf(entry.getValue()), DEFAULT_EXPIRE_TIME, TimeUnit.SECONDS);
+            initialized.add(ticketId);
+        }
+        if (initialized.isEmpty()) {
+            return 0;
+        }
+
+        List<String> members = new ArrayList<>(initialized.size());
+        initialized.forEach(ticketId -> members.add(String.valueOf(ticketId)));
+        batch.<String>getSet(REGISTRY_KEY, StringCodec.INSTANCE).addAllAsync(members);
+        batch.execute();
+        for (Long ticketId : initialized) {
+            stockLedgerService.record(ticketId, StockLedgerService.LedgerOp.INIT, stocks.get(ticketId));
+        }
+        log.debug("批量初始化Redis库存 - 票档数: {}, 成功: {}", stocks.size(), initialized.size());
+        return initialized.size();
+    }
+
+    /**
+     * 预减库存
+     * @param ticketId 票档ID
+     * @param quantity 扣减数量
+     * @return 扣减结果：1-成功，0-库存不足，-1-库存不存在
+     */
+    public Integer predeductStock(Long ticketId, Integer quantity) {
+        return predeductStock(ticketId, quantity, null);
+    }
+
+    /**
+     * 预减库存并在流水中记录订单号
+     */
+    public Integer predeductStock(Long ticketId, Integer quantity, String orderNo) {
+        Integer result = doPredeductStock(ticketId, quantity);
+        if (result == 1) {
+            stockLedgerService.record(ticketId, StockLedgerService.LedgerOp.PREDEDUCT, quantity, orderNo);
+        }
+        return result;
+    }
+
+    /**
+     * 多票档预减库存，全部满足才扣减
+     * 单key票档在一次Lua调用中检查并扣减；含分片票档时逐个预减，失败则回滚已扣减的票档
+     * @param items 票档ID -> 扣减数量（票档ID不能重复）
+     * @param orderNo 订单号，可为空
+     * @return 票档ID -> 结果：1-库存充足，0-库存不足，-1-库存不存在；全部为1时已扣减
+     */
+    public Map<Long, Integer> predeductStocks(Map<Long, Integer> items, String orderNo) {
+        Map<Long, Integer> results;
+        if (items.keySet().stream().anyMatch(shardedStockService::isSharded)) {
+            results = predeductStocksSequentially(items);
+        } else {
+            results = doPredeductStocks(items);
+            // 其他节点可能已开启分片，本地配置尚未刷新
+            boolean shardedMissing = results.entrySet().stream()
+                    .anyMatch(e -> e.getValue() == -1 && shardedStockService.checkShardedAuthoritative(e.getKey()));
+            if (shardedMissing) {
+                results = predeductStocksSequentially(items);
+            }
+        }
+
+        if (results.values().stream().allMatch(r -> r == 1)) {
+            items.forEach((ticketId, quantity) -> stockLedgerService.record(
+                    ticketId, StockLedgerService.LedgerOp.PREDEDUCT, quantity, orderNo));
+        }
+        log.debug("Redis多票档库存预减 - 票档: {}, 结果: {}", items, results);
+        return results;
+    }
+
+    private Map<Long, Integer> doPredeductStocks(Map<Long, Integer> items) {
+        List<Long> ticketIds = new ArrayList<>(items.keySet());
+        List<Object> keys = new ArrayList<>(ticketIds.size());
+        Object[] args = new Object[ticketIds.size() + 1];
+        args[0] = String.valueOf(DEFAULT_EXPIRE_TIME);
+        for (int i = 0; i < ticketIds.size(); i++) {
+            keys.add(getStockKey(ticketIds.get(i)));
+            args[i + 1] = String.valueOf(items.get(ticketIds.get(i)));
+        }
+
+        Map<Long, Integer> results = new LinkedHashMap<>();
+        try {
+            List<Long> codes = luaScriptRegistry.eval(SCRIPT_PREDEDUCT_MULTI, RScript.Mode.READ_WRITE,
+                    RScript.ReturnType.MULTI, keys, args);
+            for (int i = 0; i < ticketIds.size(); i++) {
+                results.put(ticketIds.get(i), toResult(codes.get(i + 1)));
+            }
+        } catch (Exception e) {
+            log.error("Redis多票档库存预减失败 - 票档: {}", items, e);
+            ticketIds.forEach(ticketId -> results.put(ticketId, -1));
+        }
+        return results;
+    }
+
+    /**
+     * 逐个预减，遇到失败时回滚已扣减的票档，未尝试的票档按当前库存给出结果
+     */
+    private Map<Long, Integer> predeductStocksSequentially(Map<Long, Integer> items) {
+        Map<Long, Integer> results = new LinkedHashMap<>();
+        List<Long> deducted = new ArrayList<>();
+        boolean failed = false;
+        for (Map.Entry<Long, Integer> item : items.entrySet()) {
+            Long ticketId = item.getKey();
+            if (failed) {
+                Integer stock = getStock(ticketId);
+                results.put(ticketId, stock == null ? -1 : stock >= item.getValue() ? 1 : 0);
+                continue;
+            }
+            Integer result = doPredeductStock(ticketId, item.getValue());
+            results.put(ticketId, result);
+            if (result == 1) {
+                deducted.add(ticketId);
+            } else {
+                failed = true;
+            }
+        }
+
+        if (failed) {
+            for (Long ticketId : deducted) {
+                if (doRollbackStock(ticketId, items.get(ticketId), UNBOUNDED) != 1) {
+                    log.error("多票档预减失败后回滚库存失败 - 票档ID: {}, 数量: {}", ticketId, items.get(ticketId));
+                }
+            }
+        }
+        return results;
+    }
+
+    private Integer doPredeductStock(Long ticketId, Integer quantity) {
+        try {
+            if (shardedStockService.isSharded(ticketId)) {
+                return shardedStockService.predeductStock(ticketId, quantity);
+            }
+
+            Integer result = toResult(eval(SCRIPT_PREDEDUCT, Collections.<Object>singletonList(getStockKey(ticketId)),
+                    String.valueOf(quantity), String.valueOf(DEFAULT_EXPIRE_TIME)));
+            trace("prededuct", ticketId, result, "quantity", String.valueOf(quantity));
+
+            // 其他节点可能已开启分片，本地配置尚未刷新
+            if (result == -1 && shardedStockService.checkShardedAuthoritative(ticketId)) {
+                return shardedStockService.predeductStock(ticketId, quantity);
+            }
+            log.debug("Redis库存预减 - 票档ID: {}, 扣减数量: {}, 结果: {}", ticketId, quantity, result);
+            return result;
+        } catch (Exception e) {
+            log.error("Redis库存预减失败 - 票档ID: {}, 扣减数量: {}", ticketId, quantity, e);
+            return -1;
+        }
+    }
+
+    /**
+     * 回滚库存
+     * @param ticketId 票档ID
+     * @param quantity 回滚数量
+     * @param maxStock 最大库存限制
+     * @return 回滚结果：1-成功，0-超过最大库存，-1-库存不存在
+     */
+    public Integer rollbackStock(Long ticketId, Integer quantity, Integer maxStock) {
+        return rollbackStock(ticketId, quantity, maxStock, null);
+    }
+
+    /**
+     * 回滚库存并在流水中记录订单号
+     */
+    public Integer rollbackStock(Long ticketId, Integer quantity, Integer maxStock, String orderNo) {
+        Integer result = doRollbackStock(ticketId, quantity, maxStock);
+        if (result == 1) {
+            stockLedgerService.record(ticketId, StockLedgerService.LedgerOp.ROLLBACK, quantity, orderNo);
+        }
+        return result;
+    }
+
+    private Integer doRollbackStock(Long ticketId, Integer quantity, Integer maxStock) {
+        try {
+            int limit = maxStock != null ? maxStock : UNBOUNDED;
+            if (shardedStockService.isSharded(ticketId)) {
+                return shardedStockService.rollbackStock(ticketId, quantity, limit < 0 ? Integer.MAX_VALUE : limit);
+            }
+
+            Integer result = toResult(eval(SCRIPT_ROLLBACK, Collections.<Object>singletonList(getStockKey(ticketId)),
+                    String.valueOf(quantity), String.valueOf(limit), String.valueOf(DEFAULT_EXPIRE_TIME)));
+            trace("rollback", ticketId, result, "quantity", String.valueOf(quantity), "max", String.valueOf(limit));
+
+            if (result == -1 && shardedStockService.checkShardedAuthoritative(ticketId)) {
+                return shardedStockService.rollbackStock(ticketId, quantity, limit < 0 ? Integer.MAX_VALUE : limit);
+            }
+            if (result != 1) {
+                log.warn("Redis库存回滚失败 - 票档ID: {}, 回滚数量: {}, 最大库存: {}, 结果: {}",
+                        ticketId, quantity, maxStock, result);
+            }
+            return result;
+        } catch (Exception e) {
+            log.error("Redis库存回滚失败 - 票档ID: {}, 回滚数量: {}", ticketId, quantity, e);
+            return 0;
+        }
+    }
+
+    /**
+     * 租借库存：一次性取走一批库存供调用方本地扣减，库存不足时返回剩余全部
+     * 租借数量记入节点未归还配额，节点已售出的配额同时从记录中扣除
+     * @param ticketId 票档ID
+     * @param quantity 请求租借数量
+     * @param owner 订单节点标识
+     * @param settled 上次租借或归还以来节点已售出的配额
+     * @return 实际租借数量，0-库存已售罄，-1-库存不存在
+     */
+    public Integer leaseStock(Long ticketId, Integer quantity, String owner, int settled) {
+        Integer result = doLeaseStock(ticketId, quantity, owner, settled);
+        if (result > 0) {
+            stockLedgerService.record(ticketId, StockLedgerService.LedgerOp.LEASE, result);
+        }
+        return result;
+    }
+
+    private Integer doLeaseStock(Long ticketId, Integer quantity, String owner, int settled) {
+        try {
+            if (shardedStockService.isSharded(ticketId)) {
+                return leaseShardedStock(ticketId, quantity, owner, settled);
+            }
+
+            Integer result = toResult(eval(SCRIPT_LEASE, Arrays.<Object>asList(getStockKey(ticketId), getLeasedKey(ticketId)),
+                    String.valueOf(quantity), String.valueOf(DEFAULT_EXPIRE_TIME), owner, String.valueOf(settled),
+                    String.valueOf(leasedExpireTime)));
+
+            if (result == -1 && shardedStockService.checkShardedAuthoritative(ticketId)) {
+                return leaseShardedStock(ticketId, quantity, owner, settled);
+            }
+            log.debug("Redis库存租借 - 票档ID: {}, 请求数量: {}, 租借数量: {}, 节点: {}", ticketId, quantity, result, owner);
+            return result;
+        } catch (Exception e) {
+            log.error("Redis库存租借失败 - 票档ID: {}, 请求数量: {}", ticketId, quantity, e);
+            return -1;
+        }
+    }
+
+    /**
+     * 分片票档租借：先按请求数量记入未归还配额再扣减分片，未租到的部分随后减回，
+     * 期间修复库存只会少算可用库存，不会把节点持有的配额重复计入
+     */
+    private Integer leaseShardedStock(Long ticketId, Integer quantity, String owner, int settled) {
+        adjustLeased(ticketId, owner, quantity - settled);
+        Integer result = shardedStockService.leaseStock(ticketId, quantity);
+        // 库存不存在时撤销本次调整，调用方同步库存后会带着相同的已售配额重试
+        int unused = result < 0 ? quantity - settled : quantity - result;
+        if (unused != 0) {
+            adjustLeased(ticketId, owner, -unused);
+        }
+        return result;
+    }
+
+    /**
+     * 归还租借的库存，归还数量不超过节点记录的未归还配额
+     * @param ticketId 票档ID
+     * @param quantity 归还数量
+     * @param owner 订单节点标识
+     * @param settled 上次租借或归还以来节点已售出的配额
+     * @return 实际归还数量，-1-库存不存在
+     */
+    public Integer returnLeasedStock(Long ticketId, Integer quantity, String owner, int settled) {
+        Integer result = doReturnLeasedStock(ticketId, quantity, owner, settled);
+        if (result > 0) {
+            stockLedgerService.record(ticketId, StockLedgerService.LedgerOp.ROLLBACK, result);
+        }
+        return result;
+    }
+
+    private Integer doReturnLeasedStock(Long ticketId, Integer quantity, String owner, int settled) {
+        try {
+            if (shardedStockService.isSharded(ticketId)) {
+                return returnShardedLeasedStock(ticketId, quantity, owner, settled);
+            }
+
+            Integer result = toResult(eval(SCRIPT_LEASE_RETURN, Arrays.<Object>asList(getStockKey(ticketId), getLeasedKey(ticketId)),
+                    String.valueOf(quantity), String.valueOf(DEFAULT_EXPIRE_TIME), owner, String.valueOf(settled),
+                    String.valueOf(leasedExpireTime)));
+
+            if (result == -1 && shardedStockService.checkShardedAuthoritative(ticketId)) {
+                return returnShardedLeasedStock(ticketId, quantity, owner, settled);
+            }
+            if (result < quantity) {
+                log.warn("租借库存归还数量超过未归还配额记录 - 票档ID: {}, 归还数量: {}, 实际归还: {}, 节点: {}",
+                        ticketId, quantity, result, owner);
+            }
+            return result;
+        } catch (Exception e) {
+            log.error("Redis租借库存归还失败 - 票档ID: {}, 归还数量: {}", ticketId, quantity, e);
+            return -1;
+        }
+    }
+
+    /**
+     * 分片票档归还：先加回分片库存再扣减未归还配额，期间修复库存只会少算可用库存
+     */
+    private Integer returnShardedLeasedStock(Long ticketId, Integer quantity, String owner, int settled) {
+        String outstandingValue = redissonClient.<String, String>getMap(getLeasedKey(ticketId), StringCodec.INSTANCE).get(owner);
+        int outstanding = (outstandingValue != null ? Integer.parseInt(outstandingValue) : 0) - settled;
+        int give = Math.max(0, Math.min(quantity, outstanding));
+        if (give > 0 && shardedStockService.rollbackStock(ticketId, give, Integer.MAX_VALUE) != 1) {
+            return -1;
+        }
+        adjustLeased(ticketId, owner, -(settled + give));
+        return give;
+    }
+
+    private void adjustLeased(Long ticketId, String owner, int delta) {
+        if (delta != 0) {
+            eval(SCRIPT_LEASE_ADJUST, Collections.<Object>singletonList(getLeasedKey(ticketId)),
+                    owner, String.valueOf(delta), String.valueOf(leasedExpireTime));
+        }
+    }
+
+    /**
+     * 获取订单节点持有的未归还租借配额，这部分已从Redis可用库存扣除但尚未被订单锁定
+     */
+    public int getLeasedStock(Long ticketId) {
+        return sumLeased(redissonClient.<String, String>getMap(getLeasedKey(ticketId), StringCodec.INSTANCE).readAllMap());
+    }
+
+    /**
+     * 批量获取未归还租借配额，一次pipeline读取
+     * @return 票档ID -> 未归还配额（无记录为0）
+     */
+    @SuppressWarnings("unchecked")
+    public Map<Long, Integer> getLeasedStocks(Collection<Long> ticketIds) {
+        List<Long> ids = new ArrayList<>(ticketIds);
+        if (ids.isEmpty()) {
+            return new HashMap<>();
+        }
+        RBatch batch = redissonClient.createBatch();
+        for (Long ticketId : ids) {
+            batch.<String, String>getMap(getLeasedKey(ticketId), StringCodec.INSTANCE).readAllMapAsync();
+        }
+        List<Map<String, String>> responses = (List<Map<String, String>>) batch.execute().getResponses();
+        Map<Long, Integer> result = new HashMap<>();
+        for (int i = 0; i < ids.size(); i++) {
+            result.put(ids.get(i), sumLeased(responses.get(i)));
+        }
+        return result;
+    }
+
+    private int sumLeased(Map<String, String> leased) {
+        int total = 0;
+        for (String value : leased.values()) {
+            total += Math.max(0, Integer.parseInt(value));
+        }
+        return total;
+    }
+
+    /**
+     * 回滚库存（不限制最大库存）
+     */
+    public Integer rollbackStock(Long ticketId, Integer quantity) {
+        return rollbackStock(ticketId, quantity, null);
+    }
+
+    /**
+     * 锁定库存：从可用库存扣减并记录到用户锁定
+     * @return 1-成功，0-库存不足，-1-库存不存在
+     */
+    public Integer lockStock(Long ticketId, Long userId, Integer quantity) {
+        try {
+            String lockedKey = getLockedKey(ticketId, userId);
+            Integer result;
+            // 分片票档的锁定记录由分片服务按用户所属分片存放
+            if (shardedStockService.isSharded(ticketId)) {
+                result = shardedStockService.lockStock(ticketId, userId, quantity, LOCK_EXPIRE_TIME);
+            } else {
+                result = toResult(eval(SCRIPT_LOCK, Arrays.<Object>asList(getStockKey(ticketId), lockedKey),
+                        String.valueOf(quantity), String.valueOf(LOCK_EXPIRE_TIME), String.valueOf(DEFAULT_EXPIRE_TIME)));
+                if (result == -1 && shardedStockService.checkShardedAuthoritative(ticketId)) {
+                    result = shardedStockService.lockStock(ticketId, userId, quantity, LOCK_EXPIRE_TIME);
+                }
+            }
+            if (result == 1) {
+                stockLedgerService.record(ticketId, StockLedgerService.LedgerOp.REDIS_LOCK, quantity);
+            }
+            log.info("Redis库存锁定 - 票档ID: {}, 用户ID: {}, 数量: {}, 结果: {}", ticketId, userId, quantity, result);
+            return result;
+        } catch (Exception e) {
+            log.error("Redis库存锁定失败 - 票档ID: {}, 用户ID: {}, 数量: {}", ticketId, userId, quantity, e);
+            return -1;
+        }
+    }
+
+    /**
+     * 释放用户锁定，归还可用库存
+     * @return 归还数量，0表示无锁定记录，-1表示库存不存在（锁定记录保留，调用方同步库存后重试）
+     */
+    public Integer unlockStock(Long ticketId, Long userId) {
+        try {
+            String lockedKey = getLockedKey(ticketId, userId);
+            Integer quantity;
+            if (shardedStockService.isSharded(ticketId)) {
+                quantity = shardedStockService.unlockStock(ticketId, userId);
+            } else {
+                quantity = toResult(eval(SCRIPT_UNLOCK, Arrays.<Object>asList(getStockKey(ticketId), lockedKey),
+                        String.valueOf(DEFAULT_EXPIRE_TIME)));
+                if (quantity == -1 && shardedStockService.checkShardedAuthoritative(ticketId)) {
+                    quantity = shardedStockService.unlockStock(ticketId, userId);
+                }
+            }
+            if (quantity == -1) {
+                log.warn("Redis库存释放锁定失败，库存不存在，等待同步库存后重试 - 票档ID: {}, 用户ID: {}", ticketId, userId);
+                return -1;
+            }
+            if (quantity > 0) {
+                stockLedgerService.record(ticketId, StockLedgerService.LedgerOp.REDIS_UNLOCK, quantity);
+            }
+            log.info("Redis库存释放锁定 - 票档ID: {}, 用户ID: {}, 归还数量: {}", ticketId, userId, quantity);
+            return quantity;
+        } catch (Exception e) {
+            log.error("Redis库存释放锁定失败 - 票档ID: {}, 用户ID: {}", ticketId, userId, e);
+            return 0;
+        }
+    }
+
+    /**
+     * 确认用户锁定（支付成功），库存保持已扣减
+     * @return 确认数量，0表示无锁定记录
+     */
+    public Integer confirmStock(Long ticketId, Long userId) {
+        try {
+            // 分片票档的锁定记录位于用户所属分片的slot
+            String lockedKey = shardedStockService.isSharded(ticketId)
+                    ? shardedStockService.getLockedKey(ticketId, userId) : getLockedKey(ticketId, userId);
+            Long result = eval(SCRIPT_CONFIRM, Collections.<Object>singletonList(lockedKey));
+            log.info("Redis库存确认锁定 - 票档ID: {}, 用户ID: {}, 确认数量: {}", ticketId, userId, result);
+            return result != null ? result.intValue() : 0;
+        } catch (Exception e) {
+            log.error("Redis库存确认锁定失败 - 票档ID: {}, 用户ID: {}", ticketId, userId, e);
+            return 0;
+        }
+    }
+
+    /**
+     * 获取Redis中的库存数量
+     * @param ticketId 票档ID
+     * @return 库存数量，不存在返回null
+     */
+    public Integer getStock(Long ticketId) {
+        try {
+            if (shardedStockService.isSharded(ticketId)) {
+                return shardedStockService.getStock(ticketId);
+            }
+            String value = redissonClient.<String>getBucket(getStockKey(ticketId), StringCodec.INSTANCE).get();
+            if (value == null) {
+                return null;
+            }
+            return Integer.valueOf(value.replace("\"", ""));
+        } catch (Exception e) {
+            log.error("获取Redis库存失败 - 票档ID: {}", ticketId, e);
+            return null;
+        }
+    }
+
+    /**
+     * 批量获取Redis中的库存数量，单key票档通过一次MGET读取
+     * @param ticketIds 票档ID列表
+     * @return 票档ID -> 库存数量（不存在为null）
+     */
+    public Map<Long, Integer> getStocks(Collection<Long> ticketIds) {
+        Map<Long, Integer> result = new HashMap<>();
+        List<Long> singleKeyIds = new ArrayList<>(ticketIds.size());
+        for (Long ticketId : ticketIds) {
+            if (shardedStockService.isSharded(ticketId)) {
+                result.put(ticketId, shardedStockService.getStock(ticketId));
+            } else {
+                singleKeyIds.add(ticketId);
+            }
+        }
+        if (singleKeyIds.isEmpty()) {
+            return result;
+        }
+
+        String[] keys = singleKeyIds.stream().map(this::getStockKey).toArray(String[]::new);
+        Map<String, String> values = redissonClient.getBuckets(StringCodec.INSTANCE).get(keys);
+        for (Long ticketId : singleKeyIds) {
+            String value = values.get(getStockKey(ticketId));
+            result.put(ticketId, value != null ? Integer.valueOf(value.replace("\"", "")) : null);
+        }
+        return result;
+    }
+
+    /**
+     * 获取已初始化库存的票档ID
+     */
+    public Set<Long> getRegisteredTicketIds() {
+        Set<Long> ticketIds = new TreeSet<>();
+        for (String member : getRegistry().readAll()) {
+            ticketIds.add(Long.valueOf(member));
+        }
+        return ticketIds;
+    }
+
+    /**
+     * 登记票档到库存集合，失败不影响库存初始化（下次启动预热时补齐）
+     */
+    private void register(Long ticketId) {
+        try {
+            getRegistry().add(String.valueOf(ticketId));
+        } catch (Exception e) {
+            log.warn("登记库存票档失败 - 票档ID: {}, 原因: {}", ticketId, e.getMessage());
+        }
+    }
+
+    private RSet<String> getRegistry() {
+        return redissonClient.getSet(REGISTRY_KEY, StringCodec.INSTANCE);
+    }
+
+    /**
+     * 删除库存缓存
+     * @param ticketId 票档ID
+     * @return 是否成功
+     */
+    public Boolean deleteStock(Long ticketId) {
+        try {
+            getRegistry().remove(String.valueOf(ticketId));
+            if (shardedStockService.isSharded(ticketId)) {
+                return shardedStockService.deleteStock(ticketId);
+            }
+            boolean result = redissonClient.getBucket(getStockKey(ticketId)).delete();
+            log.info("删除Redis库存缓存 - 票档ID: {}, 结果: {}", ticketId, result);
+            return result;
+        } catch (Exception e) {
+            log.error("删除Redis库存缓存失败 - 票档ID: {}", ticketId, e);
+            return false;
+        }
+    }
+
+    /**
+     * 读取最近的库存操作追踪记录（按时间倒序）
+     */
+    public List<Map<String, Object>> getRecentTraces(int count) {
+        RStream<String, String> stream = redissonClient.getStream(TRACE_STREAM_KEY, StringCodec.INSTANCE);
+        Map<StreamMessageId, Map<String, String>> messages =
+                stream.rangeReversed(count, StreamMessageId.MAX, StreamMessageId.MIN);
+        List<Map<String, Object>> traces = new ArrayList<>(messages.size());
+        messages.forEach((id, fields) -> {
+            Map<String, Object> trace = new LinkedHashMap<>();
+            trace.put("id", id.toString());
+            trace.put("timestamp", id.getId0());
+            trace.putAll(fields);
+            traces.add(trace);
+        });
+        return traces;
+    }
+
+    /**
+     * 按采样率记录库存操作追踪（脚本返回后异步写入，脚本只涉及库存key本身）
+     * @param fields 追加字段，按 名称, 值 成对传入
+     */
+    private void trace(String op, Long ticketId, Number result, String... fields) {
+        if (!traceEnabled || ThreadLocalRandom.current().nextDouble() >= traceSampleRate) {
+            return;
+        }
+        try {
+            Map<String, String> entry = new LinkedHashMap<>();
+            entry.put("op", op);
+            entry.put("key", getStockKey(ticketId));
+            for (int i = 0; i + 1 < fields.length; i += 2) {
+                entry.put(fields[i], fields[i + 1]);
+            }
+            entry.put("result", String.valueOf(result));
+            redissonClient.<String, String>getStream(TRACE_STREAM_KEY, StringCodec.INSTANCE)
+                    .addAsync(StreamAddArgs.entries(entry).trimNonStrict().maxLen(traceMaxLength).noLimit())
+                    .whenComplete((id, e) -> {
+                        if (e != null) {
+                            log.warn("记录库存操作追踪失败 - 票档ID: {}, 操作: {}, 原因: {}", ticketId, op, e.getMessage());
+                        }
+                    });
+        } catch (Exception e) {
+            log.warn("记录库存操作追踪失败 - 票档ID: {}, 操作: {}, 原因: {}", ticketId, op, e.getMessage());
+        }
+    }
+
+    private Long eval(String scriptName, List<Object> keys, Object... args) {
+        return luaScriptRegistry.eval(scriptName, RScript.Mode.READ_WRITE, RScript.ReturnType.INTEGER, keys, args);
+    }
+
+    private Integer toResult(Long result) {
+        return result != null ? result.intValue() : -1;
+    }
+}
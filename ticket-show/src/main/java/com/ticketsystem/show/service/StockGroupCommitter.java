@@ -0,0 +1,326 @@
+package com.ticketsystem.show.service;
+
+import com.ticketsystem.common.exception.BusinessException;
+import com.ticketsystem.show.entity.TicketStock;
+import com.ticketsystem.show.mapper.TicketStockMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 数据库库存组提交器
+ * 同一票档在短时间窗口内的锁定/释放/确认请求合并为一次读取和一条带版本号的UPDATE，
+ * 按到达顺序逐个判断每个请求是否可以执行，再分别通知各调用方结果。
+ * 热点票档上N个相互冲突的乐观锁事务因此变为一次写入。
+ *
+ * 批次在提交线程上独立提交，不属于调用方事务；调用方处于事务中时，
+ * 成功的操作在调用方事务回滚后以反向操作再提交一次，使库存表与调用方事务内的其他写入保持一致。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StockGroupCommitter {
+
+    private final TicketStockMapper ticketStockMapper;
+    private final StockLedgerService stockLedgerService;
+
+    /**
+     * 操作类型
+     */
+    public enum Op {
+        LOCK, UNLOCK, CONFIRM,
+        // 撤销确认（已售转回锁定），仅用于补偿
+        UNCONFIRM
+    }
+
+    // 操作类型对应的库存流水类型
+    private static final Map<Op, StockLedgerService.LedgerOp> LEDGER_OPS = Map.of(
+            Op.LOCK, StockLedgerService.LedgerOp.DB_LOCK,
+            Op.UNLOCK, StockLedgerService.LedgerOp.DB_UNLOCK,
+            Op.CONFIRM, StockLedgerService.LedgerOp.DB_CONFIRM,
+            Op.UNCONFIRM, StockLedgerService.LedgerOp.DB_UNCONFIRM);
+
+    // 操作类型对应的反向操作
+    private static final Map<Op, Op> REVERSE_OPS = Map.of(
+            Op.LOCK, Op.UNLOCK,
+            Op.UNLOCK, Op.LOCK,
+            Op.CONFIRM, Op.UNCONFIRM,
+            Op.UNCONFIRM, Op.CONFIRM);
+
+    @Value("${stock.group-commit.window-millis:2}")
+    private long windowMillis;
+
+    @Value("${stock.group-commit.max-batch:200}")
+    private int maxBatch;
+
+    @Value("${stock.group-commit.max-retries:5}")
+    private int maxRetries;
+
+    @Value("${stock.group-commit.timeout-millis:3000}")
+    private long timeoutMillis;
+
+    // 票档ID -> 待提交请求队列，队列排空后移除；入队与移除都在该票档的compute中进行
+    private final Map<Long, TicketQueue> queues = new ConcurrentHashMap<>();
+
+    private final AtomicInteger threadCounter = new AtomicInteger();
+
+    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(
+            Math.max(2, Runtime.getRuntime().availableProcessors() / 2), r -> {
+                Thread thread = new Thread(r, "stock-group-commit-" + threadCounter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * 提交库存操作并等待组提交结果，调用方事务回滚时自动提交反向操作
+     * @return 是否成功
+     */
+    public boolean submit(Long ticketId, Op op, int quantity) {
+        boolean result = await(ticketId, op, quantity, submitAsync(ticketId, op, quantity));
+        if (result) {
+            registerRollbackCompensation(ticketId, op, quantity);
+        }
+        return result;
+    }
+
+    private boolean await(Long ticketId, Op op, int quantity, CompletableFuture<Boolean> future) {
+        try {
+            return future.get(timeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new BusinessException("库存操作被中断");
+        } catch (TimeoutException e) {
+            // 放弃等待；若批次恰好已经提交则以实际结果为准
+            if (future.complete(false)) {
+                log.warn("库存组提交等待超时，票档ID：{}，操作：{}，数量：{}", ticketId, op, quantity);
+                return false;
+            }
+            return future.getNow(false);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof BusinessException) {
+                throw (BusinessException) e.getCause();
+            }
+            throw new BusinessException("库存操作失败: " + e.getCause().getMessage());
+        }
+    }
+
+    /**
+     * 提交库存操作，返回的Future在所在批次提交后完成
+     */
+    public CompletableFuture<Boolean> submitAsync(Long ticketId, Op op, int quantity) {
+        Request request = new Request(op, quantity);
+        AtomicBoolean schedule = new AtomicBoolean();
+        TicketQueue queue = queues.compute(ticketId, (id, existing) -> {
+            TicketQueue q = existing != null ? existing : new TicketQueue();
+            q.requests.offer(request);
+            schedule.set(q.scheduled.compareAndSet(false, true));
+            return q;
+        });
+        if (schedule.get()) {
+            executor.schedule(() -> drain(ticketId, queue), windowMillis, TimeUnit.MILLISECONDS);
+        }
+        return request.future;
+    }
+
+    /**
+     * 调用方事务回滚后提交反向操作；不在事务中时批次提交即为最终结果
+     */
+    private void registerRollbackCompensation(Long ticketId, Op op, int quantity) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                if (status != STATUS_ROLLED_BACK) {
+                    return;
+                }
+                Op reverse = REVERSE_OPS.get(op);
+                log.warn("调用方事务回滚，提交库存反向操作，票档ID：{}，原操作：{}，数量：{}", ticketId, op, quantity);
+                submitAsync(ticketId, reverse, quantity).whenComplete((success, e) -> {
+                    if (e != null || !Boolean.TRUE.equals(success)) {
+                        log.error("库存反向操作失败，需人工核对，票档ID：{}，操作：{}，数量：{}", ticketId, reverse, quantity, e);
+                    }
+                });
+            }
+        });
+    }
+
+    private void drain(Long ticketId, TicketQueue queue) {
+        while (true) {
+            List<Request> batch = new ArrayList<>();
+            Request request;
+            while (batch.size() < maxBatch && (request = queue.requests.poll()) != null) {
+                batch.add(request);
+            }
+            if (!batch.isEmpty()) {
+                commit(ticketId, batch);
+                continue;
+            }
+            // 与入队使用同一把锁判断是否排空，排空则移除该票档的队列，否则继续处理期间到达的请求
+            AtomicBoolean drained = new AtomicBoolean();
+            queues.computeIfPresent(ticketId, (id, q) -> {
+                if (q != queue || !q.requests.isEmpty()) {
+                    return q;
+                }
+                drained.set(true);
+                return null;
+            });
+            if (drained.get() || queues.get(ticketId) != queue) {
+                return;
+            }
+        }
+    }
+
+    private void commit(Long ticketId, List<Request> batch) {
+        // 跳过调用方已超时放弃的请求
+        batch.removeIf(r -> r.future.isDone());
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            for (int attempt = 0; attempt < maxRetries; attempt++) {
+                TicketStock stock = ticketStockMapper.selectByTicketId(ticketId);
+                if (stock == null) {
+                    batch.forEach(r -> r.future.completeExceptionally(new BusinessException("票档库存信息不存在")));
+                    return;
+                }
+
+                // 按到达顺序在内存中逐个应用
+                int available = stock.getTotalStock() - stock.getLockedStock() - stock.getSoldStock();
+                int locked = stock.getLockedStock();
+                int sold = stock.getSoldStock();
+                int lockedDelta = 0;
+                int soldDelta = 0;
+                boolean[] results = new boolean[batch.size()];
+                for (int i = 0; i < batch.size(); i++) {
+                    Request r = batch.get(i);
+                    switch (r.op) {
+                        case LOCK:
+                            if (available >= r.quantity) {
+                                available -= r.quantity;
+                                locked += r.quantity;
+                                lockedDelta += r.quantity;
+                                results[i] = true;
+                            }
+                            break;
+                        case UNLOCK:
+                            if (locked >= r.quantity) {
+                                locked -= r.quantity;
+                                available += r.quantity;
+                                lockedDelta -= r.quantity;
+                                results[i] = true;
+                            }
+                            break;
+                        case CONFIRM:
+                            if (locked >= r.quantity) {
+                                locked -= r.quantity;
+                                sold += r.quantity;
+                                lockedDelta -= r.quantity;
+                                soldDelta += r.quantity;
+                                results[i] = true;
+                            }
+                            break;
+                        case UNCONFIRM:
+                            if (sold >= r.quantity) {
+                                sold -= r.quantity;
+                                locked += r.quantity;
+                                lockedDelta += r.quantity;
+                                soldDelta -= r.quantity;
+                                results[i] = true;
+                            }
+                            break;
+                        default:
+                            break;
+                    }
+                }
+
+                if ((lockedDelta == 0 && soldDelta == 0)
+                        || ticketStockMapper.applyStockDelta(ticketId, lockedDelta, soldDelta, stock.getVersion()) > 0) {
+                    for (int i = 0; i < batch.size(); i++) {
+                        Request r = batch.get(i);
+                        if (results[i]) {
+                            stockLedgerService.record(ticketId, LEDGER_OPS.get(r.op), r.quantity);
+                        }
+                        if (!r.future.complete(results[i]) && results[i]) {
+                            compensate(ticketId, r);
+                        }
+                    }
+                    log.debug("库存组提交完成，票档ID：{}，请求数：{}，锁定变化：{}，已售变化：{}，重试次数：{}",
+                            ticketId, batch.size(), lockedDelta, soldDelta, attempt);
+                    return;
+                }
+                log.debug("库存组提交版本冲突，票档ID：{}，重试次数：{}", ticketId, attempt + 1);
+            }
+
+            log.warn("库存组提交失败，已达到最大重试次数，票档ID：{}，请求数：{}", ticketId, batch.size());
+            batch.forEach(r -> r.future.complete(false));
+        } catch (Exception e) {
+            log.error("库存组提交异常，票档ID：{}，请求数：{}", ticketId, batch.size(), e);
+            batch.forEach(r -> r.future.completeExceptionally(e));
+        }
+    }
+
+    /**
+     * 请求已生效但调用方已超时放弃，提交反向操作
+     */
+    private void compensate(Long ticketId, Request request) {
+        Op reverse = REVERSE_OPS.get(request.op);
+        submitAsync(ticketId, reverse, request.quantity).whenComplete((success, e) -> {
+            if (e != null || !Boolean.TRUE.equals(success)) {
+                log.error("库存反向操作失败，需人工核对，票档ID：{}，操作：{}，数量：{}", ticketId, reverse, request.quantity, e);
+            }
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 单个票档的请求队列
+     */
+    private static class TicketQueue {
+        final Queue<Request> requests = new ConcurrentLinkedQueue<>();
+        final AtomicBoolean scheduled = new AtomicBoolean();
+    }
+
+    /**
+     * 单个库存请求
+     */
+    private static class Request {
+        final Op op;
+        final int quantity;
+        final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        Request(Op op, int quantity) {
+            this.op = op;
+            this.quantity = quantity;
+        }
+    }
+}
@@ -0,0 +1,335 @@
+package com.ticketsystem.show.service;
+
+import lombok.Data;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RBatch;
+import org.redisson.api.RMap;
+import org.redisson.api.RStream;
+import org.redisson.api.RedissonClient;
+import org.redisson.api.StreamMessageId;
+import org.redisson.api.stream.StreamAddArgs;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 库存流水账本
+ * 每个票档一条只追加的Redis Stream（stock:ledger:{ticketId}），记录每次库存变动及订单号，
+ * Stream消息ID即单调递增的流水序号。
+ *
+ * 快照（stock:ledger:snapshot:{ticketId}）由上一个快照加上之后的流水折叠得到，
+ * 对账时只需重放快照之后的流水尾部，再与实际库存比较；
+ * 有新流水的票档记录在 stock:ledger:dirty 中，批量对账只处理这些票档。
+ *
+ * 流水异步写入，对账时先取最新流水位置作为围栏，只重放到围栏为止；默认关闭，每次库存变动会多一次XADD和SADD。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StockLedgerService {
+
+    private final RedissonClient redissonClient;
+
+    // 流水key前缀
+    private static final String LEDGER_KEY_PREFIX = "stock:ledger:";
+
+    // 快照key前缀
+    private static final String SNAPSHOT_KEY_PREFIX = "stock:ledger:snapshot:";
+
+    // 有新流水的票档集合
+    private static final String DIRTY_KEY = "stock:ledger:dirty";
+
+    // 单次读取流水条数
+    private static final int PAGE_SIZE = 1000;
+
+    @Value("${stock.ledger.enabled:false}")
+    private boolean enabled;
+
+    @Value("${stock.ledger.max-length:100000}")
+    private int maxLength;
+
+    /**
+     * 流水操作类型
+     */
+    public enum LedgerOp {
+        // Redis可用库存
+        INIT, PREDEDUCT, ROLLBACK, LEASE, REDIS_LOCK, REDIS_UNLOCK,
+        // 数据库锁定/已售库存
+        DB_LOCK, DB_UNLOCK, DB_CONFIRM, DB_UNCONFIRM, DB_SYNC
+    }
+
+    /**
+     * 是否启用库存流水
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 记录一条库存流水（异步写入，不阻塞库存操作）
+     * @param ticketId 票档ID
+     * @param op 操作类型
+     * @param quantity 变动数量；INIT/DB_SYNC为变动后的剩余库存
+     * @param orderNo 订单号，可为空
+     */
+    public void record(Long ticketId, LedgerOp op, int quantity, String orderNo) {
+        if (!enabled) {
+            return;
+        }
+        try {
+            Map<String, String> entry = new HashMap<>();
+            entry.put("op", op.name());
+            entry.put("qty", String.valueOf(quantity));
+            if (orderNo != null) {
+                entry.put("orderNo", orderNo);
+            }
+
+            RBatch batch = redissonClient.createBatch();
+            batch.<String, String>getStream(getLedgerKey(ticketId), StringCodec.INSTANCE)
+                    .addAsync(StreamAddArgs.entries(entry).trimNonStrict().maxLen(maxLength).noLimit());
+            batch.<String>getSet(DIRTY_KEY, StringCodec.INSTANCE).addAsync(String.valueOf(ticketId));
+            batch.executeAsync().whenComplete((result, e) -> {
+                if (e != null) {
+                    log.warn("记录库存流水失败 - 票档ID: {}, 操作: {}, 数量: {}, 原因: {}",
+                            ticketId, op, quantity, e.getMessage());
+                }
+            });
+        } catch (Exception e) {
+            log.warn("记录库存流水失败 - 票档ID: {}, 操作: {}, 数量: {}, 原因: {}", ticketId, op, quantity, e.getMessage());
+        }
+    }
+
+    /**
+     * 记录一条无订单号的库存流水
+     */
+    public void record(Long ticketId, LedgerOp op, int quantity) {
+        record(ticketId, op, quantity, null);
+    }
+
+    /**
+     * 当前最新流水位置，作为对账围栏
+     * @return 流水ID，无流水时为0-0
+     */
+    public String latestSeq(Long ticketId) {
+        Map<StreamMessageId, Map<String, String>> last =
+                getLedger(ticketId).rangeReversed(1, StreamMessageId.MAX, StreamMessageId.MIN);
+        return last.isEmpty() ? "0-0" : last.keySet().iterator().next().toString();
+    }
+
+    /**
+     * 读取快照并重放之后、围栏之前（含）的流水，得到预期库存状态
+     * @param fenceSeq 围栏位置，之后追加的流水不参与重放
+     * @return 预期状态，无快照时返回null
+     */
+    public LedgerState replay(Long ticketId, String fenceSeq) {
+        Map<String, String> snapshot = getSnapshotMap(ticketId).readAllMap();
+        if (snapshot.isEmpty()) {
+            return null;
+        }
+
+        LedgerState state = new LedgerState();
+        state.setTicketId(ticketId);
+        state.setSnapshotSeq(snapshot.get("seq"));
+        state.setSeq(snapshot.get("seq"));
+        state.setRedisStock(parseInt(snapshot.get("redisStock")));
+        state.setLockedStock(parseInt(snapshot.get("lockedStock")));
+        state.setSoldStock(parseInt(snapshot.get("soldStock")));
+        state.setTotalStock(parseInt(snapshot.get("totalStock")));
+        state.setSuspectSeq(snapshot.get("suspectSeq"));
+
+        RStream<String, String> stream = getLedger(ticketId);
+        StreamMessageId start = parseId(state.getSeq());
+        StreamMessageId fence = parseId(fenceSeq);
+        while (true) {
+            Map<StreamMessageId, Map<String, String>> page = stream.range(PAGE_SIZE, start, fence);
+            int applied = 0;
+            for (Map.Entry<StreamMessageId, Map<String, String>> entry : page.entrySet()) {
+                // range包含起始ID，跳过已折叠的流水
+                if (entry.getKey().equals(start)) {
+                    continue;
+                }
+                apply(state, entry.getKey(), entry.getValue());
+                applied++;
+            }
+            if (applied == 0 || page.size() < PAGE_SIZE) {
+                break;
+            }
+            start = parseId(state.getSeq());
+        }
+        return state;
+    }
+
+    /**
+     * 以实际库存建立基线快照，位置为当前最新流水
+     */
+    public LedgerState createBaseline(Long ticketId, Integer redisStock, Integer lockedStock,
+                                      Integer soldStock, Integer totalStock) {
+        return createBaseline(ticketId, latestSeq(ticketId), redisStock, lockedStock, soldStock, totalStock);
+    }
+
+    /**
+     * 以实际库存建立基线快照，位置为读取实际库存前取得的围栏
+     */
+    public LedgerState createBaseline(Long ticketId, String fenceSeq, Integer redisStock, Integer lockedStock,
+                                      Integer soldStock, Integer totalStock) {
+        LedgerState state = new LedgerState();
+        state.setTicketId(ticketId);
+        state.setSeq(fenceSeq);
+        state.setSnapshotSeq(state.getSeq());
+        state.setRedisStock(redisStock);
+        state.setLockedStock(lockedStock);
+        state.setSoldStock(soldStock);
+        state.setTotalStock(totalStock);
+        saveSnapshot(state);
+        return state;
+    }
+
+    /**
+     * 保存快照（流水折叠结果）
+     */
+    public void saveSnapshot(LedgerState state) {
+        Map<String, String> snapshot = new HashMap<>();
+        snapshot.put("seq", state.getSeq());
+        putIfNotNull(snapshot, "redisStock", state.getRedisStock());
+        putIfNotNull(snapshot, "lockedStock", state.getLockedStock());
+        putIfNotNull(snapshot, "soldStock", state.getSoldStock());
+        putIfNotNull(snapshot, "totalStock", state.getTotalStock());
+        snapshot.put("time", String.valueOf(System.currentTimeMillis()));
+        RMap<String, String> map = getSnapshotMap(state.getTicketId());
+        map.delete();
+        map.putAll(snapshot);
+    }
+
+    /**
+     * 记录首次对账不一致时的围栏位置，围栏未前进时再次不一致才确认
+     */
+    public void markSuspect(Long ticketId, String fenceSeq) {
+        getSnapshotMap(ticketId).fastPut("suspectSeq", fenceSeq);
+    }
+
+    /**
+     * 取出有新流水的票档（取出后即从集合移除）
+     */
+    public List<Long> pollDirtyTickets(int count) {
+        Set<String> ids = redissonClient.<String>getSet(DIRTY_KEY, StringCodec.INSTANCE).removeRandom(count);
+        List<Long> ticketIds = new ArrayList<>(ids.size());
+        ids.forEach(id -> ticketIds.add(Long.valueOf(id)));
+        return ticketIds;
+    }
+
+    /**
+     * 将票档重新标记为有待对账流水
+     */
+    public void markDirty(Long ticketId) {
+        redissonClient.<String>getSet(DIRTY_KEY, StringCodec.INSTANCE).add(String.valueOf(ticketId));
+    }
+
+    private void apply(LedgerState state, StreamMessageId id, Map<String, String> fields) {
+        LedgerOp op = LedgerOp.valueOf(fields.get("op"));
+        int qty = Integer.parseInt(fields.get("qty"));
+        Integer redis = state.getRedisStock();
+        Integer locked = state.getLockedStock();
+        Integer sold = state.getSoldStock();
+        switch (op) {
+            case INIT:
+                redis = qty;
+                break;
+            case PREDEDUCT:
+            case LEASE:
+            case REDIS_LOCK:
+                redis = redis != null ? redis - qty : null;
+                break;
+            case ROLLBACK:
+            case REDIS_UNLOCK:
+                redis = redis != null ? redis + qty : null;
+                break;
+            case DB_LOCK:
+                locked = locked != null ? locked + qty : null;
+                break;
+            case DB_UNLOCK:
+                locked = locked != null ? locked - qty : null;
+                break;
+            case DB_CONFIRM:
+                locked = locked != null ? locked - qty : null;
+                sold = sold != null ? sold + qty : null;
+                break;
+            case DB_UNCONFIRM:
+                locked = locked != null ? locked + qty : null;
+                sold = sold != null ? sold - qty : null;
+                break;
+            case DB_SYNC:
+                // 写回时 locked = total - remain - sold
+                if (state.getTotalStock() != null && sold != null) {
+                    locked = state.getTotalStock() - qty - sold;
+                }
+                break;
+            default:
+                break;
+        }
+        state.setRedisStock(redis);
+        state.setLockedStock(locked);
+        state.setSoldStock(sold);
+        state.setSeq(id.toString());
+
+        Map<String, Object> item = new LinkedHashMap<>();
+        item.put("seq", id.toString());
+        item.put("timestamp", id.getId0());
+        item.putAll(fields);
+        state.getTail().add(item);
+    }
+
+    private RStream<String, String> getLedger(Long ticketId) {
+        return redissonClient.getStream(getLedgerKey(ticketId), StringCodec.INSTANCE);
+    }
+
+    private RMap<String, String> getSnapshotMap(Long ticketId) {
+        return redissonClient.getMap(SNAPSHOT_KEY_PREFIX + ticketId, StringCodec.INSTANCE);
+    }
+
+    private String getLedgerKey(Long ticketId) {
+        return LEDGER_KEY_PREFIX + ticketId;
+    }
+
+    private StreamMessageId parseId(String seq) {
+        String[] parts = seq.split("-");
+        return new StreamMessageId(Long.parseLong(parts[0]), Long.parseLong(parts[1]));
+    }
+
+    private Integer parseInt(String value) {
+        return value != null ? Integer.valueOf(value) : null;
+    }
+
+    private void putIfNotNull(Map<String, String> map, String key, Integer value) {
+        if (value != null) {
+            map.put(key, String.valueOf(value));
+        }
+    }
+
+    /**
+     * 重放得到的预期库存状态
+     */
+    @Data
+    public static class LedgerState {
+        private Long ticketId;
+        // 快照位置
+        private String snapshotSeq;
+        // 已重放到的流水位置
+        private String seq;
+        private Integer redisStock;
+        private Integer lockedStock;
+        private Integer soldStock;
+        private Integer totalStock;
+        // 首次不一致时的围栏位置
+        private String suspectSeq;
+        // 快照之后的流水
+        private List<Map<String, Object>> tail = new ArrayList<>();
+    }
+}
@@ -17,7 +17,7 @@ import org.springframework.transaction.annotation.Transactional;
 public class StockRollbackService {
 
     private final TicketStockService ticketStockService;
-    private final RedisStockService redisStockService;
+    private final StockEngine stockEngine;
     private final TicketStockMapper ticketStockMapper;
     
     /**
@@ -60,7 +60,7 @@ public class StockRollbackService {
                 if (redisResult) {
                     try {
                         // 尝试重新扣减Redis库存以保持一致性
-                        redisStockService.predeductStock(ticketId, quantity);
+                        stockEngine.predeductStock(ticketId, quantity);
                         log.info("已补偿Redis库存扣减，订单ID：{}，票档ID：{}，数量：{}", orderId, ticketId, quantity);
                     } catch (Exception compensateEx) {
                         log.error("Redis补偿操作失败，订单ID：{}，票档ID：{}，数量：{}", orderId, ticketId, quantity, compensateEx);
@@ -1,6 +1,5 @@
 package com.ticketsystem.show.service;
 
-import com.ticketsystem.show.mapper.TicketStockMapper;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RedissonClient;
@@ -12,7 +11,7 @@ import java.util.List;
 
 /**
  * 库存同步初始化器
- * 系统启动时自动同步数据库库存到Redis
+ * 系统启动时自动同步数据库库存到Redis（由StockWarmupService后台执行）
  */
 @Component
 @RequiredArgsConstructor
@@ -20,11 +19,8 @@ import java.util.List;
 public class StockSyncInitializer implements ApplicationRunner {
 
     private final RedissonClient redissonClient;
-    private final TicketStockMapper ticketStockMapper;
-    private final RedisStockService redisStockService;
-    
-    private static final String STOCK_KEY_PREFIX = "stock:ticket:";
-    private static final int DEFAULT_EXPIRE_TIME = 86400; // 24小时
+    private final StockEngine stockEngine;
+    private final StockWarmupService stockWarmupService;
 
     @Override
     public void run(ApplicationArguments args) throws Exception {
@@ -37,10 +33,10 @@ public class StockSyncInitializer implements ApplicationRunner {
                 return;
             }
             
-            // 同步所有票档库存
-            syncAllStockToRedis();
+            // 后台预热所有票档库存，完成前readiness健康检查不通过
+            stockWarmupService.startAsync();
             
-            log.info("库存数据初始化完成");
+            log.info("库存预热已在后台启动");
         } catch (Exception e) {
             log.error("库存数据初始化失败", e);
         }
@@ -59,56 +55,6 @@ public class StockSyncInitializer implements ApplicationRunner {
         }
     }
     
-    /**
-     * 同步所有票档库存到Redis
-     */
-    private void syncAllStockToRedis() {
-        try {
-            // 获取所有有效票档ID
-            List<Long> ticketIds = ticketStockMapper.getAllTicketIds();
-            
-            if (ticketIds == null || ticketIds.isEmpty()) {
-                log.warn("没有找到有效的票档数据");
-                return;
-            }
-            
-            int successCount = 0;
-            int errorCount = 0;
-            
-            for (Long ticketId : ticketIds) {
-                try {
-                    // 获取数据库中的剩余库存
-                    Integer remainStock = ticketStockMapper.getRemainStock(ticketId);
-                    
-                    if (remainStock != null && remainStock >= 0) {
-                        // 使用RedisStockService的初始化方法
-                        Boolean result = redisStockService.initStock(ticketId, remainStock, true);
-                        
-                        if (result) {
-                            successCount++;
-                            log.debug("票档库存同步成功 - ID: {}, 库存: {}", ticketId, remainStock);
-                        } else {
-                            errorCount++;
-                            log.warn("票档库存同步失败 - ID: {}, 库存: {}", ticketId, remainStock);
-                        }
-                    } else {
-                        log.warn("票档库存数据无效 - ID: {}, 库存: {}", ticketId, remainStock);
-                        errorCount++;
-                    }
-                } catch (Exception e) {
-                    errorCount++;
-                    log.error("同步票档库存异常 - ID: {}", ticketId, e);
-                }
-            }
-            
-            log.info("库存同步完成 - 总数: {}, 成功: {}, 失败: {}", 
-                    ticketIds.size(), successCount, errorCount);
-                    
-        } catch (Exception e) {
-            log.error("获取票档列表失败", e);
-        }
-    }
-    
     /**
      * 验证库存同步结果
      */
@@ -118,8 +64,7 @@ public class StockSyncInitializer implements ApplicationRunner {
         int verifyCount = 0;
         for (Long ticketId : ticketIds) {
             try {
-                String stockKey = STOCK_KEY_PREFIX + ticketId;
-                Object redisStock = redissonClient.getBucket(stockKey).get();
+                Integer redisStock = stockEngine.getStock(ticketId);
                 
                 if (redisStock != null) {
                     verifyCount++;
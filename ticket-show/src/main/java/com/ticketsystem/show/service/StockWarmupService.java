@@ -0,0 +1,221 @@
+package com.ticketsystem.show.service;
+
+import com.ticketsystem.show.entity.TicketStock;
+import com.ticketsystem.show.mapper.TicketStockMapper;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * 库存预热服务
+ * 启动时用一条流式查询读出全部票档库存，按批交给有界线程池，
+ * 每批通过一个Redis pipeline写入；读取线程在提交批次时受信号量限制，
+ * 写入跟不上时数据库读取随之放慢，内存中最多只有parallelism*2个批次。
+ *
+ * 预热在后台线程执行，不阻塞应用启动；预热状态通过健康检查（stockWarmup）暴露，
+ * 加入readiness分组后，预热完成前实例不接收流量。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StockWarmupService {
+
+    private final TicketStockMapper ticketStockMapper;
+    private final StockEngine stockEngine;
+    private final ShardedStockService shardedStockService;
+
+    @Value("${stock.warmup.batch-size:500}")
+    private int batchSize;
+
+    @Value("${stock.warmup.parallelism:4}")
+    private int parallelism;
+
+    /**
+     * 预热状态
+     */
+    public enum State {
+        PENDING, RUNNING, READY, FAILED
+    }
+
+    private volatile State state = State.PENDING;
+
+    private volatile CompletableFuture<Void> current;
+
+    // 已读取票档数
+    private final AtomicLong scanned = new AtomicLong();
+
+    // 写入成功票档数
+    private final AtomicLong loaded = new AtomicLong();
+
+    // 库存数据无效票档数
+    private final AtomicLong invalid = new AtomicLong();
+
+    // 写入失败票档数
+    private final AtomicLong failed = new AtomicLong();
+
+    private volatile long startTime;
+
+    private volatile long endTime;
+
+    private volatile String error;
+
+    private final AtomicInteger threadCounter = new AtomicInteger();
+
+    private final ExecutorService starter = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "stock-warmup");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * 在后台启动预热，已在执行时返回当前任务
+     */
+    public synchronized CompletableFuture<Void> startAsync() {
+        if (current != null && !current.isDone()) {
+            return current;
+        }
+        state = State.RUNNING;
+        current = CompletableFuture.runAsync(this::warmUp, starter);
+        return current;
+    }
+
+    /**
+     * 执行预热并等待完成
+     */
+    public void warmUpAndWait() {
+        startAsync().join();
+    }
+
+    /**
+     * 预热是否已完成
+     */
+    public boolean isReady() {
+        return state == State.READY;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    /**
+     * 预热进度详情
+     */
+    public Map<String, Object> getDetails() {
+        Map<String, Object> details = new LinkedHashMap<>();
+        details.put("state", state);
+        details.put("scanned", scanned.get());
+        details.put("loaded", loaded.get());
+        details.put("invalid", invalid.get());
+        details.put("failed", failed.get());
+        if (startTime > 0) {
+            long end = endTime > 0 ? endTime : System.currentTimeMillis();
+            details.put("elapsedMillis", end - startTime);
+        }
+        if (error != null) {
+            details.put("error", error);
+        }
+        return details;
+    }
+
+    private void warmUp() {
+        scanned.set(0);
+        loaded.set(0);
+        invalid.set(0);
+        failed.set(0);
+        error = null;
+        endTime = 0;
+        startTime = System.currentTimeMillis();
+        log.info("开始预热库存到Redis，批大小: {}, 并发: {}", batchSize, parallelism);
+
+        ExecutorService workers = Executors.newFixedThreadPool(parallelism, r -> {
+            Thread thread = new Thread(r, "stock-warmup-" + threadCounter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        Semaphore inFlight = new Semaphore(parallelism * 2);
+        try {
+            // 分片票档按最新配置写入，避免对分片票档写单key
+            shardedStockService.refreshShardConfig();
+
+            AtomicReference<Map<Long, Integer>> buffer = new AtomicReference<>(new HashMap<>());
+            ticketStockMapper.streamAllStock(context -> {
+                TicketStock stock = context.getResultObject();
+                scanned.incrementAndGet();
+                int remain = stock.getTotalStock() - stock.getLockedStock() - stock.getSoldStock();
+                if (remain < 0) {
+                    invalid.incrementAndGet();
+                    log.warn("票档库存数据无效 - ID: {}, 库存: {}", stock.getTicketId(), remain);
+                    return;
+                }
+                buffer.get().put(stock.getTicketId(), remain);
+                if (buffer.get().size() >= batchSize) {
+                    submit(workers, inFlight, buffer.getAndSet(new HashMap<>()));
+                }
+            });
+            if (!buffer.get().isEmpty()) {
+                submit(workers, inFlight, buffer.get());
+            }
+
+            workers.shutdown();
+            workers.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+            state = failed.get() == 0 ? State.READY : State.FAILED;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            error = "预热被中断";
+            state = State.FAILED;
+        } catch (Exception e) {
+            log.error("库存预热失败", e);
+            error = e.getMessage();
+            state = State.FAILED;
+        } finally {
+            workers.shutdownNow();
+            endTime = System.currentTimeMillis();
+        }
+        log.info("库存预热结束 - 状态: {}, 总数: {}, 成功: {}, 无效: {}, 失败: {}, 耗时: {}ms",
+                state, scanned.get(), loaded.get(), invalid.get(), failed.get(), endTime - startTime);
+    }
+
+    private void submit(ExecutorService workers, Semaphore inFlight, Map<Long, Integer> batch) {
+        // 写入跟不上时阻塞读取线程
+        inFlight.acquireUninterruptibly();
+        try {
+            workers.execute(() -> {
+                try {
+                    // 订单节点仍持有的租借配额已从Redis扣除，预热时不再计入可用库存
+                    Map<Long, Integer> leased = stockEngine.getLeasedStocks(batch.keySet());
+                    batch.replaceAll((ticketId, remain) -> Math.max(0, remain - leased.getOrDefault(ticketId, 0)));
+                    int success = stockEngine.initStocks(batch);
+                    loaded.addAndGet(success);
+                    failed.addAndGet(batch.size() - success);
+                } catch (Exception e) {
+                    failed.addAndGet(batch.size());
+                    log.error("批量预热库存失败，票档数: {}", batch.size(), e);
+                } finally {
+                    inFlight.release();
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.release();
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        starter.shutdownNow();
+    }
+}
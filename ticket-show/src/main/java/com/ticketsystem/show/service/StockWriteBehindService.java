@@ -0,0 +1,277 @@
+package com.ticketsystem.show.service;
+
+import com.ticketsystem.show.entity.TicketStock;
+import com.ticketsystem.show.mapper.TicketStockMapper;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RSet;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 库存写回缓冲（write-behind）
+ * 库存变更事件只在内存中标记票档为待同步，同一票档的多次变更合并为一次；
+ * 按固定间隔或待同步数量达到阈值时，读取Redis最新库存并用一条批量UPDATE写回数据库。
+ *
+ * 内存中最多保留max-pending个票档，超出部分以及关闭时未能写回的票档
+ * 转存到Redis集合 stock:sync:pending，由任一节点的下一次刷新接管。
+ */
+@Service
+@RequiredArgsConstructor
+@Slf4j
+public class StockWriteBehindService {
+
+    private final StockEngine stockEngine;
+    private final TicketStockMapper ticketStockMapper;
+    private final RedissonClient redissonClient;
+    private final MeterRegistry meterRegistry;
+    private final StockLedgerService stockLedgerService;
+
+    // 待同步票档转存集合
+    private static final String PENDING_KEY = "stock:sync:pending";
+
+    @Value("${stock.sync.flush-size:200}")
+    private int flushSize;
+
+    @Value("${stock.sync.max-pending:10000}")
+    private int maxPending;
+
+    // 待同步票档：票档ID -> 首次标记时间（纳秒），用于计算写回延迟
+    private final Map<Long, Long> pending = new ConcurrentHashMap<>();
+
+    private final ReentrantLock flushLock = new ReentrantLock();
+
+    // 达到数量阈值时只提交一个刷新任务
+    private final AtomicBoolean flushTriggered = new AtomicBoolean();
+
+    private final ExecutorService flushExecutor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "stock-sync-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private Timer flushLagTimer;
+    private Counter coalescedCounter;
+    private Counter flushedCounter;
+    private Counter flushFailureCounter;
+
+    @PostConstruct
+    public void init() {
+        Gauge.builder("stock_sync_pending", pending, Map::size)
+                .description("等待写回数据库的票档数")
+                .register(meterRegistry);
+        flushLagTimer = Timer.builder("stock_sync_flush_lag")
+                .description("库存变更到写回数据库的延迟")
+                .register(meterRegistry);
+        coalescedCounter = Counter.builder("stock_sync_coalesced_total")
+                .description("被合并的库存同步事件数")
+                .register(meterRegistry);
+        flushedCounter = Counter.builder("stock_sync_flushed_total")
+                .description("写回数据库的票档行数")
+                .register(meterRegistry);
+        flushFailureCounter = Counter.builder("stock_sync_flush_failure_total")
+                .description("库存批量写回失败次数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 标记票档库存待同步
+     */
+    public void markDirty(Long ticketId) {
+        if (pending.putIfAbsent(ticketId, System.nanoTime()) != null) {
+            coalescedCounter.increment();
+            return;
+        }
+        if (pending.size() > maxPending) {
+            // 超出内存上限，转存到Redis
+            pending.remove(ticketId);
+            spill(Collections.singletonList(ticketId));
+            return;
+        }
+        if (pending.size() >= flushSize && !flushExecutor.isShutdown()
+                && flushTriggered.compareAndSet(false, true)) {
+            flushExecutor.execute(() -> {
+                flushTriggered.set(false);
+                flush();
+            });
+        }
+    }
+
+    /**
+     * 批量标记票档库存待同步
+     */
+    public void markDirty(List<Long> ticketIds) {
+        ticketIds.forEach(this::markDirty);
+    }
+
+    /**
+     * 定时刷新：先接管Redis中转存的票档，再批量写回
+     */
+    @Scheduled(fixedDelayString = "${stock.sync.flush-interval:1000}")
+    public void scheduledFlush() {
+        try {
+            Set<String> handedOff = getPendingSet().removeRandom(flushSize);
+            for (String ticketId : handedOff) {
+                pending.putIfAbsent(Long.valueOf(ticketId), System.nanoTime());
+            }
+        } catch (Exception e) {
+            log.warn("读取待同步库存转存集合失败: {}", e.getMessage());
+        }
+        flush();
+    }
+
+    /**
+     * 将待同步票档按批写回数据库
+     * @return 写回的票档数
+     */
+    public int flush() {
+        if (!flushLock.tryLock()) {
+            return 0;
+        }
+        try {
+            return flushPending();
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    /**
+     * 获取当前待同步票档数
+     */
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * 关闭时尽量写回，仍未写回的票档转存到Redis
+     */
+    @PreDestroy
+    public void shutdown() {
+        flushExecutor.shutdown();
+        try {
+            flushExecutor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flushLock.lock();
+        try {
+            flushPending();
+            if (!pending.isEmpty()) {
+                List<Long> remaining = new ArrayList<>(pending.keySet());
+                spill(remaining);
+                pending.keySet().removeAll(remaining);
+                log.warn("库存写回未完成，已转存待同步票档到Redis: {}", remaining.size());
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private int flushPending() {
+        int flushed = 0;
+        while (!pending.isEmpty()) {
+            Map<Long, Long> batch = drain(flushSize);
+            if (batch.isEmpty()) {
+                break;
+            }
+            if (!writeBatch(batch)) {
+                // 写回失败，放回缓冲等待下一次刷新
+                batch.forEach(pending::putIfAbsent);
+                break;
+            }
+            flushed += batch.size();
+        }
+        return flushed;
+    }
+
+    private Map<Long, Long> drain(int limit) {
+        Map<Long, Long> batch = new HashMap<>();
+        Iterator<Map.Entry<Long, Long>> iterator = pending.entrySet().iterator();
+        while (iterator.hasNext() && batch.size() < limit) {
+            Map.Entry<Long, Long> entry = iterator.next();
+            batch.put(entry.getKey(), entry.getValue());
+            iterator.remove();
+        }
+        return batch;
+    }
+
+    private boolean writeBatch(Map<Long, Long> batch) {
+        List<TicketStock> items = new ArrayList<>(batch.size());
+        // 写回时一次MGET读取最新库存，期间的所有变更都已包含在内；
+        // 订单节点持有的租借配额已从Redis扣除但未被订单锁定，写回时计入剩余库存
+        Map<Long, Integer> stocks;
+        Map<Long, Integer> leasedStocks;
+        try {
+            stocks = stockEngine.getStocks(batch.keySet());
+            leasedStocks = stockEngine.getLeasedStocks(batch.keySet());
+        } catch (Exception e) {
+            flushFailureCounter.increment();
+            log.error("读取Redis库存失败，票档数: {}", batch.size(), e);
+            return false;
+        }
+        for (Long ticketId : batch.keySet()) {
+            Integer stock = stocks.get(ticketId);
+            if (stock != null) {
+                TicketStock item = new TicketStock().setTicketId(ticketId);
+                item.setAvailableStock(stock + leasedStocks.getOrDefault(ticketId, 0));
+                items.add(item);
+            }
+        }
+        if (items.isEmpty()) {
+            return true;
+        }
+        try {
+            ticketStockMapper.batchUpdateRemainStock(items);
+        } catch (Exception e) {
+            flushFailureCounter.increment();
+            log.error("库存批量写回数据库失败，票档数: {}", items.size(), e);
+            return false;
+        }
+
+        items.forEach(item -> stockLedgerService.record(
+                item.getTicketId(), StockLedgerService.LedgerOp.DB_SYNC, item.getAvailableStock()));
+
+        long now = System.nanoTime();
+        batch.values().forEach(markedAt -> flushLagTimer.record(now - markedAt, TimeUnit.NANOSECONDS));
+        flushedCounter.increment(items.size());
+        log.debug("库存批量写回数据库完成，票档数: {}", items.size());
+        return true;
+    }
+
+    private void spill(List<Long> ticketIds) {
+        try {
+            List<String> values = new ArrayList<>(ticketIds.size());
+            ticketIds.forEach(ticketId -> values.add(String.valueOf(ticketId)));
+            getPendingSet().addAll(values);
+        } catch (Exception e) {
+            log.error("转存待同步票档失败，由一致性检查兜底，票档: {}", ticketIds, e);
+        }
+    }
+
+    private RSet<String> getPendingSet() {
+        return redissonClient.getSet(PENDING_KEY, StringCodec.INSTANCE);
+    }
+}
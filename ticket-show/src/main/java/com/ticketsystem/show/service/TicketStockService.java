@@ -1,7 +1,10 @@
 package com.ticketsystem.show.service;
 
+import com.ticketsystem.show.dto.StockReserveItem;
 import com.ticketsystem.show.entity.TicketStock;
 
+import java.util.List;
+
 /**
  * 票档库存服务接口
  * 提供基于乐观锁的高并发库存管理
@@ -32,6 +35,14 @@ public interface TicketStockService {
      */
     Boolean confirmStock(Long ticketId, Integer quantity);
 
+    /**
+     * 撤销库存确认（从已售转回锁定），用于支付失败后的补偿
+     * @param ticketId 票档ID
+     * @param quantity 撤销数量
+     * @return 是否成功
+     */
+    Boolean unconfirmStock(Long ticketId, Integer quantity);
+
     /**
      * 获取库存信息
      * @param ticketId 票档ID
@@ -61,6 +72,40 @@ public interface TicketStockService {
      * @return 预减结果：1-成功，0-库存不足，-1-库存不存在
      */
     Integer predeductStockFromRedis(Long ticketId, Integer quantity);
+
+    /**
+     * Redis预减库存，并在库存流水中记录订单号
+     * @param orderNo 订单号，可为空
+     */
+    Integer predeductStockFromRedis(Long ticketId, Integer quantity, String orderNo);
+
+    /**
+     * Redis多票档预减库存，全部满足才扣减
+     * @param items 各票档扣减数量（同一票档合并计算）
+     * @param orderNo 订单号，可为空
+     * @return 各票档结果，全部为1时已扣减
+     */
+    List<StockReserveItem> predeductStocksFromRedis(List<StockReserveItem> items, String orderNo);
+    
+    /**
+     * Redis租借库存（订单节点本地配额）
+     * @param ticketId 票档ID
+     * @param quantity 请求租借数量
+     * @param owner 订单节点标识
+     * @param settled 上次租借或归还以来节点已售出的配额
+     * @return 实际租借数量，0-库存已售罄，-1-库存不存在
+     */
+    Integer leaseStockFromRedis(Long ticketId, Integer quantity, String owner, Integer settled);
+
+    /**
+     * 归还租借的Redis库存
+     * @param ticketId 票档ID
+     * @param quantity 归还数量
+     * @param owner 订单节点标识
+     * @param settled 上次租借或归还以来节点已售出的配额
+     * @return 实际归还数量（不超过节点未归还配额），-1-库存不存在
+     */
+    Integer returnLeasedStockToRedis(Long ticketId, Integer quantity, String owner, Integer settled);
     
     /**
      * 回滚Redis库存
@@ -69,6 +114,19 @@ public interface TicketStockService {
      * @return 是否成功
      */
     Boolean rollbackStockToRedis(Long ticketId, Integer quantity);
+
+    /**
+     * 回滚Redis库存，并在库存流水中记录订单号
+     * @param orderNo 订单号，可为空
+     */
+    Boolean rollbackStockToRedis(Long ticketId, Integer quantity, String orderNo);
+
+    /**
+     * 回滚多个票档的Redis库存
+     * @param orderNo 订单号，可为空
+     * @return 各票档结果：1-成功，0-失败
+     */
+    List<StockReserveItem> rollbackStocksToRedis(List<StockReserveItem> items, String orderNo);
     
     /**
      * 同步数据库库存到Redis
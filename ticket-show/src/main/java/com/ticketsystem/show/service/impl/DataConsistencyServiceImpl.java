@@ -1,15 +1,29 @@
 package com.ticketsystem.show.service.impl;
 
+import com.ticketsystem.common.exception.BusinessException;
+import com.ticketsystem.show.dto.StockReconcileReport;
 import com.ticketsystem.show.entity.TicketStock;
 import com.ticketsystem.show.mapper.TicketStockMapper;
 import com.ticketsystem.show.service.DataConsistencyService;
-import com.ticketsystem.show.service.RedisStockService;
+import com.ticketsystem.show.service.StockEngine;
+import com.ticketsystem.show.service.StockLedgerService;
 import com.ticketsystem.show.service.TicketStockService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * 数据一致性服务实现
@@ -21,8 +35,34 @@ import java.util.List;
 public class DataConsistencyServiceImpl implements DataConsistencyService {
 
     private final TicketStockMapper ticketStockMapper;
-    private final RedisStockService redisStockService;
+    private final StockEngine stockEngine;
     private final TicketStockService ticketStockService;
+    private final StockLedgerService stockLedgerService;
+
+    // 单次对账取出的票档数
+    private static final int RECONCILE_BATCH_SIZE = 500;
+
+    @Value("${stock.reconcile.batch-size:500}")
+    private int reconcileBatchSize;
+
+    @Value("${stock.reconcile.parallelism:4}")
+    private int reconcileParallelism;
+
+    @Value("${stock.reconcile.throttle-millis:0}")
+    private long reconcileThrottleMillis;
+
+    @Value("${stock.reconcile.max-diffs:1000}")
+    private int reconcileMaxDiffs;
+
+    // 单次流水对账最多处理的票档数，持续有新流水时不会一直循环
+    @Value("${stock.ledger.reconcile-max-tickets:5000}")
+    private int ledgerReconcileMaxTickets;
+
+    // 同一时间只允许一个批量对账任务
+    private final AtomicBoolean reconciling = new AtomicBoolean();
+
+    // 最近一次批量对账报告
+    private volatile StockReconcileReport lastReport;
 
     @Override
     public Boolean checkStockConsistency(Long ticketId) {
@@ -39,15 +79,16 @@ public class DataConsistencyServiceImpl implements DataConsistencyService {
             // 计算数据库可用库存
             Integer dbAvailableStock = dbStock.getTotalStock() - dbStock.getLockedStock() - dbStock.getSoldStock();
             
-            // 获取Redis库存信息
-            Integer redisStock = redisStockService.getStock(ticketId);
+            // 获取Redis库存信息，订单节点持有的租借配额已从Redis扣除但尚未锁定
+            Integer redisStock = stockEngine.getStock(ticketId);
+            int leasedStock = stockEngine.getLeasedStock(ticketId);
             
             // 比较库存是否一致
-            boolean isConsistent = dbAvailableStock.equals(redisStock);
+            boolean isConsistent = redisStock != null && dbAvailableStock == redisStock + leasedStock;
             
             if (!isConsistent) {
-                log.warn("库存不一致，票档ID：{}，数据库可用库存：{}，Redis库存：{}", 
-                    ticketId, dbAvailableStock, redisStock);
+                log.warn("库存不一致，票档ID：{}，数据库可用库存：{}，Redis库存：{}，未归还租借配额：{}", 
+                    ticketId, dbAvailableStock, redisStock, leasedStock);
             } else {
                 log.debug("库存一致，票档ID：{}，可用库存：{}", ticketId, dbAvailableStock);
             }
@@ -74,13 +115,17 @@ public class DataConsistencyServiceImpl implements DataConsistencyService {
             // 计算数据库可用库存
             Integer dbAvailableStock = dbStock.getTotalStock() - dbStock.getLockedStock() - dbStock.getSoldStock();
             
-            // 以数据库为准，同步到Redis
-            Boolean syncResult = redisStockService.initStock(ticketId, dbAvailableStock, true);
+            // 以数据库为准，同步到Redis，扣除订单节点仍持有的租借配额
+            int redisStock = Math.max(0, dbAvailableStock - stockEngine.getLeasedStock(ticketId));
+            Boolean syncResult = stockEngine.initStock(ticketId, redisStock, true);
             
             if (syncResult) {
-                log.info("库存一致性修复成功，票档ID：{}，同步库存：{}", ticketId, dbAvailableStock);
+                // 修复后以实际库存重建流水基线
+                stockLedgerService.createBaseline(ticketId, redisStock,
+                        dbStock.getLockedStock(), dbStock.getSoldStock(), dbStock.getTotalStock());
+                log.info("库存一致性修复成功，票档ID：{}，同步库存：{}", ticketId, redisStock);
             } else {
-                log.error("库存一致性修复失败，票档ID：{}，同步库存：{}", ticketId, dbAvailableStock);
+                log.error("库存一致性修复失败，票档ID：{}，同步库存：{}", ticketId, redisStock);
             }
             
             return syncResult;
@@ -93,20 +138,8 @@ public class DataConsistencyServiceImpl implements DataConsistencyService {
     @Override
     public Integer checkAllStockConsistency() {
         try {
-            log.info("开始批量检查所有票档库存一致性");
-            
-            // 获取所有票档库存信息
-            List<TicketStock> allStocks = ticketStockMapper.selectList(null);
-            int inconsistentCount = 0;
-            
-            for (TicketStock stock : allStocks) {
-                if (!checkStockConsistency(stock.getTicketId())) {
-                    inconsistentCount++;
-                }
-            }
-            
-            log.info("批量检查完成，总票档数：{}，不一致票档数：{}", allStocks.size(), inconsistentCount);
-            return inconsistentCount;
+            StockReconcileReport report = reconcileAllStock(false);
+            return report.getInconsistent().get();
         } catch (Exception e) {
             log.error("批量检查库存一致性异常", e);
             return -1; // 返回-1表示检查失败
@@ -116,25 +149,220 @@ public class DataConsistencyServiceImpl implements DataConsistencyService {
     @Override
     public Integer repairAllStockConsistency() {
         try {
-            log.info("开始批量修复所有票档库存一致性");
-            
-            // 获取所有票档库存信息
-            List<TicketStock> allStocks = ticketStockMapper.selectList(null);
-            int repairedCount = 0;
-            
-            for (TicketStock stock : allStocks) {
-                if (!checkStockConsistency(stock.getTicketId())) {
-                    if (repairStockConsistency(stock.getTicketId())) {
-                        repairedCount++;
+            StockReconcileReport report = reconcileAllStock(true);
+            return report.getRepaired().get();
+        } catch (Exception e) {
+            log.error("批量修复库存一致性异常", e);
+            return -1; // 返回-1表示修复失败
+        }
+    }
+
+    @Override
+    public StockReconcileReport reconcileAllStock(boolean repair) {
+        if (!reconciling.compareAndSet(false, true)) {
+            throw new BusinessException("已有库存对账任务正在执行");
+        }
+
+        StockReconcileReport report = new StockReconcileReport();
+        report.setRepair(repair);
+        lastReport = report;
+        log.info("开始批量{}库存一致性，每批：{}，并行度：{}，批间隔：{}ms",
+                repair ? "修复" : "检查", reconcileBatchSize, reconcileParallelism, reconcileThrottleMillis);
+
+        ExecutorService executor = Executors.newFixedThreadPool(reconcileParallelism, r -> {
+            Thread thread = new Thread(r, "stock-reconcile");
+            thread.setDaemon(true);
+            return thread;
+        });
+        // 限制在途批次，游标不会无限领先于比对
+        Semaphore inFlight = new Semaphore(reconcileParallelism * 2);
+        try {
+            report.setTotal(ticketStockMapper.selectCount(null));
+
+            long cursor = 0L;
+            while (true) {
+                List<TicketStock> page = ticketStockMapper.selectPageAfter(cursor, reconcileBatchSize);
+                if (page.isEmpty()) {
+                    break;
+                }
+                cursor = page.get(page.size() - 1).getTicketId();
+
+                inFlight.acquire();
+                executor.execute(() -> {
+                    try {
+                        compareBatch(page, report, repair);
+                    } catch (Exception e) {
+                        log.error("库存对账批次异常，票档数：{}", page.size(), e);
+                        report.getFailed().addAndGet(page.size());
+                        report.getScanned().addAndGet(page.size());
+                    } finally {
+                        inFlight.release();
+                    }
+                });
+
+                if (page.size() < reconcileBatchSize) {
+                    break;
+                }
+                if (reconcileThrottleMillis > 0) {
+                    Thread.sleep(reconcileThrottleMillis);
+                }
+            }
+
+            executor.shutdown();
+            executor.awaitTermination(1, TimeUnit.HOURS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("库存对账被中断");
+        } finally {
+            executor.shutdownNow();
+            report.finish();
+            reconciling.set(false);
+        }
+
+        log.info("批量{}完成，总票档数：{}，已对账：{}，不一致：{}，修复成功：{}，失败：{}，耗时：{}ms",
+                repair ? "修复" : "检查", report.getTotal(), report.getScanned().get(),
+                report.getInconsistent().get(), report.getRepaired().get(), report.getFailed().get(),
+                report.getEndTime() - report.getStartTime());
+        return report;
+    }
+
+    @Override
+    public StockReconcileReport getReconcileProgress() {
+        return lastReport;
+    }
+
+    /**
+     * 比对一批票档：一次MGET读取Redis库存后逐个比较
+     */
+    private void compareBatch(List<TicketStock> page, StockReconcileReport report, boolean repair) {
+        List<Long> ticketIds = new ArrayList<>(page.size());
+        page.forEach(stock -> ticketIds.add(stock.getTicketId()));
+        Map<Long, Integer> redisStocks = stockEngine.getStocks(ticketIds);
+        Map<Long, Integer> leasedStocks = stockEngine.getLeasedStocks(ticketIds);
+
+        for (TicketStock stock : page) {
+            Integer dbAvailableStock = stock.getTotalStock() - stock.getLockedStock() - stock.getSoldStock();
+            Integer redisStock = redisStocks.get(stock.getTicketId());
+            // 订单节点持有的租借配额已从Redis扣除但尚未锁定
+            int leasedStock = leasedStocks.getOrDefault(stock.getTicketId(), 0);
+            if (redisStock == null || dbAvailableStock != redisStock + leasedStock) {
+                report.addDiff(stock.getTicketId(), dbAvailableStock, redisStock, reconcileMaxDiffs);
+                if (repair) {
+                    int repairedStock = Math.max(0, dbAvailableStock - leasedStock);
+                    if (stockEngine.initStock(stock.getTicketId(), repairedStock, true)) {
+                        stockLedgerService.createBaseline(stock.getTicketId(), repairedStock,
+                                stock.getLockedStock(), stock.getSoldStock(), stock.getTotalStock());
+                        report.getRepaired().incrementAndGet();
+                    } else {
+                        report.getFailed().incrementAndGet();
+                    }
+                }
+            }
+        }
+        report.getScanned().addAndGet(page.size());
+    }
+
+    @Override
+    public Map<String, Object> reconcileStockByLedger(Long ticketId) {
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("ticketId", ticketId);
+
+        // 流水异步写入：先取围栏再读实际库存，读取期间围栏前进说明实际库存与流水位置不对应，下次再对账
+        String fence = stockLedgerService.latestSeq(ticketId);
+        TicketStock dbStock = ticketStockMapper.selectByTicketId(ticketId);
+        Integer redisStock = stockEngine.getStock(ticketId);
+        if (!fence.equals(stockLedgerService.latestSeq(ticketId))) {
+            report.put("settled", false);
+            report.put("consistent", false);
+            return report;
+        }
+        StockLedgerService.LedgerState expected = stockLedgerService.replay(ticketId, fence);
+
+        if (expected == null) {
+            // 尚无快照，以当前实际库存作为基线
+            stockLedgerService.createBaseline(ticketId, fence, redisStock,
+                    dbStock != null ? dbStock.getLockedStock() : null,
+                    dbStock != null ? dbStock.getSoldStock() : null,
+                    dbStock != null ? dbStock.getTotalStock() : null);
+            report.put("baseline", true);
+            report.put("consistent", true);
+            return report;
+        }
+
+        boolean redisMatch = expected.getRedisStock() == null || Objects.equals(expected.getRedisStock(), redisStock);
+        boolean lockedMatch = expected.getLockedStock() == null
+                || (dbStock != null && Objects.equals(expected.getLockedStock(), dbStock.getLockedStock()));
+        boolean soldMatch = expected.getSoldStock() == null
+                || (dbStock != null && Objects.equals(expected.getSoldStock(), dbStock.getSoldStock()));
+        boolean consistent = redisMatch && lockedMatch && soldMatch;
+        boolean settled = consistent || fence.equals(expected.getSuspectSeq());
+
+        report.put("settled", settled);
+        report.put("consistent", consistent);
+        report.put("snapshotSeq", expected.getSnapshotSeq());
+        report.put("seq", expected.getSeq());
+        report.put("replayed", expected.getTail().size());
+        report.put("expectedRedisStock", expected.getRedisStock());
+        report.put("actualRedisStock", redisStock);
+        report.put("expectedLockedStock", expected.getLockedStock());
+        report.put("actualLockedStock", dbStock != null ? dbStock.getLockedStock() : null);
+        report.put("expectedSoldStock", expected.getSoldStock());
+        report.put("actualSoldStock", dbStock != null ? dbStock.getSoldStock() : null);
+
+        if (consistent) {
+            // 一致时将流水尾部折叠进快照，下次只需重放之后的流水
+            stockLedgerService.saveSnapshot(expected);
+        } else if (!settled) {
+            // 首次不一致可能是已生效但尚未写入的流水，记录围栏，下次对账围栏未前进仍不一致才确认
+            stockLedgerService.markSuspect(ticketId, fence);
+        } else {
+            report.put("tail", expected.getTail());
+            log.warn("库存流水对账不一致，票档ID：{}，快照位置：{}，重放流水：{}，预期Redis：{}，实际Redis：{}，预期锁定：{}，预期已售：{}",
+                    ticketId, expected.getSnapshotSeq(), expected.getTail().size(),
+                    expected.getRedisStock(), redisStock, expected.getLockedStock(), expected.getSoldStock());
+        }
+        return report;
+    }
+
+    @Override
+    @Scheduled(fixedDelayString = "${stock.ledger.reconcile-interval:60000}")
+    public List<Map<String, Object>> reconcileByLedger() {
+        List<Map<String, Object>> inconsistent = new ArrayList<>();
+        if (!stockLedgerService.isEnabled()) {
+            return inconsistent;
+        }
+        List<Long> retry = new ArrayList<>();
+        int checked = 0;
+        try {
+            List<Long> ticketIds;
+            while (checked < ledgerReconcileMaxTickets && !(ticketIds = stockLedgerService.pollDirtyTickets(
+                    Math.min(RECONCILE_BATCH_SIZE, ledgerReconcileMaxTickets - checked))).isEmpty()) {
+                for (Long ticketId : ticketIds) {
+                    checked++;
+                    try {
+                        Map<String, Object> report = reconcileStockByLedger(ticketId);
+                        if (!Boolean.TRUE.equals(report.get("settled"))) {
+                            // 流水未稳定或待确认，留到下次对账
+                            retry.add(ticketId);
+                        } else if (!Boolean.TRUE.equals(report.get("consistent"))) {
+                            inconsistent.add(report);
+                            retry.add(ticketId);
+                        }
+                    } catch (Exception e) {
+                        log.error("库存流水对账异常，票档ID：{}", ticketId, e);
+                        retry.add(ticketId);
                     }
                 }
             }
-            
-            log.info("批量修复完成，总票档数：{}，修复成功数：{}", allStocks.size(), repairedCount);
-            return repairedCount;
         } catch (Exception e) {
-            log.error("批量修复库存一致性异常", e);
-            return -1; // 返回-1表示修复失败
+            log.error("读取待对账票档失败", e);
+        }
+
+        // 不一致的票档保留在待对账集合中，保留流水尾部便于排查
+        retry.forEach(stockLedgerService::markDirty);
+        if (checked > 0) {
+            log.info("库存流水对账完成，对账票档数：{}，不一致票档数：{}", checked, inconsistent.size());
         }
+        return inconsistent;
     }
-}
\ No newline at end of file
+}
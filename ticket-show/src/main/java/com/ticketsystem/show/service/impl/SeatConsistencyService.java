@@ -2,6 +2,8 @@ package com.ticketsystem.show.service.impl;
 
 import com.ticketsystem.show.entity.Seat;
 import com.ticketsystem.show.mapper.SeatMapper;
+import com.ticketsystem.show.service.SeatLockExpiryService;
+import com.ticketsystem.show.service.SeatStateIndexService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RScript;
@@ -25,6 +27,8 @@ public class SeatConsistencyService {
 
     private final RedissonClient redissonClient;
     private final SeatMapper seatMapper;
+    private final SeatStateIndexService seatStateIndexService;
+    private final SeatLockExpiryService seatLockExpiryService;
 
     private static final String SEAT_LOCK_PREFIX = "seat_lock:";
     private static final String SEAT_SYNC_PREFIX = "seat_sync:";
@@ -104,7 +108,10 @@ public class SeatConsistencyService {
                 return false;
             }
             
-            // 3. 异步验证数据一致性
+            // 3. 登记到锁过期队列，数据库锁定与Redis锁同为5分钟
+            seatLockExpiryService.track(seatIds, userId, System.currentTimeMillis() + LOCK_EXPIRE_TIME * 1000L);
+
+            // 4. 异步验证数据一致性
             asyncVerifyConsistency(seatIds, userId);
             
             log.info("原子性锁定座位成功，用户ID: {}, 座位IDs: {}", userId, seatIds);
@@ -128,6 +135,7 @@ public class SeatConsistencyService {
         try {
             // 1. 释放数据库锁定
             int releasedCount = seatMapper.releaseSeats(seatIds, userId);
+            seatLockExpiryService.untrack(seatIds, userId);
             
             // 2. 释放Redis锁（即使数据库释放失败也要释放Redis锁）
             releaseAllRedisLocksWithPrefix(seatIds, lockValue);
@@ -145,8 +153,8 @@ public class SeatConsistencyService {
      * 使用增强Lua脚本尝试Redis锁定
      */
     private boolean tryRedisLockWithSync(Long seatId, String lockValue, String timestamp) {
-        String lockKey = SEAT_LOCK_PREFIX + seatId;
-        String syncKey = SEAT_SYNC_PREFIX + seatId;
+        String lockKey = seatStateIndexService.lockKey(seatId);
+        String syncKey = syncKey(lockKey);
         
         // 确保所有参数都是字符串类型
         String lockValueStr = String.valueOf(lockValue);
@@ -191,8 +199,8 @@ public class SeatConsistencyService {
      */
     private void releaseAllRedisLocksWithPrefix(List<Long> seatIds, String lockValuePrefix) {
         for (Long seatId : seatIds) {
-            String lockKey = SEAT_LOCK_PREFIX + seatId;
-            String syncKey = SEAT_SYNC_PREFIX + seatId;
+            String lockKey = seatStateIndexService.lockKey(seatId);
+            String syncKey = syncKey(lockKey);
             
             try {
                 // 使用前缀匹配的释放脚本
@@ -229,8 +237,8 @@ public class SeatConsistencyService {
      * 释放单个Redis锁
      */
     private void releaseRedisLockWithSync(Long seatId, String lockValue) {
-        String lockKey = SEAT_LOCK_PREFIX + seatId;
-        String syncKey = SEAT_SYNC_PREFIX + seatId;
+        String lockKey = seatStateIndexService.lockKey(seatId);
+        String syncKey = syncKey(lockKey);
         
         try {
             // 确保lockValue是字符串类型
@@ -269,8 +277,8 @@ public class SeatConsistencyService {
      * 验证并修复单个座位的数据一致性
      */
     public void verifyAndRepairConsistency(Long seatId, Long userId) {
-        String lockKey = SEAT_LOCK_PREFIX + seatId;
-        String syncKey = SEAT_SYNC_PREFIX + seatId;
+        String lockKey = seatStateIndexService.lockKey(seatId);
+        String syncKey = syncKey(lockKey);
         
         try {
             // 1. 检查Redis状态
@@ -359,12 +367,19 @@ public class SeatConsistencyService {
         }
     }
 
+    /**
+     * 同步标记key，与座位锁共用 {areaId} hash tag（seat_sync:{areaId}:seatId）
+     */
+    private static String syncKey(String lockKey) {
+        return SEAT_SYNC_PREFIX + lockKey.substring(SEAT_LOCK_PREFIX.length());
+    }
+
     /**
      * 获取座位锁定状态（用于监控和调试）
      */
     public String getSeatLockStatus(Long seatId) {
-        String lockKey = SEAT_LOCK_PREFIX + seatId;
-        String syncKey = SEAT_SYNC_PREFIX + seatId;
+        String lockKey = seatStateIndexService.lockKey(seatId);
+        String syncKey = syncKey(lockKey);
         
         try {
             List<Object> status = redissonClient.getScript().eval(
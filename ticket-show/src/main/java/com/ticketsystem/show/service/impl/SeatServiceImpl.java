@@ -1,6 +1,7 @@
 package com.ticketsystem.show.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.ticketsystem.show.dto.SeatAreaCounts;
 import com.ticketsystem.show.entity.Seat;
 import com.ticketsystem.show.entity.SeatArea;
 import com.ticketsystem.show.mapper.SeatMapper;
@@ -10,6 +11,9 @@ import com.ticketsystem.show.service.impl.SeatConsistencyService;
 import com.ticketsystem.show.service.AtomicSeatLockService;
 import com.ticketsystem.show.service.RedissonSeatLockService;
 import com.ticketsystem.show.service.DataSyncService;
+import com.ticketsystem.show.service.SeatStateIndexService;
+import com.ticketsystem.show.service.SeatAvailabilityService;
+import com.ticketsystem.show.service.SeatLockExpiryService;
 import com.ticketsystem.show.vo.SeatAreaVO;
 import com.ticketsystem.show.vo.SeatLayoutVO;
 import com.ticketsystem.show.vo.SeatVO;
@@ -19,10 +23,13 @@ import org.springframework.beans.BeanUtils;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 /**
@@ -39,6 +46,12 @@ public class SeatServiceImpl implements SeatService {
     private final AtomicSeatLockService atomicSeatLockService;
     private final RedissonSeatLockService redissonSeatLockService;
     private final DataSyncService dataSyncService;
+    private final SeatStateIndexService seatStateIndexService;
+    private final SeatAvailabilityService seatAvailabilityService;
+    private final SeatLockExpiryService seatLockExpiryService;
+
+    // 数据库锁定有效期（与SeatMapper.lockSeats中的lock_expire_time一致）
+    private static final long DB_LOCK_EXPIRE_MS = 5 * 60 * 1000L;
 
     @Override
     public List<SeatAreaVO> getAvailableAreas(Integer showType, Long showId) {
@@ -49,6 +62,10 @@ public class SeatServiceImpl implements SeatService {
             List<SeatArea> seatAreas = seatAreaMapper.selectAreasByShowType(showType);
             log.info("根据机位类型{}查询到的座位区域数量: {}", showType, seatAreas.size());
             
+            // 一次批量读取所有区域的座位计数
+            Map<Long, SeatAreaCounts> counts = seatAvailabilityService.getCounts(
+                    seatAreas.stream().map(SeatArea::getId).collect(Collectors.toList()));
+            
             // 转换为SeatAreaVO并设置座位统计信息
             List<SeatAreaVO> areas = seatAreas.stream()
                     .map(seatArea -> {
@@ -61,11 +78,11 @@ public class SeatServiceImpl implements SeatService {
                         areaVO.setPrice(seatArea.getPrice());
                         areaVO.setNightPrice(seatArea.getPrice().add(seatArea.getNightPriceAddon()));
                         
-                        // 查询该区域的座位统计信息
-                        int totalSeats = seatMapper.countAvailableSeatsByAreaId(seatArea.getId());
-                        areaVO.setTotalSeats(totalSeats);
-                        areaVO.setAvailableSeats(totalSeats); // 简化处理，实际可用座位数
-                        areaVO.setSelectable(totalSeats > 0);
+                        // 可售座位总数及当前空闲（未锁定、未售出）座位数
+                        SeatAreaCounts areaCounts = counts.get(seatArea.getId());
+                        areaVO.setTotalSeats(areaCounts.getSellable());
+                        areaVO.setAvailableSeats(areaCounts.getFree());
+                        areaVO.setSelectable(areaCounts.getFree() > 0);
                         
                         return areaVO;
                     })
@@ -82,9 +99,92 @@ public class SeatServiceImpl implements SeatService {
 
     @Override
     public SeatLayoutVO getSeatLayout(Long areaId, Long showId, Long sessionId, Long currentUserId) {
-        log.info("获取座位布局，区域ID: {}, 演出ID: {}, 场次ID: {}, 当前用户ID: {}", 
-                 areaId, showId, sessionId, currentUserId);
+        return getSeatLayout(areaId, showId, sessionId, currentUserId, null);
+    }
+
+    @Override
+    public SeatLayoutVO getSeatLayout(Long areaId, Long showId, Long sessionId, Long currentUserId, Long sinceVersion) {
+        log.info("获取座位布局，区域ID: {}, 演出ID: {}, 场次ID: {}, 当前用户ID: {}, 起始版本: {}", 
+                 areaId, showId, sessionId, currentUserId, sinceVersion);
+        
+        if (seatStateIndexService.isEnabled()) {
+            try {
+                return buildLayoutFromIndex(areaId, currentUserId, sinceVersion);
+            } catch (Exception e) {
+                log.warn("读取座位状态位图失败，回退到数据库查询，区域ID: {}", areaId, e);
+            }
+        }
+        return buildLayoutFromDatabase(areaId, currentUserId);
+    }
+
+    /**
+     * 缓存的静态座位几何信息 + 一次Redis读取的座位状态位图
+     * sinceVersion对应的快照仍在本节点缓存中时只返回变化的座位，否则返回完整布局
+     */
+    private SeatLayoutVO buildLayoutFromIndex(Long areaId, Long currentUserId, Long sinceVersion) {
+        SeatStateIndexService.AreaSnapshot snapshot = seatStateIndexService.snapshot(areaId);
+        Set<Long> changed = sinceVersion != null ? seatStateIndexService.changedSince(snapshot, sinceVersion) : null;
+        
+        List<SeatVO> seatVOs = new ArrayList<>(changed != null ? changed.size() : snapshot.getGeometry().size());
+        int available = 0;
+        for (Seat seat : snapshot.getGeometry().getSeats()) {
+            int state = snapshot.stateOf(seat.getId());
+            if (state == SeatStateIndexService.STATE_FREE) {
+                available++;
+            }
+            if (changed != null && !changed.contains(seat.getId())) {
+                continue;
+            }
+            SeatVO vo = new SeatVO();
+            vo.setId(seat.getId());
+            vo.setSeatCode(seat.getSeatCode());
+            vo.setRowNum(seat.getRowNum());
+            vo.setSeatNum(seat.getSeatNum());
+            vo.setXCoordinate(seat.getXCoordinate());
+            vo.setYCoordinate(seat.getYCoordinate());
+            vo.setSeatType(seat.getSeatType());
+            vo.setStatus(seat.getStatus());
+            vo.setLockedByCurrentUser(false);
+            
+            if (state == SeatStateIndexService.STATE_LOCKED) {
+                vo.setLockStatus(1);
+                SeatStateIndexService.SeatLockInfo lock = snapshot.lockOf(seat.getId());
+                if (lock != null) {
+                    vo.setLockUserId(lock.getUserId());
+                    vo.setLockTime(toDateTime(lock.getLockTime()).toString());
+                    vo.setLockExpireTime(toDateTime(lock.getExpireAt()).toString());
+                    vo.setLockedByCurrentUser(lock.getUserId().equals(currentUserId));
+                }
+            } else if (state == SeatStateIndexService.STATE_SOLD) {
+                vo.setLockStatus(2);
+            } else {
+                vo.setLockStatus(0);
+            }
+            seatVOs.add(vo);
+        }
         
+        SeatLayoutVO layoutVO = new SeatLayoutVO();
+        layoutVO.setAreaId(areaId);
+        layoutVO.setSeats(seatVOs);
+        layoutVO.setTotalSeats(snapshot.getGeometry().size());
+        layoutVO.setAvailableSeats(available);
+        layoutVO.setVersion(snapshot.getVersion());
+        layoutVO.setDelta(changed != null);
+        
+        log.debug("座位布局构建完成（位图），版本: {}, 增量: {}, 返回座位数: {}, 可用座位数: {}", 
+                 layoutVO.getVersion(), layoutVO.getDelta(), seatVOs.size(), layoutVO.getAvailableSeats());
+        
+        return layoutVO;
+    }
+
+    private static LocalDateTime toDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+
+    /**
+     * 直接查询座位表构建布局（位图不可用时）
+     */
+    private SeatLayoutVO buildLayoutFromDatabase(Long areaId, Long currentUserId) {
         // 查询座位数据
         LambdaQueryWrapper<Seat> queryWrapper = new LambdaQueryWrapper<>();
         queryWrapper.eq(Seat::getAreaId, areaId)
@@ -149,12 +249,9 @@ public class SeatServiceImpl implements SeatService {
                 return lockSeatsDatabaseOnly(seatIds, userId);
             }
             
-            // 使用Redisson RLock原子化锁定
-            log.info("尝试使用Redisson RLock原子化锁定座位");
+            // 一次脚本调用锁定全部座位，任何一个座位不可锁定时全部不锁定，无需逐个回滚
             Map<Long, Boolean> results = redissonSeatLockService.atomicLockSeats(seatIds, userId);
-            log.info("Redisson RLock锁定结果: {}", results);
             
-            // 检查是否所有座位都锁定成功
             boolean allSuccess = results.values().stream().allMatch(Boolean::booleanValue);
             
             if (allSuccess) {
@@ -162,13 +259,7 @@ public class SeatServiceImpl implements SeatService {
                 dataSyncService.batchSyncSeatLockToDatabase(seatIds, userId);
                 log.info("座位锁定成功，用户ID: {}, 座位IDs: {}", userId, seatIds);
             } else {
-                // 部分失败，释放已锁定的座位
-                for (Map.Entry<Long, Boolean> entry : results.entrySet()) {
-                    if (entry.getValue()) {
-                        redissonSeatLockService.atomicUnlockSeat(entry.getKey(), userId);
-                    }
-                }
-                log.warn("座位锁定部分失败，用户ID: {}, 座位IDs: {}, 结果: {}", userId, seatIds, results);
+                log.warn("座位锁定失败，用户ID: {}, 座位IDs: {}", userId, seatIds);
             }
             
             return allSuccess;
@@ -191,11 +282,10 @@ public class SeatServiceImpl implements SeatService {
             // 检查是否所有座位都解锁成功
             boolean allSuccess = results.values().stream().allMatch(Boolean::booleanValue);
             
+            // 写回缓冲按Redis最新状态批量同步，部分失败时已解锁的座位同样写回
+            dataSyncService.batchSyncSeatUnlockToDatabase(seatIds);
+            
             if (allSuccess) {
-                // 异步同步到数据库
-                for (Long seatId : seatIds) {
-                    dataSyncService.syncSeatUnlockToDatabase(seatId);
-                }
                 log.info("座位解锁成功，用户ID: {}, 座位IDs: {}", userId, seatIds);
             } else {
                 log.warn("座位解锁部分失败，用户ID: {}, 座位IDs: {}, 结果: {}", userId, seatIds, results);
@@ -251,6 +341,8 @@ public class SeatServiceImpl implements SeatService {
                 return false;
             }
             
+            // 登记到锁过期队列，到期后按队列释放，不依赖低频的全表清理
+            seatLockExpiryService.track(seatIds, userId, System.currentTimeMillis() + DB_LOCK_EXPIRE_MS);
             log.info("数据库锁定成功，用户ID: {}, 座位IDs: {}, 锁定数量: {}", userId, seatIds, lockedCount);
             return true;
             
@@ -269,6 +361,7 @@ public class SeatServiceImpl implements SeatService {
         
         try {
             int releasedCount = seatMapper.releaseSeats(seatIds, userId);
+            seatLockExpiryService.untrack(seatIds, userId);
             
             if (releasedCount != seatIds.size()) {
                 log.warn("数据库释放失败，期望释放: {}, 实际释放: {}", seatIds.size(), releasedCount);
@@ -1,14 +1,23 @@
 package com.ticketsystem.show.service.impl;
 
 import com.ticketsystem.common.exception.BusinessException;
+import com.ticketsystem.show.dto.StockReserveItem;
 import com.ticketsystem.show.entity.TicketStock;
 import com.ticketsystem.show.mapper.TicketStockMapper;
-import com.ticketsystem.show.service.RedisStockService;
+import com.ticketsystem.show.service.StockEngine;
+import com.ticketsystem.show.service.StockGroupCommitter;
 import com.ticketsystem.show.service.TicketStockService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * 票档库存服务实现类
@@ -20,167 +29,68 @@ import org.springframework.transaction.annotation.Transactional;
 public class TicketStockServiceImpl implements TicketStockService {
 
     private final TicketStockMapper ticketStockMapper;
-    private final RedisStockService redisStockService;
-    
-    // 乐观锁重试次数
-    private static final int MAX_RETRY_TIMES = 3;
-    // 重试间隔（毫秒）
-    private static final long RETRY_INTERVAL = 50;
+    private final StockEngine stockEngine;
+    private final StockGroupCommitter stockGroupCommitter;
 
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public Boolean lockStock(Long ticketId, Integer quantity) {
         if (quantity <= 0) {
             throw new BusinessException("锁定数量必须大于0");
         }
 
-        for (int i = 0; i < MAX_RETRY_TIMES; i++) {
-            try {
-                // 获取当前库存信息
-                TicketStock stock = ticketStockMapper.selectByTicketId(ticketId);
-                if (stock == null) {
-                    throw new BusinessException("票档库存信息不存在");
-                }
-
-                // 检查可用库存
-                if (!stock.hasEnoughStock(quantity)) {
-                    log.warn("库存不足，票档ID：{}，可用库存：{}，请求锁定：{}", 
-                            ticketId, stock.getAvailableStock(), quantity);
-                    return false;
-                }
-
-                // 使用乐观锁锁定库存
-                int result = ticketStockMapper.lockStockWithOptimisticLock(
-                        ticketId, quantity, stock.getVersion());
-                
-                if (result > 0) {
-                    log.info("成功锁定库存，票档ID：{}，锁定数量：{}，重试次数：{}", 
-                            ticketId, quantity, i);
-                    return true;
-                } else {
-                    // 乐观锁冲突，准备重试
-                    log.debug("乐观锁冲突，准备重试，票档ID：{}，重试次数：{}", ticketId, i + 1);
-                    if (i < MAX_RETRY_TIMES - 1) {
-                        Thread.sleep(RETRY_INTERVAL);
-                    }
-                }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new BusinessException("锁定库存被中断");
-            } catch (Exception e) {
-                log.error("锁定库存异常，票档ID：{}，重试次数：{}", ticketId, i, e);
-                if (i == MAX_RETRY_TIMES - 1) {
-                    throw e;
-                }
-            }
+        // 同一票档的并发请求合并为一次条件更新，不再逐个乐观锁重试
+        boolean result = stockGroupCommitter.submit(ticketId, StockGroupCommitter.Op.LOCK, quantity);
+        if (result) {
+            log.info("成功锁定库存，票档ID：{}，锁定数量：{}", ticketId, quantity);
+        } else {
+            log.warn("锁定库存失败，票档ID：{}，锁定数量：{}", ticketId, quantity);
         }
-
-        log.warn("锁定库存失败，已达到最大重试次数，票档ID：{}，锁定数量：{}", ticketId, quantity);
-        return false;
+        return result;
     }
 
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public Boolean unlockStock(Long ticketId, Integer quantity) {
         if (quantity <= 0) {
             throw new BusinessException("释放数量必须大于0");
         }
 
-        for (int i = 0; i < MAX_RETRY_TIMES; i++) {
-            try {
-                // 获取当前库存信息
-                TicketStock stock = ticketStockMapper.selectByTicketId(ticketId);
-                if (stock == null) {
-                    throw new BusinessException("票档库存信息不存在");
-                }
-
-                // 检查锁定库存是否足够
-                if (stock.getLockedStock() < quantity) {
-                    log.warn("锁定库存不足，票档ID：{}，锁定库存：{}，请求释放：{}", 
-                            ticketId, stock.getLockedStock(), quantity);
-                    return false;
-                }
-
-                // 使用乐观锁释放库存
-                int result = ticketStockMapper.unlockStockWithOptimisticLock(
-                        ticketId, quantity, stock.getVersion());
-                
-                if (result > 0) {
-                    log.info("成功释放库存，票档ID：{}，释放数量：{}，重试次数：{}", 
-                            ticketId, quantity, i);
-                    return true;
-                } else {
-                    // 乐观锁冲突，准备重试
-                    log.debug("乐观锁冲突，准备重试，票档ID：{}，重试次数：{}", ticketId, i + 1);
-                    if (i < MAX_RETRY_TIMES - 1) {
-                        Thread.sleep(RETRY_INTERVAL);
-                    }
-                }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new BusinessException("释放库存被中断");
-            } catch (Exception e) {
-                log.error("释放库存异常，票档ID：{}，重试次数：{}", ticketId, i, e);
-                if (i == MAX_RETRY_TIMES - 1) {
-                    throw e;
-                }
-            }
+        boolean result = stockGroupCommitter.submit(ticketId, StockGroupCommitter.Op.UNLOCK, quantity);
+        if (result) {
+            log.info("成功释放库存，票档ID：{}，释放数量：{}", ticketId, quantity);
+        } else {
+            log.warn("释放库存失败，票档ID：{}，释放数量：{}", ticketId, quantity);
         }
-
-        log.warn("释放库存失败，已达到最大重试次数，票档ID：{}，释放数量：{}", ticketId, quantity);
-        return false;
+        return result;
     }
 
     @Override
-    @Transactional(rollbackFor = Exception.class)
     public Boolean confirmStock(Long ticketId, Integer quantity) {
         if (quantity <= 0) {
             throw new BusinessException("确认数量必须大于0");
         }
 
-        for (int i = 0; i < MAX_RETRY_TIMES; i++) {
-            try {
-                // 获取当前库存信息
-                TicketStock stock = ticketStockMapper.selectByTicketId(ticketId);
-                if (stock == null) {
-                    throw new BusinessException("票档库存信息不存在");
-                }
-
-                // 检查锁定库存是否足够
-                if (stock.getLockedStock() < quantity) {
-                    log.warn("锁定库存不足，票档ID：{}，锁定库存：{}，请求确认：{}", 
-                            ticketId, stock.getLockedStock(), quantity);
-                    return false;
-                }
-
-                // 使用乐观锁确认库存
-                int result = ticketStockMapper.confirmStockWithOptimisticLock(
-                        ticketId, quantity, stock.getVersion());
-                
-                if (result > 0) {
-                    log.info("成功确认库存，票档ID：{}，确认数量：{}，重试次数：{}", 
-                            ticketId, quantity, i);
-                    return true;
-                } else {
-                    // 乐观锁冲突，准备重试
-                    log.debug("乐观锁冲突，准备重试，票档ID：{}，重试次数：{}", ticketId, i + 1);
-                    if (i < MAX_RETRY_TIMES - 1) {
-                        Thread.sleep(RETRY_INTERVAL);
-                    }
-                }
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                throw new BusinessException("确认库存被中断");
-            } catch (Exception e) {
-                log.error("确认库存异常，票档ID：{}，重试次数：{}", ticketId, i, e);
-                if (i == MAX_RETRY_TIMES - 1) {
-                    throw e;
-                }
-            }
+        boolean result = stockGroupCommitter.submit(ticketId, StockGroupCommitter.Op.CONFIRM, quantity);
+        if (result) {
+            log.info("成功确认库存，票档ID：{}，确认数量：{}", ticketId, quantity);
+        } else {
+            log.warn("确认库存失败，票档ID：{}，确认数量：{}", ticketId, quantity);
         }
+        return result;
+    }
 
-        log.warn("确认库存失败，已达到最大重试次数，票档ID：{}，确认数量：{}", ticketId, quantity);
-        return false;
+    @Override
+    public Boolean unconfirmStock(Long ticketId, Integer quantity) {
+        if (quantity <= 0) {
+            throw new BusinessException("撤销数量必须大于0");
+        }
+
+        boolean result = stockGroupCommitter.submit(ticketId, StockGroupCommitter.Op.UNCONFIRM, quantity);
+        if (result) {
+            log.info("成功撤销库存确认，票档ID：{}，撤销数量：{}", ticketId, quantity);
+        } else {
+            log.warn("撤销库存确认失败，票档ID：{}，撤销数量：{}", ticketId, quantity);
+        }
+        return result;
     }
 
     @Override
@@ -243,19 +153,24 @@ public class TicketStockServiceImpl implements TicketStockService {
     
     @Override
     public Integer predeductStockFromRedis(Long ticketId, Integer quantity) {
+        return predeductStockFromRedis(ticketId, quantity, null);
+    }
+
+    @Override
+    public Integer predeductStockFromRedis(Long ticketId, Integer quantity, String orderNo) {
         if (quantity <= 0) {
             throw new BusinessException("扣减数量必须大于0");
         }
         
         // 先尝试从Redis预减
-        Integer result = redisStockService.predeductStock(ticketId, quantity);
+        Integer result = stockEngine.predeductStock(ticketId, quantity, orderNo);
         
         // 如果Redis中不存在库存信息，从数据库同步
         if (result == -1) {
             log.info("Redis中不存在库存信息，从数据库同步，票档ID：{}", ticketId);
             if (syncStockToRedis(ticketId)) {
                 // 同步成功后重新尝试预减
-                result = redisStockService.predeductStock(ticketId, quantity);
+                result = stockEngine.predeductStock(ticketId, quantity, orderNo);
             }
         }
         
@@ -263,8 +178,145 @@ public class TicketStockServiceImpl implements TicketStockService {
         return result;
     }
     
+    @Override
+    public Integer leaseStockFromRedis(Long ticketId, Integer quantity, String owner, Integer settled) {
+        if (quantity <= 0) {
+            throw new BusinessException("租借数量必须大于0");
+        }
+        validateLeaseOwner(owner, settled);
+        
+        Integer result = stockEngine.leaseStock(ticketId, quantity, owner, settled);
+        
+        // 如果Redis中不存在库存信息，从数据库同步
+        if (result == -1) {
+            log.info("Redis中不存在库存信息，从数据库同步，票档ID：{}", ticketId);
+            if (syncStockToRedis(ticketId)) {
+                result = stockEngine.leaseStock(ticketId, quantity, owner, settled);
+            }
+        }
+        
+        log.info("Redis租借库存结果，票档ID：{}，请求数量：{}，租借数量：{}，节点：{}，已售配额：{}",
+                ticketId, quantity, result, owner, settled);
+        return result;
+    }
+
+    @Override
+    public Integer returnLeasedStockToRedis(Long ticketId, Integer quantity, String owner, Integer settled) {
+        if (quantity < 0) {
+            throw new BusinessException("归还数量不能小于0");
+        }
+        validateLeaseOwner(owner, settled);
+
+        Integer result = stockEngine.returnLeasedStock(ticketId, quantity, owner, settled);
+
+        // Redis中不存在库存信息时从数据库同步，同步结果已扣除仍记录在册的租借配额
+        if (result == -1) {
+            log.info("Redis中不存在库存信息，从数据库同步，票档ID：{}", ticketId);
+            if (syncStockToRedis(ticketId)) {
+                result = stockEngine.returnLeasedStock(ticketId, quantity, owner, settled);
+            }
+        }
+
+        log.info("Redis归还租借库存结果，票档ID：{}，归还数量：{}，实际归还：{}，节点：{}，已售配额：{}",
+                ticketId, quantity, result, owner, settled);
+        return result;
+    }
+
+    private void validateLeaseOwner(String owner, Integer settled) {
+        if (!StringUtils.hasText(owner)) {
+            throw new BusinessException("租借节点标识不能为空");
+        }
+        if (settled == null || settled < 0) {
+            throw new BusinessException("已售配额不能小于0");
+        }
+    }
+    
+    @Override
+    public List<StockReserveItem> predeductStocksFromRedis(List<StockReserveItem> items, String orderNo) {
+        Map<Long, Integer> quantities = mergeItems(items);
+
+        Map<Long, Integer> results = stockEngine.predeductStocks(quantities, orderNo);
+
+        // 有票档在Redis中不存在时，从数据库同步后整体重试一次
+        boolean missing = false;
+        boolean synced = true;
+        for (Map.Entry<Long, Integer> entry : results.entrySet()) {
+            if (entry.getValue() == -1) {
+                missing = true;
+                log.info("Redis中不存在库存信息，从数据库同步，票档ID：{}", entry.getKey());
+                synced &= syncStockToRedis(entry.getKey());
+            }
+        }
+        if (missing && synced) {
+            results = stockEngine.predeductStocks(quantities, orderNo);
+        }
+
+        log.info("Redis多票档预减库存结果，订单号：{}，票档：{}，结果：{}", orderNo, quantities, results);
+        return toItems(quantities, results);
+    }
+
+    @Override
+    public List<StockReserveItem> rollbackStocksToRedis(List<StockReserveItem> items, String orderNo) {
+        Map<Long, Integer> quantities = mergeItems(items);
+
+        // 一次查询所有票档的总库存作为最大限制
+        Map<Long, Integer> maxStocks = new HashMap<>();
+        for (TicketStock stock : ticketStockMapper.selectTotalStocks(quantities.keySet())) {
+            maxStocks.put(stock.getTicketId(), stock.getTotalStock());
+        }
+
+        Map<Long, Integer> results = new LinkedHashMap<>();
+        quantities.forEach((ticketId, quantity) -> {
+            Integer maxStock = maxStocks.get(ticketId);
+            if (maxStock == null) {
+                log.warn("票档库存信息不存在，无法回滚，票档ID：{}", ticketId);
+                results.put(ticketId, 0);
+                return;
+            }
+            Integer result = stockEngine.rollbackStock(ticketId, quantity, maxStock, orderNo);
+            results.put(ticketId, result != null && result == 1 ? 1 : 0);
+        });
+
+        log.info("Redis多票档库存回滚结果，订单号：{}，票档：{}，结果：{}", orderNo, quantities, results);
+        return toItems(quantities, results);
+    }
+
+    /**
+     * 校验并按票档合并数量，保持请求顺序
+     */
+    private Map<Long, Integer> mergeItems(List<StockReserveItem> items) {
+        if (items == null || items.isEmpty()) {
+            throw new BusinessException("票档列表不能为空");
+        }
+        Map<Long, Integer> quantities = new LinkedHashMap<>();
+        for (StockReserveItem item : items) {
+            if (item.getTicketId() == null || item.getQuantity() == null || item.getQuantity() <= 0) {
+                throw new BusinessException("票档ID不能为空且数量必须大于0");
+            }
+            quantities.merge(item.getTicketId(), item.getQuantity(), Integer::sum);
+        }
+        return quantities;
+    }
+
+    private List<StockReserveItem> toItems(Map<Long, Integer> quantities, Map<Long, Integer> results) {
+        List<StockReserveItem> items = new ArrayList<>(quantities.size());
+        quantities.forEach((ticketId, quantity) -> {
+            StockReserveItem item = new StockReserveItem();
+            item.setTicketId(ticketId);
+            item.setQuantity(quantity);
+            item.setResult(results.getOrDefault(ticketId, -1));
+            items.add(item);
+        });
+        return items;
+    }
+
     @Override
     public Boolean rollbackStockToRedis(Long ticketId, Integer quantity) {
+        return rollbackStockToRedis(ticketId, quantity, null);
+    }
+
+    @Override
+    public Boolean rollbackStockToRedis(Long ticketId, Integer quantity, String orderNo) {
         if (quantity <= 0) {
             throw new BusinessException("回滚数量必须大于0");
         }
@@ -277,7 +329,7 @@ public class TicketStockServiceImpl implements TicketStockService {
         }
         
         Integer maxStock = stock.getTotalStock();
-        Integer result = redisStockService.rollbackStock(ticketId, quantity, maxStock);
+        Integer result = stockEngine.rollbackStock(ticketId, quantity, maxStock, orderNo);
         
         boolean success = result != null && result == 1;
         log.info("Redis库存回滚结果，票档ID：{}，回滚数量：{}，结果：{}", ticketId, quantity, success);
@@ -294,11 +346,11 @@ public class TicketStockServiceImpl implements TicketStockService {
                 return false;
             }
             
-            // 计算可用库存
-            Integer availableStock = stock.getAvailableStock();
+            // 计算可用库存，订单节点持有的租借配额已从Redis扣除，不能再计入
+            Integer availableStock = Math.max(0, stock.getAvailableStock() - stockEngine.getLeasedStock(ticketId));
             
             // 同步到Redis（强制更新）
-            Boolean result = redisStockService.initStock(ticketId, availableStock, true);
+            Boolean result = stockEngine.initStock(ticketId, availableStock, true);
             
             log.info("同步库存到Redis，票档ID：{}，可用库存：{}，结果：{}", ticketId, availableStock, result);
             return result;
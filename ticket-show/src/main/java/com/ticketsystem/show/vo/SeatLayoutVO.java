@@ -64,4 +64,14 @@ public class SeatLayoutVO {
      * 区域描述
      */
     private String description;
+
+    /**
+     * 座位状态版本号（单调递增，数据库查询兜底时为空）
+     */
+    private Long version;
+
+    /**
+     * 是否为增量结果：true时seats只包含sinceVersion之后状态变化的座位
+     */
+    private Boolean delta;
 }
\ No newline at end of file
@@ -0,0 +1,63 @@
+-- 多座位锁定Lua脚本
+-- 功能：原子性地锁定同一区域的一组座位，全部成功或全部不锁定，并同步更新所在区域的座位状态位图
+-- 所有key以 {areaId} 作为hash tag，Redis Cluster下位于同一slot
+-- 参数：
+--   KEYS[1]: 区域座位状态位图 (格式: seat:state:{areaId})，每座位2位：0-空闲，1-已锁定，2-已售，3-不可用
+--   KEYS[2]: 区域锁定明细 (格式: seat:state:{areaId}:locks)，字段为位图序号，值为 用户ID:锁定时间:过期时间
+--   KEYS[3]: 区域座位状态版本号 (格式: seat:state:{areaId}:version)，状态变化时递增
+--   KEYS[4]: 区域座位计数 (格式: seat:state:{areaId}:counts)，字段 free/locked/sold/unavailable
+--   KEYS[5..n+4]: 座位锁key (格式: seat_lock:{areaId}:seatId)
+--   ARGV[1]: 用户ID
+--   ARGV[2]: 锁定值 (格式: userId:timestamp)
+--   ARGV[3]: 锁定过期时间(秒)
+--   ARGV[4]: 锁定时间（毫秒）
+--   ARGV[5]: 锁定过期时间（毫秒）
+--   ARGV[6..n+5]: 与座位锁key一一对应的位图序号
+-- 返回值：
+--   0: 全部锁定成功（含同一用户重复锁定）
+--   i: 第i个座位已被其他用户锁定、已售或不可用，所有座位均未修改
+
+local count = #KEYS - 4
+local indexed = redis.call('EXISTS', KEYS[1]) == 1
+local states = {}
+
+-- 先检查全部座位，任何一个不可锁定即返回
+for i = 1, count do
+    if indexed then
+        local state = redis.call('BITFIELD', KEYS[1], 'GET', 'u2', '#' .. ARGV[i + 5])[1]
+        if state >= 2 then
+            return i
+        end
+        states[i] = state
+    end
+    local current = redis.call('GET', KEYS[i + 4])
+    if current and string.match(current, '^([^:]+):') ~= ARGV[1] then
+        return i
+    end
+end
+
+local ops = {}
+local newlyLocked = 0
+for i = 1, count do
+    redis.call('SET', KEYS[i + 4], ARGV[2], 'EX', tonumber(ARGV[3]))
+    -- 位图未初始化时不写入，由首次读取时整体初始化
+    if indexed then
+        ops[#ops + 1] = 'SET'
+        ops[#ops + 1] = 'u2'
+        ops[#ops + 1] = '#' .. ARGV[i + 5]
+        ops[#ops + 1] = 1
+        redis.call('HSET', KEYS[2], ARGV[i + 5], ARGV[1] .. ':' .. ARGV[4] .. ':' .. ARGV[5])
+        if states[i] == 0 then
+            newlyLocked = newlyLocked + 1
+        end
+    end
+end
+if indexed then
+    redis.call('BITFIELD', KEYS[1], unpack(ops))
+    if newlyLocked > 0 then
+        redis.call('HINCRBY', KEYS[4], 'free', -newlyLocked)
+        redis.call('HINCRBY', KEYS[4], 'locked', newlyLocked)
+    end
+    redis.call('INCR', KEYS[3])
+end
+return 0
@@ -0,0 +1,15 @@
+-- 批量取出到期座位锁Lua脚本
+-- 功能：按到期时间顺序取出一批已到期的座位锁并从队列删除，多个节点并发执行时每项只会被一个节点取到
+-- 参数：
+--   KEYS[1]: 座位锁过期队列（有序集合，成员为 座位ID:用户ID，分数为到期时间毫秒）
+--   ARGV[1]: 到期时间上限（毫秒）
+--   ARGV[2]: 本批最大数量
+-- 返回值：本次取出的成员列表
+
+local members = redis.call('ZRANGEBYSCORE', KEYS[1], '-inf', ARGV[1], 'LIMIT', 0, tonumber(ARGV[2]))
+
+if #members > 0 then
+    redis.call('ZREM', KEYS[1], unpack(members))
+end
+
+return members
@@ -0,0 +1,58 @@
+-- 座位时段确认Lua脚本
+-- 功能：把用户的临时占用转为已确认（不再过期）；占用已过期被清理但时段仍空闲时重新占用，
+--       任一时段已被他人占用则不做任何修改
+-- 参数：
+--   KEYS/ARGV[1]/ARGV[2] 与座位时段锁定脚本一致，ARGV[3]不使用
+-- 返回值：
+--   1: 确认成功
+--   0: 部分时段已被他人占用
+
+local userId = ARGV[1]
+local segments = #KEYS / 2
+
+local function rangeFree(key, from, to)
+    local raw = redis.call('GET', key)
+    if not raw then
+        return true
+    end
+    for i = from, to - 1 do
+        local byte = string.byte(raw, math.floor(i / 8) + 1) or 0
+        if math.floor(byte / 2 ^ (7 - i % 8)) % 2 == 1 then
+            return false
+        end
+    end
+    return true
+end
+
+-- 第一遍：检查
+local owned = {}
+for s = 1, segments do
+    local key, holdsKey = KEYS[2 * s - 1], KEYS[2 * s]
+    local from, to = tonumber(ARGV[3 * s + 1]), tonumber(ARGV[3 * s + 2])
+    local held = redis.call('HGET', holdsKey, from .. '-' .. to)
+    if held and string.match(held, '^([^:]+):') == userId then
+        owned[s] = true
+    elseif not rangeFree(key, from, to) then
+        return 0
+    end
+end
+
+-- 第二遍：确认
+for s = 1, segments do
+    local key, holdsKey = KEYS[2 * s - 1], KEYS[2 * s]
+    local from, to = tonumber(ARGV[3 * s + 1]), tonumber(ARGV[3 * s + 2])
+    if not owned[s] then
+        local ops = {}
+        for i = from, to - 1 do
+            ops[#ops + 1] = 'SET'
+            ops[#ops + 1] = 'u1'
+            ops[#ops + 1] = '#' .. i
+            ops[#ops + 1] = 1
+        end
+        redis.call('BITFIELD', key, unpack(ops))
+    end
+    redis.call('HSET', holdsKey, from .. '-' .. to, userId .. ':0')
+    redis.call('PEXPIREAT', key, ARGV[3 * s + 3])
+    redis.call('PEXPIREAT', holdsKey, ARGV[3 * s + 3])
+end
+return 1
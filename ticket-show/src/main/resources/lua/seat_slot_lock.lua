@@ -0,0 +1,88 @@
+-- 座位时段锁定Lua脚本
+-- 功能：原子性地占用座位一个或多个自然日内的连续时段（每天96个15分钟时段，每时段1位），
+--       全部时段空闲才占用，否则不做任何修改；同一用户对同一时段重复锁定时刷新过期时间
+-- 参数：
+--   KEYS[2i-1]: 第i段所在日的时段位图 (格式: seat:slots:{seatId}:{yyyyMMdd})
+--   KEYS[2i]: 第i段所在日的时段占用明细 (格式: seat:slots:{seatId}:{yyyyMMdd}:holds)，
+--             字段为 起始时段-结束时段，值为 用户ID:过期时间（毫秒，0表示已确认）
+--   ARGV[1]: 用户ID
+--   ARGV[2]: 当前时间（毫秒）
+--   ARGV[3]: 占用过期时间（毫秒）
+--   ARGV[3i+1], ARGV[3i+2], ARGV[3i+3]: 第i段的起始时段、结束时段（不含）、key过期时间（毫秒）
+-- 返回值：
+--   1: 锁定成功
+--   0: 部分时段已被占用
+
+local userId = ARGV[1]
+local now = tonumber(ARGV[2])
+local segments = #KEYS / 2
+
+local function setBits(key, from, to, value)
+    local ops = {}
+    for i = from, to - 1 do
+        ops[#ops + 1] = 'SET'
+        ops[#ops + 1] = 'u1'
+        ops[#ops + 1] = '#' .. i
+        ops[#ops + 1] = value
+    end
+    if #ops > 0 then
+        redis.call('BITFIELD', key, unpack(ops))
+    end
+end
+
+local function rangeFree(key, from, to)
+    local raw = redis.call('GET', key)
+    if not raw then
+        return true
+    end
+    for i = from, to - 1 do
+        local byte = string.byte(raw, math.floor(i / 8) + 1) or 0
+        if math.floor(byte / 2 ^ (7 - i % 8)) % 2 == 1 then
+            return false
+        end
+    end
+    return true
+end
+
+-- 清理已过期的占用
+local function purge(key, holdsKey)
+    local holds = redis.call('HGETALL', holdsKey)
+    for i = 1, #holds, 2 do
+        local expireAt = tonumber(string.match(holds[i + 1], ':(%d+)$'))
+        if expireAt and expireAt > 0 and expireAt <= now then
+            local from, to = string.match(holds[i], '^(%d+)-(%d+)$')
+            setBits(key, tonumber(from), tonumber(to), 0)
+            redis.call('HDEL', holdsKey, holds[i])
+        end
+    end
+end
+
+-- 第一遍：清理过期占用并检查，不修改
+local renew = {}
+for s = 1, segments do
+    local key, holdsKey = KEYS[2 * s - 1], KEYS[2 * s]
+    local from, to = tonumber(ARGV[3 * s + 1]), tonumber(ARGV[3 * s + 2])
+    purge(key, holdsKey)
+    local held = redis.call('HGET', holdsKey, from .. '-' .. to)
+    if held and string.match(held, '^([^:]+):') == userId then
+        renew[s] = held
+    elseif not rangeFree(key, from, to) then
+        return 0
+    end
+end
+
+-- 第二遍：全部空闲后统一占用
+for s = 1, segments do
+    local key, holdsKey = KEYS[2 * s - 1], KEYS[2 * s]
+    local from, to = tonumber(ARGV[3 * s + 1]), tonumber(ARGV[3 * s + 2])
+    if not renew[s] then
+        setBits(key, from, to, 1)
+    end
+    -- 已确认的时段不再改回临时占用
+    if not (renew[s] and string.match(renew[s], ':0$')) then
+        redis.call('HSET', holdsKey, from .. '-' .. to, userId .. ':' .. ARGV[3])
+    end
+    redis.call('PEXPIREAT', key, ARGV[3 * s + 3])
+    redis.call('PEXPIREAT', holdsKey, ARGV[3 * s + 3])
+end
+return 1
@@ -0,0 +1,29 @@
+-- 座位时段释放Lua脚本
+-- 功能：释放用户在各时段段上的占用（临时或已确认），不属于该用户的时段不受影响
+-- 参数：
+--   KEYS/ARGV[1] 与座位时段锁定脚本一致，ARGV[2]、ARGV[3]不使用
+-- 返回值：释放的时段段数
+
+local userId = ARGV[1]
+local segments = #KEYS / 2
+local released = 0
+
+for s = 1, segments do
+    local key, holdsKey = KEYS[2 * s - 1], KEYS[2 * s]
+    local from, to = tonumber(ARGV[3 * s + 1]), tonumber(ARGV[3 * s + 2])
+    local field = from .. '-' .. to
+    local held = redis.call('HGET', holdsKey, field)
+    if held and string.match(held, '^([^:]+):') == userId then
+        local ops = {}
+        for i = from, to - 1 do
+            ops[#ops + 1] = 'SET'
+            ops[#ops + 1] = 'u1'
+            ops[#ops + 1] = '#' .. i
+            ops[#ops + 1] = 0
+        end
+        redis.call('BITFIELD', key, unpack(ops))
+        redis.call('HDEL', holdsKey, field)
+        released = released + 1
+    end
+end
+return released
@@ -0,0 +1,16 @@
+-- 区域座位计数校正Lua脚本
+-- 功能：计数与位图统计结果不一致时整体覆盖；统计期间状态有变化（版本号不同）则放弃，由下一次检查处理
+-- 参数：
+--   KEYS[1]: 区域座位计数 (格式: seat:state:{areaId}:counts)
+--   KEYS[2]: 区域座位状态版本号 (格式: seat:state:{areaId}:version)
+--   ARGV[1]: 统计时的版本号
+--   ARGV[2..5]: free, locked, sold, unavailable
+-- 返回值：
+--   1: 已覆盖
+--   0: 版本号已变化，未修改
+
+if (redis.call('GET', KEYS[2]) or '0') ~= ARGV[1] then
+    return 0
+end
+redis.call('HSET', KEYS[1], 'free', ARGV[2], 'locked', ARGV[3], 'sold', ARGV[4], 'unavailable', ARGV[5])
+return 1
@@ -0,0 +1,67 @@
+-- 座位状态位图读取Lua脚本
+-- 功能：一次调用读取区域内全部座位状态及版本号，顺带把已过期的锁定标记恢复为空闲
+-- 参数：
+--   KEYS[1]: 区域座位状态位图 (格式: seat:state:{areaId})
+--   KEYS[2]: 区域锁定明细 (格式: seat:state:{areaId}:locks)
+--   KEYS[3]: 区域座位状态版本号 (格式: seat:state:{areaId}:version)
+--   KEYS[4]: 区域座位计数 (格式: seat:state:{areaId}:counts)
+--   ARGV[1]: 当前时间（毫秒）
+--   ARGV[2]: 区域座位数
+--   ARGV[3]: 调用方已缓存的版本号，没有时传空串
+-- 返回值：
+--   位图不存在时返回空数组
+--   版本号与ARGV[3]相同时返回 {'', 版本号}，调用方沿用缓存
+--   否则返回 {状态串, 版本号, 序号1, 锁定明细1, 序号2, 锁定明细2, ...}
+--   状态串按位图序号每座位一位数字：0-空闲，1-已锁定，2-已售，3-不可用
+
+if redis.call('EXISTS', KEYS[1]) == 0 then
+    return {}
+end
+
+local now = tonumber(ARGV[1])
+local count = tonumber(ARGV[2])
+local result = {'', ''}
+local expired = false
+local released = 0
+
+local locks = redis.call('HGETALL', KEYS[2])
+for i = 1, #locks, 2 do
+    local offset = locks[i]
+    local expireAt = tonumber(string.match(locks[i + 1], ':(%d+)$'))
+    if not expireAt or expireAt <= now then
+        -- 锁已随TTL过期，恢复为空闲
+        redis.call('HDEL', KEYS[2], offset)
+        local state = redis.call('BITFIELD', KEYS[1], 'GET', 'u2', '#' .. offset)[1]
+        if state == 1 then
+            redis.call('BITFIELD', KEYS[1], 'SET', 'u2', '#' .. offset, 0)
+            released = released + 1
+        end
+        expired = true
+    else
+        result[#result + 1] = offset
+        result[#result + 1] = locks[i + 1]
+    end
+end
+
+if released > 0 then
+    redis.call('HINCRBY', KEYS[4], 'locked', -released)
+    redis.call('HINCRBY', KEYS[4], 'free', released)
+end
+if expired then
+    result[2] = tostring(redis.call('INCR', KEYS[3]))
+else
+    result[2] = redis.call('GET', KEYS[3]) or '0'
+end
+if result[2] == ARGV[3] then
+    return {'', result[2]}
+end
+
+-- 每字节4个座位，高位在前，与BITFIELD的#序号一致
+local raw = redis.call('GET', KEYS[1])
+local codes = {}
+for i = 0, count - 1 do
+    local byte = string.byte(raw, math.floor(i / 4) + 1) or 0
+    codes[i + 1] = math.floor(byte / 2 ^ (6 - (i % 4) * 2)) % 4
+end
+result[1] = table.concat(codes)
+return result
@@ -0,0 +1,67 @@
+-- 座位状态位图初始化Lua脚本
+-- 功能：位图不存在时按数据库基础状态和当前座位锁整体写入，与锁定脚本互斥执行，不会漏掉并发锁定
+-- 参数：
+--   KEYS[1]: 区域座位状态位图 (格式: seat:state:{areaId})
+--   KEYS[2]: 区域锁定明细 (格式: seat:state:{areaId}:locks)
+--   KEYS[3]: 区域座位状态版本号 (格式: seat:state:{areaId}:version)，初始化后递增，不重置
+--   KEYS[4]: 区域座位计数 (格式: seat:state:{areaId}:counts)，按初始化结果整体写入
+--   KEYS[5..n+4]: 按位图序号排列的座位锁key (格式: seat_lock:{areaId}:seatId)
+--   ARGV[1]: 当前时间（毫秒）
+--   ARGV[2]: 按位图序号排列的基础状态，每座位一位数字：0-空闲，2-已售，3-不可用
+-- 返回值：
+--   1: 初始化完成
+--   0: 位图已存在，未做修改
+
+redis.replicate_commands()
+
+if redis.call('EXISTS', KEYS[1]) == 1 then
+    return 0
+end
+
+local now = tonumber(ARGV[1])
+local base = ARGV[2]
+local count = string.len(base)
+if count == 0 then
+    return 0
+end
+
+redis.call('DEL', KEYS[2])
+-- 预分配整个位图，保证读取时长度完整
+redis.call('SETBIT', KEYS[1], count * 2 - 1, 0)
+
+local ops = {}
+local totals = {0, 0, 0, 0}
+for i = 1, count do
+    local state = tonumber(string.sub(base, i, i))
+    if state == 0 then
+        local lock = redis.call('GET', KEYS[i + 4])
+        if lock then
+            lock = string.gsub(lock, '"', '')
+            local owner, lockTime = string.match(lock, '^([^:]+):(%d+)')
+            local ttl = redis.call('PTTL', KEYS[i + 4])
+            if owner and lockTime and ttl > 0 then
+                state = 1
+                redis.call('HSET', KEYS[2], i - 1, owner .. ':' .. lockTime .. ':' .. string.format('%d', now + ttl))
+            end
+        end
+    end
+    totals[state + 1] = totals[state + 1] + 1
+    if state ~= 0 then
+        ops[#ops + 1] = 'SET'
+        ops[#ops + 1] = 'u2'
+        ops[#ops + 1] = '#' .. (i - 1)
+        ops[#ops + 1] = state
+        -- 分段提交，避免unpack参数过多
+        if #ops >= 400 then
+            redis.call('BITFIELD', KEYS[1], unpack(ops))
+            ops = {}
+        end
+    end
+end
+if #ops > 0 then
+    redis.call('BITFIELD', KEYS[1], unpack(ops))
+end
+redis.call('DEL', KEYS[4])
+redis.call('HSET', KEYS[4], 'free', totals[1], 'locked', totals[2], 'sold', totals[3], 'unavailable', totals[4])
+redis.call('INCR', KEYS[3])
+return 1
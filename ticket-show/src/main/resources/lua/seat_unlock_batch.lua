@@ -0,0 +1,50 @@
+-- 多座位解锁Lua脚本
+-- 功能：原子性地释放当前用户在同一区域持有的一组座位锁，并同步更新所在区域的座位状态位图
+-- 所有key以 {areaId} 作为hash tag，Redis Cluster下位于同一slot
+-- 参数：
+--   KEYS[1]: 区域座位状态位图 (格式: seat:state:{areaId})
+--   KEYS[2]: 区域锁定明细 (格式: seat:state:{areaId}:locks)
+--   KEYS[3]: 区域座位状态版本号 (格式: seat:state:{areaId}:version)
+--   KEYS[4]: 区域座位计数 (格式: seat:state:{areaId}:counts)
+--   KEYS[5..n+4]: 座位锁key (格式: seat_lock:{areaId}:seatId)
+--   ARGV[1]: 用户ID
+--   ARGV[2..n+1]: 与座位锁key一一对应的位图序号
+-- 返回值：
+--   与座位一一对应的数组：1-解锁成功（锁不存在或已过期也视为成功），0-锁属于其他用户
+
+local count = #KEYS - 4
+local results = {}
+local changed = false
+local released = 0
+
+for i = 1, count do
+    local current = redis.call('GET', KEYS[i + 4])
+    if current and string.match(current, '^([^:]+):') ~= ARGV[1] then
+        results[i] = 0
+    else
+        if current then
+            redis.call('DEL', KEYS[i + 4])
+        end
+        -- 只清除本用户的锁定标记，锁已过期后被他人重新锁定时不受影响
+        local offset = ARGV[i + 1]
+        local lock = redis.call('HGET', KEYS[2], offset)
+        if lock and string.match(lock, '^([^:]+):') == ARGV[1] then
+            redis.call('HDEL', KEYS[2], offset)
+            local state = redis.call('BITFIELD', KEYS[1], 'GET', 'u2', '#' .. offset)[1]
+            if state == 1 then
+                redis.call('BITFIELD', KEYS[1], 'SET', 'u2', '#' .. offset, 0)
+                released = released + 1
+            end
+            changed = true
+        end
+        results[i] = 1
+    end
+end
+if released > 0 then
+    redis.call('HINCRBY', KEYS[4], 'locked', -released)
+    redis.call('HINCRBY', KEYS[4], 'free', released)
+end
+if changed then
+    redis.call('INCR', KEYS[3])
+end
+return results
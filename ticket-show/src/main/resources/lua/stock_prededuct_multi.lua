@@ -0,0 +1,70 @@
+-- 多票档预减库存Lua脚本
+-- 功能：一次调用原子性预减多个票档的库存，全部满足才扣减，否则不做任何修改
+-- 参数：
+--   KEYS[1..n]: 各票档库存缓存key（不能重复）
+--   ARGV[1]: 过期时间（秒）
+--   ARGV[2..n+1]: 对应票档的扣减数量
+-- 返回值：数组 {是否已扣减, 票档1结果, ..., 票档n结果}
+--   是否已扣减: 1-全部扣减成功, 0-未扣减
+--   票档结果: 1-库存充足, 0-库存不足, -1-库存不存在或参数错误
+
+local expireTime = tonumber(ARGV[1])
+local count = #KEYS
+
+-- 过期时间最大30天
+if not expireTime or expireTime < 0 or expireTime > 86400 * 30 then
+    local results = {0}
+    for i = 1, count do
+        results[i + 1] = -1
+    end
+    return results
+end
+
+local results = {0}
+local stocks = {}
+local applicable = true
+
+-- 第一遍：逐个检查，不修改
+for i = 1, count do
+    local quantity = tonumber(ARGV[i + 1])
+    local code = 1
+    -- 扣减数量必须为1~10000的整数
+    if not quantity or quantity <= 0 or quantity ~= math.floor(quantity) or quantity > 10000 then
+        code = -1
+    else
+        -- 兼容旧版本JSON编码写入的带引号数值
+        local raw = redis.call('GET', KEYS[i])
+        local current = raw and tonumber((string.gsub(raw, '"', '')))
+        -- 库存不能超过1000000，与单票档预减脚本一致
+        if not current or current < 0 or current ~= math.floor(current) or current > 1000000 then
+            code = -1
+        elseif current < quantity then
+            code = 0
+        else
+            stocks[i] = current - quantity
+        end
+    end
+    results[i + 1] = code
+    if code ~= 1 then
+        applicable = false
+    end
+end
+
+if not applicable then
+    return results
+end
+
+-- 第二遍：全部满足后统一扣减
+for i = 1, count do
+    if expireTime > 0 then
+        redis.call('SET', KEYS[i], stocks[i], 'EX', expireTime)
+    else
+        local ttl = redis.call('TTL', KEYS[i])
+        redis.call('SET', KEYS[i], stocks[i])
+        if ttl > 0 then
+            redis.call('EXPIRE', KEYS[i], ttl)
+        end
+    end
+end
+results[1] = 1
+return results
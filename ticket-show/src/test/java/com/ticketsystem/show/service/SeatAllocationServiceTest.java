@@ -0,0 +1,91 @@
+package com.ticketsystem.show.service;
+
+import com.ticketsystem.show.entity.Seat;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 自动选座网格单元测试
+ */
+class SeatAllocationServiceTest {
+
+    /**
+     * 5排 x 10列，第4列后为过道（横坐标跳过5）
+     */
+    private SeatAllocationService.SeatGrid buildGrid() {
+        List<Seat> seats = new ArrayList<>();
+        long id = 1;
+        for (int row = 1; row <= 5; row++) {
+            for (int col = 1; col <= 11; col++) {
+                if (col == 5) {
+                    continue;
+                }
+                Seat seat = new Seat();
+                seat.setId(id++);
+                seat.setAreaId(1L);
+                seat.setRowNum(String.valueOf(row));
+                seat.setSeatNum(String.valueOf(col));
+                seat.setXCoordinate(col);
+                seat.setYCoordinate(row);
+                seat.setStatus(1);
+                seat.setLockStatus(0);
+                seats.add(seat);
+            }
+        }
+        return new SeatAllocationService.SeatGrid(new SeatStateIndexService.AreaGeometry(1L, seats));
+    }
+
+    private static String allFree(int size) {
+        return "0".repeat(size);
+    }
+
+    private static List<Long> best(SeatAllocationService.SeatGrid grid, String states, BitSet excluded, int count) {
+        List<int[]> blocks = grid.findBest(states, excluded, count, 3, 0.6, 2.0, 3.0);
+        return blocks.isEmpty() ? List.of() : grid.seatIds(blocks.get(0));
+    }
+
+    @Test
+    void testPicksCenterOfBestRow() {
+        SeatAllocationService.SeatGrid grid = buildGrid();
+
+        // 最佳排为第3排（下标2.4取最近），过道右侧6-11列的中间块
+        List<Long> seatIds = best(grid, allFree(grid.size()), new BitSet(), 2);
+
+        assertEquals(2, seatIds.size());
+        assertEquals(seatIds.get(0) + 1, seatIds.get(1));
+        long first = seatIds.get(0);
+        assertEquals(2, (first - 1) / 10, "应分配在第3排");
+    }
+
+    @Test
+    void testBlockDoesNotCrossAisleOrTakenSeats() {
+        SeatAllocationService.SeatGrid grid = buildGrid();
+        StringBuilder states = new StringBuilder(allFree(grid.size()));
+        // 除第1排左侧1-4列外全部售出
+        for (int i = 4; i < states.length(); i++) {
+            states.setCharAt(i, '2');
+        }
+
+        assertEquals(List.of(1L, 2L, 3L, 4L), best(grid, states.toString(), new BitSet(), 4));
+        assertTrue(best(grid, states.toString(), new BitSet(), 5).isEmpty(), "过道两侧的座位不相邻");
+    }
+
+    @Test
+    void testReservedBlocksAreSkipped() {
+        SeatAllocationService.SeatGrid grid = buildGrid();
+        String states = allFree(grid.size());
+
+        List<int[]> first = grid.reserveBest(states, new BitSet(), 3, 1, 0.6, 2.0, 3.0);
+        List<int[]> second = grid.reserveBest(states, new BitSet(), 3, 1, 0.6, 2.0, 3.0);
+
+        assertNotEquals(grid.seatIds(first.get(0)), grid.seatIds(second.get(0)));
+        grid.release(first);
+        grid.release(second);
+        assertEquals(grid.seatIds(first.get(0)), best(grid, states, new BitSet(), 3));
+    }
+}
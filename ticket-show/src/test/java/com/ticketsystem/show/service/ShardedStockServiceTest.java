@@ -0,0 +1,175 @@
+package com.ticketsystem.show.service;
+
+import com.ticketsystem.common.script.LuaScriptRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 分片库存服务单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+class ShardedStockServiceTest {
+
+    @Mock
+    private RedissonClient redissonClient;
+
+    @Mock
+    private LuaScriptRegistry luaScriptRegistry;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private ShardedStockService shardedStockService;
+
+    private static final Long TICKET_ID = 1L;
+    private static final Integer QUANTITY = 3;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        shardedStockService = new ShardedStockService(redissonClient, meterRegistry, luaScriptRegistry);
+        ReflectionTestUtils.setField(shardedStockService, "defaultShards", 4);
+        ReflectionTestUtils.setField(shardedStockService, "selection", "random");
+        shardedStockService.init();
+    }
+
+    @Test
+    void testPredeductStock_OnlySelectedShard() {
+        List<Object> keys = new ArrayList<>();
+        when(luaScriptRegistry.<Long>eval(eq("stock.shard.take"), eq(RScript.Mode.READ_WRITE),
+                eq(RScript.ReturnType.INTEGER), any(List.class), eq(String.valueOf(QUANTITY)), eq("1"), anyString()))
+                .thenAnswer(invocation -> {
+                    keys.addAll(invocation.getArgument(3));
+                    return (long) QUANTITY;
+                });
+
+        assertEquals(1, shardedStockService.predeductStock(TICKET_ID, QUANTITY));
+
+        // 快路径只访问一个分片，每个分片使用自己的hash tag
+        assertEquals(1, keys.size());
+        assertTrue(new HashSet<>(Arrays.asList("stock:ticket:{1:shard:0}", "stock:ticket:{1:shard:1}",
+                "stock:ticket:{1:shard:2}", "stock:ticket:{1:shard:3}")).contains(keys.get(0)));
+        assertEquals(0.0, meterRegistry.counter("stock_shard_borrow_total").count());
+    }
+
+    @Test
+    void testPredeductStock_BorrowsShardByShard() {
+        // 选中分片全量扣减不足，逐个分片部分扣减：第一个分片拿到2，第二个拿到1
+        when(luaScriptRegistry.<Long>eval(eq("stock.shard.take"), eq(RScript.Mode.READ_WRITE),
+                eq(RScript.ReturnType.INTEGER), any(List.class), any(Object[].class)))
+                .thenReturn(0L, 2L, 1L);
+
+        assertEquals(1, shardedStockService.predeductStock(TICKET_ID, QUANTITY));
+
+        // 每次调用只涉及一个分片
+        verify(luaScriptRegistry, times(3)).eval(eq("stock.shard.take"), any(RScript.Mode.class),
+                any(RScript.ReturnType.class), argThat(keys -> keys.size() == 1), any(Object[].class));
+        assertEquals(1.0, meterRegistry.counter("stock_shard_borrow_total").count());
+        assertEquals(0.0, meterRegistry.counter("stock_shard_borrow_failure_total").count());
+    }
+
+    @Test
+    void testPredeductStock_InsufficientGivesBackBorrowed() {
+        when(luaScriptRegistry.<Long>eval(eq("stock.shard.take"), eq(RScript.Mode.READ_WRITE),
+                eq(RScript.ReturnType.INTEGER), any(List.class), any(Object[].class)))
+                .thenReturn(0L, 1L, 0L, 0L, 0L);
+        when(luaScriptRegistry.<Long>eval(eq("stock.shard.give-back"), eq(RScript.Mode.READ_WRITE),
+                eq(RScript.ReturnType.INTEGER), any(List.class), eq("1")))
+                .thenReturn(1L);
+
+        assertEquals(0, shardedStockService.predeductStock(TICKET_ID, QUANTITY));
+
+        verify(luaScriptRegistry).eval(eq("stock.shard.give-back"), eq(RScript.Mode.READ_WRITE),
+                eq(RScript.ReturnType.INTEGER), any(List.class), eq("1"));
+        assertEquals(1.0, meterRegistry.counter("stock_shard_borrow_failure_total").count());
+    }
+
+    @Test
+    void testPredeductStock_ShardsNotExist() {
+        when(luaScriptRegistry.<Long>eval(eq("stock.shard.take"), eq(RScript.Mode.READ_WRITE),
+                eq(RScript.ReturnType.INTEGER), any(List.class), any(Object[].class)))
+                .thenReturn(-1L);
+
+        assertEquals(-1, shardedStockService.predeductStock(TICKET_ID, QUANTITY));
+    }
+
+    @Test
+    void testRollbackStock_GivesBackToOneShard() {
+        when(luaScriptRegistry.<Long>eval(eq("stock.shard.give-back"), eq(RScript.Mode.READ_WRITE),
+                eq(RScript.ReturnType.INTEGER), any(List.class), eq(String.valueOf(QUANTITY))))
+                .thenReturn(-1L, 10L);
+
+        // 选中分片不存在时加回下一个分片，不限制最大库存时不读取分片总量
+        assertEquals(1, shardedStockService.rollbackStock(TICKET_ID, QUANTITY, Integer.MAX_VALUE));
+        verify(luaScriptRegistry, times(2)).eval(eq("stock.shard.give-back"), any(RScript.Mode.class),
+                any(RScript.ReturnType.class), argThat(keys -> keys.size() == 1), any(Object[].class));
+        verify(redissonClient, never()).getBuckets(any());
+    }
+
+    @Test
+    void testLockAndUnlockStock_SameShardSlot() {
+        List<Object> lockKeys = new ArrayList<>();
+        List<Object> unlockKeys = new ArrayList<>();
+        when(luaScriptRegistry.<Long>eval(eq("stock.shard.lock"), eq(RScript.Mode.READ_WRITE),
+                eq(RScript.ReturnType.INTEGER), any(List.class), any(Object[].class))).thenAnswer(invocation -> {
+                    lockKeys.addAll(invocation.getArgument(3));
+                    return 1L;
+                });
+        when(luaScriptRegistry.<Long>eval(eq("stock.shard.unlock"), eq(RScript.Mode.READ_WRITE),
+                eq(RScript.ReturnType.INTEGER), any(List.class))).thenAnswer(invocation -> {
+                    unlockKeys.addAll(invocation.getArgument(3));
+                    return (long) QUANTITY;
+                });
+
+        assertEquals(1, shardedStockService.lockStock(TICKET_ID, 10L, QUANTITY, 300));
+        assertEquals(QUANTITY, shardedStockService.unlockStock(TICKET_ID, 10L));
+
+        // 锁定和释放落在用户所属的同一分片，锁定key与分片key同一hash tag
+        assertEquals(lockKeys, unlockKeys);
+        String shardKey = (String) lockKeys.get(0);
+        String tag = shardKey.substring(shardKey.indexOf('{'), shardKey.indexOf('}') + 1);
+        assertEquals("stock:locked:" + tag + ":10", lockKeys.get(1));
+        assertEquals(lockKeys.get(1), shardedStockService.getLockedKey(TICKET_ID, 10L));
+    }
+
+    @Test
+    void testLockStock_BorrowsIntoUserShardAndRetries() {
+        when(luaScriptRegistry.<Long>eval(eq("stock.shard.lock"), eq(RScript.Mode.READ_WRITE),
+                eq(RScript.ReturnType.INTEGER), any(List.class), any(Object[].class)))
+                .thenReturn(0L, 1L);
+        when(luaScriptRegistry.<Long>eval(eq("stock.shard.take"), eq(RScript.Mode.READ_WRITE),
+                eq(RScript.ReturnType.INTEGER), any(List.class), any(Object[].class)))
+                .thenReturn(1L, 2L);
+        when(luaScriptRegistry.<Long>eval(eq("stock.shard.give-back"), eq(RScript.Mode.READ_WRITE),
+                eq(RScript.ReturnType.INTEGER), any(List.class), eq(String.valueOf(QUANTITY))))
+                .thenReturn(3L);
+
+        assertEquals(1, shardedStockService.lockStock(TICKET_ID, 10L, QUANTITY, 300));
+        assertEquals(1.0, meterRegistry.counter("stock_shard_borrow_total").count());
+        verify(luaScriptRegistry, times(2)).eval(eq("stock.shard.lock"), any(RScript.Mode.class),
+                any(RScript.ReturnType.class), any(List.class), any(Object[].class));
+    }
+
+    @Test
+    void testUnlockStock_ShardNotExistKeepsLock() {
+        when(luaScriptRegistry.<Long>eval(eq("stock.shard.unlock"), eq(RScript.Mode.READ_WRITE),
+                eq(RScript.ReturnType.INTEGER), any(List.class))).thenReturn(-1L);
+
+        assertEquals(-1, shardedStockService.unlockStock(TICKET_ID, 10L));
+    }
+}
@@ -0,0 +1,226 @@
+package com.ticketsystem.show.service;
+
+import com.ticketsystem.common.script.LuaScriptRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.redisson.api.RScript;
+import org.redisson.api.RedissonClient;
+import org.springframework.core.io.ClassPathResource;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 统一库存引擎单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+class StockEngineTest {
+
+    @Mock
+    private RedissonClient redissonClient;
+    
+    @Mock
+    private LuaScriptRegistry luaScriptRegistry;
+
+    @Mock
+    private ShardedStockService shardedStockService;
+
+    @Mock
+    private StockLedgerService stockLedgerService;
+    
+    @InjectMocks
+    private StockEngine stockEngine;
+    
+    private static final Long TICKET_ID = 1L;
+    private static final Integer QUANTITY = 2;
+    private static final Integer STOCK_AMOUNT = 100;
+    private static final Integer EXPIRE_SECONDS = 3600;
+    
+    @Test
+    void testInitStock_Success() {
+        // 模拟Lua脚本返回1（初始化成功）
+        when(luaScriptRegistry.<Long>eval(anyString(), eq(RScript.Mode.READ_WRITE), eq(RScript.ReturnType.INTEGER), 
+                any(List.class), any(Object[].class))).thenReturn(1L);
+        
+        Boolean result = stockEngine.initStock(TICKET_ID, STOCK_AMOUNT, false);
+        
+        assertTrue(result);
+        verify(luaScriptRegistry).eval(anyString(), eq(RScript.Mode.READ_WRITE), eq(RScript.ReturnType.INTEGER), 
+                any(List.class), any(Object[].class));
+    }
+    
+    @Test
+    void testInitStock_AlreadyExists() {
+        // 模拟Lua脚本返回0（库存已存在）
+        when(luaScriptRegistry.<Long>eval(anyString(), eq(RScript.Mode.READ_WRITE), eq(RScript.ReturnType.INTEGER), 
+                any(List.class), any(Object[].class))).thenReturn(0L);
+        
+        Boolean result = stockEngine.initStock(TICKET_ID, STOCK_AMOUNT, false);
+        
+        assertFalse(result);
+    }
+    
+    @Test
+    void testPredeductStock_Success() {
+        // 模拟Lua脚本返回1（预减成功）
+        when(luaScriptRegistry.<Long>eval(anyString(), eq(RScript.Mode.READ_WRITE), eq(RScript.ReturnType.INTEGER), 
+                any(List.class), any(Object[].class))).thenReturn(1L);
+        
+        Integer result = stockEngine.predeductStock(TICKET_ID, QUANTITY);
+        
+        assertEquals(1, result);
+        verify(luaScriptRegistry).eval(anyString(), eq(RScript.Mode.READ_WRITE), eq(RScript.ReturnType.INTEGER), 
+                any(List.class), any(Object[].class));
+    }
+    
+    @Test
+    void testPredeductStock_InsufficientStock() {
+        // 模拟Lua脚本返回0（库存不足）
+        when(luaScriptRegistry.<Long>eval(anyString(), eq(RScript.Mode.READ_WRITE), eq(RScript.ReturnType.INTEGER), 
+                any(List.class), any(Object[].class))).thenReturn(0L);
+        
+        Integer result = stockEngine.predeductStock(TICKET_ID, QUANTITY);
+        
+        assertEquals(0, result);
+    }
+    
+    @Test
+    void testPredeductStock_StockNotExists() {
+        // 模拟Lua脚本返回-1（库存不存在）
+        when(luaScriptRegistry.<Long>eval(anyString(), eq(RScript.Mode.READ_WRITE), eq(RScript.ReturnType.INTEGER), 
+                any(List.class), any(Object[].class))).thenReturn(-1L);
+        
+        Integer result = stockEngine.predeductStock(TICKET_ID, QUANTITY);
+        
+        assertEquals(-1, result);
+    }
+    
+    @Test
+    void testRollbackStock_Success() {
+        // 模拟Lua脚本返回1（回滚成功）
+        when(luaScriptRegistry.<Long>eval(anyString(), eq(RScript.Mode.READ_WRITE), eq(RScript.ReturnType.INTEGER), 
+                any(List.class), any(Object[].class))).thenReturn(1L);
+        
+        Integer result = stockEngine.rollbackStock(TICKET_ID, QUANTITY, 100);
+        
+        assertEquals(1, result);
+        verify(luaScriptRegistry).eval(anyString(), eq(RScript.Mode.READ_WRITE), eq(RScript.ReturnType.INTEGER), 
+                any(List.class), any(Object[].class));
+    }
+    
+    @Test
+    void testRollbackStock_ExceedsMaxStock() {
+        // 模拟Lua脚本返回0（超过最大库存）
+        when(luaScriptRegistry.<Long>eval(anyString(), eq(RScript.Mode.READ_WRITE), eq(RScript.ReturnType.INTEGER), 
+                any(List.class), any(Object[].class))).thenReturn(0L);
+        
+        Integer result = stockEngine.rollbackStock(TICKET_ID, QUANTITY, 100);
+        
+        assertEquals(0, result);
+    }
+    
+    @Test
+    void testRollbackStock_StockNotExists() {
+        // 模拟Lua脚本返回-1（库存不存在）
+        when(luaScriptRegistry.<Long>eval(anyString(), eq(RScript.Mode.READ_WRITE), eq(RScript.ReturnType.INTEGER), 
+                any(List.class), any(Object[].class))).thenReturn(-1L);
+        
+        Integer result = stockEngine.rollbackStock(TICKET_ID, QUANTITY, 100);
+        
+        assertEquals(-1, result);
+    }
+    
+    @Test
+    void testPredeductStock_WithException() {
+        // 模拟Redis异常
+        when(luaScriptRegistry.<Long>eval(anyString(), eq(RScript.Mode.READ_WRITE), eq(RScript.ReturnType.INTEGER), 
+                any(List.class), any(Object[].class))).thenThrow(new RuntimeException("Redis连接异常"));
+        
+        Integer result = stockEngine.predeductStock(TICKET_ID, QUANTITY);
+        
+        assertEquals(-1, result);
+    }
+    
+    @Test
+    void testRollbackStock_WithException() {
+        // 模拟Redis异常
+        when(luaScriptRegistry.<Long>eval(anyString(), eq(RScript.Mode.READ_WRITE), eq(RScript.ReturnType.INTEGER), 
+                any(List.class), any(Object[].class))).thenThrow(new RuntimeException("Redis连接异常"));
+        
+        Integer result = stockEngine.rollbackStock(TICKET_ID, QUANTITY, 100);
+        
+        assertEquals(0, result);
+    }
+    
+    @Test
+    void testInitStock_WithForceUpdate() {
+        // 模拟强制更新，Lua脚本返回1（更新成功）
+        when(luaScriptRegistry.<Long>eval(anyString(), eq(RScript.Mode.READ_WRITE), eq(RScript.ReturnType.INTEGER), 
+                any(List.class), any(Object[].class))).thenReturn(1L);
+        
+        Boolean result = stockEngine.initStock(TICKET_ID, STOCK_AMOUNT, true);
+        
+        assertTrue(result);
+        verify(luaScriptRegistry).eval(anyString(), eq(RScript.Mode.READ_WRITE), eq(RScript.ReturnType.INTEGER), 
+                any(List.class), any(Object[].class));
+    }
+
+    @Test
+    void testPredeductStocks_AllOrNothing() {
+        Map<Long, Integer> items = new LinkedHashMap<>();
+        items.put(1L, 2);
+        items.put(2L, 1);
+        items.put(3L, 4);
+
+        // 第三个票档库存不足，脚本不做任何扣减
+        when(luaScriptRegistry.<List<Long>>eval(eq("stock.prededuct.multi"), eq(RScript.Mode.READ_WRITE),
+                eq(RScript.ReturnType.MULTI), any(List.class), any(Object[].class)))
+                .thenReturn(Arrays.asList(0L, 1L, 1L, 0L))
+                .thenReturn(Arrays.asList(1L, 1L, 1L, 1L));
+
+        Map<Long, Integer> failed = stockEngine.predeductStocks(items, "order-1");
+        assertEquals(Arrays.asList(1, 1, 0), List.copyOf(failed.values()));
+        verify(stockLedgerService, never()).record(anyLong(), any(), anyInt(), any());
+
+        Map<Long, Integer> success = stockEngine.predeductStocks(items, "order-1");
+        assertTrue(success.values().stream().allMatch(r -> r == 1));
+        verify(stockLedgerService, times(3)).record(anyLong(), eq(StockLedgerService.LedgerOp.PREDEDUCT), anyInt(), eq("order-1"));
+    }
+
+    @Test
+    void testUnlockStock_StockNotExistsKeepsLock() {
+        // 库存key不存在时脚本保留锁定记录并返回-1，由调用方同步库存后重试
+        when(luaScriptRegistry.<Long>eval(eq("stock.unlock"), eq(RScript.Mode.READ_WRITE), eq(RScript.ReturnType.INTEGER),
+                any(List.class), any(Object[].class))).thenReturn(-1L);
+
+        Integer result = stockEngine.unlockStock(TICKET_ID, 10L);
+
+        assertEquals(-1, result);
+        verify(shardedStockService).checkShardedAuthoritative(TICKET_ID);
+        verify(stockLedgerService, never()).record(anyLong(), any(), anyInt());
+    }
+
+    @Test
+    void testLockAndUnlockStock_ShardedUsesSingleScript() {
+        when(shardedStockService.isSharded(TICKET_ID)).thenReturn(true);
+        when(shardedStockService.lockStock(eq(TICKET_ID), eq(10L), eq(QUANTITY), anyInt())).thenReturn(1);
+        when(shardedStockService.unlockStock(TICKET_ID, 10L)).thenReturn(QUANTITY);
+
+        assertEquals(1, stockEngine.lockStock(TICKET_ID, 10L, QUANTITY));
+        assertEquals(QUANTITY, stockEngine.unlockStock(TICKET_ID, 10L));
+
+        verify(shardedStockService, never()).predeductStock(anyLong(), anyInt());
+        verify(shardedStockService, never()).rollbackStock(anyLong(), anyInt(), anyInt());
+        verify(stockLedgerService).record(TICKET_ID, StockLedgerService.LedgerOp.REDIS_LOCK, QUANTITY);
+        verify(stockLedgerService).record(TICKET_ID, StockLedgerService.LedgerOp.REDIS_UNLOCK, QUANTITY);
+    }
+}
@@ -0,0 +1,122 @@
+package com.ticketsystem.show.service;
+
+import com.ticketsystem.show.entity.TicketStock;
+import com.ticketsystem.show.mapper.TicketStockMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 库存组提交器单元测试
+ */
+@ExtendWith(MockitoExtension.class)
+class StockGroupCommitterTest {
+
+    @Mock
+    private TicketStockMapper ticketStockMapper;
+
+    @Mock
+    private StockLedgerService stockLedgerService;
+
+    @InjectMocks
+    private StockGroupCommitter stockGroupCommitter;
+
+    private static final Long TICKET_ID = 1L;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(stockGroupCommitter, "windowMillis", 50L);
+        ReflectionTestUtils.setField(stockGroupCommitter, "maxBatch", 200);
+        ReflectionTestUtils.setField(stockGroupCommitter, "maxRetries", 3);
+        ReflectionTestUtils.setField(stockGroupCommitter, "timeoutMillis", 3000L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        stockGroupCommitter.shutdown();
+    }
+
+    @Test
+    void testConcurrentRequestsMergedIntoOneUpdate() {
+        TicketStock stock = new TicketStock();
+        stock.setTicketId(TICKET_ID);
+        stock.setTotalStock(10);
+        stock.setLockedStock(3);
+        stock.setSoldStock(2);
+        stock.setVersion(7);
+        when(ticketStockMapper.selectByTicketId(TICKET_ID)).thenReturn(stock);
+        when(ticketStockMapper.applyStockDelta(eq(TICKET_ID), anyInt(), anyInt(), eq(7))).thenReturn(1);
+
+        // 可用5，锁定3：锁2成功、锁4失败、确认3成功、锁2成功
+        CompletableFuture<Boolean> lock1 = stockGroupCommitter.submitAsync(TICKET_ID, StockGroupCommitter.Op.LOCK, 2);
+        CompletableFuture<Boolean> lock2 = stockGroupCommitter.submitAsync(TICKET_ID, StockGroupCommitter.Op.LOCK, 4);
+        CompletableFuture<Boolean> confirm = stockGroupCommitter.submitAsync(TICKET_ID, StockGroupCommitter.Op.CONFIRM, 3);
+        CompletableFuture<Boolean> lock3 = stockGroupCommitter.submitAsync(TICKET_ID, StockGroupCommitter.Op.LOCK, 2);
+
+        assertTrue(lock1.join());
+        assertFalse(lock2.join());
+        assertTrue(confirm.join());
+        assertTrue(lock3.join());
+
+        verify(ticketStockMapper, times(1)).selectByTicketId(TICKET_ID);
+        verify(ticketStockMapper, times(1)).applyStockDelta(TICKET_ID, 1, 3, 7);
+    }
+
+    @Test
+    void testVersionConflictRetried() {
+        TicketStock stock = new TicketStock();
+        stock.setTicketId(TICKET_ID);
+        stock.setTotalStock(10);
+        stock.setLockedStock(0);
+        stock.setSoldStock(0);
+        stock.setVersion(1);
+        when(ticketStockMapper.selectByTicketId(TICKET_ID)).thenReturn(stock);
+        when(ticketStockMapper.applyStockDelta(eq(TICKET_ID), anyInt(), anyInt(), anyInt())).thenReturn(0, 1);
+
+        assertTrue(stockGroupCommitter.submit(TICKET_ID, StockGroupCommitter.Op.LOCK, 1));
+        verify(ticketStockMapper, times(2)).applyStockDelta(TICKET_ID, 1, 0, 1);
+    }
+
+    @Test
+    void testCallerRollbackSubmitsReverseOperation() {
+        TicketStock stock = new TicketStock();
+        stock.setTicketId(TICKET_ID);
+        stock.setTotalStock(10);
+        stock.setLockedStock(0);
+        stock.setSoldStock(0);
+        stock.setVersion(1);
+        when(ticketStockMapper.selectByTicketId(TICKET_ID)).thenReturn(stock);
+        when(ticketStockMapper.applyStockDelta(eq(TICKET_ID), anyInt(), anyInt(), anyInt())).thenReturn(1);
+
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            assertTrue(stockGroupCommitter.submit(TICKET_ID, StockGroupCommitter.Op.LOCK, 2));
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+            assertEquals(1, synchronizations.size());
+
+            // 调用方事务提交时不做补偿
+            synchronizations.get(0).afterCompletion(TransactionSynchronization.STATUS_COMMITTED);
+            verify(ticketStockMapper, after(200).never()).applyStockDelta(TICKET_ID, -2, 0, 1);
+
+            // 调用方事务回滚时提交反向操作
+            synchronizations.get(0).afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK);
+            verify(ticketStockMapper, timeout(1000)).applyStockDelta(TICKET_ID, -2, 0, 1);
+        } finally {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+}
@@ -2,7 +2,7 @@ package com.ticketsystem.show.service;
 
 import com.ticketsystem.show.service.StockRollbackService;
 import com.ticketsystem.show.service.TicketStockService;
-import com.ticketsystem.show.service.RedisStockService;
+import com.ticketsystem.show.service.StockEngine;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
@@ -27,7 +27,7 @@ class StockRollbackServiceTest {
     private TicketStockService ticketStockService;
     
     @Mock
-    private RedisStockService redisStockService;
+    private StockEngine stockEngine;
     
     @InjectMocks
     private StockRollbackService stockRollbackService;
@@ -2,7 +2,7 @@ package com.ticketsystem.show.service;
 
 import com.ticketsystem.show.entity.TicketStock;
 import com.ticketsystem.show.mapper.TicketStockMapper;
-import com.ticketsystem.show.service.RedisStockService;
+import com.ticketsystem.show.service.StockEngine;
 import com.ticketsystem.show.service.impl.TicketStockServiceImpl;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -25,7 +25,7 @@ class TicketStockServiceTest {
     private TicketStockMapper ticketStockMapper;
     
     @Mock
-    private RedisStockService redisStockService;
+    private StockEngine stockEngine;
     
     @InjectMocks
     private TicketStockServiceImpl ticketStockService;
@@ -51,23 +51,23 @@ class TicketStockServiceTest {
     @Test
     void testPredeductStockFromRedis_Success() {
         // 模拟Redis预减成功
-        when(redisStockService.predeductStock(eq(TICKET_ID), eq(QUANTITY))).thenReturn(1);
+        when(stockEngine.predeductStock(eq(TICKET_ID), eq(QUANTITY), isNull())).thenReturn(1);
         
         Integer result = ticketStockService.predeductStockFromRedis(TICKET_ID, QUANTITY);
         
         assertEquals(1, result);
-        verify(redisStockService).predeductStock(eq(TICKET_ID), eq(QUANTITY));
+        verify(stockEngine).predeductStock(eq(TICKET_ID), eq(QUANTITY), isNull());
     }
     
     @Test
     void testPredeductStockFromRedis_Failed() {
         // 模拟Redis预减失败（库存不足）
-        when(redisStockService.predeductStock(eq(TICKET_ID), eq(QUANTITY))).thenReturn(0);
+        when(stockEngine.predeductStock(eq(TICKET_ID), eq(QUANTITY), isNull())).thenReturn(0);
         
         Integer result = ticketStockService.predeductStockFromRedis(TICKET_ID, QUANTITY);
         
         assertEquals(0, result);
-        verify(redisStockService).predeductStock(eq(TICKET_ID), eq(QUANTITY));
+        verify(stockEngine).predeductStock(eq(TICKET_ID), eq(QUANTITY), isNull());
     }
     
     @Test
@@ -75,13 +75,13 @@ class TicketStockServiceTest {
         // 模拟数据库查询
         when(ticketStockMapper.selectByTicketId(TICKET_ID)).thenReturn(mockTicketStock);
         // 模拟Redis回滚成功
-        when(redisStockService.rollbackStock(eq(TICKET_ID), eq(QUANTITY), eq(TOTAL_STOCK))).thenReturn(1);
+        when(stockEngine.rollbackStock(eq(TICKET_ID), eq(QUANTITY), eq(TOTAL_STOCK), isNull())).thenReturn(1);
         
         Boolean result = ticketStockService.rollbackStockToRedis(TICKET_ID, QUANTITY);
         
         assertTrue(result);
         verify(ticketStockMapper).selectByTicketId(TICKET_ID);
-        verify(redisStockService).rollbackStock(eq(TICKET_ID), eq(QUANTITY), eq(TOTAL_STOCK));
+        verify(stockEngine).rollbackStock(eq(TICKET_ID), eq(QUANTITY), eq(TOTAL_STOCK), isNull());
     }
     
     @Test
@@ -93,7 +93,7 @@ class TicketStockServiceTest {
         
         assertFalse(result);
         verify(ticketStockMapper).selectByTicketId(TICKET_ID);
-        verify(redisStockService, never()).rollbackStock(any(), any(), any());
+        verify(stockEngine, never()).rollbackStock(any(), any(), any());
     }
     
     @Test
@@ -101,13 +101,13 @@ class TicketStockServiceTest {
         // 模拟数据库查询成功
         when(ticketStockMapper.selectByTicketId(TICKET_ID)).thenReturn(mockTicketStock);
         // 模拟Redis回滚失败
-        when(redisStockService.rollbackStock(eq(TICKET_ID), eq(QUANTITY), eq(TOTAL_STOCK))).thenReturn(0);
+        when(stockEngine.rollbackStock(eq(TICKET_ID), eq(QUANTITY), eq(TOTAL_STOCK), isNull())).thenReturn(0);
         
         Boolean result = ticketStockService.rollbackStockToRedis(TICKET_ID, QUANTITY);
         
         assertFalse(result);
         verify(ticketStockMapper).selectByTicketId(TICKET_ID);
-        verify(redisStockService).rollbackStock(eq(TICKET_ID), eq(QUANTITY), eq(TOTAL_STOCK), anyInt());
+        verify(stockEngine).rollbackStock(eq(TICKET_ID), eq(QUANTITY), eq(TOTAL_STOCK), isNull());
     }
     
     @Test
@@ -115,13 +115,13 @@ class TicketStockServiceTest {
         // 模拟数据库查询
         when(ticketStockMapper.selectByTicketId(TICKET_ID)).thenReturn(mockTicketStock);
         // 模拟Redis初始化成功
-        when(redisStockService.initStock(eq(TICKET_ID), eq(AVAILABLE_STOCK), eq(true))).thenReturn(true);
+        when(stockEngine.initStock(eq(TICKET_ID), eq(AVAILABLE_STOCK), eq(true))).thenReturn(true);
         
         Boolean result = ticketStockService.syncStockToRedis(TICKET_ID);
         
         assertTrue(result);
         verify(ticketStockMapper).selectByTicketId(TICKET_ID);
-        verify(redisStockService).initStock(eq(TICKET_ID), eq(AVAILABLE_STOCK), eq(true));
+        verify(stockEngine).initStock(eq(TICKET_ID), eq(AVAILABLE_STOCK), eq(true));
     }
     
     @Test
@@ -133,7 +133,7 @@ class TicketStockServiceTest {
         
         assertFalse(result);
         verify(ticketStockMapper).selectByTicketId(TICKET_ID);
-        verify(redisStockService, never()).initStock(any(), any(), anyBoolean());
+        verify(stockEngine, never()).initStock(any(), any(), anyBoolean());
     }
     
     @Test
@@ -141,25 +141,25 @@ class TicketStockServiceTest {
         // 模拟数据库查询成功
         when(ticketStockMapper.selectByTicketId(TICKET_ID)).thenReturn(mockTicketStock);
         // 模拟Redis初始化失败
-        when(redisStockService.initStock(eq(TICKET_ID), eq(AVAILABLE_STOCK), eq(true))).thenReturn(false);
+        when(stockEngine.initStock(eq(TICKET_ID), eq(AVAILABLE_STOCK), eq(true))).thenReturn(false);
         
         Boolean result = ticketStockService.syncStockToRedis(TICKET_ID);
         
         assertFalse(result);
         verify(ticketStockMapper).selectByTicketId(TICKET_ID);
-        verify(redisStockService).initStock(eq(TICKET_ID), eq(AVAILABLE_STOCK), eq(true));
+        verify(stockEngine).initStock(eq(TICKET_ID), eq(AVAILABLE_STOCK), eq(true));
     }
     
     @Test
     void testPredeductStockFromRedis_WithException() {
         // 模拟Redis异常
-        when(redisStockService.predeductStock(eq(TICKET_ID), eq(QUANTITY)))
+        when(stockEngine.predeductStock(eq(TICKET_ID), eq(QUANTITY), isNull()))
                 .thenThrow(new RuntimeException("Redis连接异常"));
         
         Boolean result = ticketStockService.predeductStockFromRedis(TICKET_ID, QUANTITY);
         
         assertFalse(result);
-        verify(redisStockService).predeductStock(eq(TICKET_ID), eq(QUANTITY));
+        verify(stockEngine).predeductStock(eq(TICKET_ID), eq(QUANTITY), isNull());
     }
     
     @Test
@@ -172,7 +172,7 @@ class TicketStockServiceTest {
         
         assertFalse(result);
         verify(ticketStockMapper).selectByTicketId(TICKET_ID);
-        verify(redisStockService, never()).rollbackStock(any(), any(), any(), anyInt());
+        verify(stockEngine, never()).rollbackStock(any(), any(), any(), any());
     }
     
     @Test
@@ -185,7 +185,7 @@ class TicketStockServiceTest {
         
         assertFalse(result);
         verify(ticketStockMapper).selectByTicketId(TICKET_ID);
-        verify(redisStockService, never()).initStock(any(), any(), anyInt(), anyBoolean());
+        verify(stockEngine, never()).initStock(any(), any(), anyInt(), anyBoolean());
     }
     
     @Test
@@ -201,7 +201,7 @@ class TicketStockServiceTest {
         assertFalse(result3);
         assertFalse(result4);
         
-        verify(redisStockService, never()).predeductStock(any(), any(), anyInt());
+        verify(stockEngine, never()).predeductStock(any(), any(), any());
     }
     
     @Test
@@ -218,7 +218,7 @@ class TicketStockServiceTest {
         assertFalse(result4);
         
         verify(ticketStockMapper, never()).selectByTicketId(any());
-        verify(redisStockService, never()).rollbackStock(any(), any(), any(), anyInt());
+        verify(stockEngine, never()).rollbackStock(any(), any(), any(), any());
     }
     
     @Test
@@ -228,6 +228,6 @@ class TicketStockServiceTest {
         
         assertFalse(result);
         verify(ticketStockMapper, never()).selectByTicketId(any());
-        verify(redisStockService, never()).initStock(any(), any(), anyInt(), anyBoolean());
+        verify(stockEngine, never()).initStock(any(), any(), anyInt(), anyBoolean());
     }
 }
\ No newline at end of file